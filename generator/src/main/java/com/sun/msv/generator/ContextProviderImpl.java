@@ -21,7 +21,7 @@ import com.sun.msv.datatype.SerializationContext;
  * 
  * @author <a href="mailto:kohsuke.kawaguchi@eng.sun.com">Kohsuke KAWAGUCHI</a>
  */
-final public class ContextProviderImpl
+public class ContextProviderImpl
 	implements ValidationContext, SerializationContext {
 	
 	public ContextProviderImpl( Element parent ) {
@@ -69,6 +69,11 @@ public class DataTypeGeneratorImpl implements DataTypeGenerator {
 	 */
 	public boolean asciiOnly = false;
 	
+	/**
+	 * strings are generated with less than this number of characters.
+	 */
+	public int maxStringLength = 16;
+	
 	/**
 	 * map from DataType to Set that holds generated values for types.
 	 * This map is used when we fail to generate an appropriate value for a type.
@@ -79,7 +84,7 @@ public class DataTypeGeneratorImpl implements DataTypeGenerator {
 	 * set that contains tokens that are found in example files.
 	 * This set is used as the last resort to generate a value for a type.
 	 */
-	protected Set tokens;
+	protected Set tokens = new java.util.HashSet();
 
 	public String generate( Datatype dt, ContextProviderImpl context ) {
 		String s=null; int i;
@@ -307,7 +312,7 @@ public class DataTypeGeneratorImpl implements DataTypeGenerator {
 		
 	protected String generateString() {
 		// string
-		int len = random.nextInt(16);
+		int len = random.nextInt(maxStringLength);
 		String r = "";
 		for( int i=0; i<len; i++ ) {
 			char ch;
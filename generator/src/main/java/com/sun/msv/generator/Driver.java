@@ -9,15 +9,28 @@
  */
 package com.sun.msv.generator;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -25,6 +38,7 @@ import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.xml.serialize.OutputFormat;
 import org.apache.xml.serialize.XMLSerializer;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
@@ -39,6 +53,7 @@ import com.sun.msv.grammar.relax.RELAXModule;
 import com.sun.msv.grammar.util.RefExpRemover;
 import com.sun.msv.grammar.xmlschema.XMLSchemaGrammar;
 import com.sun.msv.reader.dtd.DTDReader;
+import com.sun.msv.reader.util.ForkContentHandler;
 import com.sun.msv.reader.util.GrammarLoader;
 import com.sun.msv.relaxns.grammar.RELAXGrammar;
 import com.sun.msv.util.StringPair;
@@ -67,6 +82,10 @@ public class Driver {
 			"  -depth <n>: set cut back depth\n"+
 			"  -width <n>: maximum number of times '*'/'+' are repeated\n" +
 			"  -n <n>    : # of files to be generated\n" +
+			"  -count <n>: same as -n\n" +
+			"  -threads <n>\n"+
+			"      generate files by <n> threads. Each file uses its own seed\n"+
+			"      derived from -seed, so the result doesn't depend on <n>.\n"+
 			"  -warning  : show warnings.\n"+
 			"  -quiet    : be quiet.\n"+
             "  -root {<namespaceURI>}<localName>\n"+
@@ -80,6 +99,9 @@ public class Driver {
 			"      error ratio. generate n errors per m elemnts (average).\n"+
 			"      to control error generation, see manual for details.\n"+
 			"  -nocomment: suppress insertion of comments that indicate generated errors.\n"+
+			"  -stream   : write documents while they are generated, without building DOM.\n"+
+			"              can't be used with -error.\n"+
+			"  -size <n> : with -stream, generate documents of about <n> characters\n"+
 			"\n"+
 			"  <output name> must include one '$'. '$' will be replaced by number.\n"+
 			"  e.g., test.$.xml -> test.1.xml test.2.xml test.3.xml ...\n"+
@@ -127,11 +149,18 @@ public class Driver {
 	private boolean debug = false;
 	private boolean quiet = false;
 	private boolean warning = false;
+	private boolean stream = false;
 	private GeneratorOption opt = new GeneratorOption();
 	{
 		opt.random = new Random();
 	}
 	private int number = 1;
+	/** number of threads in the bulk mode. 0 if the bulk mode is not used. */
+	private int threads = 0;
+	/** maximum number of times '*'/'+' are repeated. */
+	private int width = 3;
+	/** seed specified by the -seed option, or null. */
+	private Long seed = null;
 	
     /** designated root element name. */
     private StringPair rootName = null;
@@ -154,7 +183,7 @@ public class Driver {
 	
 	// this set will receive tokens found in the given examples.
 	public final Set exampleTokens = new java.util.HashSet();
-	private DataTypeGeneratorImpl dtgi = new DataTypeGeneratorImpl();
+	private DataTypeGeneratorImpl dtgi = new DataTypeGeneratorImpl(opt.random);
 	{
 		opt.dtGenerator = dtgi;
 		dtgi.tokens = exampleTokens;
@@ -191,6 +220,12 @@ public class Driver {
 			if( args[i].equalsIgnoreCase("-nocomment") )
 				opt.insertComment = false;
 			else
+			if( args[i].equalsIgnoreCase("-stream") )
+				stream = true;
+			else
+			if( args[i].equalsIgnoreCase("-size") )
+				opt.targetSize = new Long(args[++i]).longValue();
+			else
 			if( args[i].equalsIgnoreCase("-depth") )
 				opt.cutBackDepth = new Integer(args[++i]).intValue();
 			else
@@ -206,10 +241,17 @@ public class Driver {
                     throw new CommandLineException("unable to parse "+fileName+" :"+e.getMessage());
                 }
 			} else
-			if( args[i].equalsIgnoreCase("-width") )
-				opt.width = new Rand.UniformRand( opt.random, new Integer(args[++i]).intValue() );
+			if( args[i].equalsIgnoreCase("-width") ) {
+				width = new Integer(args[++i]).intValue();
+				opt.width = new Rand.UniformRand( opt.random, width );
+			}
 			else
-			if( args[i].equalsIgnoreCase("-n") ) {
+			if( args[i].equalsIgnoreCase("-threads") ) {
+				threads = new Integer(args[++i]).intValue();
+				if( threads<1 )	threads=1;
+			}
+			else
+			if( args[i].equalsIgnoreCase("-n") || args[i].equalsIgnoreCase("-count") ) {
 				number = new Integer(args[++i]).intValue();
 				if( number<1 )	number=1;
 			}
@@ -228,8 +270,10 @@ public class Driver {
 			if( args[i].equalsIgnoreCase("-encoding") )
 				encoding = args[++i];
 			else
-			if( args[i].equalsIgnoreCase("-seed") )
-				opt.random.setSeed( new Long(args[++i]).longValue() );
+			if( args[i].equalsIgnoreCase("-seed") ) {
+				seed = new Long(args[++i]);
+				opt.random.setSeed( seed.longValue() );
+			}
 			else
 			if( args[i].equalsIgnoreCase("-nonvalidate") )	// secret option
 				validate = false;
@@ -300,6 +344,11 @@ public class Driver {
 		}
 		
 		
+		if( stream && createError )
+			throw new CommandLineException("-stream can't be used with -error");
+		if( threads!=0 && (outputName==null || outputName.indexOf('$')<0) )
+			throw new CommandLineException("-threads needs an output name that includes '$'");
+		
 		if(grammarName!=null) {
 			// load a schema
 			if(!quiet)
@@ -340,18 +389,7 @@ public class Driver {
 		}
 		
 		
-		Expression topLevel  = grammar.getTopLevel();
-		
-		// polish up this AGM for instance generation.
-		if( grammar instanceof RELAXGrammar
-		||  grammar instanceof RELAXModule )
-			topLevel = topLevel.visit( new NoneTypeRemover(grammar.getPool()) );
-		
-		if( grammar instanceof XMLSchemaGrammar )
-			topLevel = topLevel.visit( new SchemaLocationRemover(grammar.getPool()) );
-		
-	
-		topLevel = topLevel.visit( new RefExpRemover(grammar.getPool(),true) );
+		Expression topLevel = polish(grammar);
         
         if(rootName!=null) {
             topLevel = findElement(topLevel,rootName);
@@ -363,6 +401,9 @@ public class Driver {
         
 		opt.pool = grammar.getPool();
 		
+		if( threads!=0 )
+			return runBulk(topLevel,out);
+		
 		// generate instances
 		//===========================================
 		for( int i=0; i<number; i++ ) {
@@ -371,6 +412,14 @@ public class Driver {
 				else			out.print(">");
 			}
 			
+			if( stream ) {
+				if( !generateStream(topLevel,i) ) {
+					out.println("unable to generate a proper instance.");
+					return -1;
+				}
+				continue;
+			}
+			
 			org.w3c.dom.Document dom;
 			int retry=0;
 			
@@ -401,20 +450,7 @@ public class Driver {
 			}
 		
 			// serialize it
-			OutputStream os;
-			if( outputName==null )		os = System.out;	// in case no output file name is specified
-			else {
-				int idx = outputName.indexOf('$');
-				if( idx!=-1 ) {
-					String s = Integer.toString(i);
-					for( int j=s.length(); j<Integer.toString(number-1).length(); j++ )
-						s = "0"+s;
-					
-					os = new FileOutputStream( outputName.substring(0,idx)+s+outputName.substring(idx+1) );
-				}
-				else
-					os = new FileOutputStream( outputName );
-			}
+			OutputStream os = openOutput(i);
 			
 			DOMDecorator.decorate(dom);
 			
@@ -430,6 +466,223 @@ public class Driver {
 		return 0;
 	}
 	
+	/**
+	 * polishes up the top-level expression of the grammar for instance generation.
+	 */
+	static Expression polish( Grammar grammar ) {
+		Expression topLevel  = grammar.getTopLevel();
+		
+		if( grammar instanceof RELAXGrammar
+		||  grammar instanceof RELAXModule )
+			topLevel = topLevel.visit( new NoneTypeRemover(grammar.getPool()) );
+		
+		if( grammar instanceof XMLSchemaGrammar )
+			topLevel = topLevel.visit( new SchemaLocationRemover(grammar.getPool()) );
+		
+		return topLevel.visit( new RefExpRemover(grammar.getPool(),true) );
+	}
+	
+	/** opens the output stream of the i-th document. */
+	private OutputStream openOutput( int i ) throws IOException {
+		if( outputName==null )		return System.out;	// in case no output file name is specified
+		return new FileOutputStream( getOutputName(i) );
+	}
+	
+	/** gets the file name of the i-th document. */
+	private String getOutputName( int i ) {
+		int idx = outputName.indexOf('$');
+		if( idx==-1 )	return outputName;
+		
+		String s = Integer.toString(i);
+		for( int j=s.length(); j<Integer.toString(number-1).length(); j++ )
+			s = "0"+s;
+		
+		return outputName.substring(0,idx)+s+outputName.substring(idx+1);
+	}
+	
+	/**
+	 * generates documents by multiple threads.
+	 * 
+	 * The grammar and its declarations are shared by all threads.
+	 * Each document has its own random number generator, whose seed
+	 * is derived from the base seed and the index of the document.
+	 */
+	private int runBulk( final Expression topLevel, PrintStream out ) throws Exception {
+		final long baseSeed = (seed!=null) ? seed.longValue() : new Random().nextLong();
+		if(!quiet)
+			out.println("generating "+number+" documents by "+threads+" threads (seed "+baseSeed+")");
+		
+		final Set[] decls = ElementDeclCollector.collect(topLevel);
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicLong bytes = new AtomicLong();
+		final AtomicBoolean failed = new AtomicBoolean();
+		
+		long start = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Object>> futures = new ArrayList<Future<Object>>();
+			for( int t=0; t<threads; t++ ) {
+				futures.add( executor.submit( new Callable<Object>() {
+					public Object call() throws Exception {
+						int i;
+						while( !failed.get() && (i=next.getAndIncrement())<number ) {
+							long size = generateBulk( topLevel, decls, i, deriveSeed(baseSeed,i) );
+							if( size<0 ) {
+								failed.set(true);
+								break;
+							}
+							bytes.addAndGet(size);
+						}
+						return null;
+					}
+				}));
+			}
+			
+			for( int t=0; t<futures.size(); t++ ) {
+				try {
+					futures.get(t).get();
+				} catch( ExecutionException e ) {
+					if( e.getCause() instanceof Exception )
+						throw (Exception)e.getCause();
+					throw e;
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+		long time = Math.max( System.currentTimeMillis()-start, 1 );
+		
+		if( failed.get() ) {
+			out.println("unable to generate a proper instance.");
+			return -1;
+		}
+		
+		if(!quiet)
+			out.println( number+" documents, "+bytes.get()+" bytes in "+time+" ms ("
+				+(number*1000L/time)+" documents/s, "
+				+(bytes.get()*1000L/1024/time)+" KB/s)" );
+		
+		return 0;
+	}
+	
+	/**
+	 * derives the seed of the i-th document from the base seed.
+	 */
+	private static long deriveSeed( long baseSeed, int i ) {
+		// SplitMix64, so that the seeds of consecutive documents are unrelated.
+		long z = baseSeed + (i+1)*0x9E3779B97F4A7C15L;
+		z = (z^(z>>>30))*0xBF58476D1CE4E5B9L;
+		z = (z^(z>>>27))*0x94D049BB133111EBL;
+		return z^(z>>>31);
+	}
+	
+	/**
+	 * creates a copy of the options that uses the given seed.
+	 */
+	private GeneratorOption createOption( long seed ) {
+		GeneratorOption o = opt.copy();
+		o.random = new Random(seed);
+		o.width = new Rand.UniformRand( o.random, width );
+		o.nameGenerator = new NameGenerator(o.random);
+		DataTypeGeneratorImpl g = new DataTypeGeneratorImpl(o.random);
+		g.asciiOnly = dtgi.asciiOnly;
+		g.tokens = exampleTokens;
+		o.dtGenerator = g;
+		return o;
+	}
+	
+	/**
+	 * generates the i-th document in the bulk mode.
+	 * 
+	 * @return
+	 *		the size of the file, or -1 if a proper instance can't be generated.
+	 */
+	private long generateBulk( Expression topLevel, Set[] decls, int i, long seed ) throws Exception {
+		GeneratorOption o = createOption(seed);
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		
+		int retry=0;
+		while(true) {
+			buf.reset();
+			XMLSerializer s = new XMLSerializer( buf, new OutputFormat("XML",encoding,true) );
+			Verifier v = !validate ? null : new Verifier(
+				new REDocumentDeclaration(grammar),
+				debug?
+					(ErrorHandler)new ErrorHandlerImpl():
+					(ErrorHandler)new IgnoreErrorHandler() );
+			
+			boolean ok = true;
+			if( stream ) {
+				ContentHandler handler = s.asContentHandler();
+				if( v!=null )	handler = new ForkContentHandler(handler,v);
+				ok = StreamGenerator.generate(topLevel,handler,o);
+			} else {
+				org.w3c.dom.Document dom;
+				synchronized(domFactory) {
+					dom = domFactory.newDocumentBuilder().newDocument();
+				}
+				Generator.generate(topLevel,dom,o,decls);
+				if( v!=null ) {
+					DOM2toSAX2 d2s = new DOM2toSAX2();
+					d2s.setContentHandler(v);
+					d2s.traverse(dom);
+				}
+				DOMDecorator.decorate(dom);
+				s.serialize(dom);
+			}
+			
+			if( v==null )	break;
+			if( ok && createError!=v.isValid() )	break;
+			
+			// do it again
+			if( retry++ == 100 )
+				return -1;
+		}
+		
+		// write the file in one go.
+		FileChannel channel = new FileOutputStream(getOutputName(i)).getChannel();
+		try {
+			ByteBuffer bb = ByteBuffer.wrap(buf.toByteArray());
+			while( bb.hasRemaining() )
+				channel.write(bb);
+		} finally {
+			channel.close();
+		}
+		return buf.size();
+	}
+	
+	/**
+	 * generates the i-th document by {@link StreamGenerator}.
+	 * The document is validated while it is written.
+	 * 
+	 * @return false if a valid document can't be generated.
+	 */
+	private boolean generateStream( Expression topLevel, int i ) throws Exception {
+		for( int retry=0; retry<=100; retry++ ) {
+			OutputStream os = openOutput(i);
+			
+			XMLSerializer s = new XMLSerializer( os, new OutputFormat("XML",encoding,true) );
+			ContentHandler handler = s.asContentHandler();
+			Verifier v = null;
+			if( validate ) {
+				v = new Verifier(
+					new REDocumentDeclaration(grammar),
+					debug?
+						(ErrorHandler)new ErrorHandlerImpl():
+						(ErrorHandler)new IgnoreErrorHandler() );
+				handler = new ForkContentHandler(handler,v);
+			}
+			
+			boolean ok = StreamGenerator.generate(topLevel,handler,opt);
+			if( os!=System.out )	os.close();
+			
+			if( ok && (v==null || v.isValid()) )	return true;
+			if( os==System.out )	return false;	// can't take it back.
+			// do it again
+		}
+		return false;
+	}
+	
     private Expression findElement( Expression exp, StringPair name ) {
         
         Vector vec = new Vector();
@@ -21,6 +21,9 @@ import com.sun.msv.grammar.util.ExpressionWalker;
  * collects all distinct element declaration in the grammar.
  * As a side effect, it also collects all distinct attribute declarations.
  * 
+ * Declarations are kept in the order they are found, so that
+ * the same seed generates the same document.
+ * 
  * @author <a href="mailto:kohsuke.kawaguchi@eng.sun.com">Kohsuke KAWAGUCHI</a>
  */
 public class ElementDeclCollector extends ExpressionWalker {
@@ -28,14 +31,14 @@ public class ElementDeclCollector extends ExpressionWalker {
 		throw new Error("concur is not supported");
 	}
 	
-	private final Set elements = new java.util.HashSet();
+	private final Set elements = new java.util.LinkedHashSet();
 	public void onElement( ElementExp exp ) {
 		if( elements.contains(exp) )	return;	// prevent infinite recursion
 		elements.add(exp);
 		super.onElement(exp);
 	}
 	
-	private final Set attributes = new java.util.HashSet();
+	private final Set attributes = new java.util.LinkedHashSet();
 	public void onAttribute( AttributeExp exp ) {
 		attributes.add(exp);
 		super.onAttribute(exp);
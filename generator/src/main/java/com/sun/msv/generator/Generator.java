@@ -9,7 +9,7 @@
  */
 package com.sun.msv.generator;
 
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.Vector;
@@ -68,12 +68,12 @@ public class Generator implements ExpressionVisitorVoid {
 	private boolean errorGenerated = false;
 
 	/** returns true if generator should cut back. */
-	protected boolean cutBack() { return depth>5; }
+	protected boolean cutBack() { return depth>opts.cutBackDepth; }
 	
 	/** ID tokens that are used */
-	private final Set ids = new HashSet();
+	private final Set ids = new LinkedHashSet();
 	/** Text nodes of IDREFs that should be "patched" by IDs. */
-	private final Set idrefs = new HashSet();
+	private final Set idrefs = new LinkedHashSet();
 	
 	/** all ElementExps in the grammar. */
 	private final ElementExp[] elementDecls;
@@ -87,6 +87,18 @@ public class Generator implements ExpressionVisitorVoid {
 	
 	/** generates instance by custom settings. */
 	public static void generate( Expression exp, Document emptyDoc, GeneratorOption opts ) {
+		generate( exp, emptyDoc, opts, ElementDeclCollector.collect(exp) );
+	}
+	
+	/**
+	 * generates instance by custom settings.
+	 * 
+	 * @param decls
+	 *		declarations collected from the expression by {@link ElementDeclCollector}.
+	 *		They are not modified, so the same declarations can be used
+	 *		by several threads that generate instances of the same expression.
+	 */
+	public static void generate( Expression exp, Document emptyDoc, GeneratorOption opts, Set[] decls ) {
 		Generator g;
 		
 		for( int i=0; i<10; i++ ) {
@@ -98,7 +110,7 @@ public class Generator implements ExpressionVisitorVoid {
 				while( emptyDoc.getFirstChild()!=null ) // delete any existing children
 					emptyDoc.removeChild( emptyDoc.getFirstChild() );
 				
-				g = new Generator(exp,emptyDoc,opts);
+				g = new Generator(exp,emptyDoc,opts,decls);
 				exp.visit(g);
 				// if error ratio is specified and no error is generated, do it again.
 			}while( !g.errorGenerated && opts.errorSpecified() );
@@ -122,13 +134,16 @@ public class Generator implements ExpressionVisitorVoid {
 	}
 	
 	protected Generator( Expression exp, Document emptyDoc, GeneratorOption opts ) {
+		this( exp, emptyDoc, opts, ElementDeclCollector.collect(exp) );
+	}
+	
+	protected Generator( Expression exp, Document emptyDoc, GeneratorOption opts, Set[] s ) {
 		opts.fillInByDefault();
 		this.opts = opts;
 		this.pool = opts.pool;
 		node = domDoc = emptyDoc;
 		
-		// collect element and attribute decls.
-		Set[] s= ElementDeclCollector.collect(exp);
+		// element and attribute decls.
 		elementDecls = new ElementExp[s[0].size()];
 		s[0].toArray(elementDecls);
 		attributeDecls = new AttributeExp[s[1].size()];
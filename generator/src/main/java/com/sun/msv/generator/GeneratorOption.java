@@ -18,7 +18,7 @@ import com.sun.msv.grammar.ExpressionPool;
  * 
  * @author <a href="mailto:kohsuke.kawaguchi@eng.sun.com">Kohsuke KAWAGUCHI</a>
  */
-public class GeneratorOption
+public class GeneratorOption implements Cloneable
 {
 	/** random number generator. */
 	public Random random;
@@ -29,6 +29,13 @@ public class GeneratorOption
 	 */
 	public int cutBackDepth = 0;
 	
+	/**
+	 * approximate size of the generated document, in characters.
+	 * If this value is positive, {@link StreamGenerator} repeats a '*' or '+'
+	 * until the document reaches this size. 0 means no target.
+	 */
+	public long targetSize = 0;
+	
 	/**
 	 * this object is responsible to calculate how many times '*' or '+' is repeated.
 	 */
@@ -132,6 +139,18 @@ public class GeneratorOption
 		if( pool==null )			pool = new ExpressionPool();
 	}
 	
+	/**
+	 * creates a shallow copy of this object.
+	 */
+	public GeneratorOption copy()
+	{
+		try {
+			return (GeneratorOption)clone();
+		} catch( CloneNotSupportedException e ) {
+			throw new InternalError();	// impossible
+		}
+	}
+	
 	public boolean errorSpecified()
 	{
 		return probGreedyChoiceError!=0
@@ -0,0 +1,570 @@
+package com.sun.msv.generator;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.relaxng.datatype.Datatype;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.NamespaceSupport;
+
+import com.sun.msv.datatype.xsd.QnameValueType;
+import com.sun.msv.datatype.xsd.StringType;
+import com.sun.msv.datatype.xsd.XSDatatype;
+import com.sun.msv.grammar.AttributeExp;
+import com.sun.msv.grammar.BinaryExp;
+import com.sun.msv.grammar.ChoiceExp;
+import com.sun.msv.grammar.ConcurExp;
+import com.sun.msv.grammar.DataExp;
+import com.sun.msv.grammar.ElementExp;
+import com.sun.msv.grammar.Expression;
+import com.sun.msv.grammar.ExpressionPool;
+import com.sun.msv.grammar.ExpressionVisitorVoid;
+import com.sun.msv.grammar.InterleaveExp;
+import com.sun.msv.grammar.ListExp;
+import com.sun.msv.grammar.MixedExp;
+import com.sun.msv.grammar.NameClass;
+import com.sun.msv.grammar.OneOrMoreExp;
+import com.sun.msv.grammar.OtherExp;
+import com.sun.msv.grammar.ReferenceExp;
+import com.sun.msv.grammar.SequenceExp;
+import com.sun.msv.grammar.ValueExp;
+import com.sun.msv.grammar.util.ExpressionWalker;
+import com.sun.msv.util.StringPair;
+
+/**
+ * generates an XML instance that conforms to the given schema
+ * as a stream of SAX events.
+ *
+ * <p>
+ * Unlike {@link Generator}, this class doesn't build the document in memory.
+ * The content of an element is planned just before its start tag is written,
+ * and child elements and repetitions are only expanded when they are written.
+ * So the memory usage depends on the depth of the document, not on its size.
+ *
+ * <p>
+ * ID values are taken from a pool of names that are known in advance
+ * ("id0", "id1", ...), so an IDREF can be written before the ID it refers to.
+ * If an IDREF is generated before any ID, it refers to the next ID of the pool.
+ * The {@link #generate(Expression,ContentHandler,GeneratorOption)} method
+ * returns false when that ID is never generated.
+ *
+ * <p>
+ * The output is determined by the random number generators of the
+ * {@link GeneratorOption}; the same seed produces the same document.
+ * Error generation is not supported.
+ */
+public class StreamGenerator implements ExpressionVisitorVoid {
+
+	/**
+	 * generates an instance and sends it to the given handler.
+	 *
+	 * @return
+	 *		false if the document contains an IDREF whose ID is not generated.
+	 */
+	public static boolean generate( Expression exp, ContentHandler handler, GeneratorOption opts ) throws SAXException {
+		StreamGenerator g = new StreamGenerator(exp,handler,opts);
+		g.run(exp);
+		return g.maxIdRef<g.idCount;
+	}
+
+	/** generation parameters */
+	private final GeneratorOption opts;
+	private final ExpressionPool pool;
+	private final ContentHandler handler;
+
+	/** prefix of ID values. */
+	private static final String ID_PREFIX = "id";
+
+	/** number of ID values generated so far. */
+	private int idCount = 0;
+	/** largest index of the ID pool that is referenced by IDREF. -1 if none. */
+	private int maxIdRef = -1;
+
+	/** current nest level (depth of elements). */
+	private int depth = 0;
+
+	/** approximate number of characters written so far. */
+	private long written = 0;
+
+	/** true once a repetition is chosen to fill the document up to the target size. */
+	private boolean fillerPlanned = false;
+
+	/** returns true if generator should cut back. */
+	protected boolean cutBack() {
+		return depth>opts.cutBackDepth
+			|| (opts.targetSize>0 && written>=opts.targetSize);
+	}
+
+	/** content being planned. */
+	private Content content;
+
+	/**
+	 * if this value is non-zero, repetitions are expanded when they are
+	 * planned, rather than when they are written.
+	 */
+	private int eager = 0;
+
+	/** in-scope namespace declarations. */
+	private final NamespaceSupport namespaces = new NamespaceSupport();
+	/** map from namespace URI to the prefix assigned to it. */
+	private final Map prefixes = new java.util.HashMap();
+	/**
+	 * true while the start tag of the current element is not written yet,
+	 * so that new namespace declarations can be added to it.
+	 */
+	private boolean declarable;
+
+	/** namespace URIs that appear in QName values of the grammar. */
+	private final Set qnameURIs = new HashSet();
+
+	/** results of the {@link #isAttributeFree(Expression)} method. */
+	private final Map attributeFree = new java.util.HashMap();
+
+	private final Context context = new Context();
+
+	protected StreamGenerator( Expression exp, ContentHandler handler, GeneratorOption opts ) {
+		opts.fillInByDefault();
+		if( opts.errorSpecified() )
+			throw new IllegalArgumentException("error generation is not supported");
+		this.opts = opts;
+		this.pool = opts.pool;
+		this.handler = handler;
+
+		// QName values may be generated after the start tag is written,
+		// so their namespaces are declared at the document element.
+		exp.visit( new ExpressionWalker() {
+			public void onValue( ValueExp exp ) {
+				if( exp.value instanceof QnameValueType ) {
+					String uri = ((QnameValueType)exp.value).namespaceURI;
+					if( uri.length()!=0 )
+						qnameURIs.add(uri);
+				}
+			}
+		});
+	}
+
+	private void run( Expression exp ) throws SAXException {
+		Content doc = new Content(null,false);
+		content = doc;
+		exp.visit(this);
+		content = null;
+
+		handler.startDocument();
+		for( int i=0; i<doc.items.size(); i++ ) {
+			Object item = doc.items.get(i);
+			if( item instanceof ElementExp ) {
+				writeElement( (ElementExp)item );
+				break;	// only one document element.
+			}
+		}
+		handler.endDocument();
+	}
+
+
+	/**
+	 * content of an element, which is planned before the start tag is written.
+	 */
+	private static final class Content {
+		/**
+		 * attributes of the element.
+		 * null if attributes can't be generated here.
+		 */
+		final AttributesImpl attributes;
+
+		/** true if the content is the value of an attribute or a list. */
+		final boolean text;
+
+		/**
+		 * {@link String}s, {@link ElementExp}s that are expanded later,
+		 * and {@link Repeat}s.
+		 */
+		final List items = new ArrayList();
+
+		Content( AttributesImpl attributes, boolean text ) {
+			this.attributes = attributes;
+			this.text = text;
+		}
+	}
+
+	/** repetition that is expanded when it is written. */
+	private static final class Repeat {
+		final Expression exp;
+		final int count;
+		/** if true, the repetition continues until the target size is reached. */
+		final boolean fill;
+
+		Repeat( Expression exp, int count, boolean fill ) {
+			this.exp = exp;
+			this.count = count;
+			this.fill = fill;
+		}
+	}
+
+	private void writeElement( ElementExp exp ) throws SAXException {
+		StringPair name = getName(exp.getNameClass());
+
+		namespaces.pushContext();
+		declarable = true;
+		if( depth==0 ) {
+			Iterator itr = qnameURIs.iterator();
+			while( itr.hasNext() )
+				getPrefix( (String)itr.next() );
+		}
+		String qname = getQName(name);
+
+		// plan the content
+		Content c = new Content(new AttributesImpl(),false);
+		Content old = content;
+		content = c;
+		depth++;
+		exp.contentModel.visit(this);
+		content = old;
+
+		declarable = false;
+		Enumeration e = namespaces.getDeclaredPrefixes();
+		while( e.hasMoreElements() ) {
+			String prefix = (String)e.nextElement();
+			handler.startPrefixMapping( prefix, namespaces.getURI(prefix) );
+		}
+		handler.startElement( name.namespaceURI, name.localName, qname, c.attributes );
+		written += qname.length()*2+5;
+		for( int i=0; i<c.attributes.getLength(); i++ )
+			written += c.attributes.getQName(i).length()+c.attributes.getValue(i).length()+4;
+
+		writeItems(c.items);
+
+		handler.endElement( name.namespaceURI, name.localName, qname );
+		e = namespaces.getDeclaredPrefixes();
+		while( e.hasMoreElements() )
+			handler.endPrefixMapping( (String)e.nextElement() );
+		namespaces.popContext();
+		depth--;
+	}
+
+	private void writeItems( List items ) throws SAXException {
+		for( int i=0; i<items.size(); i++ ) {
+			Object item = items.get(i);
+
+			if( item instanceof String ) {
+				String text = (String)item;
+				handler.characters( text.toCharArray(), 0, text.length() );
+				written += text.length();
+			} else
+			if( item instanceof ElementExp ) {
+				writeElement( (ElementExp)item );
+			} else {
+				Repeat r = (Repeat)item;
+				for( int j=0; j<r.count || (r.fill && written<opts.targetSize); j++ ) {
+					long before = written;
+
+					Content body = new Content(null,false);
+					Content old = content;
+					content = body;
+					r.exp.visit(this);
+					content = old;
+					writeItems(body.items);
+
+					if( j>=r.count && written==before )
+						break;	// this repetition doesn't make the document any larger.
+				}
+			}
+		}
+	}
+
+
+	public void onEpsilon() {}
+	public void onNullSet() { throw new Error(); }	// assertion failed
+
+	public void onSequence( SequenceExp exp ) {
+		exp.exp1.visit(this);
+		exp.exp2.visit(this);
+	}
+
+	public void onInterleave( InterleaveExp ip ) {
+		List children = getChildren(ip);
+
+		// plan each child separately.
+		Content old = content;
+		List[] branches = new List[children.size()];
+		eager++;
+		for( int i=0; i<branches.length; i++ ) {
+			content = new Content(old.attributes,old.text);
+			((Expression)children.get(i)).visit(this);
+			branches[i] = content.items;
+		}
+		eager--;
+		content = old;
+
+		// interleave them.
+		List active = new ArrayList();
+		for( int i=0; i<branches.length; i++ )
+			if( !branches[i].isEmpty() )
+				active.add( branches[i].iterator() );
+		while( !active.isEmpty() ) {
+			int idx = opts.random.nextInt(active.size());
+			Iterator itr = (Iterator)active.get(idx);
+			content.items.add(itr.next());
+			if( !itr.hasNext() )
+				active.remove(idx);	// this one has no more child.
+		}
+	}
+
+	public void onChoice( ChoiceExp cp ) {
+		// "A*" is modeled as (epsilon|A+)
+		if( cp.exp1==Expression.epsilon && cp.exp2 instanceof OneOrMoreExp ) {
+			repeat( ((OneOrMoreExp)cp.exp2).exp, 0 );
+			return;
+		}
+		if( cp.exp2==Expression.epsilon && cp.exp1 instanceof OneOrMoreExp ) {
+			repeat( ((OneOrMoreExp)cp.exp1).exp, 0 );
+			return;
+		}
+
+		if( cutBack() && cp.isEpsilonReducible() )	return;	// cut back
+
+		// randomly select one candidate.
+		List vec = getChildren(cp);
+		((Expression)vec.get(opts.random.nextInt(vec.size()))).visit(this);
+	}
+
+	public void onMixed( MixedExp exp ) {
+		// convert it to interleave so that we can generate some pcdata.
+		pool.createInterleave(
+			pool.createZeroOrMore(Expression.anyString),
+			exp.exp ).visit(this);
+	}
+
+	public void onList( ListExp exp ) {
+		Content old = content;
+		content = new Content(null,true);
+		eager++;
+		exp.exp.visit(this);
+		eager--;
+
+		// join tokens with separators.
+		StringBuffer buf = new StringBuffer();
+		List items = content.items;
+		for( int i=0; i<items.size(); i++ ) {
+			if( i!=0 )	buf.append(' ');
+			buf.append( (String)items.get(i) );
+		}
+		content = old;
+		content.items.add(buf.toString());
+	}
+
+	public void onRef( ReferenceExp exp ) {
+		exp.exp.visit(this);
+	}
+
+	public void onOther( OtherExp exp ) {
+		exp.exp.visit(this);
+	}
+
+	public void onAttribute( AttributeExp exp ) {
+		AttributesImpl atts = content.attributes;
+		if( atts==null )
+			throw new Error("attribute is not allowed here: "+exp.nameClass);
+
+		// generate attribute name
+		StringPair name;
+		int retry=0;
+		do {
+			name = getName(exp.nameClass);
+		}while( atts.getIndex(name.namespaceURI,name.localName)>=0
+			&&  retry++<100/*abort after several retries*/ );
+
+		// generate attribute value
+		Content old = content;
+		content = new Content(null,true);
+		eager++;
+		exp.exp.visit(this);
+		eager--;
+		StringBuffer buf = new StringBuffer();
+		List items = content.items;
+		for( int i=0; i<items.size(); i++ )
+			buf.append( (String)items.get(i) );
+		content = old;
+
+		if( atts.getIndex(name.namespaceURI,name.localName)<0 )
+			atts.addAttribute( name.namespaceURI, name.localName,
+				getQName(name), "CDATA", buf.toString() );
+	}
+
+	public void onElement( ElementExp exp ) {
+		if( content.text )
+			throw new Error("element is not allowed here: "+exp.getNameClass());
+
+		// expanded when it is written.
+		content.items.add(exp);
+	}
+
+	public void onAnyString() {
+		content.items.add( opts.dtGenerator.generate(StringType.theInstance,context) );
+	}
+
+	public void onOneOrMore( OneOrMoreExp exp ) {
+		repeat( exp.exp, 1 );
+	}
+
+	/**
+	 * repeats the expression at least the given number of times.
+	 */
+	private void repeat( Expression exp, int min ) {
+		int m = opts.width.next()+min;
+		if( cutBack() )	m=min;
+
+		if( eager==0 && isAttributeFree(exp) ) {
+			if( opts.targetSize>0 && !fillerPlanned && !cutBack() ) {
+				// this repetition grows the document to the target size.
+				fillerPlanned = true;
+				content.items.add( new Repeat(exp,min,true) );
+			} else {
+				content.items.add( new Repeat(exp,m,false) );
+			}
+			return;
+		}
+
+		for( int i=0; i<m; i++ )
+			exp.visit(this);
+	}
+
+	public void onValue( ValueExp exp ) {
+		String text;
+		if( exp.dt instanceof XSDatatype ) {
+			XSDatatype xsd = (XSDatatype)exp.dt;
+			text = xsd.convertToLexicalValue(exp.value,context);
+		} else {
+			text = exp.value.toString();
+			if(!exp.dt.sameValue( exp.value, exp.dt.createValue(text,context) ) )
+				throw new Error("unable to produce a value for the datatype:"+exp.name);
+		}
+
+		content.items.add(text);
+	}
+
+	public void onData( DataExp exp ) {
+		String value = null;
+
+		switch( exp.dt.getIdType() ) {
+		case Datatype.ID_TYPE_ID:
+			value = ID_PREFIX+idCount;
+			if( exp.dt.isValid(value,context) )
+				idCount++;
+			else
+				value = null;
+			break;
+		case Datatype.ID_TYPE_IDREF:
+		case Datatype.ID_TYPE_IDREFS:
+			// if no ID is generated yet, refer to the next one.
+			int idx = idCount==0 ? 0 : opts.random.nextInt(idCount);
+			value = ID_PREFIX+idx;
+			if( exp.dt.isValid(value,context) )
+				maxIdRef = Math.max(maxIdRef,idx);
+			else
+				value = null;
+			break;
+		}
+
+		if( value==null )
+			value = opts.dtGenerator.generate(exp.dt,context);
+		content.items.add(value);
+	}
+
+	public void onConcur( ConcurExp exp ) {
+		throw new Error("concur is not supported");
+	}
+
+	/** generaets a name that satisfies given NameClass */
+	private StringPair getName( NameClass nc ) {
+		StringPair name = opts.nameGenerator.generate(nc);
+
+		if( !nc.accepts( name.namespaceURI, name.localName ) )
+			throw new Error();	// invalid
+
+		return name;
+	}
+
+	/** computes the qualified name, declaring a prefix if necessary. */
+	private String getQName( StringPair name ) {
+		if( name.namespaceURI.length()==0 )
+			return name.localName;
+		return getPrefix(name.namespaceURI)+':'+name.localName;
+	}
+
+	/**
+	 * gets the prefix bound to the namespace URI.
+	 * A new declaration is added to the current element if necessary.
+	 *
+	 * <p>
+	 * The default namespace is never used, so that unprefixed names are
+	 * always in no namespace.
+	 */
+	private String getPrefix( String uri ) {
+		String prefix = namespaces.getPrefix(uri);
+		if( prefix!=null )	return prefix;
+
+		if( !declarable )
+			throw new Error("namespace "+uri+" is not declared");
+
+		// the same URI always uses the same prefix,
+		// so that a prefix is never bound to two URIs.
+		prefix = (String)prefixes.get(uri);
+		if( prefix==null ) {
+			prefix = "ns"+(prefixes.size()+1);
+			prefixes.put(uri,prefix);
+		}
+		namespaces.declarePrefix(prefix,uri);
+		return prefix;
+	}
+
+	/**
+	 * checks if an expression can't generate attributes of the current element.
+	 * Such a repetition can be expanded after the start tag is written.
+	 */
+	private boolean isAttributeFree( Expression exp ) {
+		Boolean b = (Boolean)attributeFree.get(exp);
+		if( b==null ) {
+			final boolean[] found = new boolean[1];
+			exp.visit( new ExpressionWalker() {
+				public void onAttribute( AttributeExp exp ) { found[0] = true; }
+				public void onElement( ElementExp exp ) {}
+			});
+			b = Boolean.valueOf(!found[0]);
+			attributeFree.put(exp,b);
+		}
+		return b.booleanValue();
+	}
+
+	/** enumerates children of BinaryExp into a list. */
+	private List getChildren( BinaryExp exp ) {
+		List vec = new ArrayList();
+		Iterator itr = exp.children();
+		while( itr.hasNext() )	vec.add( itr.next() );
+		return vec;
+	}
+
+	/**
+	 * ValidationContext that uses the in-scope namespace declarations
+	 * of the generator.
+	 */
+	private class Context extends ContextProviderImpl {
+		Context() { super(null); }
+
+		public String getNamespacePrefix( String uri ) {
+			if( uri.length()==0 )	return "";
+			return getPrefix(uri);
+		}
+
+		public String resolveNamespacePrefix( String prefix ) {
+			if( prefix.length()==0 )	return "";
+			return namespaces.getURI(prefix);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package com.sun.msv.generator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * tests the bulk mode of {@link Driver}.
+ */
+public class DriverTest extends TestCase
+{
+    public DriverTest( String name ) { super(name); }
+
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        return new TestSuite(DriverTest.class);
+    }
+
+    private static final String schema =
+        "<element name='root' xmlns='http://relaxng.org/ns/structure/1.0' "+
+                "datatypeLibrary='http://www.w3.org/2001/XMLSchema-datatypes'>"+
+            "<oneOrMore>"+
+                "<element name='item'>"+
+                    "<attribute name='id'><data type='ID'/></attribute>"+
+                    "<optional><attribute name='ref'><data type='IDREF'/></attribute></optional>"+
+                    "<choice><element name='a'><data type='int'/></element><element name='b'><text/></element></choice>"+
+                "</element>"+
+            "</oneOrMore>"+
+        "</element>";
+
+    private static final int COUNT = 8;
+
+    private File dir;
+    private File schemaFile;
+
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("generator","");
+        dir.delete();
+        dir.mkdir();
+        schemaFile = new File(dir,"schema.rng");
+        FileWriter w = new FileWriter(schemaFile);
+        w.write(schema);
+        w.close();
+    }
+
+    protected void tearDown() throws Exception {
+        File[] files = dir.listFiles();
+        for( int i=0; i<files.length; i++ )
+            files[i].delete();
+        dir.delete();
+    }
+
+    /** runs the driver and returns the generated files. */
+    private String[] run( String prefix, String[] options ) throws Exception {
+        String[] args = new String[options.length+2];
+        System.arraycopy(options,0,args,0,options.length);
+        args[options.length] = schemaFile.getPath();
+        args[options.length+1] = new File(dir,prefix+".$.xml").getPath();
+
+        Driver driver = new Driver();
+        driver.parseArguments(args);
+        assertEquals( 0, driver.run(new PrintStream(new ByteArrayOutputStream())) );
+
+        String[] docs = new String[COUNT];
+        for( int i=0; i<COUNT; i++ )
+            docs[i] = read(new File(dir,prefix+"."+i+".xml"));
+        return docs;
+    }
+
+    private static String read( File f ) throws IOException {
+        InputStream in = new FileInputStream(f);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int len;
+        while( (len=in.read(buf))>=0 )
+            out.write(buf,0,len);
+        in.close();
+        return out.toString("UTF-8");
+    }
+
+    private void assertSameFiles( String[] expected, String[] actual ) {
+        for( int i=0; i<COUNT; i++ )
+            assertEquals( expected[i], actual[i] );
+    }
+
+    public void testReproducible() throws Exception {
+        String[] one = run("one", new String[]{"-quiet","-seed","5","-count",""+COUNT,"-threads","1"});
+        String[] four = run("four", new String[]{"-quiet","-seed","5","-count",""+COUNT,"-threads","4"});
+        assertSameFiles(one,four);
+
+        // documents are different from each other.
+        for( int i=1; i<COUNT; i++ )
+            assertFalse( one[0].equals(one[i]) );
+
+        String[] other = run("other", new String[]{"-quiet","-seed","6","-count",""+COUNT,"-threads","4"});
+        assertFalse( one[0].equals(other[0]) );
+    }
+
+    public void testStream() throws Exception {
+        String[] one = run("one", new String[]{"-quiet","-stream","-seed","5","-count",""+COUNT,"-threads","1"});
+        String[] four = run("four", new String[]{"-quiet","-stream","-seed","5","-count",""+COUNT,"-threads","4"});
+        assertSameFiles(one,four);
+    }
+
+    public void testErrors() throws Exception {
+        String[] one = run("one", new String[]{"-quiet","-error","1/10","-seed","5","-count",""+COUNT,"-threads","1"});
+        String[] four = run("four", new String[]{"-quiet","-error","1/10","-seed","5","-count",""+COUNT,"-threads","4"});
+        assertSameFiles(one,four);
+    }
+}
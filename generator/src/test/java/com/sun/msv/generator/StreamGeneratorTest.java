@@ -0,0 +1,126 @@
+package com.sun.msv.generator;
+
+import java.io.StringReader;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.sun.msv.grammar.Grammar;
+import com.sun.msv.reader.util.ForkContentHandler;
+import com.sun.msv.reader.util.GrammarLoader;
+import com.sun.msv.verifier.Verifier;
+import com.sun.msv.verifier.regexp.REDocumentDeclaration;
+import com.sun.msv.verifier.util.IgnoreErrorHandler;
+
+/**
+ * tests {@link StreamGenerator}.
+ */
+public class StreamGeneratorTest extends TestCase
+{
+    public StreamGeneratorTest( String name ) { super(name); }
+
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        return new TestSuite(StreamGeneratorTest.class);
+    }
+
+    private static final String schema =
+        "<element name='p:root' xmlns='http://relaxng.org/ns/structure/1.0' xmlns:p='urn:p' "+
+                "datatypeLibrary='http://www.w3.org/2001/XMLSchema-datatypes'>"+
+            "<attribute name='p:version'><value type='QName' xmlns:q='urn:q'>q:v1</value></attribute>"+
+            "<oneOrMore>"+
+                "<element name='item'>"+
+                    "<attribute name='id'><data type='ID'/></attribute>"+
+                    "<optional><attribute name='ref'><data type='IDREF'/></attribute></optional>"+
+                    "<interleave>"+
+                        "<element name='p:name'><data type='token'/></element>"+
+                        "<element name='values'><list><zeroOrMore><data type='int'/></zeroOrMore></list></element>"+
+                        "<zeroOrMore><element name='note'><text/></element></zeroOrMore>"+
+                    "</interleave>"+
+                    "<zeroOrMore><element name='child'>"+
+                        "<optional><attribute name='q:type' xmlns:q='urn:q'><data type='boolean'/></attribute></optional>"+
+                        "<mixed><zeroOrMore><element name='b'><empty/></element></zeroOrMore></mixed>"+
+                    "</element></zeroOrMore>"+
+                "</element>"+
+            "</oneOrMore>"+
+        "</element>";
+
+    /** records SAX events as a string. */
+    private static class Recorder extends DefaultHandler {
+        final StringBuffer buf = new StringBuffer();
+        public void startPrefixMapping( String prefix, String uri ) {
+            buf.append("[xmlns:"+prefix+"="+uri+"]");
+        }
+        public void startElement( String uri, String local, String qname, Attributes atts ) {
+            buf.append('<').append(qname);
+            for( int i=0; i<atts.getLength(); i++ )
+                buf.append(' ').append(atts.getQName(i)).append("='").append(atts.getValue(i)).append('\'');
+            buf.append('>');
+        }
+        public void endElement( String uri, String local, String qname ) {
+            buf.append("</").append(qname).append('>');
+        }
+        public void characters( char[] ch, int start, int len ) {
+            buf.append(ch,start,len);
+        }
+    }
+
+    private Grammar grammar;
+
+    protected void setUp() throws Exception {
+        grammar = GrammarLoader.loadSchema(new InputSource(new StringReader(schema)));
+    }
+
+    private GeneratorOption createOption( long seed ) {
+        GeneratorOption opts = new GeneratorOption();
+        opts.random = new Random(seed);
+        opts.dtGenerator = new DataTypeGeneratorImpl(opts.random);
+        opts.pool = grammar.getPool();
+        return opts;
+    }
+
+    /**
+     * generates a document and checks that it is valid.
+     * @return the recorded events.
+     */
+    private String generate( GeneratorOption opts ) throws Exception {
+        Recorder recorder = new Recorder();
+        Verifier verifier = new Verifier(
+            new REDocumentDeclaration(grammar), new IgnoreErrorHandler() );
+        ContentHandler handler = new ForkContentHandler(recorder,verifier);
+
+        // every item has an ID, so IDREFs can always be resolved.
+        assertTrue( StreamGenerator.generate(grammar.getTopLevel(),handler,opts) );
+        assertTrue( recorder.buf.toString(), verifier.isValid() );
+        return recorder.buf.toString();
+    }
+
+    public void testValidity() throws Exception {
+        for( int i=0; i<50; i++ )
+            generate(createOption(i));
+    }
+
+    public void testSameSeed() throws Exception {
+        for( int i=0; i<5; i++ )
+            assertEquals( generate(createOption(i)), generate(createOption(i)) );
+    }
+
+    public void testTargetSize() throws Exception {
+        GeneratorOption opts = createOption(0);
+        opts.targetSize = 100000;
+        String doc = generate(opts);
+
+        assertTrue( doc.length()>=opts.targetSize );
+        assertTrue( doc.length()<opts.targetSize*2 );
+    }
+}
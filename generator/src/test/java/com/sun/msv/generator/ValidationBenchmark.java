@@ -0,0 +1,441 @@
+package com.sun.msv.generator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.xml.serialize.OutputFormat;
+import org.apache.xml.serialize.XMLSerializer;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.sun.msv.driver.textui.DebugController;
+import com.sun.msv.grammar.Expression;
+import com.sun.msv.grammar.ExpressionPool;
+import com.sun.msv.grammar.Grammar;
+import com.sun.msv.grammar.xmlschema.XMLSchemaGrammar;
+import com.sun.msv.reader.dtd.DTDReader;
+import com.sun.msv.reader.util.GrammarLoader;
+import com.sun.msv.verifier.Verifier;
+import com.sun.msv.verifier.identity.IDConstraintChecker;
+import com.sun.msv.verifier.regexp.REDocumentDeclaration;
+import com.sun.msv.verifier.util.IgnoreErrorHandler;
+
+/**
+ * measures the throughput of {@link Verifier} and {@link IDConstraintChecker}
+ * on documents generated from schemas.
+ *
+ * <p>
+ * For each schema, a family of documents is generated for each combination
+ * of the generation parameters (cut back depth, maximum number of repetitions,
+ * maximum length of strings and error ratio). Each family is parsed without
+ * validation and with validation, and the result is written as one JSON
+ * object per line, so that it can be compared with the results of other builds.
+ *
+ * <p>
+ * The density of attributes can't be controlled directly, so it is
+ * measured and reported along with other properties of the documents.
+ *
+ * <p>
+ * Usage: ValidationBenchmark [options] [schema files or directories]
+ * <pre>
+ *  -depth &lt;n,...&gt;   cut back depths (default: 3,6)
+ *  -width &lt;n,...&gt;   maximum number of times '*'/'+' are repeated (default: 2,5)
+ *  -text &lt;n,...&gt;    maximum length of strings (default: 16)
+ *  -error &lt;r,...&gt;   error ratios (default: 0,0.01)
+ *  -docs &lt;n&gt;        number of documents in a family (default: 200)
+ *  -repeat &lt;n&gt;      number of measurements (default: 5)
+ *  -seed &lt;n&gt;        random seed (default: 0)
+ *  -compiled        validate RELAX NG, TREX, RELAX and DTD by compiled acceptors
+ *  -out &lt;file&gt;      output file (default: stdout)
+ * </pre>
+ * Directories are scanned for schema files (*.rng, *.rlx, *.trex, *.xsd, *.dtd).
+ * Schemas of the batch tests that are not meant for the generator
+ * (".e." and ".nogen." in the name) are skipped. If no schema is given,
+ * the directories of the batch tests (the RELAXBatchTestDir, TREXBatchTestDir,
+ * XSDBatchTestDir and DTDBatchTestDir properties) are used, or built-in
+ * schemas if they are not set either.
+ *
+ * <p>
+ * To measure compiled acceptors, run the benchmark with and without
+ * the -compiled option and compare the results.
+ */
+public class ValidationBenchmark
+{
+    private static final String rngSchema =
+        "<element name='orders' xmlns='http://relaxng.org/ns/structure/1.0' "+
+                "datatypeLibrary='http://www.w3.org/2001/XMLSchema-datatypes'>"+
+            "<zeroOrMore><element name='order'>"+
+                "<attribute name='id'><data type='ID'/></attribute>"+
+                "<optional><attribute name='priority'><choice><value>high</value><value>low</value></choice></attribute></optional>"+
+                "<element name='customer'><optional><attribute name='ref'><data type='IDREF'/></attribute></optional><text/></element>"+
+                "<oneOrMore><element name='line'>"+
+                    "<attribute name='sku'><data type='token'/></attribute>"+
+                    "<attribute name='qty'><data type='positiveInteger'/></attribute>"+
+                    "<optional><element name='note'><mixed><zeroOrMore><element name='em'><text/></element></zeroOrMore></mixed></element></optional>"+
+                "</element></oneOrMore>"+
+            "</element></zeroOrMore>"+
+        "</element>";
+
+    private static final String xsdSchema =
+        "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"+
+            "<xs:element name='catalog'>"+
+                "<xs:complexType><xs:sequence>"+
+                    "<xs:element name='product' minOccurs='0' maxOccurs='unbounded'>"+
+                        "<xs:complexType><xs:sequence>"+
+                            "<xs:element name='name' type='xs:string'/>"+
+                            "<xs:element name='price' type='xs:decimal'/>"+
+                            "<xs:element name='related' minOccurs='0' maxOccurs='unbounded'>"+
+                                "<xs:complexType><xs:attribute name='ref' type='xs:int' use='required'/></xs:complexType>"+
+                            "</xs:element>"+
+                        "</xs:sequence>"+
+                        "<xs:attribute name='code' type='xs:int' use='required'/>"+
+                        "<xs:attribute name='tags' type='xs:NMTOKENS'/>"+
+                        "</xs:complexType>"+
+                    "</xs:element>"+
+                "</xs:sequence></xs:complexType>"+
+                "<xs:unique name='codes'><xs:selector xpath='product'/><xs:field xpath='@code'/></xs:unique>"+
+            "</xs:element>"+
+        "</xs:schema>";
+
+    private static final String[] batchDirProperties = {
+        "RELAXBatchTestDir", "TREXBatchTestDir", "XSDBatchTestDir", "DTDBatchTestDir" };
+
+    private int[] depths = {3,6};
+    private int[] widths = {2,5};
+    private int[] textLengths = {16};
+    private double[] errorRatios = {0,0.01};
+    private int docs = 200;
+    private int repeat = 5;
+    private long seed = 0;
+    private boolean compiled = false;
+
+    private PrintStream out = System.out;
+
+    private final SAXParserFactory factory = SAXParserFactory.newInstance();
+    private final DocumentBuilderFactory domFactory = DocumentBuilderFactory.newInstance();
+
+    public static void main( String[] args ) throws Exception {
+        new ValidationBenchmark().run(args);
+    }
+
+    private ValidationBenchmark() {
+        factory.setNamespaceAware(true);
+        domFactory.setNamespaceAware(true);
+    }
+
+    private void run( String[] args ) throws Exception {
+        List schemas = new ArrayList();
+        for( int i=0; i<args.length; i++ ) {
+            if( args[i].equals("-depth") )      depths = parseInts(args[++i]);
+            else
+            if( args[i].equals("-width") )      widths = parseInts(args[++i]);
+            else
+            if( args[i].equals("-text") )       textLengths = parseInts(args[++i]);
+            else
+            if( args[i].equals("-error") )      errorRatios = parseDoubles(args[++i]);
+            else
+            if( args[i].equals("-docs") )       docs = Integer.parseInt(args[++i]);
+            else
+            if( args[i].equals("-repeat") )     repeat = Integer.parseInt(args[++i]);
+            else
+            if( args[i].equals("-seed") )       seed = Long.parseLong(args[++i]);
+            else
+            if( args[i].equals("-compiled") )   compiled = true;
+            else
+            if( args[i].equals("-out") )        out = new PrintStream(new FileOutputStream(args[++i]),true);
+            else
+                addSchemas(new File(args[i]),schemas);
+        }
+
+        if( schemas.isEmpty() ) {
+            for( int i=0; i<batchDirProperties.length; i++ ) {
+                String dir = System.getProperty(batchDirProperties[i]);
+                if( dir!=null )
+                    addSchemas(new File(dir),schemas);
+            }
+        }
+
+        if( schemas.isEmpty() ) {
+            benchmark( "builtin.rng", GrammarLoader.loadSchema(new InputSource(new StringReader(rngSchema))) );
+            benchmark( "builtin.xsd", GrammarLoader.loadSchema(new InputSource(new StringReader(xsdSchema))) );
+        } else {
+            for( int i=0; i<schemas.size(); i++ ) {
+                File f = (File)schemas.get(i);
+                Grammar grammar;
+                try {
+                    grammar = loadSchema(f);
+                } catch( Exception e ) {
+                    grammar = null;
+                }
+                if( grammar==null ) {
+                    System.err.println("skipped "+f+": unable to load");
+                    continue;
+                }
+                benchmark( f.getPath(), grammar );
+            }
+        }
+
+        if( out!=System.out )   out.close();
+    }
+
+    private static void addSchemas( File f, List schemas ) {
+        if( f.isDirectory() ) {
+            File[] files = f.listFiles();
+            Arrays.sort(files);
+            for( int i=0; i<files.length; i++ )
+                if( files[i].isFile() )
+                    addSchemas(files[i],schemas);
+            return;
+        }
+
+        String name = f.getName();
+        if( name.indexOf(".e.")>=0 || name.indexOf(".nogen.")>=0 )
+            return;
+        if( name.endsWith(".rng") || name.endsWith(".rlx") || name.endsWith(".trex")
+         || name.endsWith(".xsd") || name.endsWith(".dtd") )
+            schemas.add(f);
+    }
+
+    private Grammar loadSchema( File f ) throws Exception {
+        InputSource is = new InputSource(f.toURL().toExternalForm());
+        if( f.getName().endsWith(".dtd") )
+            return DTDReader.parse( is, new DebugController(false,true), new ExpressionPool() );
+        return GrammarLoader.loadSchema( is, new DebugController(false,true), factory );
+    }
+
+    /** runs the benchmark for all the families of the given schema. */
+    private void benchmark( String name, Grammar grammar ) throws Exception {
+        Expression topLevel = Driver.polish(grammar);
+        Set[] decls = ElementDeclCollector.collect(topLevel);
+
+        for( int d=0; d<depths.length; d++ )
+        for( int w=0; w<widths.length; w++ )
+        for( int t=0; t<textLengths.length; t++ )
+        for( int e=0; e<errorRatios.length; e++ ) {
+            Family family = new Family( depths[d], widths[w], textLengths[t], errorRatios[e] );
+            try {
+                family.generate(grammar,topLevel,decls);
+            } catch( Throwable x ) {
+                // some schemas are beyond the capability of the generator.
+                System.err.println("skipped "+name+" "+family.parameters()+": "+x);
+                continue;
+            }
+            family.measure(grammar);
+            out.println("{\"schema\":\""+escape(name)+"\","+family.toJSON()+"}");
+        }
+    }
+
+    /** documents generated with the same parameters, and their results. */
+    private class Family {
+        final int depth;
+        final int width;
+        final int textLength;
+        final double errorRatio;
+
+        final byte[][] documents = new byte[docs][];
+        long bytes;
+        long elements;
+        long attributes;
+        long textChars;
+        int validDocs;
+
+        /** median time of a pass in nano seconds. */
+        long parseTime;
+        long validateTime;
+        /** allocated bytes per document by validation, or -1 if unknown. */
+        long allocation = -1;
+
+        Family( int depth, int width, int textLength, double errorRatio ) {
+            this.depth = depth;
+            this.width = width;
+            this.textLength = textLength;
+            this.errorRatio = errorRatio;
+        }
+
+        String parameters() {
+            return "depth="+depth+" width="+width+" text="+textLength+" error="+errorRatio;
+        }
+
+        void generate( Grammar grammar, Expression topLevel, Set[] decls ) throws Exception {
+            GeneratorOption opts = new GeneratorOption();
+            opts.random = new Random(seed);
+            opts.cutBackDepth = depth;
+            opts.width = new Rand.UniformRand(opts.random,width);
+            DataTypeGeneratorImpl dtgen = new DataTypeGeneratorImpl(opts.random);
+            dtgen.maxStringLength = textLength;
+            dtgen.asciiOnly = true;
+            opts.dtGenerator = dtgen;
+            opts.pool = grammar.getPool();
+            opts.insertComment = false;
+            opts.probGreedyChoiceError=
+            opts.probMissingAttrError=
+            opts.probMissingElemError=
+            opts.probMutatedAttrError=
+            opts.probMutatedElemError=
+            opts.probSeqError=
+            opts.probSlipInAttrError=
+            opts.probSlipInElemError=
+            opts.probMissingPlus=
+            opts.probAttrNameTypo=
+            opts.probElemNameTypo=
+                errorRatio;
+
+            for( int i=0; i<docs; i++ ) {
+                Document dom = domFactory.newDocumentBuilder().newDocument();
+                Generator.generate(topLevel,dom,opts,decls);
+                count(dom.getDocumentElement());
+                DOMDecorator.decorate(dom);
+
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                new XMLSerializer( buf, new OutputFormat("XML","UTF-8",false) ).serialize(dom);
+                documents[i] = buf.toByteArray();
+                bytes += documents[i].length;
+            }
+        }
+
+        private void count( Element e ) {
+            elements++;
+            attributes += e.getAttributes().getLength();
+            for( Node n=e.getFirstChild(); n!=null; n=n.getNextSibling() ) {
+                if( n instanceof Element )
+                    count((Element)n);
+                else
+                if( n.getNodeType()==Node.TEXT_NODE )
+                    textChars += n.getNodeValue().length();
+            }
+        }
+
+        void measure( Grammar grammar ) throws Exception {
+            // the first pass is a warm-up.
+            parse(null);
+            parse(grammar);
+
+            long[] parseTimes = new long[repeat];
+            long[] validateTimes = new long[repeat];
+            long allocated = 0;
+            for( int r=0; r<repeat; r++ ) {
+                long t = System.nanoTime();
+                parse(null);
+                parseTimes[r] = System.nanoTime()-t;
+
+                long a = allocatedBytes();
+                t = System.nanoTime();
+                validDocs = parse(grammar);
+                validateTimes[r] = System.nanoTime()-t;
+                allocated += allocatedBytes()-a;
+            }
+            parseTime = median(parseTimes);
+            validateTime = median(validateTimes);
+            if( allocatedBytes()>=0 )
+                allocation = allocated/repeat/docs;
+        }
+
+        /**
+         * parses all the documents, validating them by the grammar if it's non-null.
+         * @return the number of valid documents.
+         */
+        private int parse( Grammar grammar ) throws Exception {
+            XMLReader reader = factory.newSAXParser().getXMLReader();
+            int valid = 0;
+            for( int i=0; i<documents.length; i++ ) {
+                Verifier verifier = null;
+                ContentHandler handler;
+                if( grammar==null ) {
+                    handler = new DefaultHandler();
+                } else {
+                    if( grammar instanceof XMLSchemaGrammar )
+                        verifier = new IDConstraintChecker( (XMLSchemaGrammar)grammar, new IgnoreErrorHandler() );
+                    else {
+                        REDocumentDeclaration docDecl = new REDocumentDeclaration(grammar);
+                        docDecl.setCompiledAcceptorsEnabled(compiled);
+                        verifier = new Verifier( docDecl, new IgnoreErrorHandler() );
+                    }
+                    handler = verifier;
+                }
+                reader.setContentHandler(handler);
+                reader.parse(new InputSource(new ByteArrayInputStream(documents[i])));
+                if( verifier!=null && verifier.isValid() )
+                    valid++;
+            }
+            return valid;
+        }
+
+        String toJSON() {
+            double seconds = validateTime/1e9;
+            return "\"depth\":"+depth+",\"width\":"+width+",\"text\":"+textLength+",\"error\":"+errorRatio
+                +",\"compiled\":"+compiled
+                +",\"docs\":"+docs+",\"bytes\":"+bytes+",\"elements\":"+elements
+                +",\"attributesPerElement\":"+round((double)attributes/elements)
+                +",\"textCharsPerElement\":"+round((double)textChars/elements)
+                +",\"validDocs\":"+validDocs
+                +",\"parseMillis\":"+round(parseTime/1e6)
+                +",\"validateMillis\":"+round(validateTime/1e6)
+                +",\"validationOverhead\":"+round((double)validateTime/parseTime)
+                +",\"docsPerSec\":"+round(docs/seconds)
+                +",\"megabytesPerSec\":"+round(bytes/seconds/1024/1024)
+                +",\"allocatedBytesPerDoc\":"+allocation;
+        }
+    }
+
+    /** bytes allocated by the current thread, or -1 if unknown. */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if( bean instanceof com.sun.management.ThreadMXBean )
+            return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return -1;
+    }
+
+    private static long median( long[] values ) {
+        long[] sorted = (long[])values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length/2];
+    }
+
+    private static double round( double d ) {
+        return Math.round(d*100)/100.0;
+    }
+
+    private static String escape( String s ) {
+        StringBuffer buf = new StringBuffer();
+        for( int i=0; i<s.length(); i++ ) {
+            char ch = s.charAt(i);
+            if( ch=='"' || ch=='\\' )   buf.append('\\');
+            buf.append(ch);
+        }
+        return buf.toString();
+    }
+
+    private static int[] parseInts( String s ) {
+        String[] tokens = s.split(",");
+        int[] r = new int[tokens.length];
+        for( int i=0; i<tokens.length; i++ )
+            r[i] = Integer.parseInt(tokens[i].trim());
+        return r;
+    }
+
+    private static double[] parseDoubles( String s ) {
+        String[] tokens = s.split(",");
+        double[] r = new double[tokens.length];
+        for( int i=0; i<tokens.length; i++ )
+            r[i] = Double.parseDouble(tokens[i].trim());
+        return r;
+    }
+}
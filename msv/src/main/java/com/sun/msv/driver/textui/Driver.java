@@ -10,6 +10,12 @@
 package com.sun.msv.driver.textui;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -44,6 +50,7 @@ import com.sun.msv.verifier.DocumentDeclaration;
 import com.sun.msv.verifier.Verifier;
 import com.sun.msv.verifier.identity.IDConstraintChecker;
 import com.sun.msv.verifier.regexp.REDocumentDeclaration;
+import com.sun.msv.verifier.regexp.WarmUpProfile;
 
 /**
  * command line Verifier.
@@ -81,6 +88,8 @@ public class Driver {
         boolean standalone=false;
         boolean strict=false;
         boolean usePanicMode=true;
+        String warmUpProfile=null;
+        String profileToSave=null;
         EntityResolver entityResolver=null;
         
         for( int i=0; i<args.length; i++ ) {
@@ -118,6 +127,10 @@ public class Driver {
             else
             if( args[i].equalsIgnoreCase("-maxerror") )         usePanicMode = false;
             else
+            if( args[i].equalsIgnoreCase("-warmup") )           warmUpProfile = args[++i];
+            else
+            if( args[i].equalsIgnoreCase("-saveprofile") )      profileToSave = args[++i];
+            else
             if( args[i].equalsIgnoreCase("-locale") ) {
                 String code = args[++i];
                 
@@ -252,6 +265,17 @@ public class Driver {
             return -1;
         }
         
+        if( warmUpProfile!=null ) {
+            Reader in = new InputStreamReader(new FileInputStream(warmUpProfile),"UTF-8");
+            try {
+                int n = WarmUpProfile.read(grammar,in);
+                if( verbose )
+                    System.out.println( localize( MSG_PROFILE_LOADED, new Integer(n) ) );
+            } finally {
+                in.close();
+            }
+        }
+        
     // validate documents
     //--------------------
         DocumentVerifier verifier;
@@ -311,6 +335,17 @@ public class Driver {
         if( verbose )
             System.out.println( localize( MSG_VALIDATION_TIME, new Long(System.currentTimeMillis()-parsingTime) ) );
         
+        if( profileToSave!=null ) {
+            // the caches are filled by the documents validated above.
+            Writer out = new OutputStreamWriter(new FileOutputStream(profileToSave),"UTF-8");
+            try {
+                int n = WarmUpProfile.write(grammar,out);
+                System.out.println( localize( MSG_PROFILE_SAVED, new Integer(n), profileToSave ) );
+            } finally {
+                out.close();
+            }
+        }
+        
         return allValid?0:-1;
     }
     
@@ -467,4 +502,6 @@ public class Driver {
     public static final String MSG_BAILOUT =            "Driver.BailOut";
     public static final String MSG_FAILED_TO_IGNORE_EXTERNAL_DTD ="Driver.FailedToIgnoreExternalDTD";
     public static final String MSG_WARNING_FOUND =        "Driver.WarningFound";
+    public static final String MSG_PROFILE_LOADED =        "Driver.ProfileLoaded";
+    public static final String MSG_PROFILE_SAVED =        "Driver.ProfileSaved";
 }
@@ -31,6 +31,19 @@ public abstract class ElementExp extends Expression implements NameClassAndExpre
     /** a flag that indicates undeclared attributes should be ignored. */
     public boolean ignoreUndeclaredAttributes;
     
+    /**
+     * returns true if the attributes and the content of this element
+     * are not subject to validation.
+     * 
+     * <p>
+     * Verifiers may skip such an element together with its descendants,
+     * without consulting the content model. By default, this method
+     * returns false.
+     */
+    public boolean isOpaque() {
+        return false;
+    }
+    
     /** obtains a constraint over tag name.
      * 
      * ElementExp is cannot be shared because NameClass has to be mutable
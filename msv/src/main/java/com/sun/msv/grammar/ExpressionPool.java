@@ -104,6 +104,67 @@ public class ExpressionPool implements java.io.Serializable {
             return o;
     }
     
+    /**
+     * creates a choice of all the given expressions.
+     * 
+     * <p>
+     * The result is the same as the one obtained by folding the array
+     * with {@link #createChoice(Expression,Expression)} from the left,
+     * but duplicates are detected by a hash set rather than by walking
+     * the choice built so far. Use this method when a choice of many
+     * alternatives is built at once, since the pairwise method takes
+     * O(N^2) to build a choice of N alternatives.
+     */
+    public final Expression createChoice( Expression[] items ) {
+        Expression exp = Expression.nullSet;
+        java.util.Map<Expression,Expression> members = null;
+        
+        for( int i=0; i<items.length; i++ ) {
+            if( members==null ) {
+                exp = createChoice(exp,items[i]);
+                if( exp!=Expression.nullSet && exp!=Expression.epsilon ) {
+                    // from now on, use the hash set to detect duplicates.
+                    members = new java.util.IdentityHashMap<Expression,Expression>(items.length);
+                    addChoiceMembers(members,exp);
+                }
+            } else
+                exp = addChoice(members,exp,items[i]);
+        }
+        return exp;
+    }
+    
+    /**
+     * the equivalent of createChoice(left,right), where members is the set
+     * of alternatives of the left.
+     */
+    private Expression addChoice( java.util.Map<Expression,Expression> members,
+                                  Expression left, Expression right ) {
+        if( right==Expression.nullSet )    return left;
+        if( right==Expression.epsilon && left.isEpsilonReducible() )    return left;
+        
+        if( right instanceof ChoiceExp ) {
+            final ChoiceExp c = (ChoiceExp)right;
+            return addChoice( members, addChoice(members,left,c.exp1), c.exp2 );
+        }
+        
+        if( members.put(right,right)!=null )    return left;
+        
+        Expression o = expTable.getBinExp( left, right, ChoiceExp.class );
+        if(o==null)
+            return unify( new ChoiceExp(left,right) );
+        else
+            return o;
+    }
+    
+    private static void addChoiceMembers( java.util.Map<Expression,Expression> members, Expression exp ) {
+        while( exp instanceof ChoiceExp ) {
+            ChoiceExp cp = (ChoiceExp)exp;
+            members.put(cp.exp2,cp.exp2);
+            exp = cp.exp1;
+        }
+        members.put(exp,exp);
+    }
+    
     public final Expression createOneOrMore( Expression child ) {
         if( child == Expression.epsilon
         ||  child == Expression.anyString
@@ -232,6 +293,28 @@ public class ExpressionPool implements java.io.Serializable {
     public ExpressionPool( ExpressionPool parent )    { expTable = new ClosedHash(parent.expTable); }
     public ExpressionPool()                            { expTable = new ClosedHash(); }
     
+    /**
+     * creates a new expression pool that is large enough to hold the
+     * specified number of expressions without rehashing.
+     * 
+     * <P>
+     * Use this constructor when a large grammar is about to be built
+     * and its approximate size is known in advance.
+     */
+    public ExpressionPool( int expectedSize )        { expTable = new ClosedHash(null,expectedSize); }
+    
+    /**
+     * gets the number of expressions memorized in this pool,
+     * including those of the parent pool.
+     * 
+     * <p>
+     * This method can be called while other threads are updating the pool,
+     * in which case the result is approximate.
+     */
+    public int size() {
+        return expTable.size();
+    }
+    
     
     
     /**
@@ -306,11 +389,27 @@ public class ExpressionPool implements java.io.Serializable {
         }
 
         public ClosedHash(ClosedHash parent) {
-            table = new Expression[initialCapacity];
-            threshold = (int) (initialCapacity * loadFactor);
+            this(parent,0);
+        }
+
+        /**
+         * @param expectedSize
+         *      the number of expressions this table is expected to hold.
+         */
+        public ClosedHash(ClosedHash parent, int expectedSize) {
+            int capacity = Math.max( initialCapacity, (int)(expectedSize/loadFactor)|1 );
+            table = new Expression[capacity];
+            threshold = (int) (capacity * loadFactor);
             this.parent = parent;
         }
 
+        /** gets the number of expressions in this table and its parent. */
+        public int size() {
+            if (parent != null)
+                return count + parent.size();
+            return count;
+        }
+
         public Expression getBinExp(Expression left, Expression right, Class<?> type) {
             int hash = (left.hashCode()+right.hashCode())^type.hashCode();
             return getBinExp( hash, left, right, type );
@@ -11,6 +11,7 @@ package com.sun.msv.grammar;
 
 import com.sun.msv.grammar.util.NameClassCollisionChecker;
 import com.sun.msv.grammar.util.NameClassComparator;
+import com.sun.msv.grammar.util.NameClassMatcher;
 import com.sun.msv.grammar.util.NameClassSimplifier;
 import com.sun.msv.util.StringPair;
 
@@ -45,6 +46,28 @@ public abstract class NameClass implements java.io.Serializable {
         return accepts( name.namespaceURI, name.localName );
     }
     
+    /**
+     * flat matcher of this name class, which is computed when it's first used.
+     * Multiple threads may compute it at the same time,
+     * but they compute the same result.
+     */
+    private transient NameClassMatcher matcher;
+    
+    /**
+     * returns the matcher that accepts the same names as this name class.
+     * 
+     * <p>
+     * A matcher tests a name by a few hash look-ups, whereas a name class
+     * is evaluated recursively. Verifiers use matchers when they match
+     * tokens. The name class must not be modified once this method is called.
+     */
+    public final NameClassMatcher getMatcher() {
+        NameClassMatcher m = matcher;
+        if( m==null )
+            matcher = m = NameClassMatcher.compile(this);
+        return m;
+    }
+    
     /** Returns true if this name class is a superset of another name class. */
     public final boolean includes( NameClass rhs ) {
         boolean r = new NameClassComparator() {
@@ -0,0 +1,162 @@
+package com.sun.msv.grammar.util;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import com.sun.msv.grammar.AnyNameClass;
+import com.sun.msv.grammar.ChoiceNameClass;
+import com.sun.msv.grammar.DifferenceNameClass;
+import com.sun.msv.grammar.NameClass;
+import com.sun.msv.grammar.NamespaceNameClass;
+import com.sun.msv.grammar.NotNameClass;
+import com.sun.msv.grammar.SimpleNameClass;
+import com.sun.msv.util.StringPair;
+
+/**
+ * flat representation of a name class, which tests a name
+ * without evaluating the name class tree.
+ *
+ * <p>
+ * A name class tree made of choices, differences, nots, and namespace
+ * names accepts or rejects all the names that it doesn't mention
+ * (see {@link PossibleNamesCollector}) in the same way.
+ * So a name class can be evaluated by
+ * <ol>
+ *  <li>the answer for names of unmentioned namespaces,
+ *  <li>the set of namespaces for which the answer is the opposite, and
+ *  <li>the set of names for which the answer is the opposite of their namespace.
+ * </ol>
+ *
+ * <p>
+ * Names that contain wildcards ({@link NameClass#NAMESPACE_WILDCARD} and
+ * {@link NameClass#LOCALNAME_WILDCARD}) are tested by the name class itself.
+ * So are name classes that are already simple, and name classes that
+ * contain other implementations of {@link NameClass}.
+ *
+ * <p>
+ * This object is immutable. Use {@link NameClass#getMatcher()} to obtain
+ * the shared matcher of a name class.
+ */
+public final class NameClassMatcher {
+
+    /** the name class this object is built from. */
+    private final NameClass nameClass;
+
+    /** false if names are tested by the name class itself. */
+    private final boolean flat;
+
+    /** the answer for a name in a namespace that is not mentioned. */
+    private final boolean otherwise;
+
+    /** namespaces whose names are answered by the opposite of {@link #otherwise}. */
+    private final Set<String> namespaces;
+
+    /**
+     * map from local names to namespace URIs. A name in this map
+     * is answered by the opposite of the answer for its namespace.
+     */
+    private final Map<String,Set<String>> exceptions;
+
+    private NameClassMatcher( NameClass nameClass ) {
+        this.nameClass = nameClass;
+        this.flat = false;
+        this.otherwise = false;
+        this.namespaces = null;
+        this.exceptions = null;
+    }
+
+    private NameClassMatcher( NameClass nameClass, boolean otherwise,
+        Set<String> namespaces, Map<String,Set<String>> exceptions ) {
+
+        this.nameClass = nameClass;
+        this.flat = true;
+        this.otherwise = otherwise;
+        this.namespaces = namespaces;
+        this.exceptions = exceptions;
+    }
+
+    /** checks if the name class accepts the given name. */
+    public boolean accepts( String namespaceURI, String localName ) {
+        if( !flat
+         || namespaceURI==NameClass.NAMESPACE_WILDCARD
+         || localName==NameClass.LOCALNAME_WILDCARD )
+            return nameClass.accepts(namespaceURI,localName);
+
+        boolean r = otherwise;
+        if( !namespaces.isEmpty() && namespaces.contains(namespaceURI) )
+            r = !r;
+        if( !exceptions.isEmpty() ) {
+            Set<String> uris = exceptions.get(localName);
+            if( uris!=null && uris.contains(namespaceURI) )
+                r = !r;
+        }
+        return r;
+    }
+
+    /** returns the name class this object is built from. */
+    public NameClass getNameClass() {
+        return nameClass;
+    }
+
+    /**
+     * compiles a name class.
+     *
+     * <p>
+     * Usually, {@link NameClass#getMatcher()} should be used instead,
+     * so that the result is shared.
+     */
+    public static NameClassMatcher compile( NameClass nc ) {
+        if( nc instanceof SimpleNameClass || nc instanceof AnyNameClass
+         || nc.getClass()==NamespaceNameClass.class || !isStandard(nc) )
+            // nothing to gain.
+            return new NameClassMatcher(nc);
+
+        final String MAGIC = PossibleNamesCollector.MAGIC;
+        final boolean otherwise = nc.accepts(MAGIC,MAGIC);
+
+        Set<String> namespaces = new HashSet<String>();
+        Map<String,Set<String>> exceptions = new HashMap<String,Set<String>>();
+
+        Iterator<StringPair> itr = PossibleNamesCollector.calc(nc).iterator();
+        while( itr.hasNext() ) {
+            StringPair name = itr.next();
+            if( name.namespaceURI==MAGIC )
+                continue;
+
+            boolean nsAnswer = nc.accepts(name.namespaceURI,MAGIC);
+            if( name.localName==MAGIC ) {
+                if( nsAnswer!=otherwise )
+                    namespaces.add(name.namespaceURI);
+            } else {
+                if( nc.accepts(name.namespaceURI,name.localName)!=nsAnswer ) {
+                    Set<String> uris = exceptions.get(name.localName);
+                    if( uris==null )
+                        exceptions.put( name.localName, uris=new HashSet<String>() );
+                    uris.add(name.namespaceURI);
+                }
+                // the namespace of a simple name may not be mentioned by itself.
+                if( nsAnswer!=otherwise )
+                    namespaces.add(name.namespaceURI);
+            }
+        }
+
+        return new NameClassMatcher(nc,otherwise,namespaces,exceptions);
+    }
+
+    /** checks if the name class consists of the standard implementations only. */
+    private static boolean isStandard( NameClass nc ) {
+        Class<?> c = nc.getClass();
+        if( nc instanceof SimpleNameClass || nc instanceof AnyNameClass || c==NamespaceNameClass.class )
+            return true;
+        if( c==ChoiceNameClass.class )
+            return isStandard(((ChoiceNameClass)nc).nc1) && isStandard(((ChoiceNameClass)nc).nc2);
+        if( c==DifferenceNameClass.class )
+            return isStandard(((DifferenceNameClass)nc).nc1) && isStandard(((DifferenceNameClass)nc).nc2);
+        if( c==NotNameClass.class )
+            return isStandard(((NotNameClass)nc).child);
+        return false;
+    }
+}
@@ -9,15 +9,18 @@
  */
 package com.sun.msv.grammar.xmlschema;
 
+import java.util.Map;
 import java.util.Vector;
 
 import com.sun.msv.grammar.ChoiceExp;
 import com.sun.msv.grammar.ElementExp;
 import com.sun.msv.grammar.Expression;
+import com.sun.msv.grammar.ExpressionPool;
 import com.sun.msv.grammar.NameClass;
 import com.sun.msv.grammar.ReferenceExp;
 import com.sun.msv.grammar.SimpleNameClass;
 import com.sun.msv.grammar.util.ExpressionWalker;
+import com.sun.msv.util.StringPair;
 
 /**
  * Element declaration.
@@ -144,7 +147,7 @@ public class ElementDeclExp extends ReferenceExp
     public ElementDeclExp( XMLSchemaSchema schema, String typeLocalName ) {
         super(typeLocalName);
         this.parent = schema;
-        this.substitutions = new ReferenceExp( typeLocalName+":substitutions" );
+        this.substitutions = new SubstitutionGroupExp( typeLocalName+":substitutions" );
         this.substitutions.exp = Expression.nullSet;
     }
 
@@ -174,9 +177,72 @@ public class ElementDeclExp extends ReferenceExp
     
     /**
      * choices of all elements that can validly substitute this element.
+     * 
+     * <p>
+     * This object is a {@link SubstitutionGroupExp}.
      */
     public final ReferenceExp substitutions;
     
+    /**
+     * {@link ReferenceExp} that holds the choice of all the element
+     * declarations that can substitute the head of a substitution group.
+     * 
+     * <p>
+     * Once the members are set by the {@link #setMembers} method,
+     * a member can be found by its name without scanning the choice.
+     */
+    @SuppressWarnings("serial")
+    public static class SubstitutionGroupExp extends ReferenceExp {
+        SubstitutionGroupExp( String name ) {
+            super(name);
+        }
+        
+        /** map from (namespaceURI,localName) pair to the member. */
+        private Map<StringPair,ElementDeclExp> members;
+        /** the expression that corresponds to the members. */
+        private Expression indexedExp;
+        
+        /**
+         * sets the members of this substitution group, and also sets
+         * the <code>exp</code> field to the choice of their bodies.
+         */
+        public void setMembers( ElementDeclExp[] decls, ExpressionPool pool ) {
+            Expression[] bodies = new Expression[decls.length];
+            Map<StringPair,ElementDeclExp> m = new java.util.HashMap<StringPair,ElementDeclExp>(decls.length*2);
+            for( int i=0; i<decls.length; i++ ) {
+                bodies[i] = decls[i].body;
+                SimpleNameClass nc = decls[i].getElementExp().elementName;
+                if( m!=null && m.put( new StringPair(nc.namespaceURI,nc.localName), decls[i] )!=null )
+                    m = null;    // two members with the same name. can't be indexed.
+            }
+            
+            exp = pool.createChoice(bodies);
+            members = m;
+            indexedExp = exp;
+        }
+        
+        /**
+         * checks if members can be looked up by the {@link #getMember} method.
+         * 
+         * @return
+         *        false if the members were not set, or if the <code>exp</code>
+         *        field was modified after that.
+         */
+        public boolean isIndexed() {
+            return members!=null && exp==indexedExp;
+        }
+        
+        /**
+         * gets the member of the given name.
+         * 
+         * @return
+         *        null if no such member exists.
+         */
+        public ElementDeclExp getMember( String namespaceURI, String localName ) {
+            return members.get(new StringPair(namespaceURI,localName));
+        }
+    }
+    
     /**
      * gets the pattern that represents the content model of
      * this element declaration.
@@ -222,6 +288,14 @@ public class ElementDeclExp extends ReferenceExp
          */
         public final Vector<Object> identityConstraints = new Vector<Object>();
         
+        /**
+         * this field can be used by Verifier implementation to keep the
+         * compiled form of {@link #identityConstraints}.
+         * Just like {@link com.sun.msv.grammar.Expression#verifierTag},
+         * this field is not serialized.
+         */
+        public transient volatile Object identityConstraintsTag = null;
+        
         public final ElementDeclExp parent;
     }
     
@@ -277,12 +351,12 @@ public class ElementDeclExp extends ReferenceExp
             ChoiceExp cexp = (ChoiceExp)exp;
             if(cexp.exp1!=body && cexp.exp2!=body)
                 throw new Error();    // assertion failed
-            return true;
+            return false;
         }
         
         if(exp!=substitutions)
             throw new Error();    // assertion failed
-        return false;
+        return true;
     }
     
     public void setAbstract( boolean isAbstract ) {
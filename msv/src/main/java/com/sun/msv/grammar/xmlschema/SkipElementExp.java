@@ -26,6 +26,11 @@ public class SkipElementExp extends com.sun.msv.grammar.trex.ElementPattern {
         super(nameClass,contentModel);
     }
     
+    /** the content of a skipped element is not validated. */
+    public boolean isOpaque() {
+        return true;
+    }
+    
     // serialization support
     private static final long serialVersionUID = 1;    
 }
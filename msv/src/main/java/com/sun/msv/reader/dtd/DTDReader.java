@@ -9,7 +9,9 @@
  */
 package com.sun.msv.reader.dtd;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -63,7 +65,7 @@ public class DTDReader implements DTDEventListener {
     public static TREXGrammar parse( InputSource source,
         GrammarReaderController controller ) {
         
-        return parse( source, controller, new ExpressionPool() );
+        return parse( source, controller, new ExpressionPool(POOL_SIZE) );
     }
     
     public static TREXGrammar parse( InputSource source,
@@ -86,6 +88,12 @@ public class DTDReader implements DTDEventListener {
         }
     }
     
+    /**
+     * the initial size of the pool used by {@link #parse(InputSource,GrammarReaderController)}.
+     * DTDs are often large, and the pool would otherwise be rehashed many times.
+     */
+    private static final int POOL_SIZE = 4096;
+    
     protected final Controller controller;
     
     /**
@@ -258,6 +266,8 @@ public class DTDReader implements DTDEventListener {
             // this must be a bug of DTDScanner.
             throw new Error();
         
+        flushChoice();
+        
         switch(type) {
         case CONTENT_MODEL_CHILDREN:
         case CONTENT_MODEL_ANY:
@@ -300,10 +310,15 @@ public class DTDReader implements DTDEventListener {
     protected class Context {
         final Expression    exp;
         final short        connectorType;
+        final List<Expression> choiceItems;
         final Context        previous;
         Context( Context prev, Expression exp, short connector ) {
+            this(prev,exp,connector,null);
+        }
+        Context( Context prev, Expression exp, short connector, List<Expression> choiceItems ) {
             this.exp = exp;
             this.connectorType = connector;
+            this.choiceItems = choiceItems;
             this.previous = prev;
         }
     }
@@ -311,6 +326,14 @@ public class DTDReader implements DTDEventListener {
     protected Context        contextStack;
     protected Expression    contentModel;
     protected short            connectorType;
+    /**
+     * alternatives of the current choice group (or mixed content model)
+     * that are not yet combined into {@link #contentModel}, or null.
+     * 
+     * Alternatives are collected and combined at once when the group ends,
+     * because combining them one by one takes O(N^2) for a large group.
+     */
+    protected List<Expression> choiceItems;
     protected final short    CONNECTOR_UNKNOWN = -999;
     
     public void childElement( String elementName, short occurence ) {
@@ -330,7 +353,11 @@ public class DTDReader implements DTDEventListener {
     protected void combineToContentModel( Expression exp ) {
         switch( connectorType ) {
         case CHOICE:
-            contentModel = grammar.pool.createChoice( contentModel, exp );
+            if( choiceItems==null ) {
+                choiceItems = new ArrayList<Expression>();
+                choiceItems.add(contentModel);
+            }
+            choiceItems.add(exp);
             break;
         case SEQUENCE:
             contentModel = grammar.pool.createSequence( contentModel, exp );
@@ -346,22 +373,39 @@ public class DTDReader implements DTDEventListener {
             // assertion failed. contentModel must be prepared by startContentModel method.
             throw new Error();
         
-        contentModel = grammar.pool.createChoice( contentModel,
-            grammar.namedPatterns.getOrCreate(elementName) );
+        if( choiceItems==null ) {
+            choiceItems = new ArrayList<Expression>();
+            choiceItems.add(contentModel);
+        }
+        choiceItems.add( grammar.namedPatterns.getOrCreate(elementName) );
+    }
+    
+    /**
+     * combines the collected alternatives into the content model.
+     */
+    protected void flushChoice() {
+        if( choiceItems!=null ) {
+            contentModel = grammar.pool.createChoice(
+                (Expression[])choiceItems.toArray(new Expression[choiceItems.size()]) );
+            choiceItems = null;
+        }
     }
     
     public void startModelGroup() {
         // push context
-        contextStack = new Context( contextStack, contentModel, connectorType );
+        contextStack = new Context( contextStack, contentModel, connectorType, choiceItems );
         contentModel = null;
         connectorType = CONNECTOR_UNKNOWN;
+        choiceItems = null;
     }
     
     public void endModelGroup( short occurence ) {
+        flushChoice();
         Expression exp = processOccurs( contentModel, occurence );
         // pop context
         contentModel = contextStack.exp;
         connectorType = contextStack.connectorType;
+        choiceItems = contextStack.choiceItems;
         contextStack = contextStack.previous;
         
         if( contentModel==null )
@@ -460,12 +504,11 @@ public class DTDReader implements DTDEventListener {
         StringPair str = new StringPair("",attributeType);
         
         if(enums!=null) {
-            Expression exp = Expression.nullSet;
+            Expression[] values = new Expression[enums.length];
             for( int i=0; i<enums.length; i++ )
-                exp = grammar.pool.createChoice( exp,
-                    grammar.pool.createValue(dt,str,
-                        dt.createValue(enums[i],null)));
-            return exp;
+                values[i] = grammar.pool.createValue(dt,str,
+                        dt.createValue(enums[i],null));
+            return grammar.pool.createChoice(values);
         }
     
         if( attributeUse == USE_FIXED ) {
@@ -529,16 +572,14 @@ public class DTDReader implements DTDEventListener {
      *        element declarations. This will be used to implement "ANY".
      */
     protected Expression createElementDeclarations() {
-        Expression allExp = Expression.nullSet;
+        Expression[] decls = new Expression[elementDecls.size()];
         
         // create declarations
         Iterator<String> itr = elementDecls.keySet().iterator();
-        while( itr.hasNext() ) {
-            Expression exp = createElementDeclaration( (String)itr.next() );
-            allExp = grammar.pool.createChoice( allExp, exp );
-        }
+        for( int i=0; itr.hasNext(); i++ )
+            decls[i] = createElementDeclaration( (String)itr.next() );
         
-        return allExp;
+        return grammar.pool.createChoice(decls);
     }
     
     public void endDTD() throws SAXException {
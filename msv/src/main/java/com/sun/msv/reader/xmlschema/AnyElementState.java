@@ -17,6 +17,7 @@ import com.sun.msv.grammar.ReferenceContainer;
 import com.sun.msv.grammar.ReferenceExp;
 import com.sun.msv.grammar.trex.ElementPattern;
 import com.sun.msv.grammar.xmlschema.ElementDeclExp;
+import com.sun.msv.grammar.xmlschema.SkipElementExp;
 import com.sun.msv.grammar.xmlschema.XMLSchemaSchema;
 import com.sun.msv.reader.GrammarReader;
 import com.sun.msv.reader.State;
@@ -36,7 +37,7 @@ public class AnyElementState extends AnyState
             // "skip" can be expanded now.
             NameClass nc = getNameClass(namespace,currentSchema);
             
-            ElementPattern ep = new ElementPattern(nc,Expression.nullSet);
+            ElementPattern ep = new SkipElementExp(nc,Expression.nullSet);
                 
             ep.contentModel = 
                 // <mixed><zeroOrMore><choice><attribute /><element /></choice></zeroOrMore></mixed>
@@ -10,8 +10,10 @@
 package com.sun.msv.reader.xmlschema;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
@@ -764,7 +766,7 @@ public class XMLSchemaReader extends GrammarReader implements XSDatatypeResolver
         markSchemaAsDefined(xsdSchema);        
         
         // TODO: undefined grammar check.
-        Expression grammarTopLevel = Expression.nullSet;
+        List<Expression> schemaTopLevels = new ArrayList<Expression>();
         Iterator<Object> itr = grammar.iterateSchemas();
         while( itr.hasNext() ) {
             XMLSchemaSchema schema = (XMLSchemaSchema)itr.next();
@@ -793,19 +795,18 @@ public class XMLSchemaReader extends GrammarReader implements XSDatatypeResolver
             // at the same time, compute the substitutions field of ElementDeclExps.
             // TODO: make sure this is a correct implementation
             // any globally declared element can be a top-level element.
-            Expression exp = Expression.nullSet;
-            ReferenceExp[] elems = schema.elementDecls.getAll();
-            for( int i=0; i<elems.length; i++ )
-                exp = pool.createChoice( exp, elems[i] );
+            // a schema can have thousands of global elements, so the choice
+            // is built at once rather than one alternative at a time.
+            Expression exp = pool.createChoice( schema.elementDecls.getAll() );
             
             schema.topLevel = exp;
-            
-            // toplevel of the grammar will be choices of toplevels of all modules.
-            grammarTopLevel = pool.createChoice( grammarTopLevel, exp );
+            schemaTopLevels.add(exp);
         }
 
+        // toplevel of the grammar will be choices of toplevels of all modules.
         // some of the back-patching process relies on this grammar.topLevel field.
-        grammar.topLevel = grammarTopLevel;
+        grammar.topLevel = pool.createChoice(
+            schemaTopLevels.toArray(new Expression[schemaTopLevels.size()]) );
 
         // perform all back patching.
         runBackPatchJob();
@@ -819,6 +820,9 @@ public class XMLSchemaReader extends GrammarReader implements XSDatatypeResolver
         
         // a buffer which will be used to check the recursive substitution group definition.
         final Set<ElementDeclExp> recursiveSubstBuffer = new java.util.HashSet<ElementDeclExp>();
+        // map from the head of a substitution group to its members.
+        final Map<ElementDeclExp,List<ElementDeclExp>> substitutions =
+            new java.util.LinkedHashMap<ElementDeclExp,List<ElementDeclExp>>();
         
         itr = grammar.iterateSchemas();
         while( itr.hasNext() ) {
@@ -851,8 +855,14 @@ public class XMLSchemaReader extends GrammarReader implements XSDatatypeResolver
                         if( isSubstitutable( c, e ) ) {
                             if( com.sun.msv.driver.textui.Debug.debug )
                                 System.out.println( c.name+"<-"+e.name );
-                            c.substitutions.exp =
-                                pool.createChoice( c.substitutions.exp, e.body );
+                            // an abstract element cannot appear in instances,
+                            // but it still passes its members to its head.
+                            if( !e.isAbstract() ) {
+                                List<ElementDeclExp> members = substitutions.get(c);
+                                if( members==null )
+                                    substitutions.put( c, members=new ArrayList<ElementDeclExp>() );
+                                members.add(e);
+                            }
                         } else {
                             if( com.sun.msv.driver.textui.Debug.debug )
                                 System.out.println( c.name+"<-X-"+e.name );
@@ -862,6 +872,16 @@ public class XMLSchemaReader extends GrammarReader implements XSDatatypeResolver
             }
         }
         
+        // set the members at once, because a substitution group can have
+        // thousands of members.
+        Iterator<Map.Entry<ElementDeclExp,List<ElementDeclExp>>> sitr = substitutions.entrySet().iterator();
+        while( sitr.hasNext() ) {
+            Map.Entry<ElementDeclExp,List<ElementDeclExp>> entry = sitr.next();
+            List<ElementDeclExp> members = entry.getValue();
+            ((ElementDeclExp.SubstitutionGroupExp)entry.getKey().substitutions).setMembers(
+                members.toArray(new ElementDeclExp[members.size()]), pool );
+        }
+        
         if( controller.hadError() )    return;
         // undefined expressions may interfare with runaway expression check.
         
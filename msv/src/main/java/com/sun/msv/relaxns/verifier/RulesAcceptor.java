@@ -65,6 +65,11 @@ public class RulesAcceptor
         return new RulesAcceptor( docDecl, getExpression(), models, owners );
     }
     
+    /** returns the document declaration that this acceptor works with. */
+    REDocumentDeclaration getDocumentDeclaration() {
+        return docDecl;
+    }
+    
     /**
      * collects satisfied ElementDeclImpls.
      * 
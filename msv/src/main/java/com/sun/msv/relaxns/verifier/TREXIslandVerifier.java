@@ -54,9 +54,19 @@ class TREXIslandVerifier
      */
     protected final Map<ElementDecl,Expression> rule2exp = new java.util.HashMap<ElementDecl,Expression>();
     
+    /**
+     * the document declaration of the rules. The docDecl field of
+     * this verifier is null, so this one is used instead.
+     */
+    private final REDocumentDeclaration rulesDecl;
+    
     TREXIslandVerifier( RulesAcceptor initialAcceptor ) {
         super( null, null );        // quick hack.
         current = initialAcceptor;
+        rulesDecl = initialAcceptor.getDocumentDeclaration();
+        // child islands are found by looking at the current acceptor,
+        // so every element has to go through it.
+        setOpaqueSkipping(false);
     }
     
     public void startElement( String namespaceUri, String localName, String qName, Attributes atts )
@@ -226,7 +236,7 @@ class TREXIslandVerifier
         // change current Acceptor to a new Acceptor.
         // this new Acceptor is made to accept those satisfied rules only.
         current = new ComplexAcceptor(
-            (REDocumentDeclaration)docDecl,
+            rulesDecl,
             (ruleSet.length==0)?Expression.nullSet:Expression.epsilon,
             epsilons, exps );
 
@@ -58,6 +58,10 @@ public class DTDParser {
     private NameCache        nameCache;
     private char        charTmp [] = new char [2];
 
+    // bytes of external entities read so far, keyed by their IDs,
+    // so that an entity referenced more than once is read only once
+    private Map<String,CachedEntity>    entityCache;
+
     // temporary DTD parsing state
     private boolean        doLexicalPE;
 
@@ -214,6 +218,7 @@ public class DTDParser {
         strTmp = new StringBuffer ();
         nameTmp = new char [20];
         nameCache = new NameCache ();
+        entityCache = new HashMap<String,CachedEntity> ();
 
         // reset doc info
 //        isInAttribute = false;
@@ -313,6 +318,7 @@ public class DTDParser {
         strTmp = null;
         nameTmp = null;
         nameCache = null;
+        entityCache = null;
 
         // ditto input sources etc
         if (in != null) {
@@ -1261,7 +1267,7 @@ public class DTDParser {
         return;
     }
 
-        ArrayList<String> l = new ArrayList<String>();
+        Set<String> l = new HashSet<String>();
 //    l.add(new StringModel(StringModelType.PCDATA));
     
 
@@ -1276,10 +1282,9 @@ public class DTDParser {
         if (name == null)
         fatal ("P-042", new Object []
             { elementName, Integer.toHexString (getc ()) });
-        if (l.contains (name)) {
+        if (!l.add (name)) {
             error ("V-015", new Object [] { name });
         } else {
-            l.add(name);
             dtdHandler.mixedElement(name);
         }
         strTmp.append (name);
@@ -2144,8 +2149,23 @@ public class DTDParser {
         
         InputEntity    r = InputEntity.getInputEntity( dtdHandler, locale );
         InputSource    s;
+        String        key = (next.publicId == null)
+                    ? next.systemId : next.publicId + ' ' + next.systemId;
+        CachedEntity    cached = (key == null) ? null : entityCache.get (key);
+
+        if (cached != null) {
+            s = cached.createInputSource ();
+        } else
         try {
             s = next.getInputSource( resolver );
+
+            // read the whole entity at once, and keep it
+            // in case it is referenced again.
+            if (key != null && s.getCharacterStream () == null) {
+                cached = new CachedEntity (s, InputEntity.readBytes (s));
+                entityCache.put (key, cached);
+                s = cached.createInputSource ();
+            }
         } catch( IOException e ) {
             String msg = 
                 "unable to open the external entity from :" + next.systemId;
@@ -2233,12 +2253,13 @@ public class DTDParser {
     //
     static class NameCache {
     //
-    // Unless we auto-grow this, the default size should be a
-    // reasonable bit larger than needed for most XML files
-    // we've yet seen (and be prime).  If it's too small, the
-    // penalty is just excess cache collisions.
+    // The default size should be a reasonable bit larger than
+    // needed for most XML files we've yet seen (and be prime).
+    // Large DTDs declare thousands of names, so the table is
+    // grown once it gets too crowded.
     //
     NameCacheEntry    hashtable [] = new NameCacheEntry [541];
+    int            count;
 
     //
     // Usually we just want to get the 'symbol' for these chars
@@ -2255,25 +2276,32 @@ public class DTDParser {
     //
     NameCacheEntry lookupEntry (char value [], int len) {
 
-        int            index = 0;
+        int            hash = 0;
+        int            index;
         NameCacheEntry    entry;
 
         // hashing to get index
         for (int i = 0; i < len; i++)
-        index = index * 31 + value [i];
-        index &= 0x7fffffff;
-        index %= hashtable.length;
+        hash = hash * 31 + value [i];
+        hash &= 0x7fffffff;
+        index = hash % hashtable.length;
 
         // return entry if one's there ...
         for (entry = hashtable [index];
             entry != null;
             entry = entry.next) {
-        if (entry.matches (value, len))
+        if (entry.hash == hash && entry.matches (value, len))
             return entry;
         }
 
+        if (count >= hashtable.length) {
+        rehash ();
+        index = hash % hashtable.length;
+        }
+
         // else create new one
         entry = new NameCacheEntry ();
+        entry.hash = hash;
         entry.chars = new char [len];
         System.arraycopy (value, 0, entry.chars, 0, len);
         entry.name = new String (entry.chars);
@@ -2285,13 +2313,61 @@ public class DTDParser {
         entry.name = entry.name.intern ();        // "global" intern
         entry.next = hashtable [index];
         hashtable [index] = entry;
+        count++;
         return entry;
     }
+
+    private void rehash () {
+
+        NameCacheEntry    newtable [] = new NameCacheEntry [hashtable.length * 2 + 1];
+
+        for (int i = 0; i < hashtable.length; i++) {
+        NameCacheEntry    entry = hashtable [i];
+        while (entry != null) {
+            NameCacheEntry    next = entry.next;
+            int            index = entry.hash % newtable.length;
+            entry.next = newtable [index];
+            newtable [index] = entry;
+            entry = next;
+        }
+        }
+        hashtable = newtable;
+    }
+    }
+
+    //
+    // The bytes of an external entity, with the IDs and the encoding
+    // that the entity resolver returned for it.
+    //
+    static class CachedEntity {
+
+    final String    publicId;
+    final String    systemId;
+    final String    encoding;
+    final byte        bytes [];
+
+    CachedEntity (InputSource in, byte bytes []) {
+
+        publicId = in.getPublicId ();
+        systemId = in.getSystemId ();
+        encoding = in.getEncoding ();
+        this.bytes = bytes;
+    }
+
+    InputSource createInputSource () {
+
+        InputSource    retval = new InputSource (systemId);
+        retval.setPublicId (publicId);
+        retval.setEncoding (encoding);
+        retval.setByteStream (new java.io.ByteArrayInputStream (bytes));
+        return retval;
+    }
     }
 
     static class NameCacheEntry {
 
     String        name;
+    int            hash;
     char        chars [];
     NameCacheEntry    next;
 
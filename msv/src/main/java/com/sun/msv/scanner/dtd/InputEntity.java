@@ -146,6 +146,43 @@ public class InputEntity
     checkRecursion (stack);
     }
 
+    //
+    // reads all the bytes of an external entity.  an entity read this
+    // way takes one read per buffer, and can be parsed again without
+    // touching the file or the network.
+    //
+    static byte [] readBytes (InputSource in) throws IOException {
+
+    InputStream    bytes = in.getByteStream ();
+
+    if (bytes == null)
+        bytes = new URL (in.getSystemId ()).openStream ();
+    try {
+        byte    buf [] = new byte [Math.max (bytes.available () + 1, BUFSIZ)];
+        int    len = 0;
+
+        for (;;) {
+        int    n = bytes.read (buf, len, buf.length - len);
+        if (n < 0)
+            break;
+        len += n;
+        if (len == buf.length) {
+            byte tmp [] = new byte [buf.length * 2];
+            System.arraycopy (buf, 0, tmp, 0, len);
+            buf = tmp;
+        }
+        }
+        if (len != buf.length) {
+        byte tmp [] = new byte [len];
+        System.arraycopy (buf, 0, tmp, 0, len);
+        buf = tmp;
+        }
+        return buf;
+    } finally {
+        bytes.close ();
+    }
+    }
+
     //
     // use this for an internal parsed entity; buffer is readonly
     //
@@ -19,4 +19,19 @@ public class DatatypeRef {
      * if the size of the array is zero, then that means this token is ignored.
      */
     public org.relaxng.datatype.Datatype[] types = null;
+    
+    /**
+     * if this flag is true, the value objects of the literal are stored
+     * to {@link #values} together with the types.
+     */
+    public boolean collectValues = false;
+    
+    /**
+     * value objects that the datatypes of {@link #types} created from the literal
+     * while validating it, in the same order as the types.
+     * 
+     * null if the values are not available, either because they are not collected,
+     * or because the literal was validated without creating values.
+     */
+    public Object[] values = null;
 }
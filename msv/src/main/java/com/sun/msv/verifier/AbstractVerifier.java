@@ -14,6 +14,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 
+import javax.xml.namespace.NamespaceContext;
+
 import org.relaxng.datatype.Datatype;
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
@@ -120,6 +122,13 @@ public abstract class AbstractVerifier implements
     // methods of ValidationContextProvider
     public String resolveNamespacePrefix(String prefix) {
         String uri = namespaceSupport.getURI(prefix);
+        if(uri==null && locator instanceof NamespaceContext) {
+            // the document may be a part of a larger document,
+            // whose bindings are known to the locator.
+            uri = ((NamespaceContext)locator).getNamespaceURI(prefix);
+            if(uri!=null && uri.length()==0 && prefix.length()!=0)
+                uri = null;     // not bound.
+        }
         if(uri==null && prefix.length()==0)  return "";
         else                                return uri;
     }
@@ -86,7 +86,10 @@ public abstract class ErrorInfo {
      * <code>&lt;/length></code> (end tag) respectively.
      */
     public static class BadText extends ErrorInfo {
-        /** The actual text that caused the error. */
+        /**
+         * The actual text that caused the error.
+         * Empty if the text was validated in the streaming mode.
+         */
         public final String literal;
         public BadText( String _literal ) { literal = _literal; }
         public BadText( StringBuffer _literal ) { literal = _literal.toString(); }
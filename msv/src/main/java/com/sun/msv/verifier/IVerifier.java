@@ -80,6 +80,22 @@ public interface IVerifier extends VerifierHandler {
      * structure and only interested in validating datatypes,)
      */
     void setPanicMode( boolean usePanicMode );
+    
+    /**
+     * Turns on/off the fast-fail mode.
+     * Fast-fail mode is off by default.
+     * <p>
+     * In the fast-fail mode, the verifier reports errors without
+     * diagnosing them, so error messages are less detailed.
+     * The validation is aborted by {@link ValidationUnrecoverableException}
+     * once the specified number of errors are found. This is useful
+     * when you only need to know whether a document is valid or not.
+     * 
+     * @param maxErrors
+     *      the number of errors after which the validation is aborted,
+     *      or 0 to turn off the fast-fail mode.
+     */
+    void setFastFail( int maxErrors );
 
     Locator getLocator();
     ErrorHandler getErrorHandler();
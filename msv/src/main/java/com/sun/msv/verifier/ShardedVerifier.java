@@ -0,0 +1,704 @@
+package com.sun.msv.verifier;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.LocatorImpl;
+import org.xml.sax.helpers.NamespaceSupport;
+
+import com.sun.msv.grammar.Expression;
+import com.sun.msv.grammar.Grammar;
+import com.sun.msv.grammar.xmlschema.XMLSchemaGrammar;
+import com.sun.msv.util.StartTagInfo;
+import com.sun.msv.util.StringPair;
+import com.sun.msv.util.StringRef;
+import com.sun.msv.verifier.identity.IDConstraintChecker;
+import com.sun.msv.verifier.regexp.ExpressionAcceptor;
+import com.sun.msv.verifier.regexp.REDocumentDeclaration;
+import com.sun.msv.verifier.regexp.SimpleAcceptor;
+import com.sun.msv.verifier.regexp.xmlschema.XSAcceptor;
+import com.sun.msv.verifier.regexp.xmlschema.XSREDocDecl;
+
+/**
+ * SAX ContentHandler that validates a document made of many repeated
+ * records by using multiple threads.
+ *
+ * <p>
+ * Elements that match the record path (such as "/root/record") are
+ * buffered and validated in groups ("shards") by an {@link ExecutorService},
+ * while the rest of the document (the "envelope") is validated by
+ * the calling thread. The envelope only needs the name of a record
+ * to step over it, so the parser is never blocked by the validation
+ * of the records.
+ *
+ * <p>
+ * Each shard is validated by its own {@link Verifier}, which starts from
+ * the state the envelope was in when the first record of the shard was found.
+ * Only the {@link Grammar} is shared among threads; document declarations
+ * are not thread-safe and therefore created for each shard.
+ *
+ * <p>
+ * Errors found in the envelope are reported as they are found. Errors found
+ * in records are reported from the {@link #endDocument()} method,
+ * shard by shard in the document order, with the location where they
+ * were found. ID/IDREFs of all the shards are checked together at the end.
+ *
+ * <p>
+ * A record is validated by the calling thread in the following cases,
+ * so the result is always the same as that of {@link Verifier}.
+ * <ul>
+ *  <li>an identity constraint of W3C XML Schema is in effect at the
+ *      parent of the record (constraints inside a record are fine.)
+ *  <li>the content model doesn't tell which element declaration
+ *      the record matches without looking at its content.
+ *  <li>the parent of the record can have data as its content.
+ * </ul>
+ *
+ * <p>
+ * This object can be reused to validate multiple documents, but not
+ * at the same time.
+ */
+public class ShardedVerifier implements ContentHandler, DTDHandler {
+
+    /** the grammar against which documents are validated. */
+    private final Grammar grammar;
+
+    /** the executor that validates shards. */
+    private final ExecutorService executor;
+
+    /** names of the elements from the root to the record element. */
+    private final StringPair[] recordPath;
+
+    /** validates everything but records. */
+    private final Verifier envelope;
+
+    /** receives errors. */
+    private ErrorHandler errorHandler;
+
+    /** the maximum number of records in one shard. */
+    private int shardSize = 100;
+
+    /** the maximum number of shards that are buffered but not yet validated. */
+    private int maxPendingShards = 16;
+
+    /**
+     * limits the number of shards that are buffered but not yet validated.
+     * Created for each document, so that shards of an abandoned document
+     * don't affect the next one.
+     */
+    private Semaphore pendingShards;
+
+    /**
+     * @param recordPath
+     *      the path to the repeated record element from the root, such as
+     *      "/root/record". Each step can be qualified by a namespace URI
+     *      like "{urn:foo}record". Unqualified steps match the elements
+     *      in no namespace. The path needs at least two steps.
+     * @param executor
+     *      the executor that validates shards. This object doesn't
+     *      shut it down.
+     * @param errorHandler
+     *      receives validation errors. Errors found in records are always
+     *      reported from the thread that calls {@link #endDocument()}.
+     */
+    public ShardedVerifier( Grammar grammar, String recordPath, ExecutorService executor, ErrorHandler errorHandler ) {
+        this.grammar = grammar;
+        this.recordPath = parsePath(recordPath);
+        if( this.recordPath.length<2 )
+            throw new IllegalArgumentException("record path needs at least two steps: "+recordPath);
+        this.executor = executor;
+        this.errorHandler = errorHandler;
+        this.envelope = createVerifier(errorHandler);
+    }
+
+    private static StringPair[] parsePath( String path ) {
+        List<StringPair> steps = new ArrayList<StringPair>();
+        int i=0;
+        while( i<path.length() ) {
+            if( path.charAt(i)!='/' )
+                throw new IllegalArgumentException("invalid record path: "+path);
+            i++;
+
+            String uri = "";
+            if( i<path.length() && path.charAt(i)=='{' ) {
+                int end = path.indexOf('}',i);
+                if( end<0 )
+                    throw new IllegalArgumentException("invalid record path: "+path);
+                uri = path.substring(i+1,end);
+                i = end+1;
+            }
+            int end = path.indexOf('/',i);
+            if( end<0 )     end = path.length();
+            if( end==i )
+                throw new IllegalArgumentException("invalid record path: "+path);
+            steps.add( new StringPair(uri,path.substring(i,end)) );
+            i = end;
+        }
+        return steps.toArray(new StringPair[steps.size()]);
+    }
+
+    /** creates a new verifier that validates against the grammar. */
+    private Verifier createVerifier( ErrorHandler handler ) {
+        if( grammar instanceof XMLSchemaGrammar )
+            return new IDConstraintChecker((XMLSchemaGrammar)grammar,handler);
+        else
+            return new Verifier(new REDocumentDeclaration(grammar),handler);
+    }
+
+    public final ErrorHandler getErrorHandler() {
+        return errorHandler;
+    }
+    public final void setErrorHandler( ErrorHandler handler ) {
+        this.errorHandler = handler;
+        envelope.setErrorHandler(handler);
+    }
+
+    /**
+     * sets the maximum number of records in one shard.
+     * Larger shards reduce the overhead, and smaller shards
+     * spread the work better. The default is 100.
+     */
+    public void setShardSize( int size ) {
+        if( size<1 )    throw new IllegalArgumentException();
+        this.shardSize = size;
+    }
+
+    /**
+     * sets the maximum number of shards that are waiting for the validation.
+     * When this limit is reached, the parser is blocked until
+     * one of them is validated. This limits the memory consumption
+     * when the executor cannot keep up with the parser. The default is 16.
+     * The new value takes effect from the next document.
+     */
+    public void setMaxPendingShards( int n ) {
+        if( n<1 )       throw new IllegalArgumentException();
+        this.maxPendingShards = n;
+    }
+
+    public void setPanicMode( boolean usePanicMode ) {
+        envelope.setPanicMode(usePanicMode);
+        this.panicMode = usePanicMode;
+    }
+    private boolean panicMode = true;
+
+    /**
+     * turns on/off the fast-fail mode.
+     * Each shard counts its errors separately.
+     *
+     * @see Verifier#setFastFail(int)
+     */
+    public void setFastFail( int maxErrors ) {
+        envelope.setFastFail(maxErrors);
+        this.maxErrors = maxErrors;
+    }
+    private int maxErrors = 0;
+
+
+
+    /** shards that have been submitted to the executor, in the document order. */
+    private final List<Future<Shard>> submitted = new ArrayList<Future<Shard>>();
+
+    /** the shard that is being filled. null if none. */
+    private Shard shard;
+
+    /** depth of the current element. 0 at the document level. */
+    private int depth;
+    /** number of the steps of the record path matched by the current element and its ancestors. */
+    private int matched;
+    /** depth inside the current record. 0 if we are not in a record that is sent to a shard. */
+    private int recordDepth;
+
+    /** prefix mappings that will be declared by the next start tag. */
+    private final List<String> pendingPrefixes = new ArrayList<String>();
+
+    /** notations and unparsed entities, which are reported to every shard. */
+    private final List<String[]> notations = new ArrayList<String[]>();
+    private final List<String[]> unparsedEntities = new ArrayList<String[]>();
+
+    private Locator locator = AbstractVerifier.dummyLocator;
+
+    private boolean hadError;
+    private boolean isFinished;
+
+    public final boolean isValid() {
+        return !hadError && isFinished && envelope.isValid();
+    }
+
+
+    public void setDocumentLocator( Locator loc ) {
+        this.locator = loc;
+        envelope.setDocumentLocator(loc);
+    }
+
+    public void startDocument() throws SAXException {
+        cancel();
+        pendingShards = new Semaphore(maxPendingShards);
+        shard = null;
+        depth = matched = recordDepth = 0;
+        pendingPrefixes.clear();
+        notations.clear();
+        unparsedEntities.clear();
+        hadError = false;
+        isFinished = false;
+        envelope.startDocument();
+    }
+
+    public void endDocument() throws SAXException {
+        closeShard();
+
+        try {
+            for( int i=0; i<submitted.size(); i++ ) {
+                Shard s;
+                try {
+                    s = submitted.get(i).get();
+                } catch( InterruptedException e ) {
+                    throw new SAXException(e);
+                } catch( ExecutionException e ) {
+                    if( e.getCause() instanceof Exception )
+                        throw new SAXException((Exception)e.getCause());
+                    throw new SAXException(e);
+                }
+                s.merge();
+            }
+        } finally {
+            cancel();
+        }
+
+        envelope.endDocument();
+        isFinished = true;
+    }
+
+    /** abandons shards of the previous document, if any. */
+    private void cancel() {
+        for( int i=0; i<submitted.size(); i++ )
+            submitted.get(i).cancel(true);
+        submitted.clear();
+    }
+
+    public void startPrefixMapping( String prefix, String uri ) throws SAXException {
+        if( recordDepth>0 )
+            shard.startPrefixMapping(prefix,uri);
+        else {
+            pendingPrefixes.add(prefix);
+            pendingPrefixes.add(uri);
+        }
+    }
+
+    public void endPrefixMapping( String prefix ) throws SAXException {
+        // verifiers don't use this event.
+    }
+
+    public void startElement( String uri, String localName, String qName, Attributes atts ) throws SAXException {
+        if( uri==null )     uri="";
+        if( localName==null || localName.length()==0 )
+            localName=qName;
+
+        if( recordDepth>0 ) {
+            shard.startElement(uri,localName,qName,atts);
+            recordDepth++;
+            return;
+        }
+
+        if( matched==depth && depth<recordPath.length
+        &&  recordPath[depth].localName.equals(localName)
+        &&  recordPath[depth].namespaceURI.equals(uri) )
+            matched++;
+        depth++;
+
+        if( matched==depth && depth==recordPath.length ) {
+            // this is a record.
+            Expression context = skipRecord(uri,localName,qName,atts);
+            if( context!=null ) {
+                if( shard==null )
+                    shard = new Shard(context);
+                for( int i=0; i<pendingPrefixes.size(); i+=2 )
+                    shard.startPrefixMapping( pendingPrefixes.get(i), pendingPrefixes.get(i+1) );
+                pendingPrefixes.clear();
+                shard.startElement(uri,localName,qName,atts);
+                recordDepth = 1;
+                return;
+            }
+        }
+
+        // this element is validated by the envelope.
+        // the next record cannot be in the current shard because
+        // the envelope may go to a state the shard doesn't know.
+        closeShard();
+        for( int i=0; i<pendingPrefixes.size(); i+=2 )
+            envelope.startPrefixMapping( pendingPrefixes.get(i), pendingPrefixes.get(i+1) );
+        pendingPrefixes.clear();
+        envelope.startElement(uri,localName,qName,atts);
+    }
+
+    public void endElement( String uri, String localName, String qName ) throws SAXException {
+        if( recordDepth>0 ) {
+            shard.endElement(uri,localName,qName);
+            if( --recordDepth==0 ) {
+                if( ++shard.records>=shardSize )
+                    closeShard();
+                if( matched==depth )    matched--;
+                depth--;
+            }
+            return;
+        }
+
+        envelope.endElement(uri,localName,qName);
+        if( matched==depth )    matched--;
+        depth--;
+    }
+
+    public void characters( char[] buf, int start, int len ) throws SAXException {
+        if( recordDepth>0 ) {
+            shard.characters(buf,start,len);
+            return;
+        }
+        // text between records is validated by the envelope.
+        // as with elements, the next record needs a new shard.
+        for( int i=0; i<len; i++ ) {
+            char ch = buf[start+i];
+            if( ch!=' ' && ch!='\t' && ch!='\r' && ch!='\n' ) {
+                closeShard();
+                break;
+            }
+        }
+        envelope.characters(buf,start,len);
+    }
+
+    public void ignorableWhitespace( char[] buf, int start, int len ) throws SAXException {
+        if( recordDepth>0 )
+            shard.characters(buf,start,len);
+        else
+            envelope.ignorableWhitespace(buf,start,len);
+    }
+
+    public void processingInstruction( String target, String data ) throws SAXException {
+        // verifiers don't use this event.
+    }
+
+    public void skippedEntity( String name ) throws SAXException {
+        // verifiers don't use this event.
+    }
+
+    public void notationDecl( String name, String publicId, String systemId ) throws SAXException {
+        notations.add( new String[]{name,publicId,systemId} );
+        envelope.notationDecl(name,publicId,systemId);
+    }
+
+    public void unparsedEntityDecl( String name, String publicId, String systemId, String notationName ) throws SAXException {
+        unparsedEntities.add( new String[]{name,publicId,systemId,notationName} );
+        envelope.unparsedEntityDecl(name,publicId,systemId,notationName);
+    }
+
+
+    /**
+     * moves the envelope past a record without looking at its content.
+     *
+     * @return
+     *      the expression that the record is validated against
+     *      (that is, the state of the envelope just before the record),
+     *      or null if the record has to be validated by the envelope.
+     */
+    private Expression skipRecord( String uri, String localName, String qName, Attributes atts ) throws SAXException {
+        if( envelope instanceof IDConstraintChecker
+        &&  ((IDConstraintChecker)envelope).isInConstraintScope() )
+            return null;
+
+        Acceptor parent = envelope.current;
+        if( !(parent instanceof ExpressionAcceptor)
+        ||  parent.getStringCareLevel()==Acceptor.STRING_STRICT )
+            return null;
+
+        envelope.verifyText();
+        Expression context = ((ExpressionAcceptor)parent).getExpression();
+
+        // the start tag may refer to the prefixes it declares (e.g., by xsi:type)
+        NamespaceSupport ns = envelope.namespaceSupport;
+        ns.pushContext();
+        try {
+            for( int i=0; i<pendingPrefixes.size(); i+=2 )
+                ns.declarePrefix( pendingPrefixes.get(i), pendingPrefixes.get(i+1) );
+
+            StartTagInfo sti = new StartTagInfo(uri,localName,qName,atts,envelope);
+            Acceptor child = parent.createChildAcceptor(sti,null);
+            if( child==null )
+                // the shard will report this error.
+                child = parent.createChildAcceptor(sti,new StringRef());
+
+            // when the record can match more than one element declarations,
+            // the parent needs to see the content to decide where to go next.
+            if( !(child instanceof SimpleAcceptor) )
+                return null;
+
+            if( !parent.stepForward(child,null) )
+                parent.stepForward(child,new StringRef());
+        } finally {
+            ns.popContext();
+        }
+
+        return context;
+    }
+
+    /** sends the current shard to the executor. */
+    private void closeShard() throws SAXException {
+        if( shard==null )   return;
+        try {
+            pendingShards.acquire();
+        } catch( InterruptedException e ) {
+            throw new SAXException(e);
+        }
+        submitted.add( executor.submit(shard) );
+        shard = null;
+    }
+
+
+
+    private static final int START_ELEMENT = 0;
+    private static final int END_ELEMENT = 1;
+    private static final int CHARACTERS = 2;
+    private static final int START_PREFIX_MAPPING = 3;
+
+    /**
+     * consecutive records, which are validated by one {@link Verifier}.
+     */
+    private final class Shard implements Callable<Shard>, ErrorHandler {
+
+        /** the state of the envelope before the first record. */
+        private final Expression context;
+        /** prefix/URI pairs in scope at the first record. */
+        private final List<String> namespaces = new ArrayList<String>();
+
+        private final String systemId;
+        private final String publicId;
+
+        /** number of records in this shard. */
+        int records = 0;
+
+        /**
+         * recorded events. Each event consists of 5 ints:
+         * the type, the line number, the column number and two arguments.
+         */
+        private int[] events = new int[256*5];
+        private int size = 0;
+        /** names and attributes of recorded events. */
+        private final List<Object> objects = new ArrayList<Object>();
+        /** characters of recorded events. */
+        private char[] chars = new char[1024];
+        private int charsLen = 0;
+
+        // results
+        private final List<SAXParseException> errors = new ArrayList<SAXParseException>();
+        private final List<SAXParseException> warnings = new ArrayList<SAXParseException>();
+        private boolean valid;
+        private SAXException fatal;
+        private Map<Object,Object> ids;
+        private Set<Object> idrefs;
+        private Set<String> duplicateIds;
+
+        /** released when this shard is validated. */
+        private final Semaphore permits = pendingShards;
+
+        Shard( Expression context ) {
+            this.context = context;
+            this.systemId = locator.getSystemId();
+            this.publicId = locator.getPublicId();
+
+            NamespaceSupport ns = envelope.namespaceSupport;
+            Enumeration<?> e = ns.getPrefixes();
+            while( e.hasMoreElements() ) {
+                String prefix = (String)e.nextElement();
+                if( prefix.equals("xml") )  continue;
+                namespaces.add(prefix);
+                namespaces.add(ns.getURI(prefix));
+            }
+            String defaultUri = ns.getURI("");
+            if( defaultUri!=null ) {
+                namespaces.add("");
+                namespaces.add(defaultUri);
+            }
+        }
+
+        private void add( int type, int a, int b ) {
+            if( size==events.length ) {
+                int[] buf = new int[events.length*2];
+                System.arraycopy(events,0,buf,0,size);
+                events = buf;
+            }
+            events[size++] = type;
+            events[size++] = locator.getLineNumber();
+            events[size++] = locator.getColumnNumber();
+            events[size++] = a;
+            events[size++] = b;
+        }
+
+        void startPrefixMapping( String prefix, String uri ) {
+            add( START_PREFIX_MAPPING, objects.size(), 0 );
+            objects.add(prefix);
+            objects.add(uri);
+        }
+
+        void startElement( String uri, String localName, String qName, Attributes atts ) {
+            add( START_ELEMENT, objects.size(), 0 );
+            objects.add(uri);
+            objects.add(localName);
+            objects.add(qName);
+            objects.add(new AttributesImpl(atts));
+        }
+
+        void endElement( String uri, String localName, String qName ) {
+            add( END_ELEMENT, objects.size(), 0 );
+            objects.add(uri);
+            objects.add(localName);
+            objects.add(qName);
+        }
+
+        void characters( char[] buf, int start, int len ) {
+            if( charsLen+len>chars.length ) {
+                char[] n = new char[Math.max(chars.length*2,charsLen+len)];
+                System.arraycopy(chars,0,n,0,charsLen);
+                chars = n;
+            }
+            System.arraycopy(buf,start,chars,charsLen,len);
+            add( CHARACTERS, charsLen, len );
+            charsLen += len;
+        }
+
+        /** validates the records. This method is called by the executor. */
+        public Shard call() {
+            try {
+                validate();
+            } catch( SAXException e ) {
+                fatal = e;
+            } finally {
+                permits.release();
+            }
+            // recorded events are no longer necessary.
+            events = null;
+            objects.clear();
+            chars = null;
+            return this;
+        }
+
+        private void validate() throws SAXException {
+            Verifier v = createVerifier(this);
+            v.setPanicMode(panicMode);
+            v.setFastFail(maxErrors);
+            LocatorImpl loc = new LocatorImpl();
+            loc.setSystemId(systemId);
+            loc.setPublicId(publicId);
+            v.setDocumentLocator(loc);
+            for( int i=0; i<notations.size(); i++ ) {
+                String[] n = notations.get(i);
+                v.notationDecl(n[0],n[1],n[2]);
+            }
+            for( int i=0; i<unparsedEntities.size(); i++ ) {
+                String[] n = unparsedEntities.get(i);
+                v.unparsedEntityDecl(n[0],n[1],n[2],n[3]);
+            }
+
+            v.startDocument();
+            // start from the state of the envelope
+            if( v.docDecl instanceof XSREDocDecl )
+                v.current = new XSAcceptor((XSREDocDecl)v.docDecl,context,null,null);
+            else
+                v.current = new SimpleAcceptor((REDocumentDeclaration)v.docDecl,context,null,null);
+            v.namespaceSupport.pushContext();
+            for( int i=0; i<namespaces.size(); i+=2 )
+                v.namespaceSupport.declarePrefix( namespaces.get(i), namespaces.get(i+1) );
+
+            for( int i=0; i<size; i+=5 ) {
+                loc.setLineNumber(events[i+1]);
+                loc.setColumnNumber(events[i+2]);
+                int a = events[i+3];
+                switch(events[i]) {
+                case START_ELEMENT:
+                    v.startElement( (String)objects.get(a), (String)objects.get(a+1),
+                        (String)objects.get(a+2), (Attributes)objects.get(a+3) );
+                    break;
+                case END_ELEMENT:
+                    v.endElement( (String)objects.get(a), (String)objects.get(a+1),
+                        (String)objects.get(a+2) );
+                    break;
+                case CHARACTERS:
+                    v.characters( chars, a, events[i+4] );
+                    break;
+                case START_PREFIX_MAPPING:
+                    v.startPrefixMapping( (String)objects.get(a), (String)objects.get(a+1) );
+                    break;
+                default:
+                    throw new Error();  // assertion failed
+                }
+            }
+
+            // ID/IDREFs are checked after all the shards are merged.
+            ids = new java.util.HashMap<Object,Object>(v.ids);
+            idrefs = new java.util.HashSet<Object>(v.idrefs);
+            duplicateIds = v.getDuplicateIds();
+            v.performIDcheck = false;
+
+            v.endDocument();
+            valid = v.isValid();
+        }
+
+        /**
+         * reports the result to the error handler and adds ID/IDREFs
+         * to the envelope. Called by the thread that calls endDocument.
+         */
+        void merge() throws SAXException {
+            for( int i=0; i<warnings.size(); i++ )
+                if( errorHandler!=null )    errorHandler.warning(warnings.get(i));
+            for( int i=0; i<errors.size(); i++ )
+                if( errorHandler!=null )    errorHandler.error(errors.get(i));
+            if( fatal!=null ) {
+                hadError = true;
+                throw fatal;
+            }
+            if( !valid )
+                hadError = true;
+
+            Iterator<Map.Entry<Object,Object>> itr = ids.entrySet().iterator();
+            while( itr.hasNext() ) {
+                Map.Entry<Object,Object> e = itr.next();
+                Object existing = envelope.ids.get(e.getKey());
+                if( existing==null )
+                    envelope.ids.put(e.getKey(),e.getValue());
+                else
+                if( existing!=e.getValue() )
+                    envelope.onDuplicateId((String)e.getKey());
+            }
+            envelope.idrefs.addAll(idrefs);
+            if( duplicateIds!=null ) {
+                Iterator<String> jtr = duplicateIds.iterator();
+                while( jtr.hasNext() )
+                    envelope.onDuplicateId(jtr.next());
+            }
+        }
+
+        // ErrorHandler. Errors are kept until they are merged.
+        public void warning( SAXParseException e ) {
+            warnings.add(e);
+        }
+        public void error( SAXParseException e ) {
+            errors.add(e);
+        }
+        public void fatalError( SAXParseException e ) {
+            errors.add(e);
+        }
+    }
+}
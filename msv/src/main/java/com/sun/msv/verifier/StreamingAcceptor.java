@@ -0,0 +1,48 @@
+package com.sun.msv.verifier;
+
+import org.relaxng.datatype.DatatypeStreamingValidator;
+
+import com.sun.msv.grammar.IDContextProvider2;
+import com.sun.msv.util.DatatypeRef;
+import com.sun.msv.util.StringRef;
+
+/**
+ * {@link Acceptor} that can validate text without keeping it in memory.
+ *
+ * <p>
+ * When the streaming mode is turned on by {@link Verifier#setStreamingMode(boolean)},
+ * {@link Verifier} asks the acceptor of each element for a validator, and passes
+ * characters to it as they arrive, instead of buffering them and calling
+ * the onText2 method.
+ */
+public interface StreamingAcceptor extends Acceptor {
+
+    /**
+     * creates a validator for the text that follows.
+     *
+     * <p>
+     * This method is called after the onEndAttributes method.
+     *
+     * @return
+     *      null if the text has to be passed to the onText2 method.
+     */
+    DatatypeStreamingValidator createTextValidator( IDContextProvider2 context );
+
+    /**
+     * consumes the text that has been passed to the validator
+     * created by the createTextValidator method.
+     *
+     * <p>
+     * This method is used in the same way as the onText2 method.
+     * If the text is invalid, the acceptor recovers by pretending that
+     * the text was valid.
+     *
+     * @param refErr
+     *      if non-null and the text is invalid, the error message is set.
+     * @param refType
+     *      if non-null and the text is valid, the type of the text is set.
+     * @return
+     *      false if the text is invalid.
+     */
+    boolean onStreamedText( DatatypeStreamingValidator validator, StringRef refErr, DatatypeRef refType );
+}
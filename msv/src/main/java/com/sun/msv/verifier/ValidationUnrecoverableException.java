@@ -20,8 +20,9 @@ import org.xml.sax.SAXParseException;
 public class ValidationUnrecoverableException extends SAXParseException
 {
     public ValidationUnrecoverableException( SAXParseException vv ) {
+        // the message is taken from vv when it's requested.
         super(
-            vv.getMessage(), vv.getPublicId(), vv.getSystemId(),
+            null, vv.getPublicId(), vv.getSystemId(),
             vv.getLineNumber(), vv.getColumnNumber(), vv );
     }
 }
@@ -33,6 +33,41 @@ public class ValidityViolation extends SAXParseException {
     public ValidityViolation( Locator loc, String msg, ErrorInfo ei ) {
         super( msg, loc );
         this.errorInfo = ei;
+        this.errorCode = null;
+        this.args = null;
+    }
+    
+    /**
+     * Creates a violation whose message is formatted from the error code
+     * only when it is requested.
+     * 
+     * @param errorCode
+     *      one of the ERR_XXX constants of {@link Verifier}.
+     */
+    public ValidityViolation( Locator loc, String errorCode, Object[] args, ErrorInfo ei ) {
+        super( null, loc );
+        this.errorInfo = ei;
+        this.errorCode = errorCode;
+        this.args = args;
+    }
+    
+    private final String errorCode;
+    private final Object[] args;
+    
+    /**
+     * Gets the code that identifies the kind of this error,
+     * which is one of the ERR_XXX constants of {@link Verifier}.
+     * 
+     * This method returns null if the violation was created
+     * with a formatted message.
+     */
+    public String getErrorCode() { return errorCode; }
+    
+    public String getMessage() {
+        String msg = super.getMessage();
+        if( msg==null && errorCode!=null )
+            msg = Verifier.localizeMessage(errorCode,args);
+        return msg;
     }
 /*
     public ValidityViolation( Locator loc, String msg ) {
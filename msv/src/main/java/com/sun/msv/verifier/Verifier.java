@@ -13,15 +13,19 @@ import java.util.Iterator;
 import java.util.Set;
 
 import org.relaxng.datatype.Datatype;
+import org.relaxng.datatype.DatatypeStreamingValidator;
 import org.xml.sax.Attributes;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
 
 import com.sun.msv.datatype.xsd.StringType;
+import com.sun.msv.grammar.ElementExp;
 import com.sun.msv.grammar.IDContextProvider2;
 import com.sun.msv.util.DatatypeRef;
 import com.sun.msv.util.StartTagInfo;
 import com.sun.msv.util.StringRef;
+import com.sun.msv.verifier.monitor.ValidationListener;
+import com.sun.msv.verifier.regexp.REDocumentDeclaration;
 
 /**
  * SAX ContentHandler that verifies incoming SAX event stream.
@@ -56,6 +60,35 @@ public class Verifier extends AbstractVerifier implements IVerifier {
 
     /** characters that were read (but not processed)  */
     private StringBuffer text = new StringBuffer();
+    
+    /**
+     * validator that receives characters in the streaming mode.
+     * null if characters are buffered.
+     */
+    private DatatypeStreamingValidator textValidator;
+    
+    /** true if the streaming mode is turned on. */
+    private boolean streamingMode;
+    
+    /**
+     * turns on/off the streaming mode.
+     * 
+     * <p>
+     * In the streaming mode, if the acceptor of the current element is a
+     * {@link StreamingAcceptor}, characters are passed to its validator as
+     * they arrive instead of being buffered. Memory usage doesn't grow with
+     * the size of text, which is useful for documents that contain large
+     * text (such as base64-encoded data.)
+     * 
+     * <p>
+     * Error messages for streamed text don't include the text itself.
+     * Derived classes that handle characters by themselves (such as
+     * {@link com.sun.msv.verifier.psvi.TypeDetector}) don't support
+     * this mode. By default, the streaming mode is off.
+     */
+    public final void setStreamingMode( boolean streamingMode ) {
+        this.streamingMode = streamingMode;
+    }
 
     /** Error handler */
     protected ErrorHandler errorHandler;
@@ -105,6 +138,126 @@ public class Verifier extends AbstractVerifier implements IVerifier {
     public final void setPanicMode( boolean usePanicMode ) {
         initialPanicLevel = usePanicMode?DEFAULT_PANIC_LEVEL:0;
     }
+    
+    /**
+     * maximum number of errors in the fast-fail mode.
+     * 0 if the fast-fail mode is off.
+     */
+    private int maxErrors = 0;
+    
+    /** number of errors found so far. Used only in the fast-fail mode. */
+    private int errorCount;
+    
+    /**
+     * number of the open elements that are skipped in the fast-fail mode.
+     * Those elements are not passed to acceptors (nor to
+     * {@link #onNextAcceptorReady}), and characters inside them are ignored.
+     */
+    private int skipDepth;
+    
+    /**
+     * true if the current element was accepted, but its content
+     * is skipped in the fast-fail mode.
+     */
+    private boolean contentSkipped;
+    
+    /** true if opaque elements are skipped. */
+    private boolean opaqueSkipping = true;
+    
+    /**
+     * the acceptor of the opaque element that is being skipped, or null.
+     * The parent acceptor is stepped forward by this acceptor when the
+     * element ends.
+     */
+    private Acceptor opaqueAcceptor;
+    
+    /**
+     * turns on/off the fast-fail mode.
+     * 
+     * <p>
+     * In the fast-fail mode, an error is reported as soon as it is found,
+     * without running acceptors again to diagnose it. Errors are
+     * reported as {@link ValidityViolation}s whose messages are
+     * generic, and they are formatted only when
+     * {@link ValidityViolation#getMessage()} is called.
+     * An element that cannot be accepted is skipped together with its
+     * descendants, and the panic mode is not used.
+     * 
+     * <p>
+     * Once the specified number of errors are found, the validation is
+     * aborted by {@link ValidationUnrecoverableException}.
+     * Derived classes that handle characters by themselves (such as
+     * {@link com.sun.msv.verifier.psvi.TypeDetector}) don't support
+     * this mode. By default, the fast-fail mode is off.
+     * 
+     * @param maxErrors
+     *      the number of errors after which the validation is aborted,
+     *      or 0 to turn off the fast-fail mode.
+     */
+    public final void setFastFail( int maxErrors ) {
+        if( maxErrors<0 )
+            throw new IllegalArgumentException();
+        this.maxErrors = maxErrors;
+    }
+    
+    /**
+     * turns on/off skipping of opaque elements.
+     * 
+     * <p>
+     * When an element is accepted by an opaque {@link ElementExp}
+     * (such as the wildcard of &lt;xs:any processContents="skip"/&gt;),
+     * its attributes are not fed, and its descendants are skipped
+     * without creating acceptors or buffering characters. Only the
+     * namespace declarations are still tracked.
+     * By default, opaque elements are skipped.
+     */
+    public final void setOpaqueSkipping( boolean opaqueSkipping ) {
+        this.opaqueSkipping = opaqueSkipping;
+    }
+    
+    /**
+     * returns true if the current element is skipped, either in the
+     * fast-fail mode or because it is opaque.
+     * 
+     * <p>
+     * Skipped elements are not reported to {@link #onNextAcceptorReady},
+     * so derived classes can use this method to ignore their end tags
+     * and characters.
+     */
+    protected final boolean isSkipping() {
+        return skipDepth != 0;
+    }
+    
+    /**
+     * receives notifications from the validation engine.
+     * null if the validation is not monitored.
+     */
+    protected ValidationListener listener;
+    
+    /** the time when the current document was started. Used only when monitored. */
+    private long documentStartTime;
+    
+    public final ValidationListener getValidationListener() {
+        return listener;
+    }
+    
+    /**
+     * sets the listener that monitors the validation.
+     * 
+     * <p>
+     * If the document declaration is an {@link REDocumentDeclaration},
+     * the listener is also set to it so that acceptors report their
+     * activities.
+     * 
+     * @param listener
+     *      null to turn off the monitoring.
+     */
+    public void setValidationListener( ValidationListener listener ) {
+        this.listener = listener;
+        if (docDecl instanceof REDocumentDeclaration)
+            ((REDocumentDeclaration)docDecl).setValidationListener(listener);
+    }
+    
     public Verifier(DocumentDeclaration documentDecl, ErrorHandler errorHandler) {
         this.docDecl = documentDecl;
         this.errorHandler = errorHandler;
@@ -116,9 +269,54 @@ public class Verifier extends AbstractVerifier implements IVerifier {
         return characterType.types;
     }
     
+    /**
+     * returns the value objects of the last character literal, which were
+     * created by the types of {@link #getLastCharacterType()} while validating it.
+     * 
+     * @return
+     *      null if the values are not collected or not available.
+     *      
+     * @see #setValueCollection(boolean)
+     */
+    public Object[] getLastCharacterValues() {
+        return characterType.values;
+    }
+    
+    /**
+     * returns the value objects of the attribute that was fed last.
+     * 
+     * @return
+     *      null if the values are not collected or not available.
+     *      
+     * @see #setValueCollection(boolean)
+     */
+    public Object[] getLastAttributeValues() {
+        return attributeType.values;
+    }
+    
+    /**
+     * turns on/off the collection of value objects.
+     * 
+     * <p>
+     * When turned on, datatypes create the value objects of attributes and
+     * text instead of just checking their validity, and those objects are
+     * kept so that the application doesn't need to parse the literals again.
+     * Values of streamed text are not available.
+     * By default, values are not collected.
+     */
+    public final void setValueCollection( boolean collectValues ) {
+        characterType.collectValues = collectValues;
+        attributeType.collectValues = collectValues;
+    }
+    
     protected void verifyText() throws SAXException {
     
         characterType.types = null;
+        characterType.values = null;
+        if (textValidator != null) {
+            verifyStreamedText();
+            return;
+        }
         switch (stringCareLevel) {
             case Acceptor.STRING_PROHIBITED :
                 // only whitespace is allowed.
@@ -127,7 +325,10 @@ public class Verifier extends AbstractVerifier implements IVerifier {
                     final char ch = text.charAt(i);
                     if (ch != ' ' && ch != '\t' && ch != '\r' && ch != '\n') {
                         // error
-                        onError(null, localizeMessage(ERR_UNEXPECTED_TEXT, null), new ErrorInfo.BadText(text));
+                        if (maxErrors != 0)
+                            onError(ERR_UNEXPECTED_TEXT, null, new ErrorInfo.BadText(text));
+                        else
+                            onError(null, localizeMessage(ERR_UNEXPECTED_TEXT, null), new ErrorInfo.BadText(text));
                         break; // recover by ignoring this token
                     }
                 }
@@ -137,6 +338,14 @@ public class Verifier extends AbstractVerifier implements IVerifier {
                 final String txt = new String(text);
                 if (!current.onText2(txt, this, null, characterType)) {
                     // error
+                    if (maxErrors != 0) {
+                        // the rest of the content is not checked,
+                        // as it could only cause spurious errors.
+                        characterType.types = null;
+                        skipContent();
+                        onError(ERR_UNEXPECTED_TEXT, null, new ErrorInfo.BadText(text));
+                        break;
+                    }
                     // diagnose error, if possible
                     StringRef err = new StringRef();
                     characterType.types = null;
@@ -161,6 +370,22 @@ public class Verifier extends AbstractVerifier implements IVerifier {
             text = new StringBuffer();
     }
     
+    /**
+     * verifies the text that was passed to the text validator.
+     */
+    private void verifyStreamedText() throws SAXException {
+        DatatypeStreamingValidator v = textValidator;
+        textValidator = null;
+        
+        StringRef err = (maxErrors != 0) ? null : new StringRef();
+        if (!((StreamingAcceptor)current).onStreamedText(v, err, characterType)) {
+            characterType.types = null;
+            if (maxErrors != 0)
+                skipContent();
+            onError(err, localizeMessage(ERR_UNEXPECTED_TEXT, null), new ErrorInfo.BadText(""));
+        }
+    }
+    
     public void startElement(String namespaceUri, String localName, String qName, Attributes atts) throws SAXException {
         
         // work gracefully with misconfigured parsers that don't support namespaces,
@@ -175,6 +400,12 @@ public class Verifier extends AbstractVerifier implements IVerifier {
         
         super.startElement(namespaceUri, localName, qName, atts);
     
+        if (skipDepth != 0) {
+            // an element inside the one that is being skipped.
+            skipDepth++;
+            return;
+        }
+    
         if (com.sun.msv.driver.textui.Debug.debug)
             System.out.println(
                 "\n-- startElement(" + qName + ")" + locator.getLineNumber() + ":" + locator.getColumnNumber());
@@ -184,6 +415,12 @@ public class Verifier extends AbstractVerifier implements IVerifier {
         // push context
         stack = new Context(stack, current, stringCareLevel, panicLevel);
     
+        if (contentSkipped) {
+            // the content of the current element is skipped.
+            skipDepth = 1;
+            return;
+        }
+    
         sti.reinit(namespaceUri, localName, qName, atts, this);
     
         // get Acceptor that will be used to validate the contents of this element.
@@ -196,6 +433,15 @@ public class Verifier extends AbstractVerifier implements IVerifier {
             if (com.sun.msv.driver.textui.Debug.debug)
                 System.out.println("-- no children accepted: error recovery");
     
+            if (maxErrors != 0) {
+                // skip this element. The parent acceptor is not changed
+                // by a failed createChildAcceptor.
+                stringCareLevel = Acceptor.STRING_IGNORE;
+                skipDepth = 1;
+                onError(ERR_UNEXPECTED_STARTTAG, new Object[] { qName }, new ErrorInfo.BadTagName(sti));
+                return;
+            }
+    
             // let acceptor recover from this error.
             StringRef ref = new StringRef();
             next = current.createChildAcceptor(sti, ref);
@@ -213,6 +459,15 @@ public class Verifier extends AbstractVerifier implements IVerifier {
             }
         }
     
+        if (opaqueSkipping && isOpaque(next)) {
+            // neither attributes nor the content need to be validated.
+            stack.panicLevel = panicLevel;
+            stringCareLevel = Acceptor.STRING_IGNORE;
+            opaqueAcceptor = next;
+            skipDepth = 1;
+            return;
+        }
+    
         onNextAcceptorReady(sti, next);
     
         // feed attributes
@@ -226,6 +481,16 @@ public class Verifier extends AbstractVerifier implements IVerifier {
             if (com.sun.msv.driver.textui.Debug.debug)
                 System.out.println("-- required attributes missing: error recovery");
     
+            if (maxErrors != 0) {
+                // the content of this element cannot be validated
+                // without the recovery. skip it.
+                stack.panicLevel = panicLevel;
+                current = next;
+                skipContent();
+                onError(ERR_MISSING_ATTRIBUTE, new Object[] { qName }, new ErrorInfo.MissingAttribute(sti));
+                return;
+            }
+    
             // let the acceptor recover from the error.
             StringRef ref = new StringRef();
             next.onEndAttributes(sti, ref);
@@ -238,8 +503,13 @@ public class Verifier extends AbstractVerifier implements IVerifier {
         stack.panicLevel = panicLevel; // back-patching.
     
         stringCareLevel = next.getStringCareLevel();
-        if (stringCareLevel == Acceptor.STRING_IGNORE)
+        if (stringCareLevel == Acceptor.STRING_IGNORE) {
             characterType.types = new Datatype[] { StringType.theInstance };
+            characterType.values = null;
+        }
+        else
+        if (stringCareLevel == Acceptor.STRING_STRICT && streamingMode && next instanceof StreamingAcceptor)
+            textValidator = ((StreamingAcceptor)next).createTextValidator(this);
         current = next;
     }
     
@@ -283,11 +553,22 @@ public class Verifier extends AbstractVerifier implements IVerifier {
             System.out.println("-- processing attribute: @" + qName);
     
         attributeType.types = null;
+        attributeType.values = null;
         if (!child.onAttribute2(uri, localName, qName, value, this, null, attributeType)) {
             // error
             if (com.sun.msv.driver.textui.Debug.debug)
                 System.out.println("-- bad attribute: error recovery");
     
+            if (maxErrors != 0) {
+                // the acceptor is not changed by the failed attempt,
+                // so the attribute is simply ignored.
+                onError(
+                    ERR_UNEXPECTED_ATTRIBUTE,
+                    new Object[] { qName },
+                    new ErrorInfo.BadAttribute(sti, qName, uri, localName, value));
+                return attributeType.types;
+            }
+    
             // let the acceptor recover from the error.
             StringRef ref = new StringRef();
             child.onAttribute2(uri, localName, qName, value, this, ref, null);
@@ -316,6 +597,29 @@ public class Verifier extends AbstractVerifier implements IVerifier {
             System.out.println(
                 "\n-- endElement(" + qName + ")" + locator.getLineNumber() + ":" + locator.getColumnNumber());
     
+        if (skipDepth != 0) {
+            if (--skipDepth == 0) {
+                // the end of the skipped element.
+                stringCareLevel = stack.stringCareLevel;
+                if (opaqueAcceptor != null) {
+                    Acceptor child = opaqueAcceptor;
+                    opaqueAcceptor = null;
+                    panicLevel = Math.max(panicLevel, stack.panicLevel);
+                    stack = stack.previous;
+                    stepForward(child, qName);
+                } else
+                    stack = stack.previous;
+            }
+            super.endElement(namespaceUri, localName, qName);
+            return;
+        }
+    
+        if (maxErrors != 0) {
+            endElementFastFail(namespaceUri, localName, qName);
+            super.endElement(namespaceUri, localName, qName);
+            return;
+        }
+    
         verifyText();
     
         if (!current.isAcceptState(null) && panicLevel == 0) {
@@ -337,16 +641,85 @@ public class Verifier extends AbstractVerifier implements IVerifier {
         panicLevel = Math.max(panicLevel, stack.panicLevel);
         stack = stack.previous;
     
-        if (!current.stepForward(child, null)) {
-            // error
-            StringRef ref = new StringRef();
-            current.stepForward(child, ref); // force recovery
+        stepForward(child, qName);
+    
+        super.endElement(namespaceUri, localName, qName);
+    }
     
-            onError(ref, localizeMessage(ERR_UNEXPECTED_ELEMENT, new Object[] { qName }), null);
-        } else
+    /**
+     * steps the current acceptor forward by the acceptor of a child
+     * that has just ended, and reports an error if it fails.
+     */
+    private void stepForward(Acceptor child, String qName) throws SAXException {
+        if (current.stepForward(child, null)) {
             panicLevel = Math.max(panicLevel - 1, 0);
+            return;
+        }
     
-        super.endElement(namespaceUri, localName, qName);
+        if (maxErrors != 0) {
+            // the parent acceptor is left unchanged.
+            onError(ERR_UNEXPECTED_ELEMENT, new Object[] { qName }, null);
+            return;
+        }
+    
+        // error
+        StringRef ref = new StringRef();
+        current.stepForward(child, ref); // force recovery
+    
+        onError(ref, localizeMessage(ERR_UNEXPECTED_ELEMENT, new Object[] { qName }), null);
+    }
+    
+    /** checks if the acceptor validates an opaque element. */
+    private static boolean isOpaque(Acceptor acceptor) {
+        Object type = acceptor.getOwnerType();
+        return type instanceof ElementExp && ((ElementExp)type).isOpaque();
+    }
+    
+    /**
+     * skips the rest of the content of the current element
+     * in the fast-fail mode.
+     */
+    private void skipContent() {
+        contentSkipped = true;
+        stringCareLevel = Acceptor.STRING_IGNORE;
+    }
+    
+    /**
+     * the fast-fail version of the endElement method,
+     * which doesn't diagnose errors.
+     */
+    private void endElementFastFail(String namespaceUri, String localName, String qName) throws SAXException {
+        verifyText();
+    
+        boolean error = contentSkipped;
+        if (!contentSkipped && !current.isAcceptState(null)) {
+            error = true;
+            onError(
+                ERR_UNCOMPLETED_CONTENT,
+                new Object[] { qName },
+                new ErrorInfo.IncompleteContentModel(qName, namespaceUri, localName));
+        }
+        contentSkipped = false;
+        Acceptor child = current;
+    
+        // pop context
+        current = stack.acceptor;
+        stringCareLevel = stack.stringCareLevel;
+        stack = stack.previous;
+    
+        // if this step fails, the parent acceptor is left unchanged,
+        // which is as if this element was skipped.
+        // An error is reported only if it isn't caused by the error above.
+        if (!current.stepForward(child, null) && !error)
+            onError(ERR_UNEXPECTED_ELEMENT, new Object[] { qName }, null);
+    }
+    
+    /**
+     * signals an error in the fast-fail mode.
+     * The message is formatted lazily from the error code.
+     */
+    private ValidityViolation onError(String errorCode, Object[] args, ErrorInfo ei) throws SAXException {
+        return onError(new ValidityViolation(locator, errorCode, args, ei));
     }
     
     /**
@@ -364,25 +737,50 @@ public class Verifier extends AbstractVerifier implements IVerifier {
     }
     
     protected ValidityViolation onError(String msg, ErrorInfo ei) throws SAXException {
-        ValidityViolation vv = new ValidityViolation(locator, msg, ei);
+        return onError(new ValidityViolation(locator, msg, ei));
+    }
+    
+    private ValidityViolation onError(ValidityViolation vv) throws SAXException {
         hadError = true;
     
         if (errorHandler != null && panicLevel == 0)
             errorHandler.error(vv);
     
-        panicLevel = initialPanicLevel;
+        if (maxErrors != 0)
+            countError(vv);
+        else
+            panicLevel = initialPanicLevel;
         return vv;
     }
     
+    /**
+     * counts an error in the fast-fail mode, and aborts the validation
+     * once the maximum number of errors are found.
+     * 
+     * <p>
+     * Derived classes that report errors by themselves can call this method
+     * so that those errors are counted, too.
+     */
+    protected final void countError(ValidityViolation vv) throws SAXException {
+        if (maxErrors != 0 && ++errorCount >= maxErrors)
+            throw new ValidationUnrecoverableException(vv);
+    }
+    
     public Object getCurrentElementType() {
         return current.getOwnerType();
     }
     
     public void characters(char[] buf, int start, int len) throws SAXException {
+        if (textValidator != null)
+            textValidator.addCharacters(buf, start, len);
+        else
         if (stringCareLevel != Acceptor.STRING_IGNORE)
             text.append(buf, start, len);
     }
     public void ignorableWhitespace(char[] buf, int start, int len) throws SAXException {
+        if (textValidator != null)
+            textValidator.addCharacters(buf, start, len);
+        else
         if (stringCareLevel != Acceptor.STRING_IGNORE && stringCareLevel != Acceptor.STRING_PROHIBITED)
             // white space is allowed even if the current mode is STRING_PROHIBITED.
             text.append(buf, start, len);
@@ -393,7 +791,12 @@ public class Verifier extends AbstractVerifier implements IVerifier {
         hadError = false;
         isFinished = false;
         text = new StringBuffer();
+        textValidator = null;
         stack = null;
+        errorCount = 0;
+        skipDepth = 0;
+        contentSkipped = false;
+        opaqueAcceptor = null;
         if (duplicateIds != null)
             duplicateIds.clear();
     }
@@ -403,6 +806,10 @@ public class Verifier extends AbstractVerifier implements IVerifier {
         // since Verifier maybe reused, initialization is better done here
         // rather than constructor.
         init();
+        if (listener != null) {
+            documentStartTime = System.nanoTime();
+            listener.onDocumentStart();
+        }
         // if Verifier is used without "divide&validate", 
         // this method is called and the initial acceptor
         // is set by this method.
@@ -413,6 +820,20 @@ public class Verifier extends AbstractVerifier implements IVerifier {
     }
     
     public void endDocument() throws SAXException {
+        verifyEndDocument();
+        isFinished = true;
+        
+        if (listener != null)
+            listener.onDocumentEnd(!hadError, System.nanoTime() - documentStartTime);
+    }
+    
+    /**
+     * performs the checks that can only be done at the end of the document.
+     * 
+     * <p>
+     * Derived classes can override this method to add their own checks.
+     */
+    protected void verifyEndDocument() throws SAXException {
         // ID/IDREF check
         if (performIDcheck) {
             if (!ids.keySet().containsAll(idrefs)) {
@@ -432,8 +853,6 @@ public class Verifier extends AbstractVerifier implements IVerifier {
                 }
             }
         }
-    
-        isFinished = true;
     }
     
     /**
@@ -443,6 +862,16 @@ public class Verifier extends AbstractVerifier implements IVerifier {
      */
     private Set<String> duplicateIds;
     
+    /**
+     * gets the duplicate id values found so far.
+     * 
+     * @return
+     *      null if no duplicate id is found.
+     */
+    Set<String> getDuplicateIds() {
+        return duplicateIds;
+    }
+    
     public void onDuplicateId(String id) {
         if (duplicateIds == null) {
             duplicateIds = new java.util.HashSet<String>();
@@ -64,6 +64,9 @@ public class VerifierFilter extends XMLFilterImpl implements IVerifier {
     public final void setPanicMode( boolean usePanicMode ) {
         verifier.setPanicMode(usePanicMode);
     }
+    public final void setFastFail( int maxErrors ) {
+        verifier.setFastFail(maxErrors);
+    }
 
     
     public IVerifier getVerifier() { return verifier; }
@@ -9,6 +9,7 @@
  */
 package com.sun.msv.verifier.identity;
 
+import org.relaxng.datatype.Datatype;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.LocatorImpl;
@@ -17,20 +18,21 @@ import com.sun.msv.grammar.xmlschema.KeyConstraint;
 import com.sun.msv.grammar.xmlschema.KeyRefConstraint;
 
 /**
- * Coordinator of FieldMatcher.
+ * XPath matcher that tests the fields of a key.
  * 
- * This object is created when SelectorMatcher finds a match.
- * This object then creates FieldMatcher for each field, and
- * let them find their field matchs.
- * When leaving the element that matched the selector, it collects
- * field values and registers a key value to IDConstraintChecker.
+ * This object is created when SelectorsMatcher finds a match to the selector
+ * of a constraint. This object then finds matches to all the fields of the
+ * constraint at once, and collects actual text (or attribute values)
+ * that matches them.
+ * When leaving the element that matched the selector, it registers
+ * the collected values as a key value to IDConstraintChecker.
  * 
  * <p>
  * Depending on the type of the constraint, it works differently.
  * 
  * @author <a href="mailto:kohsuke.kawaguchi@eng.sun.com">Kohsuke KAWAGUCHI</a>
  */
-public class FieldsMatcher extends MatcherBundle {
+public class FieldsMatcher extends PathMatcher {
     
     /**
      * location of the start tag.
@@ -43,8 +45,22 @@ public class FieldsMatcher extends MatcherBundle {
      */
     protected final SelectorMatcher selector;
     
+    /**
+     * the matched value of each field. If an item is null, then it means
+     * nothing is matched yet.
+     */
+    protected final Object[] values;
+    
+    /**
+     * an item is set to non-null if it's found that an element
+     * is matched to the field. It is then used to collect
+     * the contents of the matched element until it encounters
+     * the endElement method.
+     */
+    private final StringBuffer[] elementTexts;
+    
     protected FieldsMatcher( SelectorMatcher selector, String namespaceURI, String localName ) throws SAXException {
-        super(selector.owner);
+        super(selector.owner,selector.fields);
         
         this.selector = selector;
         if(owner.getLocator()==null)
@@ -52,19 +68,80 @@ public class FieldsMatcher extends MatcherBundle {
         else
             this.startTag = new LocatorImpl(owner.getLocator());
         
-        children = new Matcher[selector.idConst.fields.length];
-        for( int i=0; i<selector.idConst.fields.length; i++ )
-            children[i] = new FieldMatcher(
-                this,selector.idConst.fields[i], namespaceURI,localName);
+        values = new Object[selector.idConst.fields.length];
+        elementTexts = new StringBuffer[values.length];
+        
+        // test the initial match
+        super.start(namespaceURI,localName);
+    }
+    
+    /**
+     * this method is called when the element matches a field.
+     */
+    protected void onElementMatched( int label, String namespaceURI, String localName ) throws SAXException {
+        if( com.sun.msv.driver.textui.Debug.debug )
+            System.out.println("field match for "+ selector.idConst.localName );
+        
+        // this field matches this element.
+        // wait for the corresponding endElement call and
+        // obtain text.
+        elementTexts[label] = new StringBuffer();
+    }
+
+    /**
+     * this method is called when the attribute matches a field.
+     */
+    protected void onAttributeMatched(
+        int label, String namespaceURI, String localName, String value, Datatype type ) throws SAXException {
+        
+        if( com.sun.msv.driver.textui.Debug.debug )
+            System.out.println("field match for "+ selector.idConst.localName );
+        
+        setValue( label, value, type );
+    }
+    
+    protected void endElement( Datatype type ) throws SAXException {
+        for( int i=0; i<elementTexts.length; i++ )
+            if( elementTexts[i]!=null ) {
+                setValue( i, elementTexts[i].toString(), type );
+                elementTexts[i] = null;
+            }
+        super.endElement(type);
+    }
+
+    protected void characters( char[] buf, int start, int len ) throws SAXException {
+        for( int i=0; i<elementTexts.length; i++ )
+            if( elementTexts[i]!=null )
+                // collect text
+                elementTexts[i].append(buf,start,len);
+    }
+    
+    /** sets the value of a field. */
+    private void setValue( int idx, String lexical, Datatype type ) throws SAXException {
+        if(values[idx]!=null) {
+            // not the first match.
+            // this field matches more than once.
+            owner.reportError( null, IDConstraintChecker.ERR_DOUBLE_MATCH,
+                new Object[]{
+                    selector.idConst.namespaceURI,
+                    selector.idConst.localName,
+                    new Integer(idx+1)} );
+            return;
+        }
+        
+        if(type==null) {
+            // this is possible only when we are recovering from errors.
+            values[idx] = lexical;
+            if(com.sun.msv.driver.textui.Debug.debug)
+                System.out.println("no type info available");
+        } else
+            values[idx] = type.createValue(lexical,owner);
     }
     
     protected void onRemoved() throws SAXException {
-        Object[] values = new Object[children.length];
-            
-        // copy matched values into "values" variable,
-        // while checking any unmatched fields.
-        for( int i=0; i<children.length; i++ )
-            if( (values[i]=((FieldMatcher)children[i]).value) == null ) {
+        // check any unmatched fields.
+        for( int i=0; i<values.length; i++ )
+            if( values[i] == null ) {
                 if(!(selector.idConst instanceof KeyConstraint))
                     // some fields didn't match to anything.
                     // In case of KeyRef and Unique constraints,
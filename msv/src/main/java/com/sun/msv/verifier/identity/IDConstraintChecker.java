@@ -59,6 +59,14 @@ public class IDConstraintChecker extends Verifier {
         matchers.remove(matcher);
     }
     
+    /**
+     * returns true if an identity constraint is active at the current
+     * element, in which case the rest of the content can affect its outcome.
+     */
+    public boolean isInConstraintScope() {
+        return !matchers.isEmpty();
+    }
+    
     /**
      * a map from <code>SelectorMatcher</code> to set of <code>KeyValue</code>s.
      * 
@@ -134,8 +142,8 @@ public class IDConstraintChecker extends Verifier {
         keyValues.clear();
     }
     
-    public void endDocument() throws SAXException {
-        super.endDocument();
+    protected void verifyEndDocument() throws SAXException {
+        super.verifyEndDocument();
         
         // keyref check
         @SuppressWarnings("unchecked")
@@ -148,6 +156,9 @@ public class IDConstraintChecker extends Verifier {
             final SelectorMatcher key = (SelectorMatcher)scopes[i].getKey();
             final Set<?> value = (Set<?>)scopes[i].getValue();
             
+            if( listener!=null )
+                listener.onIdentityConstraintTable( key.idConst, value.size() );
+            
             if( key.idConst instanceof KeyRefConstraint ) {
                 // get the set of corresponding keys.
                 Set<Object> keys = keyValues.get( referenceScope.get(key) );
@@ -179,12 +190,9 @@ public class IDConstraintChecker extends Verifier {
         Object e = next.getOwnerType();
         if( e instanceof ElementDeclExp.XSElementExp ) {
             ElementDeclExp.XSElementExp exp = (ElementDeclExp.XSElementExp)e;
-            if( exp.identityConstraints!=null ) {
+            if( exp.identityConstraints!=null && !exp.identityConstraints.isEmpty() ) {
                 int m = exp.identityConstraints.size();
-                for( int i=0; i<m; i++ )
-                    add( new SelectorMatcher( this,
-                            (IdentityConstraint)exp.identityConstraints.get(i),
-                            sti.namespaceURI, sti.localName ) );
+                add( new SelectorsMatcher( this, exp, sti.namespaceURI, sti.localName ) );
                 
                 // SelectorMathcers will register themselves as active scopes 
                 // in their constructor.
@@ -226,6 +234,8 @@ public class IDConstraintChecker extends Verifier {
     
     public void characters( char[] buf, int start, int len ) throws SAXException {
         super.characters(buf,start,len);
+        if( isSkipping() )
+            return;
         
         int m = matchers.size();
         for( int i=0; i<m; i++ )
@@ -235,7 +245,11 @@ public class IDConstraintChecker extends Verifier {
 
     public void endElement( String namespaceUri, String localName, String qName )
                                 throws SAXException {
+        // matchers haven't seen the start tag of a skipped element.
+        boolean skipped = isSkipping();
         super.endElement(namespaceUri,localName,qName);
+        if( skipped )
+            return;
         
         // getLastCharacterType may sometimes return null. For example,
         // 1) this element should be empty and there was only whitespace characters.
@@ -264,8 +278,10 @@ public class IDConstraintChecker extends Verifier {
     
     protected void reportError( Locator loc, ErrorInfo ei, String propKey, Object[] args ) throws SAXException {
         hadError = true;
-        errorHandler.error( new ValidityViolation( loc,
-                localizeMessage(propKey,args), ei ) );
+        ValidityViolation vv = new ValidityViolation( loc,
+                localizeMessage(propKey,args), ei );
+        errorHandler.error(vv);
+        countError(vv);
     }
     
     public static String localizeMessage( String propertyName, Object arg ) {
@@ -0,0 +1,268 @@
+package com.sun.msv.verifier.identity;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.sun.msv.grammar.NameClass;
+import com.sun.msv.grammar.xmlschema.ElementDeclExp;
+import com.sun.msv.grammar.xmlschema.IdentityConstraint;
+import com.sun.msv.grammar.xmlschema.XPath;
+import com.sun.msv.util.StringPair;
+
+/**
+ * deterministic automaton that matches a set of labeled XPaths at once.
+ *
+ * <p>
+ * The XPaths are the restricted subset of XML Schema Part 1.
+ * Each position of the automaton is a step of a path (or the implicit
+ * root that precedes the first step), and each state is the set of the
+ * active positions after a sequence of start tags. For example, when
+ * the path is "//A/B",
+ * <pre>
+ *   position:       [0]:root    [1]:A    [2]:B
+ *   initial state    1           0        0
+ *   after X          1           0        0
+ *   after X/A        1           1        0
+ *   after X/A/B      1           0        1   (B matches the path)
+ * </pre>
+ * The root position stays active because of "//".
+ *
+ * <p>
+ * States are created when they are first reached, and transitions
+ * are remembered by the names of the elements. So once the automaton
+ * is warmed up, a start tag is processed by a single look-up no matter
+ * how many paths there are. All the matchers of a grammar share the
+ * same automata, and the look-up is thread-safe.
+ *
+ * <p>
+ * Labels group paths: a label matches if one of its paths matches.
+ * The selectors of all the identity constraints of an element are
+ * compiled into one automaton, whose labels are the indexes of the constraints.
+ * The fields of an identity constraint are compiled into another automaton,
+ * whose labels are the indexes of the fields.
+ */
+final class PathAutomaton
+{
+    /**
+     * the maximum number of states that are remembered. States beyond this
+     * limit are computed every time they are reached.
+     */
+    static final int MAX_STATES = 256;
+
+    /** the maximum number of transitions that a state remembers. */
+    private static final int MAX_TRANSITIONS = 256;
+
+    /** a state of the automaton. */
+    static final class State {
+        /** active positions. */
+        private final BitSet active;
+
+        /**
+         * labels of the paths that match the current element, in ascending order.
+         * null if none.
+         */
+        final int[] elementMatches;
+
+        /**
+         * labels of the paths whose element part matches the current element
+         * and whose attribute step has to be tested, in ascending order.
+         * null if none.
+         */
+        final int[] attributeLabels;
+        /** the attribute steps of each label of {@link #attributeLabels}. */
+        final NameClass[][] attributeSteps;
+
+        /** true if neither this element nor its descendants can match. */
+        final boolean dead;
+
+        /** remembered transitions. null if this state is not remembered. */
+        private final Map<StringPair,State> transitions;
+
+        private State( PathAutomaton owner, BitSet active, boolean remembered ) {
+            this.active = active;
+            this.dead = active.isEmpty();
+            this.transitions = remembered ? new ConcurrentHashMap<StringPair,State>() : null;
+
+            int[] matches = new int[owner.paths.length];
+            int nMatches = 0;
+            int[] attLabels = new int[owner.paths.length];
+            List<List<NameClass>> attSteps = new ArrayList<List<NameClass>>();
+
+            // paths are sorted by labels.
+            for( int p=0; p<owner.paths.length; p++ ) {
+                XPath path = owner.paths[p];
+                if( !active.get(owner.offsets[p]+path.steps.length) )
+                    continue;
+
+                int label = owner.labels[p];
+                if( path.attributeStep==null ) {
+                    if( nMatches==0 || matches[nMatches-1]!=label )
+                        matches[nMatches++] = label;
+                } else {
+                    int n = attSteps.size();
+                    if( n==0 || attLabels[n-1]!=label ) {
+                        attLabels[n++] = label;
+                        attSteps.add(new ArrayList<NameClass>());
+                    }
+                    attSteps.get(n-1).add(path.attributeStep);
+                }
+            }
+
+            if( nMatches==0 )
+                elementMatches = null;
+            else {
+                elementMatches = new int[nMatches];
+                System.arraycopy(matches,0,elementMatches,0,nMatches);
+            }
+
+            if( attSteps.isEmpty() ) {
+                attributeLabels = null;
+                attributeSteps = null;
+            } else {
+                attributeLabels = new int[attSteps.size()];
+                attributeSteps = new NameClass[attSteps.size()][];
+                for( int i=0; i<attributeLabels.length; i++ ) {
+                    attributeLabels[i] = attLabels[i];
+                    attributeSteps[i] = attSteps.get(i).toArray(new NameClass[attSteps.get(i).size()]);
+                }
+            }
+        }
+
+        /** checks if the given label matches an attribute of the current element. */
+        boolean matchAttribute( int idx, String namespaceURI, String localName ) {
+            NameClass[] steps = attributeSteps[idx];
+            for( int i=0; i<steps.length; i++ )
+                if( steps[i].getMatcher().accepts(namespaceURI,localName) )
+                    return true;
+            return false;
+        }
+    }
+
+    /** paths, sorted by their labels. */
+    private final XPath[] paths;
+    /** labels of the paths. */
+    private final int[] labels;
+    /** index of the root position of each path. */
+    private final int[] offsets;
+    /** the number of positions. */
+    private final int size;
+
+    /** remembered states. */
+    private final ConcurrentHashMap<BitSet,State> states = new ConcurrentHashMap<BitSet,State>();
+
+    /** the state at the element where the matching starts. */
+    final State initial;
+
+    /**
+     * @param pathsByLabel
+     *      paths of each label, indexed by labels.
+     */
+    PathAutomaton( XPath[][] pathsByLabel ) {
+        int n=0;
+        for( int i=0; i<pathsByLabel.length; i++ )
+            n += pathsByLabel[i].length;
+
+        paths = new XPath[n];
+        labels = new int[n];
+        offsets = new int[n];
+        int p=0, pos=0;
+        for( int i=0; i<pathsByLabel.length; i++ ) {
+            for( int j=0; j<pathsByLabel[i].length; j++ ) {
+                paths[p] = pathsByLabel[i][j];
+                labels[p] = i;
+                offsets[p] = pos;
+                pos += paths[p].steps.length+1;
+                p++;
+            }
+        }
+        size = pos;
+
+        BitSet active = new BitSet(size);
+        for( p=0; p<paths.length; p++ )
+            active.set(offsets[p]);
+        initial = getState(active);
+    }
+
+    /** returns the state after a child element of the given state. */
+    State next( State s, String namespaceURI, String localName ) {
+        if( s.dead )
+            return s;
+
+        StringPair name = null;
+        if( s.transitions!=null ) {
+            name = new StringPair(namespaceURI,localName);
+            State t = s.transitions.get(name);
+            if( t!=null )   return t;
+        }
+
+        BitSet next = new BitSet(size);
+        for( int p=0; p<paths.length; p++ ) {
+            final NameClass[] steps = paths[p].steps;
+            // the descendants of the element never match "."
+            if( steps.length==0 )
+                continue;
+
+            final int off = offsets[p];
+            if( paths[p].isAnyDescendant )
+                // any element can be the implicit root of "//".
+                next.set(off);
+            for( int i=1; i<=steps.length; i++ )
+                if( s.active.get(off+i-1) && steps[i-1].getMatcher().accepts(namespaceURI,localName) )
+                    next.set(off+i);
+        }
+
+        State t = getState(next);
+        if( name!=null && s.transitions.size()<MAX_TRANSITIONS )
+            s.transitions.put(name,t);
+        return t;
+    }
+
+    /** returns the state for the given positions. */
+    private State getState( BitSet active ) {
+        State s = states.get(active);
+        if( s!=null )   return s;
+
+        if( states.size()>=MAX_STATES )
+            return new State(this,active,false);
+
+        s = new State(this,active,true);
+        State old = states.putIfAbsent(active,s);
+        return (old!=null) ? old : s;
+    }
+
+    /** returns the number of remembered states. */
+    int size() {
+        return states.size();
+    }
+
+    /**
+     * compiled automata of the identity constraints of an element declaration.
+     * The first item is the automaton of the selectors, and the rest are the
+     * automata of the fields of each constraint.
+     */
+    static PathAutomaton[] get( ElementDeclExp.XSElementExp exp ) {
+        PathAutomaton[] r = (PathAutomaton[])exp.identityConstraintsTag;
+        if( r!=null )   return r;
+
+        // compiling the same constraints twice is harmless.
+        int len = exp.identityConstraints.size();
+        r = new PathAutomaton[len+1];
+        XPath[][] selectors = new XPath[len][];
+        for( int i=0; i<len; i++ ) {
+            IdentityConstraint c = (IdentityConstraint)exp.identityConstraints.get(i);
+            selectors[i] = c.selectors;
+
+            XPath[][] fields = new XPath[c.fields.length][];
+            for( int j=0; j<fields.length; j++ )
+                fields[j] = c.fields[j].paths;
+            r[i+1] = new PathAutomaton(fields);
+        }
+        r[0] = new PathAutomaton(selectors);
+
+        exp.identityConstraintsTag = r;
+        return r;
+    }
+}
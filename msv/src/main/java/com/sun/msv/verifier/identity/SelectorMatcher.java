@@ -9,33 +9,35 @@
  */
 package com.sun.msv.verifier.identity;
 
-import org.relaxng.datatype.Datatype;
-import org.xml.sax.SAXException;
-
 import com.sun.msv.grammar.xmlschema.IdentityConstraint;
 
 /**
- * XPath matcher that tests the selector of an identity constraint.
+ * a scope of an identity constraint.
  * 
  * This object is created whenever an element with identity constraints is found.
  * XML Schema guarantees that we can see if an element has id constraints at the
  * startElement method.
  * 
- * This mathcer then monitor startElement/endElement and find matches to the
- * specified XPath. Every time it finds a match ("target node" in XML Schema
- * terminology), it creates a FieldsMatcher.
+ * The selectors of all the constraints of the element are tested together by
+ * a {@link SelectorsMatcher}. Every time it finds a match to the selector of this
+ * constraint ("target node" in XML Schema terminology), it creates a FieldsMatcher
+ * for this object. Key values are collected for each scope.
  * 
  * @author <a href="mailto:kohsuke.kawaguchi@eng.sun.com">Kohsuke KAWAGUCHI</a>
  */
-public class SelectorMatcher extends PathMatcher {
+public class SelectorMatcher {
+    
+    protected final IDConstraintChecker owner;
     
     protected IdentityConstraint idConst;
+    
+    /** the automaton that matches the fields of the identity constraint. */
+    final PathAutomaton fields;
 
-    SelectorMatcher(
-                IDConstraintChecker owner, IdentityConstraint idConst,
-                String namespaceURI, String localName ) throws SAXException {
-        super(owner, idConst.selectors );
+    SelectorMatcher( IDConstraintChecker owner, IdentityConstraint idConst, PathAutomaton fields ) {
+        this.owner = owner;
         this.idConst = idConst;
+        this.fields = fields;
         
         // register this scope as active.
         owner.pushActiveScope(idConst,this);
@@ -43,31 +45,10 @@ public class SelectorMatcher extends PathMatcher {
         if(com.sun.msv.driver.textui.Debug.debug) {
             System.out.println("new id scope is available for {"+idConst.localName+"}");
         }
-
-        super.start(namespaceURI,localName);
     }
 
-    protected void onRemoved() throws SAXException {
-        super.onRemoved();
-        // this scope is no longer active.
+    /** called when this scope is no longer active. */
+    void onRemoved() {
         owner.popActiveScope(idConst,this);
     }
-
-    
-    protected void onElementMatched( String namespaceURI, String localName ) throws SAXException {
-        if( com.sun.msv.driver.textui.Debug.debug )
-            System.out.println("find a match for a selector: "+idConst.localName);
-            
-        // this element matches the path.
-        owner.add( new FieldsMatcher(this, namespaceURI,localName) );
-    }
-    
-    protected void onAttributeMatched(
-        String namespaceURI, String localName, String value, Datatype type ) {
-        
-        // assertion failed:
-        // selectors cannot contain attribute steps.
-        throw new Error();
-    }
-    
 }
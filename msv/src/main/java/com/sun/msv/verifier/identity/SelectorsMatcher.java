@@ -0,0 +1,57 @@
+package com.sun.msv.verifier.identity;
+
+import org.relaxng.datatype.Datatype;
+import org.xml.sax.SAXException;
+
+import com.sun.msv.grammar.xmlschema.ElementDeclExp;
+import com.sun.msv.grammar.xmlschema.IdentityConstraint;
+
+/**
+ * XPath matcher that tests the selectors of all the identity constraints
+ * of an element.
+ * 
+ * This object is created whenever an element with identity constraints is found,
+ * and creates a {@link SelectorMatcher} for each constraint. Every time it finds
+ * a match to a selector, it creates a FieldsMatcher for the constraint.
+ */
+class SelectorsMatcher extends PathMatcher {
+    
+    /** scopes of the constraints, in the order of the declaration. */
+    private final SelectorMatcher[] selectors;
+    
+    SelectorsMatcher( IDConstraintChecker owner, ElementDeclExp.XSElementExp exp,
+                String namespaceURI, String localName ) throws SAXException {
+        super(owner, PathAutomaton.get(exp)[0]);
+        
+        PathAutomaton[] automata = PathAutomaton.get(exp);
+        selectors = new SelectorMatcher[exp.identityConstraints.size()];
+        for( int i=0; i<selectors.length; i++ )
+            selectors[i] = new SelectorMatcher( owner,
+                (IdentityConstraint)exp.identityConstraints.get(i), automata[i+1] );
+        
+        super.start(namespaceURI,localName);
+    }
+
+    protected void onRemoved() throws SAXException {
+        super.onRemoved();
+        // these scopes are no longer active.
+        for( int i=selectors.length-1; i>=0; i-- )
+            selectors[i].onRemoved();
+    }
+    
+    protected void onElementMatched( int label, String namespaceURI, String localName ) throws SAXException {
+        if( com.sun.msv.driver.textui.Debug.debug )
+            System.out.println("find a match for a selector: "+selectors[label].idConst.localName);
+            
+        // this element matches the path.
+        owner.add( new FieldsMatcher(selectors[label], namespaceURI,localName) );
+    }
+    
+    protected void onAttributeMatched(
+        int label, String namespaceURI, String localName, String value, Datatype type ) {
+        
+        // assertion failed:
+        // selectors cannot contain attribute steps.
+        throw new Error();
+    }
+}
@@ -30,4 +30,24 @@ public class Const
      */
     public static final String PANIC_MODE_FEATURE =
         "http://www.sun.com/xmlns/msv/features/panicMode";
+    
+    /**
+     * Turns on/off the fast-fail mode.
+     * <p>
+     * When this feature is on, the validation is aborted at the first error,
+     * and errors are reported without the detailed diagnosis.
+     * See {@link com.sun.msv.verifier.IVerifier#setFastFail(int)}.
+     * This feature is off by default.
+     */
+    public static final String FAST_FAIL_FEATURE =
+        "http://www.sun.com/xmlns/msv/features/fastFail";
+    
+    /**
+     * The number of errors after which the validation is aborted
+     * in the fast-fail mode. The value must be an Integer, and
+     * 0 turns off the fast-fail mode.
+     * See {@link com.sun.msv.verifier.IVerifier#setFastFail(int)}.
+     */
+    public static final String MAX_ERRORS_PROPERTY =
+        "http://www.sun.com/xmlns/msv/properties/maxErrors";
 }
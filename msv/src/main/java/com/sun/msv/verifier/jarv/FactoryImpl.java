@@ -51,10 +51,16 @@ public abstract class FactoryImpl extends VerifierFactory {
     
     private boolean usePanicMode = true;
     
+    /** the number of errors that aborts the validation. 0 if the fast-fail mode is off. */
+    private int maxErrors = 0;
+    
     public void setFeature( String feature, boolean v )
             throws SAXNotRecognizedException,SAXNotSupportedException {
         if(feature.equals(Const.PANIC_MODE_FEATURE))
             usePanicMode = v;
+        else
+        if(feature.equals(Const.FAST_FAIL_FEATURE))
+            maxErrors = v?1:0;
         else
             super.setFeature(feature,v);
     }
@@ -64,10 +70,31 @@ public abstract class FactoryImpl extends VerifierFactory {
         
         if(feature.equals(Const.PANIC_MODE_FEATURE))
             return usePanicMode;
+        else
+        if(feature.equals(Const.FAST_FAIL_FEATURE))
+            return maxErrors!=0;
         else
             return super.isFeature(feature);
     }
     
+    public void setProperty( String property, Object value )
+            throws SAXNotRecognizedException,SAXNotSupportedException {
+        if(property.equals(Const.MAX_ERRORS_PROPERTY)) {
+            if(!(value instanceof Integer) || ((Integer)value).intValue()<0)
+                throw new SAXNotSupportedException("the value must be a non-negative Integer: "+value);
+            maxErrors = ((Integer)value).intValue();
+        } else
+            super.setProperty(property,value);
+    }
+    
+    public Object getProperty( String property )
+            throws SAXNotRecognizedException,SAXNotSupportedException {
+        if(property.equals(Const.MAX_ERRORS_PROPERTY))
+            return new Integer(maxErrors);
+        else
+            return super.getProperty(property);
+    }
+    
     
     /**
      * To be used to resolve files included/imported by the schema. Can be null.
@@ -100,7 +127,7 @@ public abstract class FactoryImpl extends VerifierFactory {
                 // theoretically this isn't possible because we throw an exception
                 // if an error happens.
                 throw new VerifierConfigurationException("unable to parse the schema");
-            return new SchemaImpl(g,factory,usePanicMode);
+            return new SchemaImpl(g,factory,usePanicMode,maxErrors);
         } catch( WrapperException we ) {
             throw we.e;
         } catch( Exception pce ) {
@@ -34,9 +34,16 @@ public class SchemaImpl implements Schema
     protected SchemaImpl( Grammar grammar, SAXParserFactory factory,
         boolean _usePanicMode ) {
         
+        this(grammar,factory,_usePanicMode,0);
+    }
+    
+    protected SchemaImpl( Grammar grammar, SAXParserFactory factory,
+        boolean _usePanicMode, int _maxErrors ) {
+        
         this.grammar = grammar;
         this.factory = factory;
         this.usePanicMode = _usePanicMode;
+        this.maxErrors = _maxErrors;
     }
     
     public SchemaImpl( Grammar grammar ) {
@@ -49,6 +56,7 @@ public class SchemaImpl implements Schema
     public Verifier newVerifier() throws VerifierConfigurationException {
         IVerifier core = FactoryImpl.createVerifier(grammar);
         core.setPanicMode(usePanicMode);
+        core.setFastFail(maxErrors);
         return new VerifierImpl( core, createXMLReader() );
     }
     
@@ -65,4 +73,5 @@ public class SchemaImpl implements Schema
     }
     
     private boolean usePanicMode;
+    private int maxErrors;
 }
@@ -9,4 +9,21 @@ public class Const
      *        SAXParserImpl
      */
     public static final String SCHEMA_PROPNAME = "http://www.sun.com/xml/msv/schema";
+    
+    /**
+     * The attribute name which is used to turn on/off the single-pass mode
+     * of {@link DocumentBuilderFactoryImpl}. The value must be a Boolean.
+     * 
+     * <p>
+     * By default, a document is parsed into DOM first, then the DOM is
+     * validated by walking it again. When this mode is on, the document
+     * is parsed by SAX and the verifier and the DOM builder receive
+     * the same event stream, so the document is traversed only once.
+     * 
+     * <p>
+     * The mode has no effect if the factory is XInclude aware, doesn't
+     * expand entity references, or has other attributes set, because
+     * the SAX parser can't build the same DOM under those settings.
+     */
+    public static final String SINGLE_PASS_PROPNAME = "http://www.sun.com/xml/msv/singlePass";
 }
@@ -0,0 +1,167 @@
+package com.sun.msv.verifier.jaxp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * builds DOM from SAX2 event stream, honoring the settings of
+ * a DocumentBuilderFactory.
+ *
+ * <p>
+ * Unlike {@link com.sun.msv.util.xml.DOMBuilder}, this class tries to
+ * produce the same tree as the wrapped DocumentBuilder would:
+ * namespace declarations become attributes, adjacent character chunks
+ * are merged into one text node, and comments, processing instructions
+ * and CDATA sections are kept unless the factory says otherwise.
+ */
+class DOMContentHandler extends DefaultHandler implements LexicalHandler
+{
+    private static final String XMLNS_URI = "http://www.w3.org/2000/xmlns/";
+
+    private final Document dom;
+    private Node parent;
+
+    private final boolean namespaceAware;
+    private final boolean ignoringComments;
+    private final boolean ignoringElementContentWhitespace;
+    private final boolean coalescing;
+
+    /** characters that are not yet added to the tree. */
+    private final StringBuffer text = new StringBuffer();
+
+    /** namespace declarations that will be attached to the next element. */
+    private final List<String> pendingPrefixes = new ArrayList<String>();
+
+    /** true while we are inside a CDATA section. */
+    private boolean inCDATA = false;
+    /** true while we are inside the DTD. Comments there are not part of the tree. */
+    private boolean inDTD = false;
+
+    DOMContentHandler( Document document, boolean namespaceAware, boolean ignoringComments,
+        boolean ignoringElementContentWhitespace, boolean coalescing ) {
+        this.dom = document;
+        this.parent = document;
+        this.namespaceAware = namespaceAware;
+        this.ignoringComments = ignoringComments;
+        this.ignoringElementContentWhitespace = ignoringElementContentWhitespace;
+        this.coalescing = coalescing;
+    }
+
+    /**
+     * returns DOM. This method should be called after the parsing was completed.
+     */
+    public Document getDocument() {
+        return dom;
+    }
+
+
+    public void startPrefixMapping( String prefix, String uri ) {
+        pendingPrefixes.add(prefix);
+        pendingPrefixes.add(uri);
+    }
+
+    public void startElement( String ns, String local, String qname, Attributes atts ) {
+        flushText();
+
+        Element e;
+        if(namespaceAware)
+            e = dom.createElementNS( ns.length()==0?null:ns, qname );
+        else
+            e = dom.createElement(qname);
+
+        for( int i=0; i<pendingPrefixes.size(); i+=2 ) {
+            String prefix = pendingPrefixes.get(i);
+            String uri = pendingPrefixes.get(i+1);
+            String name = prefix.length()==0 ? "xmlns" : "xmlns:"+prefix;
+            if(namespaceAware)
+                e.setAttributeNS( XMLNS_URI, name, uri );
+            else
+                e.setAttribute( name, uri );
+        }
+        pendingPrefixes.clear();
+
+        for( int i=0; i<atts.getLength(); i++ ) {
+            if(namespaceAware) {
+                String uri = atts.getURI(i);
+                e.setAttributeNS( uri.length()==0?null:uri, atts.getQName(i), atts.getValue(i) );
+            } else
+                e.setAttribute( atts.getQName(i), atts.getValue(i) );
+        }
+
+        parent.appendChild(e);
+        parent = e;
+    }
+
+    public void endElement( String ns, String local, String qname ) {
+        flushText();
+        parent = parent.getParentNode();
+    }
+
+    public void characters( char[] buf, int start, int len ) {
+        text.append(buf,start,len);
+    }
+
+    public void ignorableWhitespace( char[] buf, int start, int len ) {
+        if(!ignoringElementContentWhitespace)
+            text.append(buf,start,len);
+    }
+
+    public void processingInstruction( String target, String data ) {
+        flushText();
+        parent.appendChild( dom.createProcessingInstruction(target,data) );
+    }
+
+    public void endDocument() {
+        flushText();
+    }
+
+
+    public void startCDATA() {
+        if(!coalescing) {
+            flushText();
+            inCDATA = true;
+        }
+    }
+
+    public void endCDATA() {
+        if(inCDATA) {
+            parent.appendChild( dom.createCDATASection(text.toString()) );
+            text.setLength(0);
+            inCDATA = false;
+        }
+    }
+
+    public void comment( char[] buf, int start, int len ) {
+        if(inDTD || ignoringComments)    return;
+        flushText();
+        parent.appendChild( dom.createComment(new String(buf,start,len)) );
+    }
+
+    public void startDTD( String name, String publicId, String systemId ) {
+        inDTD = true;
+    }
+
+    public void endDTD() {
+        inDTD = false;
+    }
+
+    public void startEntity( String name ) {}
+    public void endEntity( String name ) {}
+
+
+    /**
+     * adds the buffered characters to the tree as a single text node.
+     */
+    private void flushText() {
+        if(text.length()==0)    return;
+        parent.appendChild( dom.createTextNode(text.toString()) );
+        text.setLength(0);
+    }
+}
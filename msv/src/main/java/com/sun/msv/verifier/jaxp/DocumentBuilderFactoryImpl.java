@@ -15,6 +15,7 @@ import java.io.InputStream;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 
 import org.iso_relax.verifier.Schema;
 import org.iso_relax.verifier.VerifierFactory;
@@ -49,6 +50,20 @@ public class DocumentBuilderFactoryImpl extends DocumentBuilderFactory {
      */
     private Schema schema;
     
+    /**
+     * If true, DocumentBuilders validate documents while parsing them.
+     * 
+     * @see Const#SINGLE_PASS_PROPNAME
+     */
+    private boolean singlePass = false;
+    
+    /**
+     * True if an attribute was passed to the wrapped DocumentBuilderFactory.
+     * Such attributes (for example, the ones that restrict access to external
+     * resources) can't be carried over to the SAX parser of the single-pass mode.
+     */
+    private boolean coreAttributes = false;
+    
     /**
      * Creates a new instance by using the default DocumentBuilderFactory implementation
      * as the underlying parser. This constructor does not set any schema.
@@ -74,12 +89,21 @@ public class DocumentBuilderFactoryImpl extends DocumentBuilderFactory {
     
     
     public Object getAttribute( String name ) {
-        if( name.equals(com.sun.msv.verifier.jarv.Const.PANIC_MODE_FEATURE) )
+        if( name.equals(com.sun.msv.verifier.jarv.Const.PANIC_MODE_FEATURE)
+        ||  name.equals(com.sun.msv.verifier.jarv.Const.FAST_FAIL_FEATURE) )
             try {
                 return jarvFactory.isFeature(name)?Boolean.TRUE:Boolean.FALSE;
             } catch( SAXException e ) {
                 throw new IllegalArgumentException(e.getMessage());
             }
+        if( name.equals(com.sun.msv.verifier.jarv.Const.MAX_ERRORS_PROPERTY) )
+            try {
+                return jarvFactory.getProperty(name);
+            } catch( SAXException e ) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+        if(Const.SINGLE_PASS_PROPNAME.equals(name))
+            return singlePass?Boolean.TRUE:Boolean.FALSE;
         return core.getAttribute(name);
     }
     public void setAttribute( String name, Object value ) {
@@ -90,6 +114,30 @@ public class DocumentBuilderFactoryImpl extends DocumentBuilderFactory {
                 throw new IllegalArgumentException(e.getMessage());
             }
         
+        if( name.equals(com.sun.msv.verifier.jarv.Const.FAST_FAIL_FEATURE) ) {
+            try {
+                jarvFactory.setFeature(name,((Boolean)value).booleanValue());
+            } catch( SAXException e ) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+            return;
+        }
+        if( name.equals(com.sun.msv.verifier.jarv.Const.MAX_ERRORS_PROPERTY) ) {
+            try {
+                jarvFactory.setProperty(name,value);
+            } catch( SAXException e ) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+            return;
+        }
+        
+        if(Const.SINGLE_PASS_PROPNAME.equals(name)) {
+            if(!(value instanceof Boolean))
+                throw new IllegalArgumentException("the value must be a Boolean: "+value );
+            singlePass = ((Boolean)value).booleanValue();
+            return;
+        }
+        
         if(Const.SCHEMA_PROPNAME.equals(name)) {
             try {
                 if(value instanceof String) {
@@ -118,6 +166,7 @@ public class DocumentBuilderFactoryImpl extends DocumentBuilderFactory {
             }
         }
         core.setAttribute(name,value);
+        coreAttributes = true;
     }
     
     
@@ -128,6 +177,12 @@ public class DocumentBuilderFactoryImpl extends DocumentBuilderFactory {
     public boolean isExpandEntityReference() {
         return core.isExpandEntityReferences();
     }
+    public boolean isExpandEntityReferences() {
+        return core.isExpandEntityReferences();
+    }
+    public boolean isXIncludeAware() {
+        return core.isXIncludeAware();
+    }
     public boolean isIgnoringComments() {
         return core.isIgnoringComments();
     }
@@ -144,7 +199,23 @@ public class DocumentBuilderFactoryImpl extends DocumentBuilderFactory {
     public DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
         if(schema==null)        return core.newDocumentBuilder();
         
-        return new DocumentBuilderImpl(core.newDocumentBuilder(),schema);
+        if(!singlePass || !isSinglePassCapable())
+            return new DocumentBuilderImpl(core.newDocumentBuilder(),schema);
+        
+        // MSV needs namespace-aware SAX events regardless of the DOM setting.
+        SAXParserFactory saxFactory = SAXParserFactory.newInstance();
+        saxFactory.setNamespaceAware(true);
+        saxFactory.setValidating(core.isValidating());
+        return new DocumentBuilderImpl(core.newDocumentBuilder(),schema,saxFactory,core);
+    }
+    
+    /**
+     * checks if the single-pass mode builds the same DOM as the wrapped
+     * DocumentBuilder. If not, documents are validated after they are built.
+     */
+    private boolean isSinglePassCapable() {
+        // SAX always expands entity references.
+        return !coreAttributes && !core.isXIncludeAware() && core.isExpandEntityReferences();
     }
     
     
@@ -154,6 +225,12 @@ public class DocumentBuilderFactoryImpl extends DocumentBuilderFactory {
     public void setExpandEntityReference( boolean newVal ) {
         core.setExpandEntityReferences(newVal);
     }
+    public void setExpandEntityReferences( boolean newVal ) {
+        core.setExpandEntityReferences(newVal);
+    }
+    public void setXIncludeAware( boolean newVal ) {
+        core.setXIncludeAware(newVal);
+    }
     public void setIgnoringComments( boolean newVal ) {
         core.setIgnoringComments(newVal);
     }
@@ -14,16 +14,22 @@ import java.io.IOException;
 import java.io.InputStream;
 
 import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 
 import org.iso_relax.verifier.Schema;
 import org.iso_relax.verifier.Verifier;
+import org.iso_relax.verifier.VerifierHandler;
 import org.w3c.dom.DOMImplementation;
 import org.w3c.dom.Document;
 import org.xml.sax.EntityResolver;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import com.sun.msv.reader.util.ForkContentHandler;
 
 /**
  * DocumentBuilder implementation that supports validation.
@@ -32,6 +38,13 @@ import org.xml.sax.SAXException;
  * This class uses another DocumentBuilder implementation and 
  * adds the validation capability to it.
  * 
+ * <p>
+ * By default, a document is parsed into DOM first and then the DOM
+ * is validated. In the single-pass mode (see {@link Const#SINGLE_PASS_PROPNAME}),
+ * the document is parsed by SAX and the event stream is fed to the verifier
+ * and to a DOM builder at the same time, so that the validation completes
+ * together with the parsing.
+ * 
  * @author <a href="mailto:kohsuke.kawaguchi@sun.com">Kohsuke KAWAGUCHI</a>
  */
 class DocumentBuilderImpl extends DocumentBuilder
@@ -46,8 +59,44 @@ class DocumentBuilderImpl extends DocumentBuilder
      */
     private final Verifier verifier;
     
+    /**
+     * SAXParserFactory used to parse documents in the single-pass mode.
+     * This field is null when the document is validated after the parsing.
+     */
+    private final SAXParserFactory saxFactory;
+    
+    /** DOM construction settings inherited from the DocumentBuilderFactory. */
+    private final boolean ignoringComments;
+    private final boolean ignoringElementContentWhitespace;
+    private final boolean coalescing;
+    
+    private EntityResolver entityResolver;
+    private ErrorHandler errorHandler;
+    
     DocumentBuilderImpl( DocumentBuilder _core, Schema _schema ) throws ParserConfigurationException {
+        this(_core,_schema,null,null);
+    }
+    
+    /**
+     * @param _saxFactory
+     *      If non-null, documents are parsed with this factory in the single-pass mode.
+     * @param _domFactory
+     *      The factory that created the wrapped DocumentBuilder. Used to mimic
+     *      its DOM construction settings in the single-pass mode.
+     */
+    DocumentBuilderImpl( DocumentBuilder _core, Schema _schema,
+        SAXParserFactory _saxFactory, DocumentBuilderFactory _domFactory ) throws ParserConfigurationException {
         this.core = _core;
+        this.saxFactory = _saxFactory;
+        if(_domFactory!=null) {
+            ignoringComments = _domFactory.isIgnoringComments();
+            ignoringElementContentWhitespace = _domFactory.isIgnoringElementContentWhitespace();
+            coalescing = _domFactory.isCoalescing();
+        } else {
+            ignoringComments = false;
+            ignoringElementContentWhitespace = false;
+            coalescing = false;
+        }
         try {
             verifier = _schema.newVerifier();
         } catch( Exception e ) {
@@ -76,33 +125,43 @@ class DocumentBuilderImpl extends DocumentBuilder
     }
     
     public Document parse( InputSource is ) throws SAXException, IOException {
+        if(saxFactory!=null)    return parseAndVerify(is);
         return verify(core.parse(is));
     }
     
+    // in the single-pass mode, the base class implementations
+    // route everything to parse(InputSource).
+    
     public Document parse( File f ) throws SAXException, IOException {
+        if(saxFactory!=null)    return super.parse(f);
         return verify(core.parse(f));
     }
     
     public Document parse( InputStream is ) throws SAXException, IOException {
+        if(saxFactory!=null)    return super.parse(is);
         return verify(core.parse(is));
     }
     
     public Document parse( InputStream is, String systemId ) throws SAXException, IOException {
+        if(saxFactory!=null)    return super.parse(is,systemId);
         return verify(core.parse(is,systemId));
     }
     
     public Document parse( String url ) throws SAXException, IOException {
+        if(saxFactory!=null)    return super.parse(url);
         return verify(core.parse(url));
     }
     
     public void setEntityResolver( EntityResolver resolver ) {
         verifier.setEntityResolver(resolver);
         core.setEntityResolver(resolver);
+        this.entityResolver = resolver;
     }
     
     public void setErrorHandler( ErrorHandler handler ) {
         verifier.setErrorHandler(handler);
         core.setErrorHandler(handler);
+        this.errorHandler = handler;
     }
     
     
@@ -119,4 +178,39 @@ class DocumentBuilderImpl extends DocumentBuilder
         // will throw an exception.
         throw new SAXException("the document is invalid");
     }
+    
+    /**
+     * Parses a document with SAX, and validates and builds DOM
+     * from the same event stream.
+     */
+    private Document parseAndVerify( InputSource is ) throws SAXException, IOException {
+        XMLReader reader;
+        try {
+            reader = saxFactory.newSAXParser().getXMLReader();
+        } catch( ParserConfigurationException e ) {
+            throw new SAXException(e);
+        }
+        
+        DOMContentHandler builder = new DOMContentHandler( core.newDocument(),
+            core.isNamespaceAware(), ignoringComments, ignoringElementContentWhitespace, coalescing );
+        VerifierHandler handler = verifier.getVerifierHandler();
+        
+        reader.setContentHandler( new ForkContentHandler(handler,builder) );
+        try {
+            reader.setProperty( "http://xml.org/sax/properties/lexical-handler", builder );
+        } catch( SAXException e ) {
+            // the parser doesn't report comments and CDATA sections.
+            // we can still build the rest of the tree.
+        }
+        if(entityResolver!=null)    reader.setEntityResolver(entityResolver);
+        if(errorHandler!=null)      reader.setErrorHandler(errorHandler);
+        
+        reader.parse(is);
+        
+        if(handler.isValid())
+            return builder.getDocument();
+        
+        // see the comment in the verify method.
+        throw new SAXException("the document is invalid");
+    }
 }
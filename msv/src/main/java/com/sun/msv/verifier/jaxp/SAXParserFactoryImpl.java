@@ -112,7 +112,8 @@ public class SAXParserFactoryImpl extends SAXParserFactory
     public boolean getFeature( String name ) throws ParserConfigurationException,
                                                     SAXNotRecognizedException,
                                                     SAXNotSupportedException {
-        if( name.equals(com.sun.msv.verifier.jarv.Const.PANIC_MODE_FEATURE) )
+        if( name.equals(com.sun.msv.verifier.jarv.Const.PANIC_MODE_FEATURE)
+        ||  name.equals(com.sun.msv.verifier.jarv.Const.FAST_FAIL_FEATURE) )
             return jarvFactory.isFeature(name);
         return core.getFeature(name);
     }
@@ -122,6 +123,11 @@ public class SAXParserFactoryImpl extends SAXParserFactory
         
         if( name.equals(com.sun.msv.verifier.jarv.Const.PANIC_MODE_FEATURE) )
             jarvFactory.setFeature(name,value);
+        if( name.equals(com.sun.msv.verifier.jarv.Const.FAST_FAIL_FEATURE) ) {
+            // the underlying parser doesn't know this feature.
+            jarvFactory.setFeature(name,value);
+            return;
+        }
         core.setFeature(name,value);
     }
     
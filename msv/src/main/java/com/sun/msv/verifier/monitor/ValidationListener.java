@@ -0,0 +1,68 @@
+package com.sun.msv.verifier.monitor;
+
+import org.relaxng.datatype.Datatype;
+
+import com.sun.msv.grammar.xmlschema.IdentityConstraint;
+
+/**
+ * receives notifications about what the validation engine is doing.
+ *
+ * <p>
+ * Methods of this interface are called from the middle of the validation,
+ * so implementations should return quickly. When the same listener is
+ * set to more than one {@link com.sun.msv.verifier.Verifier}, it has to be
+ * thread-safe.
+ *
+ * @see com.sun.msv.verifier.Verifier#setValidationListener(ValidationListener)
+ */
+public interface ValidationListener {
+
+    /** called when a document is started. */
+    void onDocumentStart();
+
+    /**
+     * called when a document is finished.
+     *
+     * @param valid
+     *      true if no error was found in the document.
+     * @param time
+     *      time spent between the start and the end of the document, in nanoseconds.
+     */
+    void onDocumentEnd( boolean valid, long time );
+
+    /** called when a new acceptor is created. */
+    void onAcceptorCreated();
+
+    /**
+     * called when the transition cache (which maps a tag name to the child
+     * content model and the continuation) is consulted.
+     *
+     * @param hit
+     *      true if the cached transition was used.
+     */
+    void onTransitionCache( boolean hit );
+
+    /**
+     * called when the cache of residuals by element tokens is consulted.
+     *
+     * @param hit
+     *      true if the cached residual was used.
+     */
+    void onResidualCache( boolean hit );
+
+    /**
+     * called after a datatype validated a literal.
+     *
+     * @param time
+     *      time spent by the datatype, in nanoseconds.
+     */
+    void onDatatypeValidation( Datatype dt, boolean valid, long time );
+
+    /**
+     * called at the end of a document for each scope of an identity constraint.
+     *
+     * @param size
+     *      the number of key values collected in the scope.
+     */
+    void onIdentityConstraintTable( IdentityConstraint constraint, int size );
+}
@@ -0,0 +1,248 @@
+package com.sun.msv.verifier.monitor;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.relaxng.datatype.Datatype;
+
+import com.sun.msv.datatype.xsd.XSDatatype;
+import com.sun.msv.grammar.ExpressionPool;
+import com.sun.msv.grammar.xmlschema.IdentityConstraint;
+
+/**
+ * {@link ValidationListener} that aggregates notifications into counters.
+ *
+ * <p>
+ * One instance is typically created per grammar and set to all the
+ * verifiers of that grammar. This class is thread-safe.
+ *
+ * <p>
+ * To make the counters available through JMX, call {@link #register(String)}
+ * or register this object to a MBeanServer by yourself.
+ */
+public class ValidationStatistics implements ValidationListener, ValidationStatisticsMBean {
+
+    /** the pool of the grammar. Can be null. */
+    private final ExpressionPool pool;
+    /** the size of the pool when the counters were reset. */
+    private volatile int initialPoolSize;
+    /** the time when the counters were reset. */
+    private volatile long startTime;
+
+    private final AtomicLong documents = new AtomicLong();
+    private final AtomicLong invalidDocuments = new AtomicLong();
+    private final AtomicLong validationTime = new AtomicLong();
+    private final AtomicLong acceptors = new AtomicLong();
+    private final AtomicLong transitionHits = new AtomicLong();
+    private final AtomicLong transitionMisses = new AtomicLong();
+    private final AtomicLong residualHits = new AtomicLong();
+    private final AtomicLong residualMisses = new AtomicLong();
+    private final AtomicLong identityTables = new AtomicLong();
+    private final AtomicLong identityEntries = new AtomicLong();
+    private final AtomicLong maxIdentityTable = new AtomicLong();
+
+    /**
+     * counters per datatype, keyed by the name of the datatype so that
+     * this object doesn't keep datatypes (and their grammars) alive.
+     * Anonymous types derived from the same type share a counter.
+     */
+    private final ConcurrentMap<String,DatatypeCounter> datatypes = new ConcurrentHashMap<String,DatatypeCounter>();
+
+    /** counters of one datatype. */
+    public static final class DatatypeCounter {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong invalid = new AtomicLong();
+        private final AtomicLong time = new AtomicLong();
+
+        /** number of literals validated by this datatype. */
+        public long getCount() { return count.get(); }
+        /** number of literals rejected by this datatype. */
+        public long getInvalidCount() { return invalid.get(); }
+        /** total time spent by this datatype, in nanoseconds. */
+        public long getTime() { return time.get(); }
+    }
+
+    public ValidationStatistics() {
+        this(null);
+    }
+
+    /**
+     * @param pool
+     *      the expression pool of the grammar, whose size will be reported.
+     *      Can be null.
+     */
+    public ValidationStatistics( ExpressionPool pool ) {
+        this.pool = pool;
+        reset();
+    }
+
+    /**
+     * registers this object to the platform MBeanServer.
+     *
+     * @param grammarName
+     *      a name that identifies the grammar being monitored.
+     */
+    public ObjectName register( String grammarName ) throws JMException {
+        ObjectName name = new ObjectName(
+            "com.sun.msv:type=ValidationStatistics,grammar="+ObjectName.quote(grammarName));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this,name);
+        return name;
+    }
+
+
+    public void reset() {
+        documents.set(0);
+        invalidDocuments.set(0);
+        validationTime.set(0);
+        acceptors.set(0);
+        transitionHits.set(0);
+        transitionMisses.set(0);
+        residualHits.set(0);
+        residualMisses.set(0);
+        identityTables.set(0);
+        identityEntries.set(0);
+        maxIdentityTable.set(0);
+        datatypes.clear();
+        initialPoolSize = (pool==null)?0:pool.size();
+        startTime = System.currentTimeMillis();
+    }
+
+
+//
+// ValidationListener
+//
+    public void onDocumentStart() {}
+
+    public void onDocumentEnd( boolean valid, long time ) {
+        documents.incrementAndGet();
+        if(!valid)  invalidDocuments.incrementAndGet();
+        validationTime.addAndGet(time);
+    }
+
+    public void onAcceptorCreated() {
+        acceptors.incrementAndGet();
+    }
+
+    public void onTransitionCache( boolean hit ) {
+        if(hit)     transitionHits.incrementAndGet();
+        else        transitionMisses.incrementAndGet();
+    }
+
+    public void onResidualCache( boolean hit ) {
+        if(hit)     residualHits.incrementAndGet();
+        else        residualMisses.incrementAndGet();
+    }
+
+    public void onDatatypeValidation( Datatype dt, boolean valid, long time ) {
+        String name = getName(dt);
+        DatatypeCounter c = datatypes.get(name);
+        if(c==null) {
+            c = new DatatypeCounter();
+            DatatypeCounter old = datatypes.putIfAbsent(name,c);
+            if(old!=null)   c = old;    // another thread registered it first.
+        }
+        c.count.incrementAndGet();
+        if(!valid)  c.invalid.incrementAndGet();
+        c.time.addAndGet(time);
+    }
+
+    public void onIdentityConstraintTable( IdentityConstraint constraint, int size ) {
+        identityTables.incrementAndGet();
+        identityEntries.addAndGet(size);
+        while(true) {
+            long max = maxIdentityTable.get();
+            if( size<=max || maxIdentityTable.compareAndSet(max,size) )
+                return;
+        }
+    }
+
+
+//
+// ValidationStatisticsMBean
+//
+    public long getDocumentCount() { return documents.get(); }
+    public long getInvalidDocumentCount() { return invalidDocuments.get(); }
+
+    public double getDocumentsPerSecond() {
+        long elapsed = System.currentTimeMillis()-startTime;
+        if(elapsed<=0)  return 0;
+        return documents.get()*1000.0/elapsed;
+    }
+
+    public double getAverageValidationTime() {
+        return ratio( validationTime.get()/1000000.0, documents.get() );
+    }
+
+    public int getExpressionPoolSize() {
+        if(pool==null)  return -1;
+        return pool.size();
+    }
+
+    public int getExpressionPoolGrowth() {
+        if(pool==null)  return 0;
+        return pool.size()-initialPoolSize;
+    }
+
+    public long getTransitionCacheHits() { return transitionHits.get(); }
+    public long getTransitionCacheMisses() { return transitionMisses.get(); }
+    public long getResidualCacheHits() { return residualHits.get(); }
+    public long getResidualCacheMisses() { return residualMisses.get(); }
+
+    public long getAcceptorCount() { return acceptors.get(); }
+    public double getAcceptorsPerDocument() {
+        return ratio( acceptors.get(), documents.get() );
+    }
+
+    public long getDatatypeValidationCount() {
+        long total = 0;
+        Iterator<DatatypeCounter> itr = datatypes.values().iterator();
+        while(itr.hasNext())
+            total += itr.next().getCount();
+        return total;
+    }
+
+    public String[] getDatatypeStatistics() {
+        Map<String,DatatypeCounter> m = getDatatypeCounters();
+        String[] r = new String[m.size()];
+        int i=0;
+        Iterator<Map.Entry<String,DatatypeCounter>> itr = m.entrySet().iterator();
+        while(itr.hasNext()) {
+            Map.Entry<String,DatatypeCounter> e = itr.next();
+            DatatypeCounter c = e.getValue();
+            r[i++] = e.getKey()+" count="+c.getCount()+" invalid="+c.getInvalidCount()+" time="+c.getTime()+"[ns]";
+        }
+        return r;
+    }
+
+    /**
+     * gets a snapshot of the counters per datatype, keyed by the name of the datatype.
+     */
+    public Map<String,DatatypeCounter> getDatatypeCounters() {
+        return new java.util.TreeMap<String,DatatypeCounter>(datatypes);
+    }
+
+    public long getIdentityConstraintTableCount() { return identityTables.get(); }
+    public long getMaxIdentityConstraintTableSize() { return maxIdentityTable.get(); }
+    public double getAverageIdentityConstraintTableSize() {
+        return ratio( identityEntries.get(), identityTables.get() );
+    }
+
+
+    private static String getName( Datatype dt ) {
+        if(dt instanceof XSDatatype)
+            return ((XSDatatype)dt).displayName();
+        return dt.getClass().getName();
+    }
+
+    private static double ratio( double a, long b ) {
+        if(b==0)    return 0;
+        return a/b;
+    }
+}
@@ -0,0 +1,49 @@
+package com.sun.msv.verifier.monitor;
+
+/**
+ * JMX management interface of {@link ValidationStatistics}.
+ */
+public interface ValidationStatisticsMBean {
+
+    /** number of documents validated so far. */
+    long getDocumentCount();
+    /** number of documents found to be invalid. */
+    long getInvalidDocumentCount();
+    /** documents validated per second since the statistics was created or reset. */
+    double getDocumentsPerSecond();
+    /** average time spent to validate one document, in milliseconds. */
+    double getAverageValidationTime();
+
+    /** number of expressions in the pool, or -1 if no pool is monitored. */
+    int getExpressionPoolSize();
+    /** number of expressions added to the pool since the statistics was created or reset. */
+    int getExpressionPoolGrowth();
+
+    long getTransitionCacheHits();
+    long getTransitionCacheMisses();
+    long getResidualCacheHits();
+    long getResidualCacheMisses();
+
+    /** total number of acceptors created. */
+    long getAcceptorCount();
+    /** average number of acceptors created per document. */
+    double getAcceptorsPerDocument();
+
+    /** total number of datatype validations. */
+    long getDatatypeValidationCount();
+    /**
+     * one line per datatype, in the form of
+     * "name count=N invalid=N time=N[ns]".
+     */
+    String[] getDatatypeStatistics();
+
+    /** number of identity constraint scopes observed. */
+    long getIdentityConstraintTableCount();
+    /** the largest number of key values in one identity constraint scope. */
+    long getMaxIdentityConstraintTableSize();
+    /** average number of key values in one identity constraint scope. */
+    double getAverageIdentityConstraintTableSize();
+
+    /** resets all the counters. */
+    void reset();
+}
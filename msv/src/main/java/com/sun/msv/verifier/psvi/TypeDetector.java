@@ -37,6 +37,9 @@ import com.sun.msv.verifier.regexp.SimpleAcceptor;
  * This class "augment" infoset by adding type information. The application can
  * receive augmented infoset by implementing TypedContentHandler.
  * 
+ * If the handler implements {@link TypedValueHandler}, the values created by
+ * datatypes during the validation are reported, too.
+ * 
  * @author <a href="mailto:kohsuke.kawaguchi@sun.com">Kohsuke KAWAGUCHI</a>
  */
 public class TypeDetector extends Verifier {
@@ -47,8 +50,16 @@ public class TypeDetector extends Verifier {
     
     protected TypedContentHandler handler;
     
+    /**
+     * the same object as {@link #handler} if it receives values,
+     * or otherwise null.
+     */
+    private TypedValueHandler valueHandler;
+    
     public TypeDetector( DocumentDeclaration documentDecl, ErrorHandler errorHandler ) {
         super(documentDecl,errorHandler);
+        // every element has to be reported to the handler.
+        setOpaqueSkipping(false);
     }
     
     public TypeDetector( DocumentDeclaration documentDecl, TypedContentHandler handler, ErrorHandler errorHandler ) {
@@ -62,6 +73,10 @@ public class TypeDetector extends Verifier {
      */
     public void setContentHandler( TypedContentHandler handler ) {
         this.handler = handler;
+        this.valueHandler = (handler instanceof TypedValueHandler) ? (TypedValueHandler)handler : null;
+        // values are created only when the handler wants them.
+        characterType.collectValues = valueHandler!=null;
+        setValueCollection(valueHandler!=null);
     }
 
     private final DatatypeRef characterType = new DatatypeRef();
@@ -69,6 +84,7 @@ public class TypeDetector extends Verifier {
     protected void verifyText() throws SAXException {
         if(text.length()!=0) {
             final String txt = new String(text);
+            characterType.values = null;
             if(!current.onText2( txt, this, null, characterType )) {
                 // error
                 // diagnose error, if possible
@@ -82,13 +98,13 @@ public class TypeDetector extends Verifier {
             }
             
             // characters are validated. report to the handler.
-            reportCharacterChunks( txt, characterType.types );
+            reportCharacterChunks( txt, characterType.types, characterType.values );
             
             text = new StringBuffer();
         }
     }
 
-    private void reportCharacterChunks( String text, Datatype[] types ) throws SAXException {
+    private void reportCharacterChunks( String text, Datatype[] types, Object[] values ) throws SAXException {
         
         if( types==null )
             // unable to assign type.
@@ -98,17 +114,43 @@ public class TypeDetector extends Verifier {
         case 0:
             return;    // this text is ignored.
         case 1:
-            handler.characterChunk( text, types[0] );
+            reportCharacterChunk( text, types[0], values, 0 );
             return;
         default:
             StringTokenizer tokens = new StringTokenizer(text);
             for( int i=0; i<types.length; i++ )
-                handler.characterChunk( tokens.nextToken(), types[i] );
+                reportCharacterChunk( tokens.nextToken(), types[i], values, i );
                 
             if( tokens.hasMoreTokens() )    throw new Error();    // assertion failed
         }
     }
     
+    private void reportCharacterChunk( String literal, Datatype type, Object[] values, int idx ) throws SAXException {
+        if( valueHandler==null ) {
+            handler.characterChunk( literal, type );
+            return;
+        }
+        
+        Object value = (values==null) ? null : values[idx];
+        if( value==null )
+            // the literal was validated without creating its value.
+            value = type.createValue( literal, this );
+        
+        if( value instanceof Integer )
+            valueHandler.intValue( literal, type, ((Integer)value).intValue() );
+        else
+        if( value instanceof Long )
+            valueHandler.longValue( literal, type, ((Long)value).longValue() );
+        else
+        if( value instanceof Double )
+            valueHandler.doubleValue( literal, type, ((Double)value).doubleValue() );
+        else
+        if( value instanceof Boolean )
+            valueHandler.booleanValue( literal, type, ((Boolean)value).booleanValue() );
+        else
+            valueHandler.typedValue( literal, type, value );
+    }
+    
     
     protected Datatype[] feedAttribute( Acceptor child, String uri, String localName, String qName, String value ) throws SAXException {
         
@@ -120,7 +162,7 @@ public class TypeDetector extends Verifier {
         
         Datatype[] result = super.feedAttribute(child,uri,localName,qName,value);
         
-        reportCharacterChunks( value, result );    
+        reportCharacterChunks( value, result, getLastAttributeValues() );
         handler.endAttribute( uri, localName, qName,
             ((REDocumentDeclaration)docDecl).attToken.matchedExp );
         
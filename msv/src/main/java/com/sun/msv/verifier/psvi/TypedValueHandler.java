@@ -0,0 +1,78 @@
+package com.sun.msv.verifier.psvi;
+
+import org.relaxng.datatype.Datatype;
+import org.xml.sax.SAXException;
+
+/**
+ * Receives notification of the typed content of the document,
+ * together with the values that the datatypes created from it.
+ *
+ * <p>
+ * When {@link TypeDetector} reports to a handler that implements this interface,
+ * each string is reported by one of the methods of this interface
+ * instead of {@link TypedContentHandler#characterChunk(String, Datatype)}.
+ * This applies to the values of attributes, too.
+ *
+ * <p>
+ * A value is the object returned from
+ * {@link Datatype#createValue(String, org.relaxng.datatype.ValidationContext)},
+ * which is created while the string is validated. So the application doesn't
+ * need to parse the string again. Values of <code>java.lang.Integer</code>,
+ * <code>java.lang.Long</code>, <code>java.lang.Double</code>, and
+ * <code>java.lang.Boolean</code> (such as the values of xsd:int, xsd:long,
+ * xsd:double, and xsd:boolean) are reported as primitives.
+ *
+ * <p>
+ * In the example of {@link TypedContentHandler}, events are reported
+ * in the following order:
+ * <pre>
+ * startDocument()
+ *  startElement(root)
+ *   startAttribute(foo)
+ *    booleanValue("true", com.sun.msv.datatype.xsd.BooleanType, true)
+ *   endAttribute(foo)
+ *   endAttributePart()
+ *   startElement(child)
+ *    typedValue("A", com.sun.msv.datatype.xsd.NMTOKENType, "A")
+ *    typedValue("B", com.sun.msv.datatype.xsd.NMTOKENType, "B")
+ *   endElement(child, MSV's internal object that represents the child element)
+ *  endElement(root, MSV's internal object that represents the root element)
+ * endDocument()
+ * </pre>
+ */
+public interface TypedValueHandler extends TypedContentHandler {
+
+    /**
+     * receives notification of a string and its value.
+     *
+     * @param literal
+     *        the contents.
+     * @param type
+     *        assigned type. The validator assigns this type for this literal.
+     * @param value
+     *        the value object that the type created from the literal.
+     *        null if the literal is not a valid value of the type,
+     *        which can happen only when the document is invalid.
+     */
+    void typedValue( String literal, Datatype type, Object value ) throws SAXException;
+
+    /**
+     * receives notification of a string whose value is a <code>java.lang.Integer</code>.
+     */
+    void intValue( String literal, Datatype type, int value ) throws SAXException;
+
+    /**
+     * receives notification of a string whose value is a <code>java.lang.Long</code>.
+     */
+    void longValue( String literal, Datatype type, long value ) throws SAXException;
+
+    /**
+     * receives notification of a string whose value is a <code>java.lang.Double</code>.
+     */
+    void doubleValue( String literal, Datatype type, double value ) throws SAXException;
+
+    /**
+     * receives notification of a string whose value is a <code>java.lang.Boolean</code>.
+     */
+    void booleanValue( String literal, Datatype type, boolean value ) throws SAXException;
+}
@@ -31,7 +31,7 @@ final class AttributeRecoveryToken extends AttributeToken
     public boolean match( AttributeExp exp ) {
         
         // Attribute name must meet the constraint of NameClass
-        if(!exp.nameClass.accepts(namespaceURI,localName))    return false;
+        if(!exp.nameClass.getMatcher().accepts(namespaceURI,localName))    return false;
         
         // content model of the attribute must consume the value
         if(!docDecl.resCalc.calcResidual(exp.exp, value).isEpsilonReducible())
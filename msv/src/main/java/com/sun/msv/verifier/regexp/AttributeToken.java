@@ -84,7 +84,7 @@ public class AttributeToken extends Token
     
     public boolean match( AttributeExp exp ) {
         // Attribute name must meet the constraint of NameClass
-        if(!exp.nameClass.accepts(namespaceURI,localName))    return false;
+        if(!exp.nameClass.getMatcher().accepts(namespaceURI,localName))    return false;
         
         // content model of the attribute must consume the value
         boolean satisfied = false;
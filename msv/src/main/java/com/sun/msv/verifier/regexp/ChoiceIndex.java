@@ -0,0 +1,178 @@
+package com.sun.msv.verifier.regexp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.sun.msv.grammar.BinaryExp;
+import com.sun.msv.grammar.ChoiceExp;
+import com.sun.msv.grammar.ConcurExp;
+import com.sun.msv.grammar.ElementExp;
+import com.sun.msv.grammar.Expression;
+import com.sun.msv.grammar.InterleaveExp;
+import com.sun.msv.grammar.MixedExp;
+import com.sun.msv.grammar.OneOrMoreExp;
+import com.sun.msv.grammar.OtherExp;
+import com.sun.msv.grammar.ReferenceExp;
+import com.sun.msv.grammar.SequenceExp;
+import com.sun.msv.grammar.SimpleNameClass;
+import com.sun.msv.grammar.UnaryExp;
+import com.sun.msv.util.StringPair;
+
+/**
+ * indexes alternatives of a large choice by the names of the elements
+ * they can start with.
+ *
+ * <p>
+ * {@link CombinedChildContentExpCreator} uses this index to visit only those
+ * alternatives that can accept the start tag, instead of all of them.
+ * An alternative whose first elements cannot be enumerated (because of
+ * wildcards, for example) is visited for every start tag.
+ *
+ * <p>
+ * Once created, an index is immutable and can be shared by multiple threads.
+ */
+final class ChoiceIndex
+{
+    /** choices with fewer alternatives than this are not indexed. */
+    static final int THRESHOLD = 16;
+
+    /** alternatives of the choice, from left to right. */
+    final Expression[] alternatives;
+
+    /**
+     * map from (namespaceURI,localName) pair to the indexes of alternatives
+     * that have to be visited for that name, in ascending order.
+     */
+    private final Map<StringPair,int[]> byName;
+
+    /** indexes of alternatives that have to be visited for any name. */
+    private final int[] others;
+
+    private ChoiceIndex( Expression[] alternatives, Map<StringPair,int[]> byName, int[] others ) {
+        this.alternatives = alternatives;
+        this.byName = byName;
+        this.others = others;
+    }
+
+    /** gets the indexes of alternatives that may accept the given element. */
+    int[] get( String namespaceURI, String localName ) {
+        int[] r = byName.get(new StringPair(namespaceURI,localName));
+        if(r!=null)     return r;
+        else            return others;
+    }
+
+    /**
+     * creates an index for the given choice.
+     *
+     * @return
+     *        null if the choice is too small or too few alternatives
+     *        can be indexed.
+     */
+    static ChoiceIndex create( ChoiceExp exp ) {
+        // count the alternatives first, so that small choices are cheaply rejected.
+        int len = 1;
+        for( Expression e=exp; e instanceof ChoiceExp; e=((ChoiceExp)e).exp1 )
+            len++;
+        if( len<THRESHOLD )
+            return null;
+
+        Expression[] alternatives = new Expression[len];
+        Expression e = exp;
+        for( int i=len-1; i>0; i-- ) {
+            alternatives[i] = ((ChoiceExp)e).exp2;
+            e = ((ChoiceExp)e).exp1;
+        }
+        alternatives[0] = e;
+
+        Map<StringPair,List<Integer>> names = new HashMap<StringPair,List<Integer>>();
+        List<Integer> others = new ArrayList<Integer>();
+        Set<StringPair> heads = new java.util.HashSet<StringPair>();
+
+        for( int i=0; i<len; i++ ) {
+            heads.clear();
+            if( collectHeads(alternatives[i],heads,0) ) {
+                Iterator<StringPair> itr = heads.iterator();
+                while( itr.hasNext() ) {
+                    StringPair name = itr.next();
+                    List<Integer> l = names.get(name);
+                    if(l==null)     names.put(name, l=new ArrayList<Integer>());
+                    l.add(new Integer(i));
+                }
+            } else
+                others.add(new Integer(i));
+        }
+
+        if( others.size()*2>len )
+            return null;    // the index wouldn't help much.
+
+        // merge alternatives that have to be visited for any name
+        // into the list of each name, preserving the order.
+        Map<StringPair,int[]> byName = new HashMap<StringPair,int[]>(names.size()*2);
+        Iterator<Map.Entry<StringPair,List<Integer>>> itr = names.entrySet().iterator();
+        while( itr.hasNext() ) {
+            Map.Entry<StringPair,List<Integer>> entry = itr.next();
+            byName.put( entry.getKey(), merge(entry.getValue(),others) );
+        }
+
+        return new ChoiceIndex( alternatives, byName, merge(others,new ArrayList<Integer>()) );
+    }
+
+    private static int[] merge( List<Integer> a, List<Integer> b ) {
+        int[] r = new int[a.size()+b.size()];
+        int i=0, j=0, k=0;
+        while( i<a.size() || j<b.size() ) {
+            if( j==b.size() || (i<a.size() && a.get(i).intValue()<b.get(j).intValue()) )
+                r[k++] = a.get(i++).intValue();
+            else
+                r[k++] = b.get(j++).intValue();
+        }
+        return r;
+    }
+
+    /**
+     * collects the names of elements that can be the first element
+     * matched by the given expression.
+     *
+     * @return
+     *        false if those names cannot be enumerated, or if the expression
+     *        has to be visited even if none of those elements match.
+     */
+    private static boolean collectHeads( Expression exp, Set<StringPair> heads, int depth ) {
+        if( depth>32 )
+            return false;    // give up on a deeply nested expression.
+
+        if( exp instanceof ElementExp ) {
+            if(!(((ElementExp)exp).getNameClass() instanceof SimpleNameClass))
+                return false;
+            SimpleNameClass nc = (SimpleNameClass)((ElementExp)exp).getNameClass();
+            heads.add(new StringPair(nc.namespaceURI,nc.localName));
+            return true;
+        }
+        if( exp instanceof ConcurExp )
+            // visiting a concur has a side effect.
+            return false;
+        if( exp instanceof SequenceExp ) {
+            SequenceExp s = (SequenceExp)exp;
+            return collectHeads(s.exp1,heads,depth+1)
+                && (!s.exp1.isEpsilonReducible() || collectHeads(s.exp2,heads,depth+1));
+        }
+        if( exp instanceof ChoiceExp || exp instanceof InterleaveExp ) {
+            BinaryExp b = (BinaryExp)exp;
+            return collectHeads(b.exp1,heads,depth+1)
+                && collectHeads(b.exp2,heads,depth+1);
+        }
+        if( exp instanceof OneOrMoreExp || exp instanceof MixedExp )
+            return collectHeads(((UnaryExp)exp).exp,heads,depth+1);
+        if( exp instanceof ReferenceExp )
+            return collectHeads(((ReferenceExp)exp).exp,heads,depth+1);
+        if( exp instanceof OtherExp )
+            return collectHeads(((OtherExp)exp).exp,heads,depth+1);
+
+        // other primitives never accept an element.
+        return true;
+    }
+}
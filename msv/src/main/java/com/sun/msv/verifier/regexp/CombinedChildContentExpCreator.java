@@ -27,6 +27,7 @@ import com.sun.msv.grammar.SequenceExp;
 import com.sun.msv.grammar.ValueExp;
 import com.sun.msv.util.StartTagInfo;
 import com.sun.msv.util.StringPair;
+import com.sun.msv.verifier.monitor.ValidationListener;
 
 /**
  * creates "combined child content expression" and gathers "elements of concern"
@@ -113,6 +114,9 @@ import com.sun.msv.util.StringPair;
  */
 public class CombinedChildContentExpCreator implements ExpressionVisitorVoid {
     protected final ExpressionPool pool;
+    
+    /** receives cache hit/miss notifications. Can be null. */
+    ValidationListener listener;
 
     // these variables are set each time 'get' method is called
     private StartTagInfo tagInfo;
@@ -206,6 +210,8 @@ public class CombinedChildContentExpCreator implements ExpressionVisitorVoid {
             OptimizationTag ot = (OptimizationTag)combinedPattern.verifierTag;
             sp = new StringPair(info.namespaceURI, info.localName);
             OptimizationTag.OwnerAndCont cache = (OptimizationTag.OwnerAndCont)ot.transitions.get(sp);
+            if (listener != null)
+                listener.onTransitionCache(cache != null);
 
             if (cache != null) {
                 // cache hit
@@ -213,7 +219,8 @@ public class CombinedChildContentExpCreator implements ExpressionVisitorVoid {
                 result[0] = cache.owner;
                 return new ExpressionPair(cache.owner.contentModel.getExpandedExp(pool), cache.continuation);
             }
-        }
+        } else if (listener != null)
+            listener.onTransitionCache(false);
 
         ExpressionPair r = (ExpressionPair)get(combinedPattern, info, true);
 
@@ -231,6 +238,16 @@ public class CombinedChildContentExpCreator implements ExpressionVisitorVoid {
         return r;
     }
 
+    /**
+     * gets the start tag that is being matched.
+     * 
+     * @return
+     *        null if the tag name is not checked in the current computation.
+     */
+    protected final StartTagInfo getTagInfo() {
+        return checkTagName ? tagInfo : null;
+    }
+
     /**
      * obtains matched elements.
      * 
@@ -329,7 +346,7 @@ public class CombinedChildContentExpCreator implements ExpressionVisitorVoid {
         // TODO: may check result and remove duplicate result
 
         // if tag name is invalid, then remove this element from candidate.
-        if (checkTagName && !exp.getNameClass().accepts(tagInfo.namespaceURI, tagInfo.localName)) {
+        if (checkTagName && !exp.getNameClass().getMatcher().accepts(tagInfo.namespaceURI, tagInfo.localName)) {
             content = continuation = Expression.nullSet;
             return;
         }
@@ -386,6 +403,16 @@ public class CombinedChildContentExpCreator implements ExpressionVisitorVoid {
         exp.exp.visit(this);
     }
     public void onChoice(ChoiceExp exp) {
+        if (checkTagName && exp.exp1 instanceof ChoiceExp) {
+            // a large choice (like the top-level choice of all elements)
+            // is dispatched by the tag name.
+            ChoiceIndex index = getChoiceIndex(exp);
+            if (index != null) {
+                onChoice(index);
+                return;
+            }
+        }
+
         exp.exp1.visit(this);
         Expression content1 = content;
         Expression continuation1 = continuation;
@@ -395,6 +422,38 @@ public class CombinedChildContentExpCreator implements ExpressionVisitorVoid {
         content = pool.createChoice(content, content1);
         continuation = pool.createChoice(continuation, continuation1);
     }
+    /**
+     * visits only the alternatives that may accept the current tag.
+     * 
+     * The result is the same as the one obtained by visiting all the
+     * alternatives, since the others yield nullSet.
+     */
+    private void onChoice(ChoiceIndex index) {
+        int[] candidates = index.get(tagInfo.namespaceURI, tagInfo.localName);
+
+        Expression content1 = Expression.nullSet;
+        Expression continuation1 = Expression.nullSet;
+        for (int i = 0; i < candidates.length; i++) {
+            index.alternatives[candidates[i]].visit(this);
+            content1 = pool.createChoice(content, content1);
+            continuation1 = pool.createChoice(continuation, continuation1);
+        }
+        content = content1;
+        continuation = continuation1;
+    }
+
+    private static ChoiceIndex getChoiceIndex(ChoiceExp exp) {
+        OptimizationTag ot = (OptimizationTag)exp.verifierTag;
+        if (ot == null)
+            exp.verifierTag = ot = new OptimizationTag();
+
+        if (!ot.choiceIndexComputed) {
+            ot.choiceIndex = ChoiceIndex.create(exp);
+            ot.choiceIndexComputed = true;
+        }
+        return ot.choiceIndex;
+    }
+
     public void onSequence(SequenceExp exp) {
         exp.exp1.visit(this);
         continuation = pool.createSequence(continuation, exp.exp2);
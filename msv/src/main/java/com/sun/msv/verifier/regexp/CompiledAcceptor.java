@@ -0,0 +1,112 @@
+package com.sun.msv.verifier.regexp;
+
+import com.sun.msv.grammar.ElementExp;
+import com.sun.msv.grammar.Expression;
+import com.sun.msv.grammar.IDContextProvider2;
+import com.sun.msv.util.DatatypeRef;
+import com.sun.msv.util.StartTagInfo;
+import com.sun.msv.util.StringRef;
+import com.sun.msv.verifier.Acceptor;
+
+/**
+ * Acceptor for an element whose content model is a {@link CompiledContentModel}.
+ *
+ * <p>
+ * Attributes are consumed by the general implementation. After that,
+ * child elements are accepted by following the transitions of the automaton.
+ * When something happens that the automaton doesn't cover (an unexpected
+ * element, text, or an error), this acceptor moves the general implementation
+ * to the residual of the current state and behaves exactly like
+ * {@link SimpleAcceptor} from then on.
+ */
+public class CompiledAcceptor extends SimpleAcceptor {
+
+    /** the content model of the owner. */
+    private final CompiledContentModel model;
+
+    /**
+     * the current state of the automaton. null while attributes are consumed,
+     * and after this object switches to the general implementation.
+     */
+    private CompiledContentModel.State state;
+
+    /** the transition of the last child acceptor created by the automaton. */
+    private CompiledContentModel.Transition pending;
+
+    public CompiledAcceptor(
+        REDocumentDeclaration docDecl,
+        Expression combined,
+        ElementExp owner,
+        Expression continuation,
+        CompiledContentModel model ) {
+
+        super(docDecl,combined,owner,continuation);
+        this.model = model;
+    }
+
+    /** switches to the general implementation. */
+    protected final void toGeneral() {
+        if(state==null)     return;
+        stepForwardByContinuation(state.exp,null);
+        state = null;
+    }
+
+    public boolean onEndAttributes( StartTagInfo sti, StringRef refErr ) {
+        boolean r = super.onEndAttributes(sti,refErr);
+        // attributes may leave a residual that the automaton doesn't know.
+        state = model.getState(super.getExpression());
+        return r;
+    }
+
+    public Acceptor createChildAcceptor( StartTagInfo tag, StringRef errRef ) {
+        if(state!=null) {
+            CompiledContentModel.Transition t = state.get(tag.namespaceURI,tag.localName);
+            if(t!=null) {
+                pending = t;
+                return createAcceptor( t.content, t.next.exp, t.owner, 1 );
+            }
+            toGeneral();
+        }
+        return super.createChildAcceptor(tag,errRef);
+    }
+
+    public boolean stepForward( Acceptor child, StringRef errRef ) {
+        if(state!=null && pending!=null
+        && child instanceof SimpleAcceptor && ((SimpleAcceptor)child).continuation==pending.next.exp) {
+            state = pending.next;
+            pending = null;
+            return true;
+        }
+        toGeneral();
+        return super.stepForward(child,errRef);
+    }
+
+    protected boolean stepForward( Token token, StringRef errRef ) {
+        toGeneral();
+        return super.stepForward(token,errRef);
+    }
+
+    public boolean onText2( String literal, IDContextProvider2 provider, StringRef refErr, DatatypeRef refType ) {
+        toGeneral();
+        return super.onText2(literal,provider,refErr,refType);
+    }
+
+    public boolean isAcceptState( StringRef errRef ) {
+        if(state!=null && state.accept)
+            return true;
+        toGeneral();
+        return super.isAcceptState(errRef);
+    }
+
+    public int getStringCareLevel() {
+        if(state!=null)
+            return state.stringCareLevel;
+        return super.getStringCareLevel();
+    }
+
+    public Expression getExpression() {
+        if(state!=null)
+            return state.exp;
+        return super.getExpression();
+    }
+}
@@ -0,0 +1,241 @@
+package com.sun.msv.verifier.regexp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.msv.grammar.BinaryExp;
+import com.sun.msv.grammar.ChoiceExp;
+import com.sun.msv.grammar.ConcurExp;
+import com.sun.msv.grammar.ElementExp;
+import com.sun.msv.grammar.Expression;
+import com.sun.msv.grammar.InterleaveExp;
+import com.sun.msv.grammar.MixedExp;
+import com.sun.msv.grammar.OneOrMoreExp;
+import com.sun.msv.grammar.OtherExp;
+import com.sun.msv.grammar.ReferenceExp;
+import com.sun.msv.grammar.SequenceExp;
+import com.sun.msv.grammar.SimpleNameClass;
+import com.sun.msv.grammar.UnaryExp;
+import com.sun.msv.util.StringPair;
+
+/**
+ * content model of an element, compiled into a deterministic automaton
+ * over the names of its child elements.
+ *
+ * <p>
+ * Each state of the automaton is a residual of the attribute-pruned
+ * content model. For every name that can appear next, a state knows the
+ * only element that can accept it and the state after that element.
+ * Acceptance and the string care level of each state are computed in advance.
+ * Therefore {@link CompiledAcceptor} can validate children by a table look-up,
+ * without visiting expressions.
+ *
+ * <p>
+ * A content model cannot be compiled if it contains concur, wildcards,
+ * or two different elements with the same name that can appear at the same
+ * time, or if the automaton becomes too large.
+ *
+ * <p>
+ * This object is immutable once created, and stored to the
+ * {@link OptimizationTag} of the content model so that it can be shared
+ * by all the {@link REDocumentDeclaration}s of the grammar.
+ */
+final class CompiledContentModel
+{
+    /** the maximum number of states of a compiled content model. */
+    static final int MAX_STATES = 64;
+
+    /** a state with more transitions than this uses a hash map to look up names. */
+    private static final int SCAN_LIMIT = 8;
+
+    /** a state of the automaton. */
+    static final class State {
+        /** the residual expression this state represents. */
+        final Expression exp;
+        /** true if the content can end in this state. */
+        final boolean accept;
+        /** string care level of this state. */
+        final int stringCareLevel;
+
+        Transition[] transitions;
+        /** index of transitions, or null if they are scanned linearly. */
+        Map<StringPair,Transition> index;
+
+        State( Expression exp ) {
+            this.exp = exp;
+            this.accept = exp.isEpsilonReducible();
+            this.stringCareLevel = StringCareLevelCalculator.calc(exp);
+        }
+
+        /** returns the transition for the given element name, or null if none. */
+        Transition get( String namespaceURI, String localName ) {
+            if( index!=null )
+                return index.get(new StringPair(namespaceURI,localName));
+
+            for( int i=0; i<transitions.length; i++ ) {
+                Transition t = transitions[i];
+                if( t.localName.equals(localName) && t.namespaceURI.equals(namespaceURI) )
+                    return t;
+            }
+            return null;
+        }
+    }
+
+    /** a transition by a child element. */
+    static final class Transition {
+        final String namespaceURI;
+        final String localName;
+        /** an array that contains the element that accepts the child. */
+        final ElementExp[] owner;
+        /** the expanded content model of the owner. */
+        final Expression content;
+        /** the state after the child. */
+        State next;
+
+        Transition( ElementExp owner, Expression content ) {
+            SimpleNameClass nc = (SimpleNameClass)owner.getNameClass();
+            this.namespaceURI = nc.namespaceURI;
+            this.localName = nc.localName;
+            this.owner = new ElementExp[]{owner};
+            this.content = content;
+        }
+    }
+
+    /** the expanded content model this object is built from. */
+    final Expression content;
+
+    /** map from residual expressions to states. */
+    private final Map<Expression,State> states;
+
+    private CompiledContentModel( Expression content, Map<Expression,State> states ) {
+        this.content = content;
+        this.states = states;
+    }
+
+    /**
+     * returns the state that represents the given residual,
+     * or null if it is not a state of this automaton.
+     */
+    State getState( Expression residual ) {
+        return states.get(residual);
+    }
+
+    /** returns the number of states. */
+    int size() {
+        return states.size();
+    }
+
+    /**
+     * compiles the given content model.
+     *
+     * @param content
+     *      the expanded content model of an element.
+     * @return
+     *      null if the content model cannot be compiled.
+     */
+    static CompiledContentModel create( Expression content, REDocumentDeclaration docDecl ) {
+        Expression start = docDecl.attPruner.prune(content);
+        if( start==Expression.nullSet )
+            return null;
+
+        Map<Expression,State> states = new IdentityHashMap<Expression,State>();
+        List<State> queue = new ArrayList<State>();
+        State s0 = new State(start);
+        states.put(start,s0);
+        queue.add(s0);
+
+        List<ElementExp> heads = new ArrayList<ElementExp>();
+        Map<StringPair,Transition> names = new HashMap<StringPair,Transition>();
+
+        for( int i=0; i<queue.size(); i++ ) {
+            State s = queue.get(i);
+
+            heads.clear();
+            if( !collectHeads(s.exp,heads,0) )
+                return null;
+
+            names.clear();
+            List<Transition> transitions = new ArrayList<Transition>();
+            for( int j=0; j<heads.size(); j++ ) {
+                ElementExp e = heads.get(j);
+                SimpleNameClass nc = (SimpleNameClass)e.getNameClass();
+                StringPair name = new StringPair(nc.namespaceURI,nc.localName);
+                Transition t = names.get(name);
+                if( t!=null ) {
+                    if( t.owner[0]==e )     continue;
+                    return null;    // two elements can accept this name.
+                }
+
+                Expression c = e.contentModel.getExpandedExp(docDecl.pool);
+                if( c==Expression.nullSet )
+                    // this element never accepts a start tag.
+                    return null;
+
+                t = new Transition(e,c);
+                Expression residual = docDecl.resCalc.calcResidual( s.exp, new ElementToken(t.owner) );
+                if( residual==Expression.nullSet )
+                    return null;
+
+                State next = states.get(residual);
+                if( next==null ) {
+                    if( states.size()==MAX_STATES )
+                        return null;
+                    states.put(residual,next=new State(residual));
+                    queue.add(next);
+                }
+                t.next = next;
+                names.put(name,t);
+                transitions.add(t);
+            }
+
+            s.transitions = transitions.toArray(new Transition[transitions.size()]);
+            if( s.transitions.length>SCAN_LIMIT )
+                s.index = new HashMap<StringPair,Transition>(names);
+        }
+
+        return new CompiledContentModel(content,states);
+    }
+
+    /**
+     * collects elements that can accept the next start tag,
+     * in the same way as {@link CombinedChildContentExpCreator} finds them.
+     *
+     * @return
+     *      false if those elements cannot be compiled.
+     */
+    private static boolean collectHeads( Expression exp, List<ElementExp> heads, int depth ) {
+        if( depth>64 )
+            return false;    // give up on a deeply nested expression.
+
+        if( exp instanceof ElementExp ) {
+            if(!(((ElementExp)exp).getNameClass() instanceof SimpleNameClass))
+                return false;
+            heads.add((ElementExp)exp);
+            return true;
+        }
+        if( exp instanceof ConcurExp )
+            return false;
+        if( exp instanceof SequenceExp ) {
+            SequenceExp s = (SequenceExp)exp;
+            return collectHeads(s.exp1,heads,depth+1)
+                && (!s.exp1.isEpsilonReducible() || collectHeads(s.exp2,heads,depth+1));
+        }
+        if( exp instanceof ChoiceExp || exp instanceof InterleaveExp ) {
+            BinaryExp b = (BinaryExp)exp;
+            return collectHeads(b.exp1,heads,depth+1)
+                && collectHeads(b.exp2,heads,depth+1);
+        }
+        if( exp instanceof OneOrMoreExp || exp instanceof MixedExp )
+            return collectHeads(((UnaryExp)exp).exp,heads,depth+1);
+        if( exp instanceof ReferenceExp )
+            return collectHeads(((ReferenceExp)exp).exp,heads,depth+1);
+        if( exp instanceof OtherExp )
+            return collectHeads(((OtherExp)exp).exp,heads,depth+1);
+
+        // other primitives never accept an element.
+        return true;
+    }
+}
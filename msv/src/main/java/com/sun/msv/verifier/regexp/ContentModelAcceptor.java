@@ -64,6 +64,18 @@ public abstract class ContentModelAcceptor extends ExpressionAcceptor {
             
             // in this special case, combined child pattern and primitive patterns are the same.
             // therefore we don't need to keep track of primitive patterns.
+            
+            if( numPrimitives==1 ) {
+                // leaf elements can be validated without computing residuals.
+                LeafContentModel leaf = docDecl.getLeafContentModel(primitives[0]);
+                if( leaf!=null && leaf.getContentModel()==combined )
+                    return new LeafAcceptor( docDecl, combined, primitives[0], continuation, leaf );
+                
+                CompiledContentModel compiled = docDecl.getCompiledContentModel(combined);
+                if( compiled!=null )
+                    return new CompiledAcceptor( docDecl, combined, primitives[0], continuation, compiled );
+            }
+            
             return new SimpleAcceptor(
                 docDecl, combined,
                 (primitives==null)?null:primitives[0],
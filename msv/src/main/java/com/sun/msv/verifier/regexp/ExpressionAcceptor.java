@@ -94,6 +94,9 @@ public abstract class ExpressionAcceptor implements Acceptor {
         this.docDecl    = docDecl;
         this.expression    = exp;
         this.ignoreUndeclaredAttributes = ignoreUndeclaredAttributes;
+        
+        if( docDecl!=null && docDecl.listener!=null )
+            docDecl.listener.onAcceptorCreated();
     }
     
     
@@ -0,0 +1,201 @@
+package com.sun.msv.verifier.regexp;
+
+import org.relaxng.datatype.Datatype;
+import org.relaxng.datatype.DatatypeException;
+import org.relaxng.datatype.DatatypeStreamingValidator;
+
+import com.sun.msv.grammar.DataExp;
+import com.sun.msv.grammar.ElementExp;
+import com.sun.msv.grammar.Expression;
+import com.sun.msv.grammar.IDContextProvider2;
+import com.sun.msv.util.DatatypeRef;
+import com.sun.msv.util.StartTagInfo;
+import com.sun.msv.util.StringRef;
+import com.sun.msv.verifier.Acceptor;
+import com.sun.msv.verifier.StreamingAcceptor;
+
+/**
+ * Acceptor for an element whose content model is a {@link LeafContentModel}.
+ *
+ * <p>
+ * Attributes and text are checked by calling datatypes directly,
+ * without computing residuals. When something goes wrong (or when
+ * a method this class doesn't optimize is called), this acceptor
+ * replays what it has accepted so far to the general implementation
+ * of {@link SimpleAcceptor} and behaves exactly like it from then on.
+ * Therefore errors are diagnosed in the same way.
+ * 
+ * <p>
+ * If the text is a datatype, this acceptor can also validate it
+ * without buffering (see {@link StreamingAcceptor}).
+ * Streamed text cannot be replayed. So if the general implementation
+ * is used after that, it behaves as if the text was absent.
+ */
+public class LeafAcceptor extends SimpleAcceptor implements StreamingAcceptor {
+
+    /** the content model of the owner. */
+    private final LeafContentModel model;
+
+    /**
+     * true while this object is using the fast path.
+     * Once this flag is cleared, this object behaves as a SimpleAcceptor.
+     */
+    private boolean fast = true;
+
+    /** bit mask of attributes that have been accepted. */
+    private int seen;
+    /** values of accepted attributes. null if no attribute is accepted. */
+    private String[] values;
+    /** true if the onEndAttributes method has been called. */
+    private boolean attributesDone;
+    /** accepted text, or null if no text is accepted yet. */
+    private String text;
+    /** true if the accepted text was streamed. Such text is not replayed. */
+    private boolean textStreamed;
+    /** the context of the last attribute or text. Used to replay them. */
+    private IDContextProvider2 context;
+
+    public LeafAcceptor(
+        REDocumentDeclaration docDecl,
+        Expression combined,
+        ElementExp owner,
+        Expression continuation,
+        LeafContentModel model ) {
+
+        super(docDecl,combined,owner,continuation);
+        this.model = model;
+    }
+
+    /**
+     * switches to the general implementation by feeding
+     * what has been accepted so far.
+     */
+    protected final void toGeneral() {
+        if(!fast)   return;
+        fast = false;
+
+        if( values!=null ) {
+            for( int i=0; i<values.length; i++ ) {
+                if( values[i]==null )   continue;
+                // the attToken of docDecl may be in use by the caller.
+                super.onAttribute( new AttributeToken( docDecl,
+                    model.namespaceURIs[i], model.localNames[i], model.localNames[i],
+                    new StringToken(docDecl,values[i],context,null) ), null );
+            }
+        }
+        if(attributesDone)
+            super.onEndAttributes(null,null);
+        if(text!=null && !textStreamed)
+            super.onText2(text,context,null,null);
+    }
+
+    protected boolean onAttribute( AttributeToken token, StringRef refErr ) {
+        if(fast && !attributesDone) {
+            int idx = model.indexOf(token.namespaceURI,token.localName);
+            if( idx>=0 && model.accepts(model.values[idx],token.value.literal,
+                    token.value.context,token.value.refType,docDecl.listener) ) {
+                if( values==null )
+                    values = new String[model.attributes.length];
+                values[idx] = token.value.literal;
+                seen |= 1<<idx;
+                context = token.value.context;
+                token.matchedExp = model.attributes[idx];
+                return true;
+            }
+            toGeneral();
+        }
+        return super.onAttribute(token,refErr);
+    }
+
+    public boolean onEndAttributes( StartTagInfo sti, StringRef refErr ) {
+        if(fast && !attributesDone) {
+            if( (seen&model.required)==model.required ) {
+                attributesDone = true;
+                return true;
+            }
+        }
+        toGeneral();
+        return super.onEndAttributes(sti,refErr);
+    }
+
+    public boolean onText2( String literal, IDContextProvider2 provider, StringRef refErr, DatatypeRef refType ) {
+        if(fast && attributesDone && text==null && model.text!=null) {
+            if( model.accepts(model.text,literal,provider,refType,docDecl.listener) ) {
+                text = literal;
+                context = provider;
+                return true;
+            }
+        }
+        toGeneral();
+        return super.onText2(literal,provider,refErr,refType);
+    }
+
+    public DatatypeStreamingValidator createTextValidator( IDContextProvider2 provider ) {
+        if(fast && attributesDone && text==null && model.text instanceof DataExp)
+            return ((DataExp)model.text).dt.createStreamingValidator(provider);
+        return null;
+    }
+
+    public boolean onStreamedText( DatatypeStreamingValidator validator, StringRef refErr, DatatypeRef refType ) {
+        final Datatype dt = ((DataExp)model.text).dt;
+        final long start = (docDecl.listener==null) ? 0 : System.nanoTime();
+        final boolean valid = validator.isValid();
+        if( docDecl.listener!=null )
+            docDecl.listener.onDatatypeValidation( dt, valid, System.nanoTime()-start );
+
+        if(valid) {
+            if( refType!=null ) {
+                refType.types = new Datatype[]{dt};
+                // the streamed characters are not available to create a value.
+                refType.values = null;
+            }
+        } else {
+            if( refErr!=null ) {
+                try {
+                    validator.checkValid();
+                } catch( DatatypeException e ) {
+                    refErr.str = e.getMessage();
+                }
+            }
+        }
+
+        // the text is consumed even if it's invalid.
+        text = "";
+        textStreamed = true;
+        return valid;
+    }
+
+    public boolean isAcceptState( StringRef errRef ) {
+        if(fast && attributesDone && (text!=null || model.stringCareLevel!=Acceptor.STRING_STRICT))
+            return true;
+        toGeneral();
+        return super.isAcceptState(errRef);
+    }
+
+    public int getStringCareLevel() {
+        if(fast && attributesDone)
+            return model.stringCareLevel;
+        toGeneral();
+        return super.getStringCareLevel();
+    }
+
+    public Expression getExpression() {
+        toGeneral();
+        return super.getExpression();
+    }
+
+    public Acceptor createChildAcceptor( StartTagInfo tag, StringRef errRef ) {
+        toGeneral();
+        return super.createChildAcceptor(tag,errRef);
+    }
+
+    public boolean stepForward( Acceptor child, StringRef errRef ) {
+        toGeneral();
+        return super.stepForward(child,errRef);
+    }
+
+    protected boolean stepForward( Token token, StringRef errRef ) {
+        toGeneral();
+        return super.stepForward(token,errRef);
+    }
+}
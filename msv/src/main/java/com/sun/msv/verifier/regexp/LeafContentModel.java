@@ -0,0 +1,230 @@
+package com.sun.msv.verifier.regexp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.relaxng.datatype.Datatype;
+
+import com.sun.msv.datatype.xsd.StringType;
+import com.sun.msv.grammar.AttributeExp;
+import com.sun.msv.grammar.BinaryExp;
+import com.sun.msv.grammar.ChoiceExp;
+import com.sun.msv.grammar.DataExp;
+import com.sun.msv.grammar.Expression;
+import com.sun.msv.grammar.IDContextProvider2;
+import com.sun.msv.grammar.InterleaveExp;
+import com.sun.msv.grammar.OtherExp;
+import com.sun.msv.grammar.ReferenceExp;
+import com.sun.msv.grammar.SequenceExp;
+import com.sun.msv.grammar.SimpleNameClass;
+import com.sun.msv.grammar.ValueExp;
+import com.sun.msv.util.DatatypeRef;
+import com.sun.msv.verifier.monitor.ValidationListener;
+
+/**
+ * content model of a "leaf" element, which can be validated
+ * without computing residuals.
+ *
+ * <p>
+ * A leaf element has no child element. It has attributes with
+ * simple names and at most one piece of text, each of which is
+ * a datatype, a value, or any string. Many elements in data-oriented
+ * documents are leaves, and {@link LeafAcceptor} validates them
+ * by calling datatypes directly.
+ *
+ * <p>
+ * Datatypes with ID semantics are excluded so that the general
+ * path can be taken at any time without reporting IDs twice.
+ *
+ * <p>
+ * This object is immutable. It is computed when an element is validated
+ * for the first time, and kept in the verifierTag of the element, so
+ * all the verifiers of a grammar share it.
+ */
+public final class LeafContentModel
+{
+    /** the expanded content model this object is built from. */
+    final Expression content;
+
+    /** attributes. At most 32 of them. */
+    final AttributeExp[] attributes;
+    final String[] namespaceURIs;
+    final String[] localNames;
+    /** values of attributes (DataExp, ValueExp, or anyString.) */
+    final Expression[] values;
+    /** bit mask of required attributes. */
+    final int required;
+
+    /** text (DataExp, ValueExp, or anyString), or null if no text is allowed. */
+    final Expression text;
+
+    /** string care level after all attributes are consumed. */
+    final int stringCareLevel;
+
+    private LeafContentModel( Expression content, List<AttributeExp> atts, int required, Expression text ) {
+        this.content = content;
+        this.attributes = atts.toArray(new AttributeExp[atts.size()]);
+        this.namespaceURIs = new String[attributes.length];
+        this.localNames = new String[attributes.length];
+        this.values = new Expression[attributes.length];
+        for( int i=0; i<attributes.length; i++ ) {
+            SimpleNameClass nc = (SimpleNameClass)attributes[i].nameClass;
+            namespaceURIs[i] = nc.namespaceURI;
+            localNames[i] = nc.localName;
+            values[i] = unwrap(attributes[i].exp);
+        }
+        this.required = required;
+        this.text = text;
+        this.stringCareLevel = StringCareLevelCalculator.calc( text==null ? Expression.epsilon : text );
+    }
+
+    /** returns the expanded content model this object is built from. */
+    public Expression getContentModel() {
+        return content;
+    }
+
+    /** returns the index of the attribute, or -1 if it is not declared. */
+    final int indexOf( String namespaceURI, String localName ) {
+        for( int i=0; i<localNames.length; i++ )
+            if( localNames[i].equals(localName) && namespaceURIs[i].equals(namespaceURI) )
+                return i;
+        return -1;
+    }
+
+    /**
+     * checks if the value expression accepts the literal, and assigns
+     * the type (and the value) in the same way as {@link StringToken} does.
+     */
+    final boolean accepts( Expression exp, String literal, IDContextProvider2 context,
+        DatatypeRef refType, ValidationListener listener ) {
+        
+        final boolean collectValues = refType!=null && refType.collectValues;
+        
+        if( exp==Expression.anyString ) {
+            if( refType!=null ) {
+                refType.types = new Datatype[]{ StringType.theInstance };
+                refType.values = collectValues ? new Object[]{ literal } : null;
+            }
+            return true;
+        }
+
+        final Datatype dt;
+        final boolean valid;
+        Object value = null;
+        final long start = (listener==null) ? 0 : System.nanoTime();
+        if( exp instanceof DataExp ) {
+            dt = ((DataExp)exp).dt;
+            if( collectValues )
+                valid = (value=dt.createValue(literal,context))!=null;
+            else
+                valid = dt.isValid(literal,context);
+        } else {
+            ValueExp vexp = (ValueExp)exp;
+            dt = vexp.dt;
+            value = dt.createValue(literal,context);
+            valid = dt.sameValue( value, vexp.value );
+        }
+        if( listener!=null )
+            listener.onDatatypeValidation( dt, valid, System.nanoTime()-start );
+
+        if( valid && refType!=null ) {
+            refType.types = new Datatype[]{dt};
+            refType.values = collectValues ? new Object[]{value} : null;
+        }
+        return valid;
+    }
+
+    /**
+     * creates the leaf content model for the given expression,
+     * or returns null if it's not a leaf.
+     */
+    static LeafContentModel create( Expression content ) {
+        List<AttributeExp> atts = new ArrayList<AttributeExp>();
+        Expression[] text = new Expression[1];
+        int[] required = new int[1];
+
+        if( !collect(content,atts,required,text) )
+            return null;
+        return new LeafContentModel(content,atts,required[0],text[0]);
+    }
+
+    private static boolean collect( Expression exp, List<AttributeExp> atts, int[] required, Expression[] text ) {
+        exp = unwrap(exp);
+
+        if( exp==Expression.epsilon )
+            return true;
+
+        if( exp instanceof SequenceExp || exp instanceof InterleaveExp ) {
+            // attributes are order-less, and there is at most one text.
+            BinaryExp bexp = (BinaryExp)exp;
+            return collect(bexp.exp1,atts,required,text)
+                && collect(bexp.exp2,atts,required,text);
+        }
+
+        if( exp instanceof ChoiceExp ) {
+            // only an optional attribute is allowed.
+            ChoiceExp cexp = (ChoiceExp)exp;
+            Expression att;
+            if( cexp.exp1==Expression.epsilon )         att = unwrap(cexp.exp2);
+            else if( cexp.exp2==Expression.epsilon )    att = unwrap(cexp.exp1);
+            else                                        return false;
+
+            if(!(att instanceof AttributeExp))
+                return false;
+            return addAttribute((AttributeExp)att,false,atts,required);
+        }
+
+        if( exp instanceof AttributeExp )
+            return addAttribute((AttributeExp)exp,true,atts,required);
+
+        if( isSimpleValue(exp) ) {
+            if( text[0]!=null )     return false;
+            text[0] = exp;
+            return true;
+        }
+
+        return false;
+    }
+
+    private static boolean addAttribute( AttributeExp exp, boolean isRequired, List<AttributeExp> atts, int[] required ) {
+        if(!(exp.nameClass instanceof SimpleNameClass))
+            return false;
+        if(!isSimpleValue(unwrap(exp.exp)))
+            return false;
+        if( atts.size()==32 )
+            return false;
+
+        SimpleNameClass nc = (SimpleNameClass)exp.nameClass;
+        for( int i=0; i<atts.size(); i++ ) {
+            SimpleNameClass n = (SimpleNameClass)atts.get(i).nameClass;
+            if( n.localName.equals(nc.localName) && n.namespaceURI.equals(nc.namespaceURI) )
+                return false;   // the same attribute appears twice.
+        }
+
+        if(isRequired)
+            required[0] |= 1<<atts.size();
+        atts.add(exp);
+        return true;
+    }
+
+    private static boolean isSimpleValue( Expression exp ) {
+        if( exp==Expression.anyString )
+            return true;
+        if( exp instanceof DataExp ) {
+            DataExp dexp = (DataExp)exp;
+            return dexp.except==Expression.nullSet
+                && dexp.dt.getIdType()==Datatype.ID_TYPE_NULL;
+        }
+        if( exp instanceof ValueExp )
+            return ((ValueExp)exp).dt.getIdType()==Datatype.ID_TYPE_NULL;
+        return false;
+    }
+
+    private static Expression unwrap( Expression exp ) {
+        while(true) {
+            if( exp instanceof ReferenceExp )   exp = ((ReferenceExp)exp).exp;
+            else if( exp instanceof OtherExp )  exp = ((OtherExp)exp).exp;
+            else                                return exp;
+        }
+    }
+}
@@ -58,6 +58,30 @@ final class OptimizationTag
     /** AttributePruner.prune(exp) */
     Expression attributePrunedExpression;
     
+    /**
+     * index of the alternatives of this choice, or null if it is not
+     * worth indexing. Used by CombinedChildContentExpCreator.
+     */
+    ChoiceIndex choiceIndex;
+    /** true once choiceIndex is computed. */
+    volatile boolean choiceIndexComputed;
+
+    /**
+     * compiled automaton of this content model, or null if it cannot be
+     * compiled. Used by CompiledAcceptor.
+     */
+    CompiledContentModel compiledModel;
+    /** true once compiledModel is computed. */
+    volatile boolean compiledModelComputed;
+
+    /**
+     * leaf content model of this element, or null if it is not a leaf.
+     * Used by LeafAcceptor.
+     */
+    LeafContentModel leafModel;
+    /** true once leafModel is computed. */
+    volatile boolean leafModelComputed;
+    
 //    /** a flag that indicates this expression doesn't have any attribute node.
 //     * 
 //     * null means unknown.
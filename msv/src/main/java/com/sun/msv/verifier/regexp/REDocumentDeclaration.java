@@ -9,11 +9,13 @@
  */
 package com.sun.msv.verifier.regexp;
 
+import com.sun.msv.grammar.ElementExp;
 import com.sun.msv.grammar.Expression;
 import com.sun.msv.grammar.ExpressionPool;
 import com.sun.msv.grammar.Grammar;
 import com.sun.msv.verifier.Acceptor;
 import com.sun.msv.verifier.DocumentDeclaration;
+import com.sun.msv.verifier.monitor.ValidationListener;
 
 /**
  * {@link DocumentDeclaration} implementation
@@ -43,6 +45,15 @@ public class REDocumentDeclaration implements DocumentDeclaration
      * creates an object that validates the specified expression.
      */
     public REDocumentDeclaration( Expression topLevel, ExpressionPool pool ) {
+        this( topLevel, pool, new CombinedChildContentExpCreator(pool) );
+    }
+    
+    /**
+     * creates an object that validates the specified expression
+     * by using a specialized {@link CombinedChildContentExpCreator}.
+     */
+    protected REDocumentDeclaration( Expression topLevel, ExpressionPool pool,
+                                     CombinedChildContentExpCreator cccec ) {
         this.topLevel = topLevel;
         this.pool = pool;
         
@@ -51,7 +62,7 @@ public class REDocumentDeclaration implements DocumentDeclaration
         attPicker    = new AttributePicker(pool);
         attPruner    = new AttributePruner(pool);
         attRemover    = new AttributeRemover(pool);
-        cccec        = new CombinedChildContentExpCreator(pool);
+        this.cccec    = cccec;
         ecc            = new ElementsOfConcernCollector();
         
         attToken    = new AttributeToken(this,null,null,null,null);
@@ -86,7 +97,99 @@ public class REDocumentDeclaration implements DocumentDeclaration
      * {@link ExpressionAcceptor#onAttribute} method.
      */
     public final AttributeToken                    attToken;
+    
+    /**
+     * returns the leaf content model of the given element,
+     * or null if its content model is not a leaf.
+     * 
+     * <p>
+     * The content model is classified when it is asked for the first
+     * time, and the result is cached in the element.
+     */
+    public final LeafContentModel getLeafContentModel( ElementExp exp ) {
+        OptimizationTag ot = (OptimizationTag)exp.verifierTag;
+        if( ot==null )
+            exp.verifierTag = ot = new OptimizationTag();
+        
+        if( !ot.leafModelComputed ) {
+            ot.leafModel = LeafContentModel.create(exp.contentModel.getExpandedExp(pool));
+            ot.leafModelComputed = true;
+        }
+        return ot.leafModel;
+    }
 
+    /** true if content models are compiled for {@link CompiledAcceptor}. */
+    private boolean compiledAcceptors;
+    
+    public final boolean isCompiledAcceptorsEnabled() {
+        return compiledAcceptors;
+    }
+    
+    /**
+     * enables or disables compiled acceptors.
+     * 
+     * <p>
+     * If enabled, the content model of an element is compiled into an
+     * automaton over the names of child elements when the element is
+     * found for the first time, and {@link CompiledAcceptor} validates
+     * the children by using it. Content models that cannot be compiled
+     * are validated by computing residuals, as usual.
+     * Compiled automata are shared by all the objects that validate
+     * the same grammar.
+     * 
+     * <p>
+     * This is off by default.
+     */
+    public void setCompiledAcceptorsEnabled( boolean enabled ) {
+        this.compiledAcceptors = enabled;
+    }
+    
+    /**
+     * returns the compiled automaton of the given content model,
+     * compiling it if necessary.
+     * 
+     * @return
+     *      null if compiled acceptors are disabled or if
+     *      the content model cannot be compiled.
+     */
+    final CompiledContentModel getCompiledContentModel( Expression content ) {
+        if( !compiledAcceptors )
+            return null;
+        
+        OptimizationTag ot = (OptimizationTag)content.verifierTag;
+        if( ot==null )
+            content.verifierTag = ot = new OptimizationTag();
+        
+        if( !ot.compiledModelComputed ) {
+            ot.compiledModel = CompiledContentModel.create(content,this);
+            ot.compiledModelComputed = true;
+        }
+        return ot.compiledModel;
+    }
+
+    /**
+     * receives notifications from acceptors and function objects.
+     * null if the validation is not monitored.
+     */
+    protected ValidationListener listener;
+    
+    public final ValidationListener getValidationListener() {
+        return listener;
+    }
+    
+    /**
+     * sets the listener that receives notifications from the acceptors
+     * created by this object.
+     * 
+     * @param listener
+     *      null to turn off the monitoring.
+     */
+    public void setValidationListener( ValidationListener listener ) {
+        this.listener = listener;
+        resCalc.listener = listener;
+        cccec.listener = listener;
+    }
+    
     public Acceptor createAcceptor() {
         // top-level Acceptor cannot have continuation.
         return new SimpleAcceptor(this, topLevel, null, Expression.epsilon);
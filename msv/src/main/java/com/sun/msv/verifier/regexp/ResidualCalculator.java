@@ -25,6 +25,7 @@ import com.sun.msv.grammar.OtherExp;
 import com.sun.msv.grammar.ReferenceExp;
 import com.sun.msv.grammar.SequenceExp;
 import com.sun.msv.grammar.ValueExp;
+import com.sun.msv.verifier.monitor.ValidationListener;
 
 /**
  * computes regular expression derivative.
@@ -38,6 +39,12 @@ public class ResidualCalculator implements ExpressionVisitorExpression {
     protected Token token;
     protected final ExpressionPool pool;
     
+    /**
+     * receives cache hit/miss notifications. Can be null.
+     * Also used by {@link StringToken} to report datatype validations.
+     */
+    ValidationListener listener;
+    
     public ResidualCalculator( ExpressionPool pool )    { this.pool=pool; }
     
     /** compute the residual */
@@ -45,11 +52,15 @@ public class ResidualCalculator implements ExpressionVisitorExpression {
         if( token.acceptedPatterns!=null && token.acceptedPatterns.length==1 ) {
             // we can use optimization table
             OptimizationTag ot;
-            if(exp.verifierTag==null)
+            if(exp.verifierTag==null) {
                 exp.verifierTag = ot = new OptimizationTag();
-            else {
+                if(listener!=null)
+                    listener.onResidualCache(false);
+            } else {
                 ot = (OptimizationTag)exp.verifierTag;
                 Expression residual = (Expression)ot.simpleElementTokenResidual.get(token.acceptedPatterns[0]);
+                if(listener!=null)
+                    listener.onResidualCache(residual!=null);
                 if(residual!=null)
                     return residual;    // cache hit.
             }
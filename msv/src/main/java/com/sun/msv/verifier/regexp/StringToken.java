@@ -14,12 +14,15 @@ import java.util.StringTokenizer;
 import org.relaxng.datatype.Datatype;
 
 import com.sun.msv.datatype.xsd.StringType;
+import com.sun.msv.grammar.ChoiceExp;
 import com.sun.msv.grammar.DataExp;
 import com.sun.msv.grammar.Expression;
 import com.sun.msv.grammar.IDContextProvider2;
 import com.sun.msv.grammar.ListExp;
+import com.sun.msv.grammar.OneOrMoreExp;
 import com.sun.msv.grammar.ValueExp;
 import com.sun.msv.util.DatatypeRef;
+import com.sun.msv.verifier.monitor.ValidationListener;
 
 /**
  * chunk of string.
@@ -43,6 +46,7 @@ public class StringToken extends Token {
     protected boolean saturated = false;
 
     private static final Datatype[] ignoredType = new Datatype[0];
+    private static final Object[] ignoredValue = new Object[0];
 
     public StringToken(REDocumentDeclaration docDecl, String literal, IDContextProvider2 context) {
         this(docDecl.resCalc, literal, context, null);
@@ -59,14 +63,23 @@ public class StringToken extends Token {
         this.refType = refType;
         this.ignorable = literal.trim().length() == 0;
 
-        if (ignorable && refType != null)
+        if (ignorable && refType != null) {
             refType.types = ignoredType;
+            refType.values = ignoredValue;
+        }
     }
 
     /** DataExp can consume this token if its datatype can accept this string */
     public boolean match(DataExp exp) {
 
-        if (!exp.dt.isValid(literal, context))
+        Object value = null;
+        if (refType != null && refType.collectValues) {
+            // the value is created instead of checking the validity,
+            // so that the caller doesn't have to parse the literal again.
+            value = createValue(exp.dt);
+            if (value == null)
+                return false; // not accepted.
+        } else if (!isValid(exp.dt))
             return false; // not accepted.
 
         if (exp.except != Expression.nullSet) {
@@ -80,7 +93,7 @@ public class StringToken extends Token {
 
         // this type accepts me.
         if (refType != null)
-            assignType(exp.dt);
+            assignType(exp.dt, value);
 
         // if the type has ID semantics, report it.
         if (exp.dt.getIdType() != Datatype.ID_TYPE_NULL && context != null)
@@ -92,13 +105,13 @@ public class StringToken extends Token {
 
     public boolean match(ValueExp exp) {
 
-        Object thisValue = exp.dt.createValue(literal, context);
+        Object thisValue = createValue(exp.dt);
         if (!exp.dt.sameValue(thisValue, exp.value))
             return false;
 
         // this type accepts me.
         if (refType != null)
-            assignType(exp.dt);
+            assignType(exp.dt, thisValue);
 
         // if the type has ID semantics, report it.
         if (exp.dt.getIdType() != Datatype.ID_TYPE_NULL && context != null)
@@ -110,6 +123,26 @@ public class StringToken extends Token {
 
     /** ListExp can consume this token if its pattern accepts this string */
     public boolean match(ListExp exp) {
+        // fast path for <list><zeroOrMore><data/></zeroOrMore></list>
+        // and <list><oneOrMore><data/></oneOrMore></list>
+        Expression body = exp.exp;
+        boolean allowEmpty = false;
+        if (body instanceof ChoiceExp) {
+            ChoiceExp choice = (ChoiceExp) body;
+            if (choice.exp1 == Expression.epsilon) {
+                body = choice.exp2;
+                allowEmpty = true;
+            } else if (choice.exp2 == Expression.epsilon) {
+                body = choice.exp1;
+                allowEmpty = true;
+            }
+        }
+        if (body instanceof OneOrMoreExp && ((OneOrMoreExp) body).exp instanceof DataExp) {
+            DataExp item = (DataExp) ((OneOrMoreExp) body).exp;
+            if (item.except == Expression.nullSet && item.dt.getIdType() == Datatype.ID_TYPE_NULL)
+                return matchItems(item.dt, allowEmpty);
+        }
+
         StringTokenizer tokens = new StringTokenizer(literal);
         Expression residual = exp.exp;
 
@@ -117,11 +150,16 @@ public class StringToken extends Token {
         // collect them from children.
         DatatypeRef dtRef = null;
         Datatype[] childTypes = null;
+        Object[] childValues = null;
         int cnt = 0;
 
         if (this.refType != null) {
             dtRef = new DatatypeRef();
             childTypes = new Datatype[tokens.countTokens()];
+            if (refType.collectValues) {
+                dtRef.collectValues = true;
+                childValues = new Object[childTypes.length];
+            }
         }
 
         while (tokens.hasMoreTokens()) {
@@ -145,6 +183,8 @@ public class StringToken extends Token {
                         // Thus it's not possible for this child to return more than one type.
                         throw new Error();
 
+                    if (childValues != null)
+                        childValues[cnt] = (dtRef.values == null) ? null : dtRef.values[0];
                     childTypes[cnt++] = dtRef.types[0];
                 }
             }
@@ -162,14 +202,138 @@ public class StringToken extends Token {
                 // a type is already assigned. That means this string has more than one type.
                 // so bail out.
                 refType.types = null;
-            else
+            else {
+                refType.types = childTypes;
+                refType.values = childValues;
+            }
+            saturated = true;
+        }
+
+        return true;
+    }
+
+    /**
+     * matches a list whose items are all of the given datatype.
+     * 
+     * This gives the same result as the residual calculation, but items are
+     * validated directly, without creating a token for each of them.
+     */
+    private boolean matchItems(Datatype dt, boolean allowEmpty) {
+        final int len = literal.length();
+        Datatype[] childTypes = null;
+        Object[] childValues = null;
+        if (refType != null) {
+            childTypes = new Datatype[countItems()];
+            if (refType.collectValues)
+                childValues = new Object[childTypes.length];
+        }
+
+        int cnt = 0;
+        int idx = skipSeparators(0);
+        while (idx < len) {
+            int end = idx;
+            while (end < len && !isSeparator(literal.charAt(end)))
+                end++;
+
+            String item = literal.substring(idx, end);
+            if (childValues != null) {
+                if ((childValues[cnt] = createValue(dt, item)) == null)
+                    return false;
+            } else if (!isValid(dt, item))
+                return false;
+            if (childTypes != null)
+                childTypes[cnt] = dt;
+            cnt++;
+
+            idx = skipSeparators(end);
+        }
+
+        if (cnt == 0 && !allowEmpty)
+            return false;
+
+        if (childTypes != null) {
+            // assign datatype
+            if (saturated)
+                refType.types = null;
+            else {
                 refType.types = childTypes;
+                refType.values = childValues;
+            }
             saturated = true;
         }
 
         return true;
     }
 
+    /**
+     * returns true if the character separates list items.
+     * These are the delimiters that StringTokenizer uses by default.
+     */
+    private static boolean isSeparator(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\r' || ch == '\f';
+    }
+
+    private int skipSeparators(int idx) {
+        while (idx < literal.length() && isSeparator(literal.charAt(idx)))
+            idx++;
+        return idx;
+    }
+
+    /** counts the number of list items in this literal. */
+    private int countItems() {
+        int cnt = 0;
+        boolean inItem = false;
+        for (int i = 0; i < literal.length(); i++) {
+            boolean sep = isSeparator(literal.charAt(i));
+            if (!sep && !inItem)
+                cnt++;
+            inItem = !sep;
+        }
+        return cnt;
+    }
+
+    /**
+     * validates this literal by the datatype, and reports it to the listener if any.
+     */
+    private boolean isValid(Datatype dt) {
+        return isValid(dt, literal);
+    }
+
+    /**
+     * validates a literal by the datatype, and reports it to the listener if any.
+     */
+    private boolean isValid(Datatype dt, String literal) {
+        final ValidationListener listener = (resCalc == null) ? null : resCalc.listener;
+        if (listener == null)
+            return dt.isValid(literal, context);
+
+        final long start = System.nanoTime();
+        final boolean valid = dt.isValid(literal, context);
+        listener.onDatatypeValidation(dt, valid, System.nanoTime() - start);
+        return valid;
+    }
+
+    /**
+     * creates the value object of this literal, and reports it to the listener if any.
+     */
+    private Object createValue(Datatype dt) {
+        return createValue(dt, literal);
+    }
+
+    /**
+     * creates the value object of a literal, and reports it to the listener if any.
+     */
+    private Object createValue(Datatype dt, String literal) {
+        final ValidationListener listener = (resCalc == null) ? null : resCalc.listener;
+        if (listener == null)
+            return dt.createValue(literal, context);
+
+        final long start = System.nanoTime();
+        final Object value = dt.createValue(literal, context);
+        listener.onDatatypeValidation(dt, value != null, System.nanoTime() - start);
+        return value;
+    }
+
     protected StringToken createChildStringToken(String literal, DatatypeRef dtRef) {
         return new StringToken(resCalc, literal, context, dtRef);
     }
@@ -177,11 +341,12 @@ public class StringToken extends Token {
     // anyString can match any string
     public boolean matchAnyString() {
         if (refType != null)
-            assignType(StringType.theInstance);
+            // the value of a string is the literal itself.
+            assignType(StringType.theInstance, literal);
         return true;
     }
 
-    private void assignType(Datatype dt) {
+    private void assignType(Datatype dt, Object value) {
         if (saturated) {
             if (refType.types != null && (refType.types[0] != dt || refType.types.length != 1))
                 // different types are assigned. roll back to null
@@ -189,6 +354,7 @@ public class StringToken extends Token {
         } else {
             // this is the first assignment. remember this value.
             refType.types = new Datatype[] { dt };
+            refType.values = (refType.collectValues && value != null) ? new Object[] { value } : null;
             saturated = true;
         }
     }
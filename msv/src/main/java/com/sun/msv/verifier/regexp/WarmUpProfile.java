@@ -0,0 +1,526 @@
+package com.sun.msv.verifier.regexp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+import java.util.StringTokenizer;
+
+import org.relaxng.datatype.Datatype;
+
+import com.sun.msv.datatype.SerializationContext;
+import com.sun.msv.datatype.xsd.DataTypeWithFacet;
+import com.sun.msv.datatype.xsd.EnumerationFacet;
+import com.sun.msv.datatype.xsd.FractionDigitsFacet;
+import com.sun.msv.datatype.xsd.LengthFacet;
+import com.sun.msv.datatype.xsd.ListType;
+import com.sun.msv.datatype.xsd.MaxLengthFacet;
+import com.sun.msv.datatype.xsd.MinLengthFacet;
+import com.sun.msv.datatype.xsd.PatternFacet;
+import com.sun.msv.datatype.xsd.Proxy;
+import com.sun.msv.datatype.xsd.RangeFacet;
+import com.sun.msv.datatype.xsd.TotalDigitsFacet;
+import com.sun.msv.datatype.xsd.UnionType;
+import com.sun.msv.datatype.xsd.XSDatatypeImpl;
+import com.sun.msv.grammar.AttributeExp;
+import com.sun.msv.grammar.BinaryExp;
+import com.sun.msv.grammar.ChoiceExp;
+import com.sun.msv.grammar.ConcurExp;
+import com.sun.msv.grammar.DataExp;
+import com.sun.msv.grammar.ElementExp;
+import com.sun.msv.grammar.Expression;
+import com.sun.msv.grammar.ExpressionPool;
+import com.sun.msv.grammar.Grammar;
+import com.sun.msv.grammar.InterleaveExp;
+import com.sun.msv.grammar.ListExp;
+import com.sun.msv.grammar.MixedExp;
+import com.sun.msv.grammar.OneOrMoreExp;
+import com.sun.msv.grammar.OtherExp;
+import com.sun.msv.grammar.ReferenceExp;
+import com.sun.msv.grammar.SequenceExp;
+import com.sun.msv.grammar.UnaryExp;
+import com.sun.msv.grammar.ValueExp;
+import com.sun.msv.util.StringPair;
+
+/**
+ * saves and restores the caches that acceptors build during the validation.
+ *
+ * <p>
+ * {@link ExpressionAcceptor} and its function objects cache transitions,
+ * residuals and string care levels in {@link Expression#verifierTag}.
+ * Those caches start empty, so validation is slow until they are filled.
+ * A profile written by {@link #write} after validating typical documents
+ * can be read by {@link #read} when the same grammar is loaded again
+ * (by another JVM, typically), so that the caches are filled in advance.
+ *
+ * <p>
+ * Expressions of the grammar are referenced by the order in which they are
+ * found by walking the grammar from its top-level expression. Expressions
+ * created during the validation are written as combinations of other
+ * expressions, and they are re-created through the {@link ExpressionPool}
+ * when the profile is read. A profile has a fingerprint of the grammar,
+ * and it can only be read into a grammar loaded from the same schema.
+ */
+public final class WarmUpProfile
+{
+    private WarmUpProfile() {}
+
+    /** the first line of a profile. */
+    private static final String HEADER = "msv-warmup-profile 1";
+
+    /**
+     * writes the caches of the expressions of the given grammar.
+     *
+     * <p>
+     * This method should be called while no document is validated
+     * against the grammar.
+     *
+     * @return
+     *        the number of cache entries written.
+     */
+    public static int write( Grammar grammar, Writer out ) throws IOException {
+        List<Expression> table = walk(grammar.getTopLevel());
+        Exporter exporter = new Exporter(table);
+        ExpressionPool pool = grammar.getPool();
+
+        // acceptors for elements start from the expanded content models.
+        LinkedList<Expression> roots = new LinkedList<Expression>(table);
+        roots.add(grammar.getTopLevel().getExpandedExp(pool));
+        for( int i=0; i<table.size(); i++ )
+            if( table.get(i) instanceof ElementExp )
+                roots.add(((ElementExp)table.get(i)).contentModel.getExpandedExp(pool));
+        exporter.inspect(roots);
+
+        PrintWriter w = new PrintWriter(out);
+        w.println(HEADER+" "+table.size()+" "+fingerprint(table));
+        for( int i=0; i<exporter.definitions.size(); i++ )
+            w.println(exporter.definitions.get(i));
+        for( int i=0; i<exporter.entries.size(); i++ )
+            w.println(exporter.entries.get(i));
+        w.flush();
+        if( w.checkError() )
+            throw new IOException("unable to write the profile");
+        return exporter.entries.size();
+    }
+
+    /**
+     * reads a profile and fills the caches of the expressions of the given grammar.
+     *
+     * @return
+     *        the number of cache entries restored.
+     * @exception IOException
+     *        if the profile is broken, or if it was written for another grammar.
+     */
+    public static int read( Grammar grammar, Reader in ) throws IOException {
+        List<Expression> table = walk(grammar.getTopLevel());
+        ExpressionPool pool = grammar.getPool();
+        BufferedReader reader = new BufferedReader(in);
+
+        String header = reader.readLine();
+        if( header==null || !header.equals(HEADER+" "+table.size()+" "+fingerprint(table)) )
+            throw new IOException("the profile is not written for this grammar");
+
+        // expressions by their ids. null if an expression cannot be re-created.
+        List<Expression> exps = new ArrayList<Expression>(table);
+        int count = 0;
+        int lineNumber = 1;
+        String line;
+        while( (line=reader.readLine())!=null ) {
+            lineNumber++;
+            if( line.length()==0 )
+                continue;
+            try {
+                StringTokenizer tokens = new StringTokenizer(line," ");
+                String type = tokens.nextToken();
+                if( type.equals("e") ) {
+                    if( Integer.parseInt(tokens.nextToken())!=exps.size() )
+                        throw new IOException("unexpected id");
+                    exps.add(create(pool,tokens,exps));
+                    continue;
+                }
+
+                Expression exp = get(exps,tokens.nextToken());
+                boolean applied;
+                if( type.equals("l") )
+                    applied = restoreStringCareLevel(exp,Integer.parseInt(tokens.nextToken()));
+                else
+                if( type.equals("p") )
+                    applied = restorePrunedExpression(exp,get(exps,tokens.nextToken()));
+                else
+                if( type.equals("r") )
+                    applied = restoreResidual(exp,get(exps,tokens.nextToken()),get(exps,tokens.nextToken()));
+                else
+                if( type.equals("t") ) {
+                    Expression owner = get(exps,tokens.nextToken());
+                    String cont = tokens.nextToken();
+                    String localName = tokens.nextToken();
+                    // the namespace URI can be empty.
+                    String uri = tokens.hasMoreTokens() ? tokens.nextToken("").trim() : "";
+                    applied = restoreTransition(exp,owner,
+                        cont.equals("-") ? null : get(exps,cont), localName, uri );
+                } else
+                    throw new IOException("unknown entry");
+                if(applied)
+                    count++;
+            } catch( RuntimeException e ) {
+                throw new IOException("broken profile at line "+lineNumber+": "+line);
+            } catch( IOException e ) {
+                throw new IOException(e.getMessage()+" at line "+lineNumber+": "+line);
+            }
+        }
+        return count;
+    }
+
+    private static Expression get( List<Expression> exps, String id ) {
+        return exps.get(Integer.parseInt(id));
+    }
+
+    /** re-creates an expression from its definition. */
+    private static Expression create( ExpressionPool pool, StringTokenizer tokens, List<Expression> exps ) throws IOException {
+        String op = tokens.nextToken();
+        Expression exp1 = get(exps,tokens.nextToken());
+        if( op.length()!=1 )
+            throw new IOException("unknown operator");
+
+        switch( op.charAt(0) ) {
+        case 'o':   return exp1==null ? null : pool.createOneOrMore(exp1);
+        case 'm':   return exp1==null ? null : pool.createMixed(exp1);
+        case 'l':   return exp1==null ? null : pool.createList(exp1);
+        }
+
+        Expression exp2 = get(exps,tokens.nextToken());
+        if( exp1==null || exp2==null )
+            return null;
+        switch( op.charAt(0) ) {
+        case 'c':   return pool.createChoice(exp1,exp2);
+        case 's':   return pool.createSequence(exp1,exp2);
+        case 'i':   return pool.createInterleave(exp1,exp2);
+        case 'u':   return pool.createConcur(exp1,exp2);
+        default:
+            throw new IOException("unknown operator");
+        }
+    }
+
+    private static OptimizationTag getTag( Expression exp ) {
+        OptimizationTag ot = (OptimizationTag)exp.verifierTag;
+        if(ot==null)    exp.verifierTag = ot = new OptimizationTag();
+        return ot;
+    }
+
+    private static boolean restoreStringCareLevel( Expression exp, int level ) {
+        if( exp==null )     return false;
+        getTag(exp).stringCareLevel = level;
+        return true;
+    }
+
+    private static boolean restorePrunedExpression( Expression exp, Expression pruned ) {
+        if( exp==null || pruned==null )     return false;
+        getTag(exp).attributePrunedExpression = pruned;
+        return true;
+    }
+
+    private static boolean restoreResidual( Expression exp, Expression element, Expression residual ) {
+        if( exp==null || !(element instanceof ElementExp) || residual==null )
+            return false;
+        getTag(exp).simpleElementTokenResidual.put(element,residual);
+        return true;
+    }
+
+    private static boolean restoreTransition( Expression exp, Expression owner, Expression continuation,
+                                              String localName, String uri ) {
+        if( exp==null || !(owner instanceof ElementExp) )
+            return false;
+        getTag(exp).transitions.put( new StringPair(uri,localName),
+            new OptimizationTag.OwnerAndCont((ElementExp)owner,continuation) );
+        return true;
+    }
+
+    /**
+     * lists the expressions of the grammar in a stable order.
+     * The first three are the special expressions.
+     */
+    private static List<Expression> walk( Expression topLevel ) {
+        List<Expression> table = new ArrayList<Expression>();
+        Map<Expression,Expression> visited = new IdentityHashMap<Expression,Expression>();
+        Stack<Expression> stack = new Stack<Expression>();
+        stack.push(topLevel);
+        stack.push(Expression.anyString);
+        stack.push(Expression.nullSet);
+        stack.push(Expression.epsilon);
+
+        while( !stack.isEmpty() ) {
+            Expression exp = stack.pop();
+            if( exp==null || visited.put(exp,exp)!=null )
+                continue;
+            table.add(exp);
+
+            // children are pushed in the reverse order so that
+            // they are listed from left to right.
+            if( exp instanceof BinaryExp ) {
+                stack.push(((BinaryExp)exp).exp2);
+                stack.push(((BinaryExp)exp).exp1);
+            } else
+            if( exp instanceof UnaryExp )
+                stack.push(((UnaryExp)exp).exp);
+            else
+            if( exp instanceof ReferenceExp )
+                stack.push(((ReferenceExp)exp).exp);
+            else
+            if( exp instanceof OtherExp )
+                stack.push(((OtherExp)exp).exp);
+            else
+            if( exp instanceof ElementExp )
+                stack.push(((ElementExp)exp).contentModel);
+            else
+            if( exp instanceof AttributeExp )
+                stack.push(((AttributeExp)exp).exp);
+            else
+            if( exp instanceof DataExp )
+                stack.push(((DataExp)exp).except);
+        }
+        return table;
+    }
+
+    /** computes a value that changes when the structure of the grammar changes. */
+    private static int fingerprint( List<Expression> table ) {
+        int h = 0;
+        for( int i=0; i<table.size(); i++ ) {
+            Expression exp = table.get(i);
+            h = h*31 + exp.getClass().getName().hashCode();
+            if( exp instanceof ElementExp )
+                h = h*31 + ((ElementExp)exp).getNameClass().toString().hashCode();
+            if( exp instanceof AttributeExp )
+                h = h*31 + ((AttributeExp)exp).getNameClass().toString().hashCode();
+            if( exp instanceof ReferenceExp && ((ReferenceExp)exp).name!=null )
+                h = h*31 + ((ReferenceExp)exp).name.hashCode();
+            if( exp instanceof DataExp ) {
+                DataExp data = (DataExp)exp;
+                if( data.name!=null )
+                    h = h*31 + data.name.hashCode();
+                h = h*31 + fingerprint(data.dt);
+            }
+            if( exp instanceof ValueExp ) {
+                ValueExp value = (ValueExp)exp;
+                if( value.name!=null )
+                    h = h*31 + value.name.hashCode();
+                h = h*31 + fingerprint(value.dt);
+                if( value.dt instanceof XSDatatypeImpl )
+                    h = h*31 + ((XSDatatypeImpl)value.dt).convertToLexicalValue(value.value,uriContext).hashCode();
+            }
+        }
+        return h;
+    }
+
+    /**
+     * computes a value that changes when the datatype or its facets change.
+     * Values are hashed by their lexical forms, because the hash codes
+     * of value objects may change from a run to another.
+     */
+    private static int fingerprint( Datatype dt ) {
+        int h = dt.getClass().getName().hashCode();
+        if(!(dt instanceof XSDatatypeImpl))
+            return h;
+
+        XSDatatypeImpl xs = (XSDatatypeImpl)dt;
+        h = h*31 + String.valueOf(xs.getNamespaceUri()).hashCode();
+        h = h*31 + String.valueOf(xs.getName()).hashCode();
+        h = h*31 + xs.whiteSpace.getClass().getName().hashCode();
+
+        if( xs instanceof DataTypeWithFacet ) {
+            DataTypeWithFacet facet = (DataTypeWithFacet)xs;
+            h = h*31 + facet.facetName.hashCode();
+            h = h*31 + facetValue(facet);
+            h = h*31 + fingerprint(facet.baseType);
+        }
+        if( xs instanceof Proxy )
+            h = h*31 + fingerprint(((Proxy)xs).baseType);
+        if( xs instanceof ListType )
+            h = h*31 + fingerprint(((ListType)xs).itemType);
+        if( xs instanceof UnionType ) {
+            XSDatatypeImpl[] members = ((UnionType)xs).memberTypes;
+            for( int i=0; i<members.length; i++ )
+                h = h*31 + fingerprint(members[i]);
+        }
+        return h;
+    }
+
+    /** computes a value that changes when the value of the facet changes. */
+    private static int facetValue( DataTypeWithFacet facet ) {
+        if( facet instanceof LengthFacet )
+            return ((LengthFacet)facet).length;
+        if( facet instanceof MinLengthFacet )
+            return ((MinLengthFacet)facet).minLength;
+        if( facet instanceof MaxLengthFacet )
+            return ((MaxLengthFacet)facet).maxLength;
+        if( facet instanceof TotalDigitsFacet )
+            return ((TotalDigitsFacet)facet).precision;
+        if( facet instanceof FractionDigitsFacet )
+            return ((FractionDigitsFacet)facet).scale;
+        if( facet instanceof RangeFacet )
+            return facet.convertToLexicalValue(((RangeFacet)facet).limitValue,uriContext).hashCode();
+
+        int h = 0;
+        if( facet instanceof PatternFacet ) {
+            String[] patterns = ((PatternFacet)facet).patterns;
+            for( int i=0; i<patterns.length; i++ )
+                h = h*31 + patterns[i].hashCode();
+        }
+        if( facet instanceof EnumerationFacet ) {
+            // the order of the set changes from a run to another.
+            Object[] values = ((EnumerationFacet)facet).values.toArray();
+            for( int i=0; i<values.length; i++ )
+                h += facet.convertToLexicalValue(values[i],uriContext).hashCode();
+        }
+        // the whiteSpace facet is covered by the whiteSpace field.
+        return h;
+    }
+
+    /** writes QName values with their namespace URIs in place of prefixes. */
+    private static final SerializationContext uriContext = new SerializationContext() {
+        public String getNamespacePrefix( String namespaceURI ) {
+            return namespaceURI;
+        }
+    };
+
+    /** collects cache entries and the definitions of the expressions they use. */
+    private static final class Exporter {
+        /** ids of expressions. -1 if an expression cannot be written. */
+        private final Map<Expression,Integer> ids = new IdentityHashMap<Expression,Integer>();
+        private int nextId;
+
+        final List<String> definitions = new ArrayList<String>();
+        final List<String> entries = new ArrayList<String>();
+
+        Exporter( List<Expression> table ) {
+            for( int i=0; i<table.size(); i++ )
+                ids.put(table.get(i),new Integer(i));
+            nextId = table.size();
+        }
+
+        /** writes the caches of the given expressions and those reachable from them. */
+        void inspect( LinkedList<Expression> queue ) {
+            Map<Expression,Expression> inspected = new IdentityHashMap<Expression,Expression>();
+            while( !queue.isEmpty() ) {
+                Expression exp = queue.removeFirst();
+                if( exp==null || inspected.put(exp,exp)!=null )
+                    continue;
+                if(!(exp.verifierTag instanceof OptimizationTag))
+                    continue;
+                OptimizationTag ot = (OptimizationTag)exp.verifierTag;
+                int id = define(exp);
+                if( id<0 )
+                    continue;
+
+                if( ot.stringCareLevel!=OptimizationTag.STRING_NOTCOMPUTED )
+                    entries.add("l "+id+" "+ot.stringCareLevel);
+
+                Expression pruned = ot.attributePrunedExpression;
+                if( pruned!=null && define(pruned)>=0 ) {
+                    entries.add("p "+id+" "+define(pruned));
+                    queue.add(pruned);
+                }
+
+                Object[] residuals;
+                synchronized(ot.simpleElementTokenResidual) {
+                    residuals = ot.simpleElementTokenResidual.entrySet().toArray();
+                }
+                for( int i=0; i<residuals.length; i++ ) {
+                    Map.Entry<?,?> e = (Map.Entry<?,?>)residuals[i];
+                    Expression residual = (Expression)e.getValue();
+                    int element = define((Expression)e.getKey());
+                    if( element<0 || define(residual)<0 )
+                        continue;
+                    entries.add("r "+id+" "+element+" "+define(residual));
+                    queue.add(residual);
+                }
+
+                Object[] transitions;
+                synchronized(ot.transitions) {
+                    transitions = ot.transitions.entrySet().toArray();
+                }
+                for( int i=0; i<transitions.length; i++ ) {
+                    Map.Entry<?,?> e = (Map.Entry<?,?>)transitions[i];
+                    StringPair name = (StringPair)e.getKey();
+                    OptimizationTag.OwnerAndCont oc = (OptimizationTag.OwnerAndCont)e.getValue();
+                    int owner = define(oc.owner);
+                    int cont = oc.continuation==null ? 0 : define(oc.continuation);
+                    if( owner<0 || cont<0 )
+                        continue;
+                    entries.add("t "+id+" "+owner+" "+(oc.continuation==null?"-":String.valueOf(cont))
+                        +" "+name.localName+" "+name.namespaceURI);
+                    queue.add(oc.continuation);
+                }
+            }
+        }
+
+        /**
+         * returns the id of the given expression, defining it if necessary.
+         *
+         * @return
+         *        -1 if the expression cannot be written.
+         */
+        private int define( Expression exp ) {
+            Integer id = ids.get(exp);
+            if( id!=null )
+                return id.intValue();
+
+            // operators are grouped to the left, so a long choice (or sequence)
+            // is defined from its leftmost item without recursion.
+            List<BinaryExp> chain = new ArrayList<BinaryExp>();
+            Expression e = exp;
+            while( e instanceof BinaryExp && !ids.containsKey(e) ) {
+                chain.add((BinaryExp)e);
+                e = ((BinaryExp)e).exp1;
+            }
+            if( !chain.isEmpty() ) {
+                for( int i=chain.size()-1; i>=0; i-- ) {
+                    BinaryExp b = chain.get(i);
+                    if( ids.containsKey(b) )
+                        continue;   // defined as a part of another item.
+                    int id1 = define(b.exp1);
+                    int id2 = (id1<0) ? -1 : define(b.exp2);
+                    if( id1<0 || id2<0 )
+                        ids.put(b,new Integer(-1));
+                    else
+                        add(b,operator(b)+" "+id1+" "+id2);
+                }
+                return ids.get(exp).intValue();
+            }
+
+            if( exp instanceof OneOrMoreExp || exp instanceof MixedExp || exp instanceof ListExp ) {
+                int id1 = define(((UnaryExp)exp).exp);
+                if( id1>=0 )
+                    return add(exp,operator(exp)+" "+id1);
+            }
+
+            // other expressions, such as elements, are only found in grammars.
+            ids.put(exp,new Integer(-1));
+            return -1;
+        }
+
+        private int add( Expression exp, String definition ) {
+            int id = nextId++;
+            ids.put(exp,new Integer(id));
+            definitions.add("e "+id+" "+definition);
+            return id;
+        }
+
+        private static char operator( Expression exp ) {
+            if( exp instanceof ChoiceExp )      return 'c';
+            if( exp instanceof SequenceExp )    return 's';
+            if( exp instanceof InterleaveExp )  return 'i';
+            if( exp instanceof ConcurExp )      return 'u';
+            if( exp instanceof OneOrMoreExp )   return 'o';
+            if( exp instanceof MixedExp )       return 'm';
+            if( exp instanceof ListExp )        return 'l';
+            throw new Error();  // assertion failed
+        }
+    }
+}
@@ -25,6 +25,7 @@ import com.sun.msv.util.StartTagInfo;
 import com.sun.msv.util.StringRef;
 import com.sun.msv.verifier.Acceptor;
 import com.sun.msv.verifier.regexp.AttributeToken;
+import com.sun.msv.verifier.regexp.LeafContentModel;
 import com.sun.msv.verifier.regexp.SimpleAcceptor;
 
 /**
@@ -62,13 +63,32 @@ public class XSAcceptor extends SimpleAcceptor {
         Expression combined, Expression continuation,
         ElementExp[] primitives, int numPrimitives ) {
         
+        return createAcceptor( _docDecl, combined, continuation, primitives, numPrimitives );
+    }
+    
+    /**
+     * creates an acceptor for a child element.
+     * Also used by {@link XSLeafAcceptor}.
+     */
+    static Acceptor createAcceptor( XSREDocDecl docDecl,
+        Expression combined, Expression continuation,
+        ElementExp[] primitives, int numPrimitives ) {
+        
         if( primitives==null || numPrimitives<=1 ) {
             // primitives==null is possible when recovering from error.
             
             // in this special case, combined child pattern and primitive patterns are the same.
             // therefore we don't need to keep track of primitive patterns.
+            
+            if( numPrimitives==1 ) {
+                // leaf elements can be validated without computing residuals.
+                LeafContentModel leaf = docDecl.getLeafContentModel(primitives[0]);
+                if( leaf!=null && leaf.getContentModel()==combined )
+                    return new XSLeafAcceptor( docDecl, combined, primitives[0], continuation, leaf );
+            }
+            
             return new XSAcceptor(
-                (XSREDocDecl)docDecl, combined,
+                docDecl, combined,
                 (primitives==null)?null:primitives[0],
                 continuation );
         }
@@ -83,7 +103,7 @@ public class XSAcceptor extends SimpleAcceptor {
         // and throw other options away.
         
         return new XSAcceptor(
-            (XSREDocDecl)docDecl,
+            docDecl,
             primitives[0].contentModel.getExpandedExp(docDecl.pool),
             primitives[0],
             null );
@@ -0,0 +1,38 @@
+package com.sun.msv.verifier.regexp.xmlschema;
+
+import com.sun.msv.grammar.Expression;
+import com.sun.msv.grammar.ExpressionPool;
+import com.sun.msv.grammar.ReferenceExp;
+import com.sun.msv.grammar.xmlschema.ElementDeclExp;
+import com.sun.msv.util.StartTagInfo;
+import com.sun.msv.verifier.regexp.CombinedChildContentExpCreator;
+
+/**
+ * {@link CombinedChildContentExpCreator} that selects the member of
+ * a substitution group by its name.
+ * 
+ * <p>
+ * Instead of visiting the choice of all members, only the member whose
+ * name matches the start tag is visited. Since the other members
+ * can never accept the start tag, the result is the same.
+ */
+class XSCombinedChildContentExpCreator extends CombinedChildContentExpCreator {
+    
+    XSCombinedChildContentExpCreator( ExpressionPool pool ) {
+        super(pool);
+    }
+    
+    public void onRef( ReferenceExp exp ) {
+        StartTagInfo tag = getTagInfo();
+        if( tag!=null && exp instanceof ElementDeclExp.SubstitutionGroupExp ) {
+            ElementDeclExp.SubstitutionGroupExp group = (ElementDeclExp.SubstitutionGroupExp)exp;
+            if( group.isIndexed() ) {
+                ElementDeclExp member = group.getMember(tag.namespaceURI,tag.localName);
+                if( member==null )  Expression.nullSet.visit(this);
+                else                member.body.visit(this);
+                return;
+            }
+        }
+        super.onRef(exp);
+    }
+}
@@ -0,0 +1,50 @@
+package com.sun.msv.verifier.regexp.xmlschema;
+
+import com.sun.msv.grammar.ElementExp;
+import com.sun.msv.grammar.Expression;
+import com.sun.msv.util.StringRef;
+import com.sun.msv.verifier.Acceptor;
+import com.sun.msv.verifier.regexp.AttributeToken;
+import com.sun.msv.verifier.regexp.LeafAcceptor;
+import com.sun.msv.verifier.regexp.LeafContentModel;
+
+/**
+ * {@link LeafAcceptor} for XSREDocDecl.
+ * 
+ * <p>
+ * This class ignores xsi:*** attributes and creates {@link XSAcceptor}s
+ * just like XSAcceptor does.
+ * Elements with xsi:type or xsi:nil are handled by XSAcceptor
+ * without using this class.
+ */
+class XSLeafAcceptor extends LeafAcceptor {
+    
+    private final XSREDocDecl _docDecl;
+    
+    XSLeafAcceptor( XSREDocDecl docDecl, Expression combined, ElementExp owner,
+        Expression continuation, LeafContentModel model ) {
+        
+        super(docDecl,combined,owner,continuation,model);
+        this._docDecl = docDecl;
+    }
+    
+    public Acceptor createClone() {
+        return new XSAcceptor( _docDecl, getExpression(), owner, continuation );
+    }
+    
+    protected Acceptor createAcceptor(
+        Expression combined, Expression continuation,
+        ElementExp[] primitives, int numPrimitives ) {
+        
+        return XSAcceptor.createAcceptor( _docDecl, combined, continuation, primitives, numPrimitives );
+    }
+    
+    protected boolean onAttribute( AttributeToken token, StringRef refErr ) {
+        // xsi:*** attribute is ignored.
+        if( token.namespaceURI.equals(XSAcceptor.XSINamespace) ) {
+            token.match(_docDecl.xsiAttExp);
+            return true;
+        }
+        return super.onAttribute( token, refErr );
+    }
+}
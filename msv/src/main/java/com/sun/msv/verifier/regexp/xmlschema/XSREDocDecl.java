@@ -38,7 +38,8 @@ import com.sun.msv.verifier.regexp.REDocumentDeclaration;
 public class XSREDocDecl extends REDocumentDeclaration {
 
     public XSREDocDecl( XMLSchemaGrammar grammar ) {
-        super(grammar);
+        super( grammar.getTopLevel(), grammar.getPool(),
+            new XSCombinedChildContentExpCreator(grammar.getPool()) );
         this.grammar = grammar;
     }
 
@@ -0,0 +1,115 @@
+package com.sun.msv.verifier.stax;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+import org.xml.sax.SAXException;
+
+import com.sun.msv.verifier.IVerifier;
+
+/**
+ * {@link XMLStreamReader} filter that validates the document
+ * as the application reads it.
+ *
+ * <p>
+ * Every event the application pulls from this reader is reported to
+ * the verifier before it is returned. If the error handler of the
+ * verifier throws an exception, it is reported as an
+ * {@link XMLStreamException}. Call {@link #isValid()} after the
+ * END_DOCUMENT event to check the result.
+ *
+ * <p>
+ * If the reader is positioned at a start tag when this object is created,
+ * only the subtree of that element is validated. The document ends at
+ * the corresponding end tag, and the following events are not validated.
+ */
+public class ValidatingXMLStreamReader extends StreamReaderDelegate implements XMLStreamConstants {
+
+    private final IVerifier verifier;
+    private final XMLStreamReaderDriver driver = new XMLStreamReaderDriver();
+
+    /**
+     * @param reader
+     *      the reader to be validated. It should be positioned at the
+     *      start of the document, or at the start tag of the subtree
+     *      to be validated.
+     */
+    public ValidatingXMLStreamReader( XMLStreamReader reader, IVerifier verifier ) throws XMLStreamException {
+        super(reader);
+        this.verifier = verifier;
+        try {
+            driver.startDocument(reader,verifier);
+            // the reader may have already advanced to the first event
+            driver.onEvent(reader.getEventType());
+        } catch( SAXException e ) {
+            throw new XMLStreamException(e);
+        }
+    }
+
+    /**
+     * checks if the document was valid.
+     * This method may not be called before the END_DOCUMENT event
+     * (or the end tag of the subtree) is read.
+     */
+    public boolean isValid() {
+        return verifier.isValid();
+    }
+
+    public int next() throws XMLStreamException {
+        int eventType = super.next();
+        try {
+            driver.onEvent(eventType);
+        } catch( SAXException e ) {
+            throw new XMLStreamException(e.getMessage(),getLocation(),e);
+        }
+        return eventType;
+    }
+
+    // the following methods are re-implemented on top of next() so that
+    // events they skip are also reported to the verifier.
+
+    public int nextTag() throws XMLStreamException {
+        int eventType = next();
+        while( (eventType==CHARACTERS && isWhiteSpace())
+            || (eventType==CDATA && isWhiteSpace())
+            || eventType==SPACE
+            || eventType==PROCESSING_INSTRUCTION
+            || eventType==COMMENT )
+            eventType = next();
+
+        if( eventType!=START_ELEMENT && eventType!=END_ELEMENT )
+            throw new XMLStreamException("expected start or end tag", getLocation());
+        return eventType;
+    }
+
+    public String getElementText() throws XMLStreamException {
+        if( getEventType()!=START_ELEMENT )
+            throw new XMLStreamException("parser must be on START_ELEMENT to read next text", getLocation());
+
+        StringBuffer content = new StringBuffer();
+        int eventType = next();
+        while( eventType!=END_ELEMENT ) {
+            switch(eventType) {
+            case CHARACTERS:
+            case CDATA:
+            case SPACE:
+            case ENTITY_REFERENCE:
+                content.append(getText());
+                break;
+            case PROCESSING_INSTRUCTION:
+            case COMMENT:
+                break;
+            case END_DOCUMENT:
+                throw new XMLStreamException("unexpected end of document when reading element text content", getLocation());
+            case START_ELEMENT:
+                throw new XMLStreamException("element text content may not contain START_ELEMENT", getLocation());
+            default:
+                throw new XMLStreamException("unexpected event type "+eventType, getLocation());
+            }
+            eventType = next();
+        }
+        return content.toString();
+    }
+}
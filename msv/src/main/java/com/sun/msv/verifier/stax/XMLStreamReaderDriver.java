@@ -0,0 +1,360 @@
+package com.sun.msv.verifier.stax;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import com.sun.msv.verifier.IVerifier;
+
+/**
+ * feeds events of {@link XMLStreamReader} to a SAX ContentHandler,
+ * which is typically a {@link com.sun.msv.verifier.Verifier}.
+ *
+ * <p>
+ * Unlike general-purpose StAX-to-SAX bridges, this class doesn't copy
+ * anything: attributes are reported through a view of the reader,
+ * and characters are passed directly from the reader's buffer.
+ * Therefore the handler must not keep {@link Attributes} or the
+ * character array after the callback returns, which is also what
+ * SAX requires.
+ *
+ * <p>
+ * Entity references that the reader doesn't replace are validated
+ * as their replacement text. If the replacement text is not known or
+ * contains markup, the document is rejected. Set
+ * {@link javax.xml.stream.XMLInputFactory#IS_REPLACING_ENTITY_REFERENCES}
+ * to validate such documents.
+ *
+ * <p>
+ * When the document is the subtree of an element, the namespace bindings
+ * declared on its ancestors are still in scope. StAX can't enumerate them,
+ * so the bindings used by the names of the initial start tag and the
+ * default namespace are reported as prefix mappings at the beginning of
+ * the subtree. Other prefixes (for example those in QName values) are
+ * resolved through the {@link Locator}, which also implements
+ * {@link NamespaceContext} backed by the reader.
+ *
+ * <p>
+ * This object can be reused, but it cannot be used to process
+ * more than one document at the same time.
+ */
+public class XMLStreamReaderDriver implements XMLStreamConstants {
+
+    /** the reader from which events are read. */
+    private XMLStreamReader reader;
+    /** the receiver of events. */
+    private ContentHandler handler;
+
+    private final AttributesImpl attributes = new AttributesImpl();
+    private final LocatorImpl locator = new LocatorImpl();
+
+    /** true if the current document is the subtree of an element. */
+    private boolean subtree;
+    /** depth of the current element. */
+    private int depth;
+    /** true once endDocument is reported to the handler. */
+    private boolean finished;
+    /** prefixes inherited from the ancestors of the subtree and reported to the handler. */
+    private final List<String> inheritedPrefixes = new ArrayList<String>();
+
+    /**
+     * qualified names built so far, indexed by the prefix and then by the local name.
+     * Names returned by readers are mostly the same strings, so they are not
+     * concatenated for every event.
+     */
+    private final Map<String,Map<String,String>> qNames = new HashMap<String,Map<String,String>>();
+
+    /**
+     * validates the document (or the element subtree, if the reader
+     * is positioned at a start tag) read from the given reader.
+     *
+     * <p>
+     * When this method returns, the reader is positioned at the end of the
+     * document or at the end tag that corresponds to the initial start tag.
+     *
+     * @return
+     *      true if the document is valid.
+     */
+    public static boolean verify( XMLStreamReader reader, IVerifier verifier ) throws XMLStreamException, SAXException {
+        new XMLStreamReaderDriver().parse(reader,verifier);
+        return verifier.isValid();
+    }
+
+    /**
+     * reads the document (or the element subtree, if the reader is positioned
+     * at a start tag) from the reader and reports it to the handler.
+     */
+    public void parse( XMLStreamReader reader, ContentHandler handler ) throws XMLStreamException, SAXException {
+        startDocument(reader,handler);
+
+        int eventType = reader.getEventType();
+        while(true) {
+            onEvent(eventType);
+            if(finished)
+                return;
+            eventType = reader.next();
+        }
+    }
+
+    /**
+     * starts a new document. The current event of the reader will be
+     * reported by the subsequent {@link #onEvent(int)} call.
+     *
+     * <p>
+     * If the reader is positioned at a start tag, the document is the
+     * subtree of that element, which ends at the corresponding end tag.
+     */
+    public void startDocument( XMLStreamReader reader, ContentHandler handler ) throws SAXException {
+        this.reader = reader;
+        this.handler = handler;
+        subtree = (reader.getEventType()==START_ELEMENT);
+        depth = 0;
+        finished = false;
+        inheritedPrefixes.clear();
+        handler.setDocumentLocator(locator);
+        handler.startDocument();
+        if(subtree) {
+            reportInheritedPrefix(XMLConstants.DEFAULT_NS_PREFIX);
+            reportInheritedPrefix(reader.getPrefix());
+            for( int i=0; i<reader.getAttributeCount(); i++ )
+                reportInheritedPrefix(reader.getAttributePrefix(i));
+        }
+    }
+
+    /**
+     * reports the binding of the given prefix if it is declared
+     * by an ancestor of the initial start tag.
+     */
+    private void reportInheritedPrefix( String prefix ) throws SAXException {
+        prefix = fixNull(prefix);
+        if( prefix.equals(XMLConstants.XML_NS_PREFIX) || inheritedPrefixes.contains(prefix) )
+            return;
+        for( int i=0; i<reader.getNamespaceCount(); i++ )
+            if( prefix.equals(fixNull(reader.getNamespacePrefix(i))) )
+                return;     // declared by the start tag itself.
+
+        String uri = reader.getNamespaceContext().getNamespaceURI(prefix);
+        if( uri==null || uri.length()==0 )
+            return;         // not bound.
+        inheritedPrefixes.add(prefix);
+        handler.startPrefixMapping(prefix,uri);
+    }
+
+    /**
+     * ends the document without waiting for the END_DOCUMENT event.
+     */
+    public void endDocument() throws SAXException {
+        finished = true;
+        for( int i=inheritedPrefixes.size()-1; i>=0; i-- )
+            handler.endPrefixMapping(inheritedPrefixes.get(i));
+        inheritedPrefixes.clear();
+        handler.endDocument();
+    }
+
+    /**
+     * returns true if the end of the document (or the end tag of
+     * the subtree) has been reported. Events after that are ignored.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * reports the current event of the reader to the handler.
+     *
+     * @param eventType
+     *      the type of the current event.
+     */
+    public void onEvent( int eventType ) throws SAXException {
+        if(finished)
+            return;
+
+        switch(eventType) {
+        case START_ELEMENT:
+            for( int i=0; i<reader.getNamespaceCount(); i++ )
+                handler.startPrefixMapping(
+                    fixNull(reader.getNamespacePrefix(i)), fixNull(reader.getNamespaceURI(i)) );
+            handler.startElement( fixNull(reader.getNamespaceURI()), reader.getLocalName(),
+                getQName(reader.getPrefix(),reader.getLocalName()), attributes );
+            depth++;
+            return;
+
+        case END_ELEMENT:
+            handler.endElement( fixNull(reader.getNamespaceURI()), reader.getLocalName(),
+                getQName(reader.getPrefix(),reader.getLocalName()) );
+            for( int i=reader.getNamespaceCount()-1; i>=0; i-- )
+                handler.endPrefixMapping(fixNull(reader.getNamespacePrefix(i)));
+            // if we are given a subtree, it ends at the corresponding end tag.
+            if( --depth==0 && subtree )
+                endDocument();
+            return;
+
+        case CHARACTERS:
+        case CDATA:
+            handler.characters( reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength() );
+            return;
+
+        case SPACE:
+            handler.ignorableWhitespace( reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength() );
+            return;
+
+        case PROCESSING_INSTRUCTION:
+            handler.processingInstruction( reader.getPITarget(), fixNull(reader.getPIData()) );
+            return;
+
+        case ENTITY_REFERENCE:
+            onEntityReference();
+            return;
+
+        case END_DOCUMENT:
+            endDocument();
+            return;
+
+        default:
+            // START_DOCUMENT was already reported by the startDocument method.
+            // other events are irrelevant to the validation.
+            return;
+        }
+    }
+
+    /**
+     * reports an entity reference that the reader didn't replace.
+     */
+    private void onEntityReference() throws SAXException {
+        String text = reader.getText();
+        if( text==null || text.indexOf('<')>=0 || text.indexOf('&')>=0 )
+            // we can't tell what the entity expands to.
+            throw new SAXParseException(
+                "entity reference &"+reader.getLocalName()+"; cannot be validated unless it is replaced",
+                locator );
+        handler.characters( text.toCharArray(), 0, text.length() );
+    }
+
+    private static String fixNull( String s ) {
+        if(s==null)     return "";
+        else            return s;
+    }
+
+    private String getQName( String prefix, String localName ) {
+        if(prefix==null || prefix.length()==0)
+            return localName;
+
+        Map<String,String> m = qNames.get(prefix);
+        if(m==null)
+            qNames.put(prefix, m=new HashMap<String,String>());
+        String qName = m.get(localName);
+        if(qName==null)
+            m.put(localName, qName=prefix+':'+localName);
+        return qName;
+    }
+
+    /**
+     * {@link Attributes} implementation that reads attributes of
+     * the current start tag directly from the reader.
+     */
+    private final class AttributesImpl implements Attributes {
+        public int getLength() {
+            return reader.getAttributeCount();
+        }
+        public String getURI( int index ) {
+            return fixNull(reader.getAttributeNamespace(index));
+        }
+        public String getLocalName( int index ) {
+            return reader.getAttributeLocalName(index);
+        }
+        public String getQName( int index ) {
+            return XMLStreamReaderDriver.this.getQName(
+                reader.getAttributePrefix(index), reader.getAttributeLocalName(index) );
+        }
+        public String getType( int index ) {
+            return reader.getAttributeType(index);
+        }
+        public String getValue( int index ) {
+            return reader.getAttributeValue(index);
+        }
+
+        public int getIndex( String uri, String localName ) {
+            final int len = getLength();
+            for( int i=0; i<len; i++ )
+                if( reader.getAttributeLocalName(i).equals(localName) && getURI(i).equals(uri) )
+                    return i;
+            return -1;
+        }
+        public int getIndex( String qName ) {
+            final int len = getLength();
+            for( int i=0; i<len; i++ )
+                if( getQName(i).equals(qName) )
+                    return i;
+            return -1;
+        }
+        public String getType( String uri, String localName ) {
+            int idx = getIndex(uri,localName);
+            if(idx<0)   return null;
+            return getType(idx);
+        }
+        public String getType( String qName ) {
+            int idx = getIndex(qName);
+            if(idx<0)   return null;
+            return getType(idx);
+        }
+        public String getValue( String uri, String localName ) {
+            int idx = getIndex(uri,localName);
+            if(idx<0)   return null;
+            return getValue(idx);
+        }
+        public String getValue( String qName ) {
+            int idx = getIndex(qName);
+            if(idx<0)   return null;
+            return getValue(idx);
+        }
+    }
+
+    /**
+     * {@link Locator} implementation that reports the location of the reader.
+     * It also resolves prefixes with the namespace context of the reader,
+     * which includes bindings declared outside of a subtree.
+     */
+    private final class LocatorImpl implements Locator, NamespaceContext {
+        public String getPublicId() {
+            Location loc = reader.getLocation();
+            return loc==null ? null : loc.getPublicId();
+        }
+        public String getSystemId() {
+            Location loc = reader.getLocation();
+            return loc==null ? null : loc.getSystemId();
+        }
+        public int getLineNumber() {
+            Location loc = reader.getLocation();
+            return loc==null ? -1 : loc.getLineNumber();
+        }
+        public int getColumnNumber() {
+            Location loc = reader.getLocation();
+            return loc==null ? -1 : loc.getColumnNumber();
+        }
+
+        public String getNamespaceURI( String prefix ) {
+            return reader.getNamespaceContext().getNamespaceURI(prefix);
+        }
+        public String getPrefix( String namespaceURI ) {
+            return reader.getNamespaceContext().getPrefix(namespaceURI);
+        }
+        public Iterator<?> getPrefixes( String namespaceURI ) {
+            return reader.getNamespaceContext().getPrefixes(namespaceURI);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.sun.msv.grammar.util;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import com.sun.msv.grammar.ChoiceNameClass;
+import com.sun.msv.grammar.DifferenceNameClass;
+import com.sun.msv.grammar.NameClass;
+import com.sun.msv.grammar.NamespaceNameClass;
+import com.sun.msv.grammar.NotNameClass;
+import com.sun.msv.grammar.SimpleNameClass;
+
+public class NameClassMatcherTest extends TestCase {
+    
+    public NameClassMatcherTest( String name ) { super(name); }
+    
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+    
+    public static Test suite() {
+        return new TestSuite(NameClassMatcherTest.class);
+    }
+    
+    private static final String[] uris = { "", "a", "b" };
+    private static final String[] locals = { "x", "y", "z" };
+    
+    /** names to be tested, including names that no name class mentions. */
+    private static final String[] testUris = { "", "a", "b", "c", NameClass.NAMESPACE_WILDCARD };
+    private static final String[] testLocals = { "x", "y", "z", "w", NameClass.LOCALNAME_WILDCARD };
+    
+    private static void assertSameAnswers( NameClass nc ) {
+        NameClassMatcher m = NameClassMatcher.compile(nc);
+        for( int i=0; i<testUris.length; i++ )
+            for( int j=0; j<testLocals.length; j++ )
+                assertEquals( nc.toString()+" "+testUris[i]+":"+testLocals[j],
+                    nc.accepts(testUris[i],testLocals[j]),
+                    m.accepts(testUris[i],testLocals[j]) );
+    }
+    
+    public void testExclusion() throws Exception {
+        // anyName - (a:* | b:*)
+        NameClass nc = new DifferenceNameClass( NameClass.ALL,
+            new ChoiceNameClass( new NamespaceNameClass("a"), new NamespaceNameClass("b") ) );
+        NameClassMatcher m = nc.getMatcher();
+        assertSame( m, nc.getMatcher() );
+        assertTrue( m.accepts("c","x") );
+        assertFalse( m.accepts("a","x") );
+        assertFalse( m.accepts("b","y") );
+        assertSameAnswers(nc);
+    }
+    
+    public void testRandom() throws Exception {
+        Random random = new Random(0);
+        for( int i=0; i<2000; i++ )
+            assertSameAnswers( create(random,4) );
+    }
+    
+    private static NameClass create( Random random, int depth ) {
+        int n = random.nextInt( depth==0 ? 3 : 6 );
+        switch(n) {
+        case 0:
+            return new SimpleNameClass( uris[random.nextInt(uris.length)], locals[random.nextInt(locals.length)] );
+        case 1:
+            return new NamespaceNameClass( uris[random.nextInt(uris.length)] );
+        case 2:
+            return NameClass.ALL;
+        case 3:
+            return new ChoiceNameClass( create(random,depth-1), create(random,depth-1) );
+        case 4:
+            return new DifferenceNameClass( create(random,depth-1), create(random,depth-1) );
+        default:
+            return new NotNameClass( create(random,depth-1) );
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.sun.msv.reader.dtd;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.xml.sax.InputSource;
+
+import com.sun.msv.driver.textui.DebugController;
+import com.sun.msv.grammar.trex.TREXGrammar;
+
+/**
+ * measures the time to load a large DTD by {@link DTDReader}.
+ *
+ * <p>
+ * The DTD is generated in the style of DocBook or TEI: declarations are
+ * split into modules that are included by external parameter entities,
+ * and content models and attribute lists are built from shared
+ * parameter entities.
+ *
+ * <p>
+ * Usage: DTDReaderBenchmark [number of elements] [DTD file to load instead]
+ */
+public class DTDReaderBenchmark
+{
+    private static final int MODULES = 20;
+    private static final int REPEAT = 10;
+
+    public static void main( String[] args ) throws Exception {
+        int elements = args.length>0 ? Integer.parseInt(args[0]) : 3000;
+
+        File dtd;
+        File dir = null;
+        if( args.length>1 ) {
+            dtd = new File(args[1]);
+        } else {
+            dir = File.createTempFile("dtdbench","");
+            dir.delete();
+            dir.mkdir();
+            dtd = generate(dir,elements);
+        }
+
+        try {
+            long total = 0;
+            for( int i=0; i<REPEAT; i++ ) {
+                long t = System.nanoTime();
+                TREXGrammar g = DTDReader.parse(
+                    new InputSource(dtd.toURL().toExternalForm()),
+                    new DebugController(false,true) );
+                t = System.nanoTime()-t;
+                if( g==null )
+                    throw new IllegalStateException("unable to load "+dtd);
+
+                System.out.println("load #"+i+" : "+(t/1000000)+" ms ("
+                    +g.namedPatterns.size()+" elements)");
+                if( i>=REPEAT/2 )
+                    total += t;    // the first half is a warm-up
+            }
+            System.out.println("average : "+(total/(REPEAT-REPEAT/2)/1000000)+" ms");
+        } finally {
+            if( dir!=null ) {
+                File[] files = dir.listFiles();
+                for( int i=0; i<files.length; i++ )
+                    files[i].delete();
+                dir.delete();
+            }
+        }
+    }
+
+    /** generates a DTD and returns the driver file. */
+    private static File generate( File dir, int elements ) throws IOException {
+        File main = new File(dir,"main.dtd");
+        Writer w = new FileWriter(main);
+
+        // shared parameter entities
+        w.write("<!ENTITY % inline \"");
+        for( int i=0; i<elements/10; i++ )
+            w.write((i==0?"":" | ")+"e"+i);
+        w.write("\">\n");
+        w.write("<!ENTITY % block \"");
+        for( int i=elements/10; i<elements/5; i++ )
+            w.write((i==elements/10?"":" | ")+"e"+i);
+        w.write("\">\n");
+        w.write("<!ENTITY % mixed \"#PCDATA | %inline;\">\n");
+        w.write("<!ENTITY % common.attrib\n"+
+            "    \"id ID #IMPLIED\n"+
+            "     class CDATA #IMPLIED\n"+
+            "     lang NMTOKEN #IMPLIED\n"+
+            "     role (main|aside|note|tip|warning) 'main'\n"+
+            "     revision (changed|added|deleted|off) #IMPLIED\">\n");
+
+        for( int m=0; m<MODULES; m++ ) {
+            w.write("<!ENTITY % module"+m+" SYSTEM \"module"+m+".mod\">\n%module"+m+";\n");
+
+            Writer mw = new FileWriter(new File(dir,"module"+m+".mod"));
+            for( int i=m; i<elements; i+=MODULES ) {
+                mw.write("<!-- element e"+i+" -->\n");
+                if( i%3==0 )
+                    mw.write("<!ELEMENT e"+i+" (%mixed;)*>\n");
+                else
+                if( i%3==1 )
+                    mw.write("<!ELEMENT e"+i+" (e"+((i+1)%elements)+"?, (%block;)+)>\n");
+                else
+                    mw.write("<!ELEMENT e"+i+" (e"+((i+1)%elements)+", e"+((i+2)%elements)+"*, (e"+((i+3)%elements)+" | e"+((i+4)%elements)+")?)>\n");
+                mw.write("<!ATTLIST e"+i+"\n    %common.attrib;\n    a"+i+" CDATA #IMPLIED>\n");
+            }
+            mw.close();
+        }
+        w.close();
+        return main;
+    }
+}
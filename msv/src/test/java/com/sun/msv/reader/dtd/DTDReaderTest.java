@@ -1,11 +1,25 @@
 package com.sun.msv.reader.dtd;
 
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 import util.Checker;
 import util.ResourceChecker;
 
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+import com.sun.msv.driver.textui.DebugController;
+import com.sun.msv.grammar.ElementExp;
+import com.sun.msv.grammar.Expression;
+import com.sun.msv.grammar.ExpressionPool;
+import com.sun.msv.grammar.ReferenceExp;
+import com.sun.msv.grammar.SequenceExp;
+import com.sun.msv.grammar.trex.TREXGrammar;
+
 public class DTDReaderTest extends TestCase
 {
     public DTDReaderTest( String name ) { super(name); }
@@ -31,4 +45,73 @@ public class DTDReaderTest extends TestCase
                 }
             });
     }
+    
+    private static TREXGrammar parse( String dtd, EntityResolver resolver ) {
+        InputSource in = new InputSource(new StringReader(dtd));
+        in.setSystemId("http://www.example.org/main.dtd");
+        TREXGrammar g = DTDReader.parse(in, new DebugController(false,true,resolver));
+        assertNotNull(g);
+        return g;
+    }
+    
+    /** gets the content model of the given element, without attributes. */
+    private static Expression getContentModel( TREXGrammar g, String name ) {
+        Expression exp = ((ElementExp)g.namedPatterns._get(name).exp).contentModel;
+        if( exp instanceof SequenceExp )
+            exp = ((SequenceExp)exp).exp2;
+        return exp;
+    }
+    
+    /**
+     * alternatives are combined at once, but the result must be
+     * the same as combining them one by one.
+     */
+    public void testChoice() throws Exception {
+        TREXGrammar g = parse(
+            "<!ELEMENT a (#PCDATA|b|c|d)*>"+
+            "<!ELEMENT b (c|(d,c)|c|(a|b)|d)>"+
+            "<!ELEMENT c EMPTY>"+
+            "<!ELEMENT d (c|d)?>", null );
+        ExpressionPool pool = g.pool;
+        ReferenceExp a = g.namedPatterns._get("a");
+        ReferenceExp b = g.namedPatterns._get("b");
+        ReferenceExp c = g.namedPatterns._get("c");
+        ReferenceExp d = g.namedPatterns._get("d");
+        
+        assertSame(
+            pool.createMixed(pool.createZeroOrMore(
+                pool.createChoice(pool.createChoice(b,c),d))),
+            getContentModel(g,"a") );
+        
+        Expression exp = c;
+        exp = pool.createChoice( exp, pool.createSequence(d,c) );
+        exp = pool.createChoice( exp, c );
+        exp = pool.createChoice( exp, pool.createChoice(a,b) );
+        exp = pool.createChoice( exp, d );
+        assertSame( exp, getContentModel(g,"b") );
+        
+        assertSame( pool.createOptional(pool.createChoice(c,d)), getContentModel(g,"d") );
+    }
+    
+    /** an external entity referenced twice is resolved only once. */
+    public void testEntityCache() throws Exception {
+        final int[] count = new int[1];
+        EntityResolver resolver = new EntityResolver() {
+            public InputSource resolveEntity( String publicId, String systemId ) throws java.io.IOException {
+                assertEquals( "http://www.example.org/mod.ent", systemId );
+                count[0]++;
+                InputSource in = new InputSource(systemId);
+                in.setByteStream(new ByteArrayInputStream(
+                    "<!ATTLIST root a CDATA #IMPLIED>".getBytes("UTF-8")));
+                return in;
+            }
+        };
+        
+        TREXGrammar g = parse(
+            "<!ENTITY % mod SYSTEM 'mod.ent'>"+
+            "<!ELEMENT root EMPTY>"+
+            "%mod;%mod;", resolver );
+        assertEquals( 1, count[0] );
+        assertNotNull( g.namedPatterns._get("root") );
+    }
 }
@@ -0,0 +1,87 @@
+package com.sun.msv.reader.xmlschema;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.xml.sax.InputSource;
+
+import com.sun.msv.reader.util.GrammarLoader;
+
+/**
+ * measures the throughput of W3C XML Schemas compiled by many threads at once,
+ * which look up built-in datatypes concurrently.
+ *
+ * <p>
+ * Usage: ParallelSchemaBenchmark [# of schemas per thread] [# of threads]
+ */
+public class ParallelSchemaBenchmark
+{
+    private static final String[] types = {
+        "string", "boolean", "decimal", "float", "double", "duration", "dateTime",
+        "time", "date", "gYearMonth", "gYear", "gMonthDay", "gDay", "gMonth",
+        "hexBinary", "base64Binary", "anyURI", "QName", "normalizedString", "token",
+        "language", "NMTOKEN", "NMTOKENS", "Name", "NCName", "ID", "IDREF", "IDREFS",
+        "ENTITY", "ENTITIES", "integer", "nonPositiveInteger", "negativeInteger",
+        "long", "int", "short", "byte", "nonNegativeInteger", "unsignedLong",
+        "unsignedInt", "unsignedShort", "unsignedByte", "positiveInteger", "anySimpleType",
+    };
+
+    private static String createSchema() {
+        StringBuffer buf = new StringBuffer();
+        buf.append("<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>");
+        buf.append("<xs:element name='root'><xs:complexType><xs:sequence>");
+        for( int i=0; i<types.length; i++ )
+            buf.append("<xs:element name='e").append(i).append("' type='xs:").append(types[i]).append("'/>");
+        buf.append("</xs:sequence>");
+        for( int i=0; i<types.length; i++ )
+            buf.append("<xs:attribute name='a").append(i).append("' type='xs:").append(types[i]).append("'/>");
+        buf.append("</xs:complexType></xs:element>");
+        buf.append("</xs:schema>");
+        return buf.toString();
+    }
+
+    public static void main( String[] args ) throws Exception {
+        int schemas = args.length>0 ? Integer.parseInt(args[0]) : 200;
+        int threads = args.length>1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        String schema = createSchema();
+
+        // warm up
+        run(schema,schemas,1);
+        run(schema,schemas,threads);
+
+        long single = run(schema,schemas,1);
+        long parallel = run(schema,schemas,threads);
+        System.out.println("1 thread   : "+(schemas*1000L/Math.max(single,1))+" schemas/s");
+        System.out.println(threads+" threads  : "+(schemas*threads*1000L/Math.max(parallel,1))+" schemas/s");
+    }
+
+    /** compiles the schema on each thread and returns the elapsed time. */
+    private static long run( final String schema, final int schemas, int threads ) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+            for( int i=0; i<threads; i++ )
+                tasks.add(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        for( int j=0; j<schemas; j++ )
+                            if( GrammarLoader.loadSchema(new InputSource(new StringReader(schema)))==null )
+                                throw new Error("failed to compile the schema");
+                        return null;
+                    }
+                });
+
+            long start = System.currentTimeMillis();
+            for( Future<Object> f : executor.invokeAll(tasks) )
+                f.get();
+            return System.currentTimeMillis()-start;
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -1,12 +1,26 @@
 package com.sun.msv.reader.xmlschema;
 
+import java.io.StringReader;
+
+import javax.xml.parsers.SAXParserFactory;
+
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 import util.Checker;
 import util.ResourceChecker;
 
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import com.sun.msv.grammar.xmlschema.ElementDeclExp;
+import com.sun.msv.grammar.xmlschema.XMLSchemaGrammar;
+import com.sun.msv.grammar.xmlschema.XMLSchemaSchema;
 import com.sun.msv.reader.GrammarReader;
+import com.sun.msv.reader.util.GrammarLoader;
+import com.sun.msv.verifier.Verifier;
+import com.sun.msv.verifier.regexp.xmlschema.XSREDocDecl;
+import com.sun.msv.verifier.util.IgnoreErrorHandler;
 
 public class XMLSchemaReaderTest extends TestCase
 {
@@ -39,4 +53,79 @@ public class XMLSchemaReaderTest extends TestCase
             ResourceChecker.check( GrammarReader.class, prefixes[i], checker );
         }
     }
+    
+    private static String substitutionSchema() {
+        StringBuffer buf = new StringBuffer();
+        buf.append(
+            "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"+
+              "<xs:element name='root'><xs:complexType><xs:sequence>"+
+                "<xs:element ref='head' minOccurs='0' maxOccurs='unbounded'/>"+
+              "</xs:sequence></xs:complexType></xs:element>"+
+              "<xs:element name='head' type='xs:string'/>"+
+              "<xs:element name='mid' type='xs:string' substitutionGroup='head' abstract='true'/>"+
+              "<xs:element name='leaf' type='xs:string' substitutionGroup='mid'/>"+
+              "<xs:element name='blocked' type='xs:string' block='substitution'/>"+
+              "<xs:element name='other' type='xs:string' substitutionGroup='blocked'/>");
+        for( int i=0; i<30; i++ )
+            buf.append("<xs:element name='m"+i+"' type='xs:string' substitutionGroup='head'/>");
+        buf.append("</xs:schema>");
+        return buf.toString();
+    }
+    
+    private static boolean isValid( XMLSchemaGrammar g, String doc ) throws Exception {
+        Verifier verifier = new Verifier( new XSREDocDecl(g), new IgnoreErrorHandler() );
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        XMLReader reader = factory.newSAXParser().getXMLReader();
+        reader.setContentHandler(verifier);
+        reader.parse(new InputSource(new StringReader(doc)));
+        return verifier.isValid();
+    }
+    
+    /** tests the index of substitution group members. */
+    public void testSubstitutionGroup() throws Exception {
+        XMLSchemaGrammar g = (XMLSchemaGrammar)GrammarLoader.loadSchema(
+            new InputSource(new StringReader(substitutionSchema())));
+        XMLSchemaSchema schema = g.getByNamespace("");
+        
+        ElementDeclExp head = schema.elementDecls.get("head");
+        ElementDeclExp.SubstitutionGroupExp group = (ElementDeclExp.SubstitutionGroupExp)head.substitutions;
+        assertTrue( group.isIndexed() );
+        assertSame( schema.elementDecls.get("m5"), group.getMember("","m5") );
+        assertSame( schema.elementDecls.get("leaf"), group.getMember("","leaf") );
+        assertNull( group.getMember("","mid") );     // abstract
+        assertNull( group.getMember("","head") );
+        assertNull( group.getMember("urn:x","m5") );
+        
+        // blocked substitution
+        ElementDeclExp.SubstitutionGroupExp blocked = (ElementDeclExp.SubstitutionGroupExp)
+            schema.elementDecls.get("blocked").substitutions;
+        assertFalse( blocked.isIndexed() );
+        
+        assertTrue( schema.elementDecls.get("mid").isAbstract() );
+        assertFalse( head.isAbstract() );
+        
+        assertTrue( isValid(g,"<root><head/><m0/><m29/><leaf/><m0/></root>") );
+        assertFalse( isValid(g,"<root><mid/></root>") );
+        assertFalse( isValid(g,"<root><blocked/></root>") );
+        assertFalse( isValid(g,"<root><m30/></root>") );
+    }
+    
+    /** members with the same name are kept in the choice, but not indexed. */
+    public void testDuplicateMember() throws Exception {
+        XMLSchemaGrammar g = (XMLSchemaGrammar)GrammarLoader.loadSchema(
+            new InputSource(new StringReader(substitutionSchema())));
+        XMLSchemaSchema schema = g.getByNamespace("");
+        
+        ElementDeclExp m0 = schema.elementDecls.get("m0");
+        ElementDeclExp m1 = schema.elementDecls.get("m1");
+        ElementDeclExp m2 = schema.elementDecls.get("m2");
+        ElementDeclExp.SubstitutionGroupExp group = (ElementDeclExp.SubstitutionGroupExp)
+            schema.elementDecls.get("head").substitutions;
+        group.setMembers( new ElementDeclExp[]{m0,m1,m0,m2}, g.getPool() );
+        
+        assertFalse( group.isIndexed() );
+        assertSame( group.exp, g.getPool().createChoice(
+            g.getPool().createChoice(m0.body,m1.body), m2.body ) );
+    }
 }
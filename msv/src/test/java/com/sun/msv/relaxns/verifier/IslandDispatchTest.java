@@ -0,0 +1,126 @@
+package com.sun.msv.relaxns.verifier;
+
+import java.io.StringReader;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import util.ErrorCollector;
+
+import org.iso_relax.dispatcher.Dispatcher;
+import org.iso_relax.dispatcher.ElementDecl;
+import org.iso_relax.dispatcher.IslandVerifier;
+import org.iso_relax.dispatcher.impl.DispatcherImpl;
+import org.iso_relax.dispatcher.impl.IgnoredSchema;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.sun.msv.reader.util.GrammarLoader;
+import com.sun.msv.relaxns.grammar.RELAXGrammar;
+
+/**
+ * Tests that the content of foreign islands is dispatched to their verifiers.
+ */
+public class IslandDispatchTest extends TestCase
+{
+    public IslandDispatchTest( String name ) { super(name); }
+
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        return new TestSuite(IslandDispatchTest.class);
+    }
+
+    private static final String schema =
+        "<grammar xmlns='http://www.xml.gr.jp/xmlns/relaxNamespace' "+
+                "xmlns:c='http://www.xml.gr.jp/xmlns/relaxCore'>"+
+            "<namespace name='urn:a'>"+
+                "<c:module moduleVersion='1.0' relaxCoreVersion='1.0' targetNamespace='urn:a'>"+
+                    "<c:interface><c:export label='root'/></c:interface>"+
+                    "<c:elementRule role='root'>"+
+                        "<c:sequence>"+
+                            "<c:ref label='item' namespace='urn:b' occurs='*'/>"+
+                            "<c:ref label='end'/>"+
+                        "</c:sequence>"+
+                    "</c:elementRule>"+
+                    "<c:tag name='root'/>"+
+                    "<c:elementRule role='end' type='int'/>"+
+                    "<c:tag name='end'/>"+
+                "</c:module>"+
+            "</namespace>"+
+            "<namespace name='urn:b' validation='false'/>"+
+            "<topLevel><c:ref label='root' namespace='urn:a'/></topLevel>"+
+        "</grammar>";
+
+    /** a foreign island that rejects every element. */
+    private static class RejectingSchema extends IgnoredSchema {
+        int verifiers;
+
+        public IslandVerifier createNewVerifier( String namespaceURI, final ElementDecl[] rules ) {
+            verifiers++;
+            return new RejectingVerifier(rules);
+        }
+    }
+
+    private static class RejectingVerifier extends DefaultHandler implements IslandVerifier {
+        private final ElementDecl[] rules;
+        private Dispatcher dispatcher;
+
+        RejectingVerifier( ElementDecl[] rules ) { this.rules = rules; }
+
+        public void setDispatcher( Dispatcher dispatcher ) { this.dispatcher = dispatcher; }
+        public ElementDecl[] endIsland() { return rules; }
+        public void endChildIsland( String uri, ElementDecl[] assigned ) {}
+
+        public void startElement( String ns, String local, String qName, Attributes atts ) throws SAXException {
+            dispatcher.getErrorHandler().error(new SAXParseException("rejected "+local,null));
+        }
+    }
+
+    private static List<String> validate( RELAXGrammar grammar, String doc ) throws Exception {
+        XMLReader reader = ErrorCollector.createReader();
+        Dispatcher dispatcher = new DispatcherImpl(new SchemaProviderImpl(grammar));
+        dispatcher.attachXMLReader(reader);
+        ErrorCollector errors = new ErrorCollector();
+        dispatcher.setErrorHandler(errors);
+        reader.parse(new InputSource(new StringReader(doc)));
+        return errors.getMessages();
+    }
+
+    private static RELAXGrammar load() throws Exception {
+        return (RELAXGrammar)GrammarLoader.loadSchema(new InputSource(new StringReader(schema)));
+    }
+
+    private static final String document =
+        "<root xmlns='urn:a' xmlns:b='urn:b'>"+
+            "<b:item><b:x/></b:item><b:item/>"+
+            "<end>1</end>"+
+        "</root>";
+
+    public void testIgnoredIsland() throws Exception {
+        RELAXGrammar grammar = load();
+        assertEquals( 0, validate(grammar,document).size() );
+        // the element after the island is still validated.
+        assertEquals( 1, validate(grammar,document.replace("<end>1","<end>x")).size() );
+    }
+
+    public void testForeignIsland() throws Exception {
+        RELAXGrammar grammar = load();
+        RejectingSchema island = new RejectingSchema();
+        grammar.moduleMap.put("urn:b",island);
+
+        List<String> errors = validate(grammar,document);
+        assertEquals( 2, island.verifiers );
+        assertEquals( 3, errors.size() );
+        assertEquals( "rejected item", errors.get(0) );
+        assertEquals( "rejected x", errors.get(1) );
+        assertEquals( "rejected item", errors.get(2) );
+    }
+}
@@ -0,0 +1,178 @@
+package com.sun.msv.verifier;
+
+import java.io.StringReader;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import util.ErrorCollector;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXParseException;
+
+import com.sun.msv.grammar.Grammar;
+import com.sun.msv.grammar.xmlschema.XMLSchemaGrammar;
+import com.sun.msv.reader.util.GrammarLoader;
+import com.sun.msv.verifier.identity.IDConstraintChecker;
+import com.sun.msv.verifier.jarv.Const;
+import com.sun.msv.verifier.jarv.TheFactoryImpl;
+import com.sun.msv.verifier.regexp.REDocumentDeclaration;
+
+/**
+ * Tests the fast-fail mode of {@link Verifier}.
+ */
+public class FastFailTest extends TestCase
+{
+    public FastFailTest( String name ) { super(name); }
+
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        return new TestSuite(FastFailTest.class);
+    }
+
+    private static final String schema =
+        "<element name='root' xmlns='http://relaxng.org/ns/structure/1.0' "+
+                "datatypeLibrary='http://www.w3.org/2001/XMLSchema-datatypes'>"+
+            "<zeroOrMore><choice>"+
+                "<element name='item'>"+
+                    "<attribute name='id'><data type='token'/></attribute>"+
+                    "<optional><element name='note'><text/></element></optional>"+
+                "</element>"+
+                "<element name='int'><data type='int'/></element>"+
+                "<element name='pair'><element name='a'><empty/></element><element name='b'><empty/></element></element>"+
+            "</choice></zeroOrMore>"+
+        "</element>";
+
+    private static final String[] documents = {
+        "<root/>",
+        "<root><item id='a'/><item id='b'><note>x</note></item><int>5</int><pair><a/><b/></pair></root>",
+        // errors
+        "<root><int>five</int></root>",
+        "<root><item/></root>",
+        "<root><item id='a' foo='b'/></root>",
+        "<root><unknown><item id='a'/></unknown></root>",
+        "<root><pair><a/></pair></root>",
+        "<root><pair><b/><a/></pair></root>",
+        "<root><item id='a'>text</item></root>",
+        "<root><item><note><int>5</int></note></item><int>x</int></root>",
+    };
+
+    private List<SAXParseException> validate( Verifier verifier, String doc ) throws Exception {
+        ErrorCollector errors = new ErrorCollector();
+        try {
+            errors.validate(verifier,doc.replace("><",">\n<"));
+        } catch( ValidationUnrecoverableException e ) {
+            assertSame( errors.errors.get(errors.errors.size()-1), e.getException() );
+        }
+        return errors.errors;
+    }
+
+    public void testSameResult() throws Exception {
+        Grammar grammar = GrammarLoader.loadSchema(new InputSource(new StringReader(schema)));
+        Verifier normal = new Verifier(new REDocumentDeclaration(grammar),null);
+        Verifier fast = new Verifier(new REDocumentDeclaration(grammar),null);
+        fast.setFastFail(100);
+
+        for( int i=0; i<documents.length; i++ ) {
+            List<SAXParseException> expected = validate(normal,documents[i]);
+            assertEquals( documents[i], i<2, normal.isValid() );
+            List<SAXParseException> actual = validate(fast,documents[i]);
+            assertEquals( documents[i], i<2, fast.isValid() );
+            assertEquals( documents[i], expected.isEmpty(), actual.isEmpty() );
+            if( !expected.isEmpty() )
+                // the first error is found at the same place.
+                assertEquals( documents[i], expected.get(0).getLineNumber(), actual.get(0).getLineNumber() );
+
+            for( int j=0; j<actual.size(); j++ ) {
+                ValidityViolation vv = (ValidityViolation)actual.get(j);
+                assertNotNull( vv.getErrorCode() );
+                assertNotNull( vv.getMessage() );
+            }
+        }
+    }
+
+    public void testRecovery() throws Exception {
+        Grammar grammar = GrammarLoader.loadSchema(new InputSource(new StringReader(schema)));
+        Verifier verifier = new Verifier(new REDocumentDeclaration(grammar),null);
+        verifier.setFastFail(100);
+
+        // the content of skipped elements is not validated.
+        List<SAXParseException> errors = validate(verifier,
+            "<root><unknown><int>x</int></unknown><item><note>a</note><int>y</int></item><int>z</int></root>");
+        assertEquals( 3, errors.size() );
+        assertEquals( Verifier.ERR_UNEXPECTED_STARTTAG, ((ValidityViolation)errors.get(0)).getErrorCode() );
+        assertEquals( Verifier.ERR_MISSING_ATTRIBUTE, ((ValidityViolation)errors.get(1)).getErrorCode() );
+        assertEquals( Verifier.ERR_UNEXPECTED_TEXT, ((ValidityViolation)errors.get(2)).getErrorCode() );
+        assertEquals( 9, errors.get(2).getLineNumber() );
+    }
+
+    public void testMaxErrors() throws Exception {
+        Grammar grammar = GrammarLoader.loadSchema(new InputSource(new StringReader(schema)));
+        Verifier verifier = new Verifier(new REDocumentDeclaration(grammar),null);
+        String doc = "<root><int>a</int><int>b</int><int>c</int></root>";
+
+        verifier.setFastFail(2);
+        assertEquals( 2, validate(verifier,doc).size() );
+        assertFalse( verifier.isValid() );
+
+        verifier.setFastFail(1);
+        assertEquals( 1, validate(verifier,doc).size() );
+
+        // the verifier can be reused after it's aborted.
+        assertEquals( 0, validate(verifier,documents[1]).size() );
+        assertTrue( verifier.isValid() );
+
+        verifier.setFastFail(0);
+        verifier.setPanicMode(false);
+        assertEquals( 3, validate(verifier,doc).size() );
+    }
+
+    public void testXMLSchema() throws Exception {
+        XMLSchemaGrammar grammar = (XMLSchemaGrammar)GrammarLoader.loadSchema(new InputSource(new StringReader(
+            "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"+
+                "<xs:element name='root'><xs:complexType><xs:sequence>"+
+                    "<xs:element name='item' maxOccurs='unbounded'><xs:complexType>"+
+                        "<xs:attribute name='id' type='xs:string' use='required'/>"+
+                    "</xs:complexType></xs:element>"+
+                "</xs:sequence></xs:complexType>"+
+                "<xs:unique name='u'><xs:selector xpath='item'/><xs:field xpath='@id'/></xs:unique>"+
+                "</xs:element>"+
+            "</xs:schema>")));
+        Verifier verifier = new IDConstraintChecker(grammar,null);
+        verifier.setFastFail(100);
+
+        assertEquals( 0, validate(verifier,"<root><item id='a'/><item id='b'/></root>").size() );
+        // the duplicate is reported for both the field and the selected element.
+        assertEquals( 2, validate(verifier,"<root><item id='a'/><item id='a'/></root>").size() );
+        // errors reported by the identity constraint checker are counted, too.
+        verifier.setFastFail(1);
+        assertEquals( 1, validate(verifier,"<root><item id='a'/><item id='a'/><item/></root>").size() );
+
+        verifier.setFastFail(100);
+        assertEquals( 2, validate(verifier,"<root><item id='a'><item id='a'/></item><item/></root>").size() );
+    }
+
+    public void testJARV() throws Exception {
+        TheFactoryImpl factory = new TheFactoryImpl();
+        assertFalse( factory.isFeature(Const.FAST_FAIL_FEATURE) );
+        factory.setFeature(Const.FAST_FAIL_FEATURE,true);
+        assertEquals( new Integer(1), factory.getProperty(Const.MAX_ERRORS_PROPERTY) );
+        factory.setProperty(Const.MAX_ERRORS_PROPERTY,new Integer(2));
+        assertTrue( factory.isFeature(Const.FAST_FAIL_FEATURE) );
+
+        org.iso_relax.verifier.Verifier verifier =
+            factory.compileSchema(new InputSource(new StringReader(schema))).newVerifier();
+        ErrorCollector errors = new ErrorCollector();
+        verifier.setErrorHandler(errors);
+        try {
+            verifier.verify(new InputSource(new StringReader("<root><int>a</int><int>b</int><int>c</int></root>")));
+            fail();
+        } catch( ValidationUnrecoverableException e ) {
+            assertEquals( 2, errors.errors.size() );
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.sun.msv.verifier;
+
+import java.io.StringReader;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import util.ErrorCollector;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXParseException;
+
+import com.sun.msv.grammar.xmlschema.XMLSchemaGrammar;
+import com.sun.msv.reader.util.GrammarLoader;
+import com.sun.msv.verifier.identity.IDConstraintChecker;
+import com.sun.msv.verifier.monitor.ValidationStatistics;
+
+/**
+ * Tests that {@link Verifier} skips the elements matched by
+ * &lt;xs:any processContents="skip"/&gt;.
+ */
+public class OpaqueSkippingTest extends TestCase
+{
+    public OpaqueSkippingTest( String name ) { super(name); }
+
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        return new TestSuite(OpaqueSkippingTest.class);
+    }
+
+    private static final String schema =
+        "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' targetNamespace='urn:e' "+
+                "xmlns='urn:e' elementFormDefault='qualified'>"+
+            "<xs:element name='envelope'><xs:complexType><xs:sequence>"+
+                "<xs:element name='id' type='xs:int' maxOccurs='unbounded'/>"+
+                "<xs:element name='payload'><xs:complexType><xs:sequence>"+
+                    "<xs:any namespace='##other' processContents='skip' minOccurs='0' maxOccurs='unbounded'/>"+
+                "</xs:sequence></xs:complexType></xs:element>"+
+                "<xs:element name='end' type='xs:int'/>"+
+            "</xs:sequence></xs:complexType>"+
+            "<xs:unique name='u'><xs:selector xpath='id'/><xs:field xpath='.'/></xs:unique>"+
+            "</xs:element>"+
+        "</xs:schema>";
+
+    private static final String payload =
+        "<p:data xmlns:p='urn:p' p:a='1'><p:row>x<p:cell>1</p:cell></p:row><p:row><p:cell/></p:row></p:data>";
+
+    private XMLSchemaGrammar grammar;
+
+    protected void setUp() throws Exception {
+        grammar = (XMLSchemaGrammar)GrammarLoader.loadSchema(new InputSource(new StringReader(schema)));
+    }
+
+    private static String envelope( String payload, String rest ) {
+        return "<envelope xmlns='urn:e'><id>1</id><id>2</id><payload>"+payload+"</payload>"+rest+"</envelope>";
+    }
+
+    private static List<SAXParseException> validate( Verifier verifier, String doc ) throws Exception {
+        ErrorCollector errors = new ErrorCollector();
+        assertEquals( errors.validate(verifier,doc), errors.errors.isEmpty() );
+        return errors.errors;
+    }
+
+    public void testSkip() throws Exception {
+        String doc = envelope(payload+payload,"<end>0</end>");
+
+        Verifier skipping = new IDConstraintChecker(grammar,null);
+        ValidationStatistics stats = new ValidationStatistics();
+        skipping.setValidationListener(stats);
+        assertEquals( 0, validate(skipping,doc).size() );
+        long skipped = stats.getAcceptorCount();
+
+        Verifier general = new IDConstraintChecker(grammar,null);
+        general.setOpaqueSkipping(false);
+        stats = new ValidationStatistics();
+        general.setValidationListener(stats);
+        assertEquals( 0, validate(general,doc).size() );
+        // descendants of the wildcard don't have acceptors.
+        assertTrue( skipped<stats.getAcceptorCount() );
+    }
+
+    public void testAnyContent() throws Exception {
+        // the content of a skipped element can be anything.
+        String doc = envelope("<p:data xmlns:p='urn:p'><row a='1'><envelope xmlns='urn:e'/></row></p:data>","<end>0</end>");
+        assertEquals( 0, validate(new IDConstraintChecker(grammar,null),doc).size() );
+    }
+
+    public void testErrors() throws Exception {
+        Verifier verifier = new IDConstraintChecker(grammar,null);
+        verifier.setPanicMode(false);
+
+        // the wildcard itself is validated.
+        assertEquals( 1, validate(verifier,envelope("<data/>","<end>0</end>")).size() );
+        // so are the siblings and the parent.
+        assertEquals( 1, validate(verifier,envelope(payload,"<end>x</end>")).size() );
+        assertEquals( 1, validate(verifier,envelope(payload,"")).size() );
+        // identity constraints still work. (the duplicate is reported twice.)
+        assertEquals( 2, validate(verifier,
+            "<envelope xmlns='urn:e'><id>1</id><id>1</id><payload>"+payload+"</payload><end>0</end></envelope>").size() );
+
+        verifier.setFastFail(10);
+        assertEquals( 1, validate(verifier,envelope(payload,"<end>x</end>")).size() );
+        assertEquals( 1, validate(verifier,envelope(payload,"")).size() );
+    }
+}
@@ -0,0 +1,94 @@
+package com.sun.msv.verifier;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import com.sun.msv.grammar.Grammar;
+import com.sun.msv.reader.util.GrammarLoader;
+import com.sun.msv.verifier.regexp.REDocumentDeclaration;
+import com.sun.msv.verifier.util.ErrorHandlerImpl;
+
+/**
+ * compares {@link Verifier} and {@link ShardedVerifier}
+ * on a document that consists of many records.
+ *
+ * <p>
+ * Usage: ShardedVerifierBenchmark [# of records] [# of iterations] [# of threads]
+ */
+public class ShardedVerifierBenchmark
+{
+    private static final String schema =
+        "<element name='root' xmlns='http://relaxng.org/ns/structure/1.0' "+
+                "datatypeLibrary='http://www.w3.org/2001/XMLSchema-datatypes'>"+
+            "<zeroOrMore>"+
+                "<element name='record'>"+
+                    "<attribute name='id'><data type='ID'/></attribute>"+
+                    "<element name='name'><data type='token'><param name='pattern'>[a-z #0-9]+</param></data></element>"+
+                    "<element name='value'><data type='double'/></element>"+
+                    "<element name='date'><data type='dateTime'/></element>"+
+                    "<zeroOrMore><element name='tag'><data type='NCName'/></element></zeroOrMore>"+
+                "</element>"+
+            "</zeroOrMore>"+
+        "</element>";
+
+    public static void main( String[] args ) throws Exception {
+        int records = args.length>0 ? Integer.parseInt(args[0]) : 100000;
+        int iterations = args.length>1 ? Integer.parseInt(args[1]) : 10;
+        int threads = args.length>2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        Grammar grammar = GrammarLoader.loadSchema(new InputSource(new StringReader(schema)));
+        byte[] doc = createDocument(records);
+        System.out.println("document size: "+doc.length+" bytes, "+threads+" threads");
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Verifier sequential = new Verifier(new REDocumentDeclaration(grammar),ErrorHandlerImpl.theInstance);
+            ShardedVerifier sharded = new ShardedVerifier(grammar,"/root/record",executor,ErrorHandlerImpl.theInstance);
+
+            // warm up
+            run(sequential,doc,2);
+            run(sharded,doc,2);
+
+            System.out.println("sequential : "+run(sequential,doc,iterations)/iterations+" ms/doc");
+            System.out.println("sharded    : "+run(sharded,doc,iterations)/iterations+" ms/doc");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static long run( ContentHandler handler, byte[] doc, int iterations ) throws Exception {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        XMLReader reader = factory.newSAXParser().getXMLReader();
+        reader.setContentHandler(handler);
+
+        long start = System.currentTimeMillis();
+        for( int i=0; i<iterations; i++ )
+            reader.parse(new InputSource(new ByteArrayInputStream(doc)));
+        return System.currentTimeMillis()-start;
+    }
+
+    private static byte[] createDocument( int records ) throws Exception {
+        StringBuffer buf = new StringBuffer();
+        buf.append("<root>");
+        for( int i=0; i<records; i++ ) {
+            buf.append("<record id='r").append(i).append("'>");
+            buf.append("<name>record #").append(i).append("</name>");
+            buf.append("<value>").append(i*0.5).append("</value>");
+            buf.append("<date>2001-01-").append(10+i%20).append("T12:00:00Z</date>");
+            for( int j=0; j<i%4; j++ )
+                buf.append("<tag>t").append(j).append("</tag>");
+            buf.append("</record>\n");
+        }
+        buf.append("</root>");
+        return buf.toString().getBytes("UTF-8");
+    }
+}
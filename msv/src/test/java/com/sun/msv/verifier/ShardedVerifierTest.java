@@ -0,0 +1,208 @@
+package com.sun.msv.verifier;
+
+import java.io.StringReader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import util.ErrorCollector;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import com.sun.msv.grammar.Grammar;
+import com.sun.msv.reader.util.GrammarLoader;
+
+/**
+ * Tests {@link ShardedVerifier}.
+ */
+public class ShardedVerifierTest extends TestCase
+{
+    public ShardedVerifierTest( String name ) { super(name); }
+
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        return new TestSuite(ShardedVerifierTest.class);
+    }
+
+    private static final String rngSchema =
+        "<element name='root' xmlns='http://relaxng.org/ns/structure/1.0' "+
+                "datatypeLibrary='http://www.w3.org/2001/XMLSchema-datatypes'>"+
+            "<element name='header'><text/></element>"+
+            "<oneOrMore>"+
+                "<element name='record'>"+
+                    "<attribute name='id'><data type='ID'/></attribute>"+
+                    "<optional><attribute name='ref'><data type='IDREF'/></attribute></optional>"+
+                    "<element name='value'><data type='int'/></element>"+
+                "</element>"+
+            "</oneOrMore>"+
+            "<element name='footer'><empty/></element>"+
+        "</element>";
+
+    private static final String xsdSchema =
+        "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' targetNamespace='urn:test' "+
+                "xmlns:t='urn:test' elementFormDefault='qualified'>"+
+            "<xs:element name='root'>"+
+                "<xs:complexType><xs:sequence>"+
+                    "<xs:element name='record' maxOccurs='unbounded'>"+
+                        "<xs:complexType><xs:sequence>"+
+                            "<xs:element name='value' type='xs:int' maxOccurs='unbounded'/>"+
+                        "</xs:sequence>"+
+                        "<xs:attribute name='id' type='xs:string'/></xs:complexType>"+
+                        "<xs:unique name='values'>"+
+                            "<xs:selector xpath='t:value'/><xs:field xpath='.'/>"+
+                        "</xs:unique>"+
+                    "</xs:element>"+
+                "</xs:sequence></xs:complexType>"+
+                "<xs:key name='ids'>"+
+                    "<xs:selector xpath='t:record'/><xs:field xpath='@id'/>"+
+                "</xs:key>"+
+            "</xs:element>"+
+        "</xs:schema>";
+
+    private ExecutorService executor;
+    private Grammar rng;
+
+    protected void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(4);
+        rng = GrammarLoader.loadSchema(new InputSource(new StringReader(rngSchema)));
+    }
+
+    protected void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private boolean verify( ShardedVerifier verifier, String doc ) throws Exception {
+        ErrorCollector.parse(verifier,doc);
+        return verifier.isValid();
+    }
+
+    private static String createDocument( int records, String badRecord ) {
+        StringBuffer buf = new StringBuffer();
+        buf.append("<root>\n<header>test</header>\n");
+        for( int i=0; i<records; i++ ) {
+            if( i==records/2 && badRecord!=null )
+                buf.append(badRecord).append('\n');
+            // refer to the next record, which is often in another shard.
+            buf.append("<record id='r").append(i).append("' ref='r").append((i+1)%records).append("'>");
+            buf.append("<value>").append(i).append("</value></record>\n");
+        }
+        buf.append("<footer/></root>");
+        return buf.toString();
+    }
+
+    private ShardedVerifier create( Grammar grammar, String path, ErrorCollector errors ) {
+        ShardedVerifier verifier = new ShardedVerifier(grammar,path,executor,errors);
+        verifier.setShardSize(3);
+        return verifier;
+    }
+
+    public void testValid() throws Exception {
+        ErrorCollector errors = new ErrorCollector();
+        ShardedVerifier verifier = create(rng,"/root/record",errors);
+        assertTrue( verify(verifier,createDocument(50,null)) );
+        assertEquals( 0, errors.errors.size() );
+        // the same object can be reused.
+        assertTrue( verify(verifier,createDocument(7,null)) );
+    }
+
+    public void testErrorLocation() throws Exception {
+        ErrorCollector errors = new ErrorCollector();
+        ShardedVerifier verifier = create(rng,"/root/record",errors);
+        assertFalse( verify(verifier,createDocument(50,"<record id='bad'><value>x</value></record>")) );
+        assertEquals( 1, errors.errors.size() );
+        // the bad record is at the 28th line.
+        assertEquals( 28, errors.errors.get(0).getLineNumber() );
+    }
+
+    public void testEnvelopeError() throws Exception {
+        ErrorCollector errors = new ErrorCollector();
+        ShardedVerifier verifier = create(rng,"/root/record",errors);
+        assertFalse( verify(verifier,createDocument(20,null).replace("<footer/>","")) );
+        assertEquals( 1, errors.errors.size() );
+    }
+
+    public void testUnexpectedRecord() throws Exception {
+        ShardedVerifier verifier = create(rng,"/root/record",new ErrorCollector());
+        assertFalse( verify(verifier,createDocument(20,null).replace("<header>test</header>","")) );
+    }
+
+    public void testIDAcrossShards() throws Exception {
+        ShardedVerifier verifier = create(rng,"/root/record",new ErrorCollector());
+        // dangling reference
+        assertFalse( verify(verifier,createDocument(20,"<record id='x' ref='nowhere'><value>1</value></record>")) );
+        // duplicate id in another shard
+        assertFalse( verify(verifier,createDocument(20,"<record id='r1'><value>1</value></record>")) );
+    }
+
+    public void testIdentityConstraints() throws Exception {
+        Grammar xsd = GrammarLoader.loadSchema(new InputSource(new StringReader(xsdSchema)));
+        ShardedVerifier verifier = create(xsd,"/{urn:test}root/{urn:test}record",new ErrorCollector());
+
+        StringBuffer buf = new StringBuffer("<root xmlns='urn:test'>");
+        for( int i=0; i<10; i++ )
+            buf.append("<record id='"+i+"'><value>1</value><value>2</value></record>");
+        String valid = buf.toString()+"</root>";
+
+        assertTrue( verify(verifier,valid) );
+        // the key of the root element spans across records.
+        assertFalse( verify(verifier,valid.replace("id='7'","id='3'")) );
+        // the unique constraint of a record.
+        String invalid = valid.replace("<value>2</value></record><record id='5'>",
+            "<value>1</value></record><record id='5'>");
+        assertFalse( verify(verifier,invalid) );
+
+        // without the key of the root element, records are validated in shards.
+        xsd = GrammarLoader.loadSchema(new InputSource(new StringReader(
+            xsdSchema.replaceAll("<xs:key .*</xs:key>",""))));
+        verifier = create(xsd,"/{urn:test}root/{urn:test}record",new ErrorCollector());
+        assertTrue( verify(verifier,valid) );
+        assertTrue( verify(verifier,valid.replace("id='7'","id='3'")) );
+        assertFalse( verify(verifier,invalid) );
+    }
+
+    public void testAbandonedDocument() throws Exception {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            final CountDownLatch latch = new CountDownLatch(1);
+            // keep the shards of the first document in the queue.
+            single.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    latch.await();
+                    return null;
+                }
+            });
+
+            final ShardedVerifier verifier = new ShardedVerifier(rng,"/root/record",single,new ErrorCollector());
+            verifier.setShardSize(3);
+            verifier.setMaxPendingShards(2);
+            try {
+                verify(verifier,createDocument(6,null).replace("</root>","</roo"));
+                fail();
+            } catch( SAXException e ) {
+                // the document is not well-formed.
+            }
+
+            // the queued shards are abandoned and never validated.
+            verifier.startDocument();
+            latch.countDown();
+
+            // the next document doesn't wait for permits of those shards.
+            assertEquals( Boolean.TRUE, executor.submit(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    return verify(verifier,createDocument(20,null));
+                }
+            }).get(30,TimeUnit.SECONDS) );
+        } finally {
+            single.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.sun.msv.verifier;
+
+import java.io.Reader;
+import java.io.StringReader;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import com.sun.msv.grammar.Grammar;
+import com.sun.msv.reader.util.GrammarLoader;
+import com.sun.msv.verifier.regexp.REDocumentDeclaration;
+import com.sun.msv.verifier.util.ErrorHandlerImpl;
+
+/**
+ * compares the memory usage of {@link Verifier} with and without
+ * the streaming mode, on a document that contains a large base64 text.
+ *
+ * <p>
+ * Usage: StreamingModeBenchmark [size of the text in MB]
+ */
+public class StreamingModeBenchmark
+{
+    private static final String schema =
+        "<element name='message' xmlns='http://relaxng.org/ns/structure/1.0' "+
+                "datatypeLibrary='http://www.w3.org/2001/XMLSchema-datatypes'>"+
+            "<element name='subject'><data type='token'/></element>"+
+            "<element name='attachment'>"+
+                "<attribute name='name'><data type='token'/></attribute>"+
+                "<data type='base64Binary'/>"+
+            "</element>"+
+        "</element>";
+
+    public static void main( String[] args ) throws Exception {
+        int size = args.length>0 ? Integer.parseInt(args[0]) : 32;
+        Grammar grammar = GrammarLoader.loadSchema(new InputSource(new StringReader(schema)));
+
+        for( int i=0; i<2; i++ ) {
+            boolean streaming = (i==1);
+            Verifier verifier = new Verifier(new REDocumentDeclaration(grammar),ErrorHandlerImpl.theInstance);
+            verifier.setStreamingMode(streaming);
+
+            MemoryMonitor monitor = new MemoryMonitor();
+            monitor.setContentHandler(verifier);
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            XMLReader reader = factory.newSAXParser().getXMLReader();
+            reader.setContentHandler(monitor);
+
+            System.gc();
+            monitor.base = usedMemory();
+            long start = System.currentTimeMillis();
+            reader.parse(new InputSource(new DocumentReader(size*1024*1024)));
+            long time = System.currentTimeMillis()-start;
+
+            System.out.println((streaming?"streaming : ":"buffered  : ")
+                +time+" ms, peak "+(monitor.peak/1024/1024)+" MB, valid="+verifier.isValid());
+        }
+    }
+
+    private static long usedMemory() {
+        Runtime r = Runtime.getRuntime();
+        return r.totalMemory()-r.freeMemory();
+    }
+
+    /** samples the memory usage. */
+    private static class MemoryMonitor extends XMLFilterImpl {
+        long base;
+        long peak;
+        private int count;
+
+        public void characters( char[] buf, int start, int len ) throws SAXException {
+            super.characters(buf,start,len);
+            if( (++count%256)==0 )
+                peak = Math.max( peak, usedMemory()-base );
+        }
+    }
+
+    /** generates a document without keeping it in memory. */
+    private static class DocumentReader extends Reader {
+        private final String header = "<message><subject>test</subject><attachment name='data.bin'>";
+        private final String footer = "</attachment></message>";
+        private final String line = "QUJDREVGR0hJSktMTU5PUFFSU1RVVldYWVphYmNkZWZnaGlqa2xtbm9wcXJzdHV2\n";
+        private final long length;
+        private long pos;
+
+        DocumentReader( long bodySize ) {
+            this.length = header.length()+(bodySize/line.length())*line.length()+footer.length();
+        }
+
+        public int read( char[] buf, int off, int len ) {
+            if( pos==length )   return -1;
+            int n = 0;
+            while( n<len && pos<length ) {
+                buf[off+n++] = charAt(pos++);
+            }
+            return n;
+        }
+
+        private char charAt( long i ) {
+            if( i<header.length() )             return header.charAt((int)i);
+            long j = length-i;
+            if( j<=footer.length() )            return footer.charAt(footer.length()-(int)j);
+            return line.charAt((int)((i-header.length())%line.length()));
+        }
+
+        public void close() {}
+    }
+}
@@ -0,0 +1,122 @@
+package com.sun.msv.verifier;
+
+import java.io.StringReader;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import util.ErrorCollector;
+
+import org.relaxng.datatype.Datatype;
+import org.xml.sax.InputSource;
+import org.xml.sax.helpers.AttributesImpl;
+
+import com.sun.msv.datatype.xsd.Base64BinaryType;
+import com.sun.msv.grammar.Grammar;
+import com.sun.msv.grammar.xmlschema.XMLSchemaGrammar;
+import com.sun.msv.reader.util.GrammarLoader;
+import com.sun.msv.verifier.identity.IDConstraintChecker;
+import com.sun.msv.verifier.regexp.REDocumentDeclaration;
+
+/**
+ * Tests the streaming mode of {@link Verifier}.
+ */
+public class StreamingModeTest extends TestCase
+{
+    public StreamingModeTest( String name ) { super(name); }
+
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        return new TestSuite(StreamingModeTest.class);
+    }
+
+    private static final String schema =
+        "<element name='root' xmlns='http://relaxng.org/ns/structure/1.0' "+
+                "datatypeLibrary='http://www.w3.org/2001/XMLSchema-datatypes'>"+
+            "<zeroOrMore><choice>"+
+                "<element name='b64'>"+
+                    "<attribute name='type'><data type='token'/></attribute>"+
+                    "<data type='base64Binary'><param name='maxLength'>6</param></data>"+
+                "</element>"+
+                "<element name='hex'><data type='hexBinary'/></element>"+
+                "<element name='code'><data type='token'><param name='length'>3</param></data></element>"+
+                "<element name='pattern'><data type='string'><param name='pattern'>[a-z]+</param></data></element>"+
+                "<element name='mixed'><mixed><zeroOrMore><element name='hex'><data type='hexBinary'/></element></zeroOrMore></mixed></element>"+
+            "</choice></zeroOrMore>"+
+        "</element>";
+
+    private static final String[] documents = {
+        "<root/>",
+        "<root><b64 type='a'>AAAA AAAA</b64><hex> 0aFF </hex><code> a  b </code><pattern>abc</pattern></root>",
+        "<root><b64 type='a'/><hex/><mixed>text<hex>00</hex>text</mixed></root>",
+        "<root><b64 type='a'><!-- comment -->AA<?pi?>AA</b64></root>",
+        // errors
+        "<root><b64 type='a'>AAAA AAAA AAAA</b64></root>",
+        "<root><b64 type='a'>AAA</b64></root>",
+        "<root><b64>AAAA</b64></root>",
+        "<root><hex>0 0</hex></root>",
+        "<root><code>abcd</code><code>ab</code></root>",
+        "<root><pattern>ABC</pattern></root>",
+        "<root><hex>00<hex/></hex></root>",
+        "<root><mixed>text<hex>0</hex></mixed></root>",
+    };
+
+    private List<Integer> validate( Verifier verifier, String doc ) throws Exception {
+        ErrorCollector errors = new ErrorCollector();
+        errors.validate(verifier,doc.replace("><",">\n<"));
+        return errors.getLineNumbers();
+    }
+
+    public void testSameResult() throws Exception {
+        Grammar grammar = GrammarLoader.loadSchema(new InputSource(new StringReader(schema)));
+        Verifier buffered = new Verifier(new REDocumentDeclaration(grammar),null);
+        Verifier streamed = new Verifier(new REDocumentDeclaration(grammar),null);
+        streamed.setStreamingMode(true);
+
+        for( int i=0; i<documents.length; i++ ) {
+            List<Integer> expected = validate(buffered,documents[i]);
+            assertEquals( documents[i], i<4, buffered.isValid() );
+            assertEquals( documents[i], expected, validate(streamed,documents[i]) );
+            assertEquals( documents[i], i<4, streamed.isValid() );
+        }
+    }
+
+    public void testLargeText() throws Exception {
+        Grammar grammar = GrammarLoader.loadSchema(new InputSource(new StringReader(schema)));
+        Verifier verifier = new Verifier(new REDocumentDeclaration(grammar),null);
+        verifier.setStreamingMode(true);
+        verifier.setErrorHandler(new ErrorCollector());
+
+        char[] chunk = "0123456789abcdef\n".toCharArray();
+        verifier.startDocument();
+        verifier.startElement("","root","root",new AttributesImpl());
+        verifier.startElement("","hex","hex",new AttributesImpl());
+        for( int i=0; i<100000; i++ )
+            verifier.characters(chunk,0,16);   // without new lines.
+        verifier.endElement("","hex","hex");
+        assertEquals( 1, verifier.getLastCharacterType().length );
+        verifier.endElement("","root","root");
+        verifier.endDocument();
+        assertTrue( verifier.isValid() );
+    }
+
+    public void testXMLSchema() throws Exception {
+        XMLSchemaGrammar grammar = (XMLSchemaGrammar)GrammarLoader.loadSchema(new InputSource(new StringReader(
+            "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"+
+                "<xs:element name='attachment'><xs:complexType><xs:simpleContent>"+
+                    "<xs:extension base='xs:base64Binary'><xs:attribute name='name' type='xs:string'/></xs:extension>"+
+                "</xs:simpleContent></xs:complexType></xs:element>"+
+            "</xs:schema>")));
+        Verifier verifier = new IDConstraintChecker(grammar,null);
+        verifier.setStreamingMode(true);
+
+        assertEquals( 0, validate(verifier,"<attachment name='a'>AAAA</attachment>").size() );
+        Datatype[] types = verifier.getLastCharacterType();
+        assertSame( Base64BinaryType.theInstance, types[0] );
+        assertEquals( 1, validate(verifier,"<attachment>AAA</attachment>").size() );
+    }
+}
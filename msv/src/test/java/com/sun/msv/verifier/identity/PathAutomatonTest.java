@@ -0,0 +1,99 @@
+package com.sun.msv.verifier.identity;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import com.sun.msv.grammar.NameClass;
+import com.sun.msv.grammar.NamespaceNameClass;
+import com.sun.msv.grammar.SimpleNameClass;
+import com.sun.msv.grammar.xmlschema.XPath;
+
+/**
+ * Tests {@link PathAutomaton}.
+ */
+public class PathAutomatonTest extends TestCase
+{
+    public PathAutomatonTest( String name ) { super(name); }
+
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        return new TestSuite(PathAutomatonTest.class);
+    }
+
+    private static XPath path( boolean isAnyDescendant, NameClass attributeStep, String... steps ) {
+        XPath p = new XPath();
+        p.isAnyDescendant = isAnyDescendant;
+        p.steps = new NameClass[steps.length];
+        for( int i=0; i<steps.length; i++ )
+            p.steps[i] = steps[i].equals("*") ? (NameClass)new NamespaceNameClass("") : new SimpleNameClass("",steps[i]);
+        p.attributeStep = attributeStep;
+        return p;
+    }
+
+    /** returns the state after the given path from the initial state. */
+    private static PathAutomaton.State walk( PathAutomaton a, String... names ) {
+        PathAutomaton.State s = a.initial;
+        for( int i=0; i<names.length; i++ )
+            s = a.next(s,"",names[i]);
+        return s;
+    }
+
+    private static String matches( PathAutomaton.State s ) {
+        if( s.elementMatches==null )    return "";
+        StringBuffer buf = new StringBuffer();
+        for( int i=0; i<s.elementMatches.length; i++ )
+            buf.append(s.elementMatches[i]);
+        return buf.toString();
+    }
+
+    public void testLabels() {
+        PathAutomaton a = new PathAutomaton( new XPath[][]{
+            { path(true,null,"A","B") },                        // .//A/B
+            { path(false,null,"A"), path(false,null,"*","B") },  // A|*/B
+            { path(false,null) },                               // .
+        });
+
+        assertEquals( "2", matches(a.initial) );
+        assertEquals( "1", matches(walk(a,"A")) );
+        assertEquals( "01", matches(walk(a,"A","B")) );
+        assertEquals( "1", matches(walk(a,"X","B")) );
+        assertEquals( "0", matches(walk(a,"X","Y","A","B")) );
+        assertEquals( "", matches(walk(a,"X","Y","B")) );
+
+        // states are shared.
+        assertSame( walk(a,"A","B"), walk(a,"A","B") );
+        assertSame( walk(a,"X","Y"), walk(a,"Y","X") );
+    }
+
+    public void testAttribute() {
+        PathAutomaton a = new PathAutomaton( new XPath[][]{
+            { path(false,new SimpleNameClass("","x")), path(false,new SimpleNameClass("","y"),"A") },  // @x|A/@y
+        });
+
+        PathAutomaton.State s = a.initial;
+        assertNull( s.elementMatches );
+        assertEquals( 1, s.attributeLabels.length );
+        assertTrue( s.matchAttribute(0,"","x") );
+        assertFalse( s.matchAttribute(0,"","y") );
+
+        s = walk(a,"A");
+        assertTrue( s.matchAttribute(0,"","y") );
+        assertFalse( s.matchAttribute(0,"","x") );
+    }
+
+    public void testDeadState() {
+        PathAutomaton a = new PathAutomaton( new XPath[][]{
+            { path(false,null,"A","B") },
+        });
+
+        PathAutomaton.State s = walk(a,"B");
+        assertTrue( s.dead );
+        assertSame( s, a.next(s,"","A") );
+        assertTrue( walk(a,"A","B","A").dead );
+        assertFalse( walk(a,"A").dead );
+    }
+}
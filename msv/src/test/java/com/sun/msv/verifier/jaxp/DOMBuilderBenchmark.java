@@ -0,0 +1,77 @@
+package com.sun.msv.verifier.jaxp;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.xml.sax.InputSource;
+
+/**
+ * compares the two-pass (parse, then validate DOM) and the single-pass
+ * validating DOM construction of {@link DocumentBuilderFactoryImpl}.
+ *
+ * <p>
+ * Usage: DOMBuilderBenchmark [# of records] [# of iterations]
+ */
+public class DOMBuilderBenchmark
+{
+    private static final String schema =
+        "<element name='root' xmlns='http://relaxng.org/ns/structure/1.0' "+
+                "datatypeLibrary='http://www.w3.org/2001/XMLSchema-datatypes'>"+
+            "<zeroOrMore>"+
+                "<element name='record'>"+
+                    "<attribute name='id'><data type='int'/></attribute>"+
+                    "<element name='name'><text/></element>"+
+                    "<element name='value'><data type='double'/></element>"+
+                "</element>"+
+            "</zeroOrMore>"+
+        "</element>";
+
+    public static void main( String[] args ) throws Exception {
+        int records = args.length>0 ? Integer.parseInt(args[0]) : 100000;
+        int iterations = args.length>1 ? Integer.parseInt(args[1]) : 10;
+
+        byte[] doc = createDocument(records);
+        System.out.println("document size: "+doc.length+" bytes");
+
+        DocumentBuilder twoPass = createBuilder(false);
+        DocumentBuilder singlePass = createBuilder(true);
+
+        // warm up
+        run(twoPass,doc,2);
+        run(singlePass,doc,2);
+
+        System.out.println("two-pass    : "+run(twoPass,doc,iterations)/iterations+" ms/doc");
+        System.out.println("single-pass : "+run(singlePass,doc,iterations)/iterations+" ms/doc");
+    }
+
+    private static DocumentBuilder createBuilder( boolean singlePass ) throws Exception {
+        DocumentBuilderFactory factory = new DocumentBuilderFactoryImpl();
+        factory.setNamespaceAware(true);
+        factory.setAttribute( Const.SCHEMA_PROPNAME, new InputSource(new StringReader(schema)) );
+        factory.setAttribute( Const.SINGLE_PASS_PROPNAME, Boolean.valueOf(singlePass) );
+        return factory.newDocumentBuilder();
+    }
+
+    private static long run( DocumentBuilder builder, byte[] doc, int iterations ) throws Exception {
+        long start = System.currentTimeMillis();
+        for( int i=0; i<iterations; i++ )
+            builder.parse(new ByteArrayInputStream(doc));
+        return System.currentTimeMillis()-start;
+    }
+
+    private static byte[] createDocument( int records ) throws Exception {
+        StringBuffer buf = new StringBuffer();
+        buf.append("<root>");
+        for( int i=0; i<records; i++ ) {
+            buf.append("<record id='").append(i).append("'>");
+            buf.append("<name>record #").append(i).append("</name>");
+            buf.append("<value>").append(i*0.5).append("</value>");
+            buf.append("</record>\n");
+        }
+        buf.append("</root>");
+        return buf.toString().getBytes("UTF-8");
+    }
+}
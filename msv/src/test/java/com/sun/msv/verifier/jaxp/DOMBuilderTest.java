@@ -1,6 +1,9 @@
 package com.sun.msv.verifier.jaxp;
 
+import java.io.File;
+import java.io.FileWriter;
 import java.io.StringReader;
+import java.io.Writer;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -9,6 +12,9 @@ import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
@@ -122,6 +128,87 @@ public class DOMBuilderTest extends TestCase
     }
     
     
+    public void testSinglePass1() throws Exception {
+        DocumentBuilderFactory factory = new DocumentBuilderFactoryImpl();
+        factory.setAttribute( Const.SINGLE_PASS_PROPNAME, Boolean.TRUE );
+        assertEquals( Boolean.TRUE, factory.getAttribute(Const.SINGLE_PASS_PROPNAME) );
+        doTest1(factory);
+    }
+    
+    public void testSinglePass2() throws Exception {
+        DocumentBuilderFactory factory = new DocumentBuilderFactoryImpl();
+        factory.setNamespaceAware(true);
+        factory.setAttribute( Const.SINGLE_PASS_PROPNAME, Boolean.TRUE );
+        doTest1(factory);
+    }
+    
+    /**
+     * The single-pass mode should build the same tree as the wrapped builder.
+     */
+    public void testSinglePassTree() throws Exception {
+        String doc = "<root xmlns:p='urn:x' p:foo='abc'><!--c-->a<![CDATA[b]]>c<?pi data?></root>";
+        String schema =
+            "<element name='root' xmlns='http://relaxng.org/ns/structure/1.0'>"+
+                "<attribute name='p:foo' xmlns:p='urn:x'/>"+
+                "<text/>"+
+            "</element>";
+        
+        DocumentBuilderFactory factory = new DocumentBuilderFactoryImpl();
+        factory.setNamespaceAware(true);
+        factory.setAttribute( Const.SCHEMA_PROPNAME, new InputSource(new StringReader(schema)) );
+        Document expected = factory.newDocumentBuilder().parse(new InputSource(new StringReader(doc)));
+        
+        factory.setAttribute( Const.SINGLE_PASS_PROPNAME, Boolean.TRUE );
+        Document actual = factory.newDocumentBuilder().parse(new InputSource(new StringReader(doc)));
+        
+        Element e = expected.getDocumentElement();
+        Element a = actual.getDocumentElement();
+        assertEquals( e.getTagName(), a.getTagName() );
+        assertEquals( e.getAttributes().getLength(), a.getAttributes().getLength() );
+        assertEquals( "abc", a.getAttributeNS("urn:x","foo") );
+        assertEquals( "urn:x", a.getAttributeNS("http://www.w3.org/2000/xmlns/","p") );
+        assertEquals( e.getChildNodes().getLength(), a.getChildNodes().getLength() );
+        for( int i=0; i<e.getChildNodes().getLength(); i++ ) {
+            Node en = e.getChildNodes().item(i);
+            Node an = a.getChildNodes().item(i);
+            assertEquals( en.getNodeType(), an.getNodeType() );
+            assertEquals( en.getNodeValue(), an.getNodeValue() );
+        }
+    }
+    
+    /**
+     * Settings that the single-pass mode can't honor make the builder
+     * validate documents after they are built.
+     */
+    public void testSinglePassFallback() throws Exception {
+        String schema =
+            "<element name='root' xmlns='http://relaxng.org/ns/structure/1.0'><text/></element>";
+        File dtd = File.createTempFile("msv",".dtd");
+        dtd.deleteOnExit();
+        Writer w = new FileWriter(dtd);
+        w.write("<!ENTITY e 'abc'>");
+        w.close();
+        String doc = "<!DOCTYPE root SYSTEM '"+dtd.toURI()+"'><root>&e;</root>";
+        
+        DocumentBuilderFactory factory = new DocumentBuilderFactoryImpl();
+        factory.setAttribute( Const.SCHEMA_PROPNAME, new InputSource(new StringReader(schema)) );
+        factory.setAttribute( Const.SINGLE_PASS_PROPNAME, Boolean.TRUE );
+        assertEquals( "abc", factory.newDocumentBuilder().parse(
+            new InputSource(new StringReader(doc))).getDocumentElement().getTextContent() );
+        
+        // entity references are kept.
+        factory.setExpandEntityReferences(false);
+        assertFalse( factory.isExpandEntityReferences() );
+        Document dom = factory.newDocumentBuilder().parse(new InputSource(new StringReader(doc)));
+        assertEquals( Node.ENTITY_REFERENCE_NODE, dom.getDocumentElement().getFirstChild().getNodeType() );
+        factory.setExpandEntityReferences(true);
+        
+        // the external DTD is not read.
+        factory.setAttribute( "http://apache.org/xml/features/nonvalidating/load-external-dtd", Boolean.FALSE );
+        assertEquals( "", factory.newDocumentBuilder().parse(
+            new InputSource(new StringReader(doc))).getDocumentElement().getTextContent() );
+    }
+    
     private void parse( DocumentBuilder builder, boolean expectationForInvalid ) throws Exception {
         // parse test. test the invalid case first to make sure that this failure
         // won't affect the rest of the story.
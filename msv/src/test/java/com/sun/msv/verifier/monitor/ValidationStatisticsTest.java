@@ -0,0 +1,110 @@
+package com.sun.msv.verifier.monitor;
+
+import java.io.StringReader;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.relaxng.datatype.Datatype;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import com.sun.msv.datatype.xsd.DatatypeFactory;
+import com.sun.msv.grammar.Grammar;
+import com.sun.msv.reader.util.GrammarLoader;
+import com.sun.msv.verifier.Verifier;
+import com.sun.msv.verifier.regexp.REDocumentDeclaration;
+import com.sun.msv.verifier.util.IgnoreErrorHandler;
+
+/**
+ * Tests the counters collected by {@link ValidationStatistics}.
+ */
+public class ValidationStatisticsTest extends TestCase
+{
+    public ValidationStatisticsTest( String name ) { super(name); }
+    
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+    
+    public static Test suite() {
+        return new TestSuite(ValidationStatisticsTest.class);
+    }
+    
+    private static final String schema =
+        "<element name='root' xmlns='http://relaxng.org/ns/structure/1.0' "+
+                "datatypeLibrary='http://www.w3.org/2001/XMLSchema-datatypes'>"+
+            "<oneOrMore>"+
+                "<element name='item'><data type='int'/></element>"+
+            "</oneOrMore>"+
+        "</element>";
+    
+    public void testCounters() throws Exception {
+        Grammar grammar = GrammarLoader.loadSchema(new InputSource(new StringReader(schema)));
+        ValidationStatistics stats = new ValidationStatistics(grammar.getPool());
+        
+        Verifier verifier = new Verifier(new REDocumentDeclaration(grammar),new IgnoreErrorHandler());
+        verifier.setValidationListener(stats);
+        
+        validate(verifier,"<root><item>1</item><item>2</item><item>3</item></root>");
+        assertTrue(verifier.isValid());
+        validate(verifier,"<root><item>x</item></root>");
+        assertFalse(verifier.isValid());
+        
+        assertEquals( 2, stats.getDocumentCount() );
+        assertEquals( 1, stats.getInvalidDocumentCount() );
+        // one acceptor for the document and one per element at least.
+        assertTrue( stats.getAcceptorCount()>=2+4 );
+        assertTrue( stats.getTransitionCacheHits()>0 );
+        assertTrue( stats.getTransitionCacheMisses()>0 );
+        assertTrue( stats.getExpressionPoolSize()>0 );
+        
+        ValidationStatistics.DatatypeCounter c = stats.getDatatypeCounters().get("int");
+        assertNotNull(c);
+        assertTrue( c.getCount()>=4 );
+        assertTrue( c.getInvalidCount()>=1 );
+        
+        stats.reset();
+        assertEquals( 0, stats.getDocumentCount() );
+        assertEquals( 0, stats.getExpressionPoolGrowth() );
+        assertTrue( stats.getDatatypeCounters().isEmpty() );
+        
+        // turning off the monitoring
+        verifier.setValidationListener(null);
+        validate(verifier,"<root><item>1</item></root>");
+        assertEquals( 0, stats.getDocumentCount() );
+    }
+    
+    /** counts from different threads are not lost. */
+    public void testConcurrentDatatypeCounts() throws Exception {
+        final ValidationStatistics stats = new ValidationStatistics();
+        final Datatype dt = DatatypeFactory.getTypeByName("int");
+        
+        Thread[] threads = new Thread[4];
+        for( int i=0; i<threads.length; i++ ) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for( int j=0; j<10000; j++ )
+                        stats.onDatatypeValidation(dt,true,1);
+                }
+            };
+            threads[i].start();
+        }
+        for( int i=0; i<threads.length; i++ )
+            threads[i].join();
+        
+        assertEquals( 40000, stats.getDatatypeValidationCount() );
+        assertEquals( 40000, stats.getDatatypeCounters().get("int").getTime() );
+    }
+    
+    private void validate( Verifier verifier, String doc ) throws Exception {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        XMLReader reader = factory.newSAXParser().getXMLReader();
+        reader.setContentHandler(verifier);
+        reader.parse(new InputSource(new StringReader(doc)));
+    }
+}
@@ -0,0 +1,124 @@
+package com.sun.msv.verifier.psvi;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.relaxng.datatype.Datatype;
+import org.relaxng.datatype.ValidationContext;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import com.sun.msv.datatype.xsd.XSDatatype;
+import com.sun.msv.grammar.AttributeExp;
+import com.sun.msv.grammar.ElementExp;
+import com.sun.msv.grammar.Grammar;
+import com.sun.msv.reader.util.GrammarLoader;
+import com.sun.msv.verifier.regexp.REDocumentDeclaration;
+
+/**
+ * Tests that {@link TypeDetector} reports values to {@link TypedValueHandler}.
+ */
+public class TypedValueTest extends TestCase
+{
+    public TypedValueTest( String name ) { super(name); }
+
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        return new TestSuite(TypedValueTest.class);
+    }
+
+    private static final String schema =
+        "<element name='root' xmlns='http://relaxng.org/ns/structure/1.0' "+
+                "datatypeLibrary='http://www.w3.org/2001/XMLSchema-datatypes'>"+
+            "<attribute name='count'><data type='int'/></attribute>"+
+            "<element name='leaf'><attribute name='on'><data type='boolean'/></attribute><data type='long'/></element>"+
+            "<element name='list'><list><oneOrMore><data type='double'/></oneOrMore></list></element>"+
+            "<element name='pair'><list><data type='date'/><value type='token'>x</value></list></element>"+
+            "<element name='any'><text/></element>"+
+        "</element>";
+
+    private static final String document =
+        "<root count=' 3'><leaf on='1'>-5</leaf><list>1 2.5</list><pair>2001-01-01 x</pair><any>t</any></root>";
+
+    /** records events as strings. */
+    private static class Recorder implements TypedContentHandler {
+        final List<String> events = new ArrayList<String>();
+
+        public void startDocument( ValidationContext context ) {}
+        public void endDocument() {}
+        public void startElement( String namespaceURI, String localName, String qName ) {}
+        public void endElement( String namespaceURI, String localName, String qName, ElementExp type ) {}
+        public void startAttribute( String namespaceURI, String localName, String qName ) {
+            events.add("@"+localName);
+        }
+        public void endAttribute( String namespaceURI, String localName, String qName, AttributeExp type ) {}
+        public void endAttributePart() {}
+
+        public void characterChunk( String literal, Datatype type ) {
+            events.add("chars("+literal+","+((XSDatatype)type).getName()+")");
+        }
+    }
+
+    private static class ValueRecorder extends Recorder implements TypedValueHandler {
+        public void typedValue( String literal, Datatype type, Object value ) {
+            events.add("value("+literal+","+((XSDatatype)type).getName()+","+value.getClass().getName()+")");
+        }
+        public void intValue( String literal, Datatype type, int value ) {
+            events.add("int("+value+")");
+        }
+        public void longValue( String literal, Datatype type, long value ) {
+            events.add("long("+value+")");
+        }
+        public void doubleValue( String literal, Datatype type, double value ) {
+            events.add("double("+value+")");
+        }
+        public void booleanValue( String literal, Datatype type, boolean value ) {
+            events.add("boolean("+value+")");
+        }
+    }
+
+    private static List<String> detect( TypedContentHandler handler ) throws Exception {
+        Grammar grammar = GrammarLoader.loadSchema(new InputSource(new StringReader(schema)));
+        TypeDetector detector = new TypeDetector(new REDocumentDeclaration(grammar),handler,null);
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        XMLReader reader = factory.newSAXParser().getXMLReader();
+        reader.setContentHandler(detector);
+        reader.parse(new InputSource(new StringReader(document)));
+        assertTrue( detector.isValid() );
+        return ((Recorder)handler).events;
+    }
+
+    public void testValues() throws Exception {
+        assertEquals( Arrays.asList(new String[]{
+            "@count", "int(3)",
+            "@on", "boolean(true)", "long(-5)",
+            "double(1.0)", "double(2.5)",
+            "value(2001-01-01,date,com.sun.msv.datatype.xsd.datetime.BigDateTimeValueType)",
+            "value(x,token,java.lang.String)",
+            "value(t,string,java.lang.String)",
+        }), detect(new ValueRecorder()) );
+    }
+
+    public void testCharacterChunks() throws Exception {
+        // a handler that doesn't receive values works as before.
+        assertEquals( Arrays.asList(new String[]{
+            "@count", "chars( 3,int)",
+            "@on", "chars(1,boolean)", "chars(-5,long)",
+            "chars(1,double)", "chars(2.5,double)",
+            "chars(2001-01-01,date)", "chars(x,token)",
+            "chars(t,string)",
+        }), detect(new Recorder()) );
+    }
+}
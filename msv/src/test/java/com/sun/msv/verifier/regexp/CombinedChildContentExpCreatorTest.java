@@ -0,0 +1,94 @@
+package com.sun.msv.verifier.regexp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xml.sax.helpers.AttributesImpl;
+
+import com.sun.msv.grammar.AnyNameClass;
+import com.sun.msv.grammar.ChoiceExp;
+import com.sun.msv.grammar.Expression;
+import com.sun.msv.grammar.ExpressionPool;
+import com.sun.msv.grammar.SimpleNameClass;
+import com.sun.msv.grammar.trex.ElementPattern;
+import com.sun.msv.util.StartTagInfo;
+
+/**
+ * Tests the name-indexed dispatch of {@link CombinedChildContentExpCreator}
+ * by comparing it with visiting all the alternatives.
+ */
+public class CombinedChildContentExpCreatorTest extends TestCase
+{
+    public CombinedChildContentExpCreatorTest( String name ) { super(name); }
+
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        return new TestSuite(CombinedChildContentExpCreatorTest.class);
+    }
+
+    private final ExpressionPool pool = new ExpressionPool();
+
+    private Expression element( String name, Expression body ) {
+        return new ElementPattern( new SimpleNameClass("",name), body );
+    }
+
+    private static StartTagInfo tag( String name ) {
+        return new StartTagInfo("",name,name,new AttributesImpl(),(com.sun.msv.grammar.IDContextProvider2)null);
+    }
+
+    /** runs the creator and returns the result as a list. */
+    private List<Object> get( Expression exp, String name ) {
+        CombinedChildContentExpCreator cccec = new CombinedChildContentExpCreator(pool);
+        CombinedChildContentExpCreator.ExpressionPair r = cccec.get(exp,tag(name),true);
+        List<Object> l = new ArrayList<Object>();
+        l.add(r.content);
+        l.add(r.continuation);
+        for( int i=0; i<cccec.numMatchedElements(); i++ )
+            l.add(cccec.getMatchedElements()[i]);
+        return l;
+    }
+
+    public void testDispatch() throws Exception {
+        Expression[] elements = new Expression[40];
+        for( int i=0; i<elements.length; i++ )
+            elements[i] = element("e"+i, i%2==0 ? Expression.epsilon : Expression.anyString);
+
+        Expression[] items = new Expression[elements.length+4];
+        System.arraycopy(elements,0,items,0,elements.length);
+        // an alternative that starts with one of two elements
+        items[40] = pool.createSequence( pool.createOptional(elements[3]), elements[5] );
+        // an alternative with a wildcard
+        items[41] = new ElementPattern( AnyNameClass.theInstance, Expression.epsilon );
+        // a repeated alternative, and one that never accepts an element
+        items[42] = pool.createOneOrMore( element("r",Expression.epsilon) );
+        items[43] = pool.createData(com.sun.msv.datatype.xsd.StringType.theInstance);
+
+        ChoiceExp exp = (ChoiceExp)pool.createChoice(items);
+        assertNotNull( ChoiceIndex.create(exp) );
+
+        String[] names = { "e0", "e3", "e5", "e39", "r", "unknown" };
+        for( int i=0; i<names.length; i++ ) {
+            // visit all alternatives.
+            OptimizationTag ot = new OptimizationTag();
+            ot.choiceIndexComputed = true;
+            exp.verifierTag = ot;
+            List<Object> expected = get(exp,names[i]);
+
+            exp.verifierTag = null;
+            assertEquals( names[i], expected, get(exp,names[i]) );
+            assertNotNull( ((OptimizationTag)exp.verifierTag).choiceIndex );
+        }
+    }
+
+    public void testSmallChoice() throws Exception {
+        Expression exp = pool.createChoice( element("a",Expression.epsilon), element("b",Expression.epsilon) );
+        assertNull( ChoiceIndex.create((ChoiceExp)exp) );
+    }
+}
@@ -0,0 +1,135 @@
+package com.sun.msv.verifier.regexp;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import util.ErrorCollector;
+
+import org.xml.sax.InputSource;
+
+import com.sun.msv.grammar.ElementExp;
+import com.sun.msv.grammar.Expression;
+import com.sun.msv.grammar.Grammar;
+import com.sun.msv.grammar.util.ExpressionWalker;
+import com.sun.msv.reader.util.GrammarLoader;
+import com.sun.msv.verifier.Verifier;
+
+/**
+ * Tests {@link CompiledAcceptor} by comparing it with the general implementation.
+ */
+public class CompiledAcceptorTest extends TestCase
+{
+    public CompiledAcceptorTest( String name ) { super(name); }
+
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        return new TestSuite(CompiledAcceptorTest.class);
+    }
+
+    private static final String schema =
+        "<element name='root' xmlns='http://relaxng.org/ns/structure/1.0' "+
+                "datatypeLibrary='http://www.w3.org/2001/XMLSchema-datatypes'>"+
+            "<zeroOrMore><choice>"+
+                "<element name='pair'>"+
+                    "<optional><attribute name='id'><data type='token'/></attribute></optional>"+
+                    "<element name='a'><empty/></element>"+
+                    "<oneOrMore><element name='b'><data type='int'/></element></oneOrMore>"+
+                    "<optional><element name='c'><empty/></element></optional>"+
+                "</element>"+
+                "<element name='set'><interleave>"+
+                    "<element name='x'><empty/></element>"+
+                    "<optional><element name='y'><empty/></element></optional>"+
+                "</interleave></element>"+
+                "<element name='mixed'><mixed><zeroOrMore><element name='a'><empty/></element></zeroOrMore></mixed></element>"+
+                "<element name='any'><zeroOrMore><element><anyName/><empty/></element></zeroOrMore></element>"+
+            "</choice></zeroOrMore>"+
+        "</element>";
+
+    private static final String[] documents = {
+        "<root/>",
+        "<root><pair id='p'><a/><b>1</b><b>2</b><c/></pair><set><y/><x/></set><set><x/></set></root>",
+        "<root><mixed>t<a/>t<a/></mixed><any><foo/><bar/></any><pair><a/><b>1</b></pair></root>",
+        // errors
+        "<root><pair><a/></pair></root>",
+        "<root><pair><b>1</b></pair></root>",
+        "<root><pair><a/><b>x</b><b>2</b><c/><c/></pair></root>",
+        "<root><pair>text<a/><b>1</b></pair></root>",
+        "<root><pair><a/><b>1</b><d/><b>2</b></pair></root>",
+        "<root><set><y/></set><set><x/><x/></set></root>",
+        "<root><pair id='a' foo='b'><a/><b>1</b></pair></root>",
+        "<root><unknown/><pair><a/><b>1</b></pair></root>",
+    };
+
+    private static Grammar load() throws Exception {
+        return GrammarLoader.loadSchema(new InputSource(new StringReader(schema)));
+    }
+
+    private static List<String> validate( REDocumentDeclaration docDecl, String doc ) throws Exception {
+        ErrorCollector errors = new ErrorCollector();
+        Verifier verifier = new Verifier(docDecl,null);
+        verifier.setPanicMode(false);
+        assertEquals( errors.validate(verifier,doc.replace("><",">\n<")), errors.errors.isEmpty() );
+        return errors.getLocatedMessages();
+    }
+
+    public void testSameResult() throws Exception {
+        Grammar grammar = load();
+        REDocumentDeclaration general = new REDocumentDeclaration(grammar);
+        REDocumentDeclaration compiled = new REDocumentDeclaration(grammar);
+        compiled.setCompiledAcceptorsEnabled(true);
+
+        for( int i=0; i<documents.length; i++ ) {
+            List<String> expected = validate(general,documents[i]);
+            assertEquals( documents[i], i<3, expected.isEmpty() );
+            assertEquals( documents[i], expected, validate(compiled,documents[i]) );
+        }
+    }
+
+    public void testCompile() throws Exception {
+        Grammar grammar = load();
+        final REDocumentDeclaration docDecl = new REDocumentDeclaration(grammar);
+        final List<String> compiled = new ArrayList<String>();
+        grammar.getTopLevel().visit( new ExpressionWalker() {
+            public void onElement( ElementExp exp ) {
+                Expression content = exp.contentModel.getExpandedExp(docDecl.pool);
+                if( CompiledContentModel.create(content,docDecl)!=null )
+                    compiled.add(exp.getNameClass().toString());
+                super.onElement(exp);
+            }
+        });
+        // an element with a wildcard is not compiled.
+        assertTrue( compiled.contains("root") );
+        assertTrue( compiled.contains("pair") );
+        assertTrue( compiled.contains("set") );
+        assertTrue( compiled.contains("mixed") );
+        assertFalse( compiled.contains("any") );
+
+        // states are residuals of the content model.
+        Expression pair = findElement(grammar.getTopLevel(),"pair").contentModel.getExpandedExp(docDecl.pool);
+        CompiledContentModel model = CompiledContentModel.create(pair,docDecl);
+        // before a, before the first b, after b, and after c.
+        assertEquals( 4, model.size() );
+        // the attribute is pruned.
+        assertNull( model.getState(pair) );
+    }
+
+    private static ElementExp findElement( Expression exp, final String name ) {
+        final ElementExp[] r = new ElementExp[1];
+        exp.visit( new ExpressionWalker() {
+            public void onElement( ElementExp exp ) {
+                if( exp.getNameClass().toString().equals(name) )
+                    r[0] = exp;
+                else
+                    super.onElement(exp);
+            }
+        });
+        return r[0];
+    }
+}
@@ -0,0 +1,162 @@
+package com.sun.msv.verifier.regexp;
+
+import java.io.StringReader;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import util.ErrorCollector;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.helpers.AttributesImpl;
+
+import com.sun.msv.grammar.ElementExp;
+import com.sun.msv.grammar.Expression;
+import com.sun.msv.grammar.Grammar;
+import com.sun.msv.grammar.xmlschema.XMLSchemaGrammar;
+import com.sun.msv.reader.util.GrammarLoader;
+import com.sun.msv.util.StartTagInfo;
+import com.sun.msv.verifier.Acceptor;
+import com.sun.msv.verifier.Verifier;
+import com.sun.msv.verifier.identity.IDConstraintChecker;
+
+/**
+ * Tests {@link LeafAcceptor} by comparing it with the general implementation.
+ */
+public class LeafAcceptorTest extends TestCase
+{
+    public LeafAcceptorTest( String name ) { super(name); }
+
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        return new TestSuite(LeafAcceptorTest.class);
+    }
+
+    private static final String schema =
+        "<element name='root' xmlns='http://relaxng.org/ns/structure/1.0' "+
+                "datatypeLibrary='http://www.w3.org/2001/XMLSchema-datatypes'>"+
+            "<zeroOrMore><choice>"+
+                "<element name='a'>"+
+                    "<attribute name='x'><data type='int'/></attribute>"+
+                    "<optional><attribute name='y'><data type='token'/></attribute></optional>"+
+                    "<data type='decimal'/>"+
+                "</element>"+
+                "<element name='b'><empty/></element>"+
+                "<element name='c'><attribute name='v'><value>fixed</value></attribute></element>"+
+                "<element name='d'><text/></element>"+
+                "<element name='e'><attribute name='q'><data type='QName'/></attribute><data type='QName'/></element>"+
+                "<element name='f'><element name='b'><empty/></element></element>"+
+            "</choice></zeroOrMore>"+
+        "</element>";
+
+    private static final String[] documents = {
+        "<root/>",
+        "<root><a x='1'>1.5</a><a x=' 2 ' y='t'> 3 </a><b/><b></b><c v='fixed'/><d>any</d><d/></root>",
+        "<root xmlns:p='urn:p'><e q='p:x'>p:y</e><e xmlns:r='urn:r' q='r:x'>r:y</e></root>",
+        "<root><f><b/></f></root>",
+        // errors
+        "<root><a x='z'>1</a></root>",
+        "<root><a>1</a></root>",
+        "<root><a x='1' z='1'>1</a></root>",
+        "<root><a x='1'>z</a></root>",
+        "<root><a x='1'> </a></root>",
+        "<root><a x='1'/></root>",
+        "<root><a x='1'>1<b/></a></root>",
+        "<root><b>text</b></root>",
+        "<root><b x='1'/></root>",
+        "<root><c v='other'/></root>",
+        "<root><c/></root>",
+        "<root><e q='undeclared:x'>p:y</e></root>",
+        "<root><e q='e'>undeclared:y</e></root>",
+        "<root><f>text</f></root>",
+    };
+
+    /** SimpleAcceptor that never uses LeafAcceptor. */
+    private static class GeneralAcceptor extends SimpleAcceptor {
+        GeneralAcceptor( REDocumentDeclaration docDecl, Expression combined, ElementExp owner, Expression continuation ) {
+            super(docDecl,combined,owner,continuation);
+        }
+        protected Acceptor createAcceptor( Expression combined, Expression continuation,
+            ElementExp[] primitives, int numPrimitives ) {
+            if( primitives==null || numPrimitives<=1 )
+                return new GeneralAcceptor( docDecl, combined,
+                    (primitives==null)?null:primitives[0], continuation );
+            return super.createAcceptor(combined,continuation,primitives,numPrimitives);
+        }
+    }
+
+    private List<String> validate( Verifier verifier, String doc, boolean expected ) throws Exception {
+        ErrorCollector errors = new ErrorCollector();
+        assertEquals( doc, expected, errors.validate(verifier,doc) );
+        return errors.getLocatedMessages();
+    }
+
+    public void testSameResult() throws Exception {
+        Grammar grammar = GrammarLoader.loadSchema(new InputSource(new StringReader(schema)));
+
+        Verifier leaf = new Verifier(new REDocumentDeclaration(grammar),null);
+        Verifier general = new Verifier(new REDocumentDeclaration(grammar) {
+            public Acceptor createAcceptor() {
+                return new GeneralAcceptor(this, topLevel, null, Expression.epsilon);
+            }
+        },null);
+
+        for( int i=0; i<documents.length; i++ ) {
+            boolean valid = i<4;
+            assertEquals( documents[i],
+                validate(general,documents[i],valid), validate(leaf,documents[i],valid) );
+        }
+    }
+
+    public void testClassification() throws Exception {
+        Grammar grammar = GrammarLoader.loadSchema(new InputSource(new StringReader(schema)));
+        REDocumentDeclaration decl = new REDocumentDeclaration(grammar);
+
+        Acceptor root = decl.createAcceptor().createChildAcceptor(sti("root"),null);
+        assertFalse( root instanceof LeafAcceptor );
+        assertTrue( root.createChildAcceptor(sti("a"),null) instanceof LeafAcceptor );
+        assertTrue( root.createChildAcceptor(sti("b"),null) instanceof LeafAcceptor );
+        assertTrue( root.createChildAcceptor(sti("c"),null) instanceof LeafAcceptor );
+        assertTrue( root.createChildAcceptor(sti("d"),null) instanceof LeafAcceptor );
+        assertFalse( root.createChildAcceptor(sti("f"),null) instanceof LeafAcceptor );
+
+        // the leaf content model is computed once and shared by the verifiers of the grammar.
+        ElementExp a = (ElementExp)root.createChildAcceptor(sti("a"),null).getOwnerType();
+        assertSame( decl.getLeafContentModel(a), new REDocumentDeclaration(grammar).getLeafContentModel(a) );
+    }
+
+    private static StartTagInfo sti( String name ) {
+        return new StartTagInfo("",name,name,new AttributesImpl(),(com.sun.msv.grammar.IDContextProvider2)null);
+    }
+
+    private static final String xsdSchema =
+        "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"+
+            "<xs:element name='root'><xs:complexType><xs:sequence maxOccurs='unbounded'>"+
+                "<xs:element name='price' nillable='true'>"+
+                    "<xs:complexType><xs:simpleContent><xs:extension base='xs:decimal'>"+
+                        "<xs:attribute name='currency' type='xs:string' use='required'/>"+
+                    "</xs:extension></xs:simpleContent></xs:complexType>"+
+                "</xs:element>"+
+                "<xs:element name='qty' type='xs:anySimpleType' nillable='true'/>"+
+            "</xs:sequence></xs:complexType></xs:element>"+
+        "</xs:schema>";
+
+    public void testXMLSchema() throws Exception {
+        XMLSchemaGrammar grammar = (XMLSchemaGrammar)GrammarLoader.loadSchema(
+            new InputSource(new StringReader(xsdSchema)));
+        Verifier verifier = new IDConstraintChecker(grammar,null);
+
+        String xsi = "xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance' xmlns:xs='http://www.w3.org/2001/XMLSchema'";
+        validate(verifier,"<root "+xsi+"><price currency='USD'>1.5</price><qty>1</qty></root>",true);
+        validate(verifier,"<root "+xsi+"><price currency='USD'>1</price><qty xsi:type='xs:int'>1</qty></root>",true);
+        validate(verifier,"<root "+xsi+"><price currency='USD' xsi:schemaLocation='a b'>1.5</price><qty>1</qty></root>",true);
+        validate(verifier,"<root "+xsi+"><price currency='USD'>1</price><qty xsi:nil='true'/></root>",true);
+        validate(verifier,"<root "+xsi+"><price currency='USD'>x</price><qty>1</qty></root>",false);
+        validate(verifier,"<root "+xsi+"><price>1</price><qty>1</qty></root>",false);
+        validate(verifier,"<root "+xsi+"><price currency='USD'>1</price><qty xsi:type='xs:int'>x</qty></root>",false);
+    }
+}
@@ -0,0 +1,136 @@
+package com.sun.msv.verifier.regexp;
+
+import java.io.StringReader;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.relaxng.datatype.Datatype;
+import org.xml.sax.InputSource;
+
+import com.sun.msv.grammar.ElementExp;
+import com.sun.msv.grammar.Grammar;
+import com.sun.msv.grammar.ListExp;
+import com.sun.msv.grammar.util.ExpressionWalker;
+import com.sun.msv.reader.util.GrammarLoader;
+import com.sun.msv.util.DatatypeRef;
+
+/**
+ * Tests the matching of {@link StringToken} against lists of a single datatype
+ * by comparing it with an equivalent pattern that needs the residual calculation.
+ */
+public class StringTokenTest extends TestCase
+{
+    public StringTokenTest( String name ) { super(name); }
+
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        return new TestSuite(StringTokenTest.class);
+    }
+
+    private static final String schema =
+        "<element name='root' xmlns='http://relaxng.org/ns/structure/1.0' "+
+                "datatypeLibrary='http://www.w3.org/2001/XMLSchema-datatypes'>"+
+            "<element name='zeroOrMore'><list><zeroOrMore><data type='double'/></zeroOrMore></list></element>"+
+            "<element name='oneOrMore'><list><oneOrMore><data type='double'/></oneOrMore></list></element>"+
+            "<element name='sequence'><list><data type='double'/><zeroOrMore><data type='double'/></zeroOrMore></list></element>"+
+        "</element>";
+
+    private static final String[] literals = {
+        "", "  ", "1", " 1 ", "1 2.5\t-3\r\n4E2", "1 x", "x", "1\f2", "1  2  ",
+    };
+
+    /** finds ListExps in the content model of each element. */
+    private static ListExp[] getLists( Grammar grammar ) {
+        final ListExp[] lists = new ListExp[3];
+        grammar.getTopLevel().visit(new ExpressionWalker() {
+            private String name;
+            public void onElement( ElementExp exp ) {
+                String old = name;
+                name = exp.getNameClass().toString();
+                super.onElement(exp);
+                name = old;
+            }
+            public void onList( ListExp exp ) {
+                if( name.equals("zeroOrMore") )     lists[0] = exp;
+                if( name.equals("oneOrMore") )      lists[1] = exp;
+                if( name.equals("sequence") )       lists[2] = exp;
+                super.onList(exp);
+            }
+        });
+        return lists;
+    }
+
+    public void testSameResult() throws Exception {
+        Grammar grammar = GrammarLoader.loadSchema(new InputSource(new StringReader(schema)));
+        REDocumentDeclaration decl = new REDocumentDeclaration(grammar);
+        ListExp[] lists = getLists(grammar);
+
+        for( int i=0; i<literals.length; i++ ) {
+            DatatypeRef slowRef = new DatatypeRef();
+            boolean slow = new StringToken(decl,literals[i],null,slowRef).match(lists[2]);
+
+            for( int j=0; j<2; j++ ) {
+                DatatypeRef fastRef = new DatatypeRef();
+                boolean fast = new StringToken(decl,literals[i],null,fastRef).match(lists[j]);
+
+                boolean empty = literals[i].trim().length()==0;
+                if( j==0 && empty ) {
+                    // only the zeroOrMore list accepts the empty list.
+                    assertTrue( fast );
+                    assertEquals( 0, fastRef.types.length );
+                    continue;
+                }
+
+                assertEquals( "'"+literals[i]+"'", slow, fast );
+                if( slow )
+                    assertTypes( slowRef.types, fastRef.types );
+            }
+        }
+    }
+
+    private static void assertTypes( Datatype[] expected, Datatype[] actual ) {
+        assertEquals( expected.length, actual.length );
+        for( int i=0; i<expected.length; i++ )
+            assertSame( expected[i], actual[i] );
+    }
+
+    public void testSaturation() throws Exception {
+        Grammar grammar = GrammarLoader.loadSchema(new InputSource(new StringReader(schema)));
+        REDocumentDeclaration decl = new REDocumentDeclaration(grammar);
+        ListExp[] lists = getLists(grammar);
+
+        // a token that matches two lists can't tell its type.
+        DatatypeRef ref = new DatatypeRef();
+        StringToken token = new StringToken(decl,"1 2",null,ref);
+        assertTrue( token.match(lists[0]) );
+        assertEquals( 2, ref.types.length );
+        assertTrue( token.match(lists[1]) );
+        assertNull( ref.types );
+    }
+
+    public void testValues() throws Exception {
+        Grammar grammar = GrammarLoader.loadSchema(new InputSource(new StringReader(schema)));
+        REDocumentDeclaration decl = new REDocumentDeclaration(grammar);
+        ListExp[] lists = getLists(grammar);
+
+        // both the fast path and the residual calculation keep the values.
+        for( int j=0; j<lists.length; j+=2 ) {
+            DatatypeRef ref = new DatatypeRef();
+            ref.collectValues = true;
+            assertTrue( new StringToken(decl," 1 2.5 ",null,ref).match(lists[j]) );
+            assertEquals( 2, ref.values.length );
+            assertEquals( new Double(1), ref.values[0] );
+            assertEquals( new Double(2.5), ref.values[1] );
+        }
+
+        // values are not created unless requested.
+        DatatypeRef ref = new DatatypeRef();
+        assertTrue( new StringToken(decl,"1 2",null,ref).match(lists[0]) );
+        assertNull( ref.values );
+    }
+}
@@ -0,0 +1,181 @@
+package com.sun.msv.verifier.regexp;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import com.sun.msv.grammar.Grammar;
+import com.sun.msv.grammar.xmlschema.XMLSchemaGrammar;
+import com.sun.msv.reader.util.GrammarLoader;
+import com.sun.msv.verifier.Verifier;
+import com.sun.msv.verifier.identity.IDConstraintChecker;
+import com.sun.msv.verifier.monitor.ValidationStatistics;
+import com.sun.msv.verifier.util.IgnoreErrorHandler;
+
+/**
+ * Tests {@link WarmUpProfile} by reading a profile into another instance
+ * of the same grammar.
+ */
+public class WarmUpProfileTest extends TestCase
+{
+    public WarmUpProfileTest( String name ) { super(name); }
+
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        return new TestSuite(WarmUpProfileTest.class);
+    }
+
+    private static final String schema =
+        "<element name='root' xmlns='http://relaxng.org/ns/structure/1.0' "+
+                "xmlns:a='urn:a' datatypeLibrary='http://www.w3.org/2001/XMLSchema-datatypes'>"+
+            "<zeroOrMore><choice>"+
+                "<element name='item'>"+
+                    "<attribute name='id'><data type='token'/></attribute>"+
+                    "<optional><element name='a:note'><text/></element></optional>"+
+                "</element>"+
+                "<element name='pair'><element name='a'><empty/></element><oneOrMore><element name='b'><empty/></element></oneOrMore></element>"+
+                "<element name='mixed'><mixed><zeroOrMore><element name='b'><empty/></element></zeroOrMore></mixed></element>"+
+            "</choice></zeroOrMore>"+
+        "</element>";
+
+    private static final String document =
+        "<root xmlns:a='urn:a'><item id='a'/><item id='b'><a:note>x</a:note></item>"+
+        "<pair><a/><b/><b/></pair><mixed>t<b/>t</mixed><item id='c'/></root>";
+
+    private static Grammar load( String schema ) throws Exception {
+        return GrammarLoader.loadSchema(new InputSource(new StringReader(schema)));
+    }
+
+    private static void validate( Verifier verifier, String doc ) throws Exception {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        XMLReader reader = factory.newSAXParser().getXMLReader();
+        reader.setContentHandler(verifier);
+        reader.parse(new InputSource(new StringReader(doc)));
+    }
+
+    /** validates a document and returns the statistics. */
+    private static ValidationStatistics validate( Grammar grammar, String doc ) throws Exception {
+        Verifier verifier = new Verifier(new REDocumentDeclaration(grammar),new IgnoreErrorHandler());
+        ValidationStatistics stats = new ValidationStatistics();
+        verifier.setValidationListener(stats);
+        validate(verifier,doc);
+        assertTrue( verifier.isValid() );
+        return stats;
+    }
+
+    public void testRoundTrip() throws Exception {
+        Grammar trained = load(schema);
+        ValidationStatistics cold = validate(trained,document);
+        assertTrue( cold.getTransitionCacheMisses()>0 );
+
+        StringWriter profile = new StringWriter();
+        int written = WarmUpProfile.write(trained,profile);
+        assertTrue( written>0 );
+
+        // another instance of the grammar, whose caches are empty.
+        Grammar fresh = load(schema);
+        assertEquals( written, WarmUpProfile.read(fresh,new StringReader(profile.toString())) );
+
+        ValidationStatistics warm = validate(fresh,document);
+        assertEquals( 0, warm.getTransitionCacheMisses() );
+        assertEquals( 0, warm.getResidualCacheMisses() );
+        assertEquals( cold.getTransitionCacheHits()+cold.getTransitionCacheMisses(),
+                      warm.getTransitionCacheHits() );
+
+        // the restored caches give the same results.
+        Verifier verifier = new Verifier(new REDocumentDeclaration(fresh),new IgnoreErrorHandler());
+        validate(verifier,"<root><pair><a/></pair></root>");
+        assertFalse( verifier.isValid() );
+        validate(verifier,"<root xmlns:a='urn:a'><item id='a'><a:note>x</a:note><a:note/></item></root>");
+        assertFalse( verifier.isValid() );
+    }
+
+    public void testXMLSchema() throws Exception {
+        String xsd =
+            "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"+
+                "<xs:element name='root'><xs:complexType><xs:sequence>"+
+                    "<xs:element name='item' maxOccurs='unbounded' type='xs:int'/>"+
+                    "<xs:element name='end' minOccurs='0'/>"+
+                "</xs:sequence></xs:complexType></xs:element>"+
+            "</xs:schema>";
+        String doc = "<root><item>1</item><item>2</item><end/></root>";
+
+        XMLSchemaGrammar trained = (XMLSchemaGrammar)load(xsd);
+        validate(new IDConstraintChecker(trained,new IgnoreErrorHandler()),doc);
+        StringWriter profile = new StringWriter();
+        int written = WarmUpProfile.write(trained,profile);
+
+        XMLSchemaGrammar fresh = (XMLSchemaGrammar)load(xsd);
+        assertEquals( written, WarmUpProfile.read(fresh,new StringReader(profile.toString())) );
+        Verifier verifier = new IDConstraintChecker(fresh,new IgnoreErrorHandler());
+        ValidationStatistics stats = new ValidationStatistics();
+        verifier.setValidationListener(stats);
+        validate(verifier,doc);
+        assertTrue( verifier.isValid() );
+        assertEquals( 0, stats.getTransitionCacheMisses() );
+    }
+
+    /** checks that a profile of the trained schema is not read into the other schema. */
+    private static void assertRejected( String trainedSchema, String otherSchema ) throws Exception {
+        assertRejected(trainedSchema,otherSchema,document);
+    }
+
+    private static void assertRejected( String trainedSchema, String otherSchema, String doc ) throws Exception {
+        Grammar trained = load(trainedSchema);
+        validate(trained,doc);
+        StringWriter profile = new StringWriter();
+        WarmUpProfile.write(trained,profile);
+
+        // another instance of the same schema accepts the profile.
+        WarmUpProfile.read(load(trainedSchema),new StringReader(profile.toString()));
+
+        Grammar other = load(otherSchema);
+        try {
+            WarmUpProfile.read(other,new StringReader(profile.toString()));
+            fail();
+        } catch( IOException e ) {
+            ;   // as expected
+        }
+    }
+
+    public void testOtherGrammar() throws Exception {
+        assertRejected( schema, schema.replace("name='pair'","name='twin'") );
+    }
+
+    public void testOtherDatatypes() throws Exception {
+        final String data = "<data type='token'/>";
+        String maxLength = schema.replace(data,"<data type='token'><param name='maxLength'>5</param></data>");
+        String pattern = schema.replace(data,"<data type='token'><param name='pattern'>[a-c]</param></data>");
+
+        assertRejected( schema, schema.replace(data,"<data type='NCName'/>") );
+        assertRejected( schema, maxLength );
+        assertRejected( maxLength, maxLength.replace(">5<",">6<") );
+        assertRejected( pattern, pattern.replace("[a-c]","[a-d]") );
+
+        String xsd =
+            "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"+
+                "<xs:element name='root'><xs:complexType>"+
+                    "<xs:attribute name='id'><xs:simpleType><xs:restriction base='xs:int'>"+
+                        "<xs:enumeration value='1'/><xs:enumeration value='2'/>"+
+                        "<xs:maxInclusive value='10'/>"+
+                    "</xs:restriction></xs:simpleType></xs:attribute>"+
+                "</xs:complexType></xs:element>"+
+            "</xs:schema>";
+        String doc = "<root id='2'/>";
+        assertRejected( xsd, xsd.replace("value='1'","value='3'"), doc );
+        assertRejected( xsd, xsd.replace("value='10'","value='20'"), doc );
+    }
+}
@@ -0,0 +1,95 @@
+package com.sun.msv.verifier.stax;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import com.sun.msv.reader.util.GrammarLoader;
+import com.sun.msv.verifier.Verifier;
+import com.sun.msv.verifier.regexp.REDocumentDeclaration;
+import com.sun.msv.verifier.util.ErrorHandlerImpl;
+
+/**
+ * compares the validation through SAX and through {@link XMLStreamReaderDriver}.
+ *
+ * <p>
+ * Usage: XMLStreamReaderBenchmark [# of records] [# of iterations]
+ */
+public class XMLStreamReaderBenchmark
+{
+    private static final String schema =
+        "<element name='root' xmlns='http://relaxng.org/ns/structure/1.0' "+
+                "datatypeLibrary='http://www.w3.org/2001/XMLSchema-datatypes'>"+
+            "<zeroOrMore>"+
+                "<element name='record'>"+
+                    "<attribute name='id'><data type='int'/></attribute>"+
+                    "<attribute name='kind'><choice><value>a</value><value>b</value></choice></attribute>"+
+                    "<element name='name'><text/></element>"+
+                    "<element name='value'><data type='double'/></element>"+
+                "</element>"+
+            "</zeroOrMore>"+
+        "</element>";
+
+    public static void main( String[] args ) throws Exception {
+        int records = args.length>0 ? Integer.parseInt(args[0]) : 100000;
+        int iterations = args.length>1 ? Integer.parseInt(args[1]) : 10;
+
+        byte[] doc = createDocument(records);
+        System.out.println("document size: "+doc.length+" bytes");
+
+        Verifier verifier = new Verifier(
+            new REDocumentDeclaration(GrammarLoader.loadSchema(new InputSource(new StringReader(schema)))),
+            ErrorHandlerImpl.theInstance );
+
+        // warm up
+        runSAX(verifier,doc,2);
+        runStAX(verifier,doc,2);
+
+        System.out.println("SAX  : "+runSAX(verifier,doc,iterations)/iterations+" ms/doc");
+        System.out.println("StAX : "+runStAX(verifier,doc,iterations)/iterations+" ms/doc");
+    }
+
+    private static long runSAX( Verifier verifier, byte[] doc, int iterations ) throws Exception {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+
+        long start = System.currentTimeMillis();
+        for( int i=0; i<iterations; i++ ) {
+            XMLReader reader = factory.newSAXParser().getXMLReader();
+            reader.setContentHandler(verifier);
+            reader.parse(new InputSource(new ByteArrayInputStream(doc)));
+            if(!verifier.isValid())     throw new IllegalStateException();
+        }
+        return System.currentTimeMillis()-start;
+    }
+
+    private static long runStAX( Verifier verifier, byte[] doc, int iterations ) throws Exception {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        XMLStreamReaderDriver driver = new XMLStreamReaderDriver();
+
+        long start = System.currentTimeMillis();
+        for( int i=0; i<iterations; i++ ) {
+            driver.parse(factory.createXMLStreamReader(new ByteArrayInputStream(doc)),verifier);
+            if(!verifier.isValid())     throw new IllegalStateException();
+        }
+        return System.currentTimeMillis()-start;
+    }
+
+    private static byte[] createDocument( int records ) throws Exception {
+        StringBuffer buf = new StringBuffer();
+        buf.append("<root>");
+        for( int i=0; i<records; i++ ) {
+            buf.append("<record id='").append(i).append("' kind='").append((i%2==0)?'a':'b').append("'>");
+            buf.append("<name>record #").append(i).append("</name>");
+            buf.append("<value>").append(i*0.5).append("</value>");
+            buf.append("</record>\n");
+        }
+        buf.append("</root>");
+        return buf.toString().getBytes("UTF-8");
+    }
+}
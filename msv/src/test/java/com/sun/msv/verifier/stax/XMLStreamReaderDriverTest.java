@@ -0,0 +1,223 @@
+package com.sun.msv.verifier.stax;
+
+import java.io.StringReader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import com.sun.msv.reader.util.GrammarLoader;
+import com.sun.msv.verifier.Verifier;
+import com.sun.msv.verifier.regexp.REDocumentDeclaration;
+import com.sun.msv.verifier.util.ErrorHandlerImpl;
+import com.sun.msv.verifier.util.IgnoreErrorHandler;
+
+/**
+ * Tests the StAX front-end of the verifier.
+ */
+public class XMLStreamReaderDriverTest extends TestCase
+{
+    public XMLStreamReaderDriverTest( String name ) { super(name); }
+    
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+    
+    public static Test suite() {
+        return new TestSuite(XMLStreamReaderDriverTest.class);
+    }
+    
+    private static final String schema =
+        "<element name='p:root' xmlns:p='urn:test' xmlns='http://relaxng.org/ns/structure/1.0' "+
+                "datatypeLibrary='http://www.w3.org/2001/XMLSchema-datatypes'>"+
+            "<attribute name='ref'><data type='QName'/></attribute>"+
+            "<oneOrMore>"+
+                "<element name='p:item'><data type='int'/></element>"+
+            "</oneOrMore>"+
+        "</element>";
+    
+    private static final String validDocument =
+        "<r:root xmlns:r='urn:test' ref='r:item'><r:item>1</r:item><r:item> 2 </r:item></r:root>";
+    private static final String invalidText =
+        "<r:root xmlns:r='urn:test' ref='r:item'><r:item>x</r:item></r:root>";
+    private static final String invalidQName =
+        "<r:root xmlns:r='urn:test' ref='q:item'><r:item>1</r:item></r:root>";
+    
+    private static final String idSchema =
+        "<element name='root' xmlns='http://relaxng.org/ns/structure/1.0' "+
+                "datatypeLibrary='http://www.w3.org/2001/XMLSchema-datatypes'>"+
+            "<oneOrMore>"+
+                "<element name='item'>"+
+                    "<attribute name='id'><data type='ID'/></attribute>"+
+                    "<optional><attribute name='ref'><data type='IDREF'/></attribute></optional>"+
+                "</element>"+
+            "</oneOrMore>"+
+        "</element>";
+    
+    private REDocumentDeclaration docDecl;
+    private final XMLInputFactory factory = XMLInputFactory.newInstance();
+    
+    protected void setUp() throws Exception {
+        docDecl = new REDocumentDeclaration(
+            GrammarLoader.loadSchema(new InputSource(new StringReader(schema))) );
+    }
+    
+    private XMLStreamReader createReader( String doc ) throws Exception {
+        return factory.createXMLStreamReader(new StringReader(doc));
+    }
+    
+    /** creates a reader positioned at the start tag of the subtree. */
+    private XMLStreamReader createSubtreeReader( String subtree ) throws Exception {
+        XMLStreamReader reader = createReader("<wrapper>"+subtree+"<tail/></wrapper>");
+        reader.nextTag();   // wrapper
+        reader.nextTag();   // the subtree
+        return reader;
+    }
+    
+    public void testDriver() throws Exception {
+        Verifier verifier = new Verifier(docDecl,new IgnoreErrorHandler());
+        assertTrue( XMLStreamReaderDriver.verify(createReader(validDocument),verifier) );
+        assertFalse( XMLStreamReaderDriver.verify(createReader(invalidText),verifier) );
+        assertFalse( XMLStreamReaderDriver.verify(createReader(invalidQName),verifier) );
+        // the same verifier can be reused.
+        assertTrue( XMLStreamReaderDriver.verify(createReader(validDocument),verifier) );
+    }
+    
+    public void testSubtree() throws Exception {
+        XMLStreamReader reader = createSubtreeReader(validDocument);
+        
+        Verifier verifier = new Verifier(docDecl,new IgnoreErrorHandler());
+        assertTrue( XMLStreamReaderDriver.verify(reader,verifier) );
+        // the reader should stop at the end tag of the subtree
+        assertEquals( XMLStreamReader.END_ELEMENT, reader.getEventType() );
+        assertEquals( "root", reader.getLocalName() );
+    }
+    
+    public void testFilter() throws Exception {
+        ValidatingXMLStreamReader reader = new ValidatingXMLStreamReader(
+            createReader(validDocument), new Verifier(docDecl,new IgnoreErrorHandler()) );
+        reader.nextTag();
+        assertEquals( "1", (reader.nextTag()==XMLStreamReader.START_ELEMENT) ? reader.getElementText() : null );
+        while(reader.hasNext())
+            reader.next();
+        assertTrue( reader.isValid() );
+    }
+    
+    public void testFilterError() throws Exception {
+        ValidatingXMLStreamReader reader = new ValidatingXMLStreamReader(
+            createReader(invalidText), new Verifier(docDecl,ErrorHandlerImpl.theInstance) );
+        try {
+            while(reader.hasNext())
+                reader.next();
+            fail("failed to reject an invalid document");
+        } catch( XMLStreamException e ) {
+            // expected
+        }
+    }
+    
+    public void testFilterSubtree() throws Exception {
+        REDocumentDeclaration ids = new REDocumentDeclaration(
+            GrammarLoader.loadSchema(new InputSource(new StringReader(idSchema))) );
+        
+        ValidatingXMLStreamReader reader = new ValidatingXMLStreamReader(
+            createSubtreeReader("<root><item id='a' ref='b'/><item id='b'/></root>"),
+            new Verifier(ids,new IgnoreErrorHandler()) );
+        // events after the subtree are not validated.
+        while(reader.hasNext())
+            reader.next();
+        assertTrue( reader.isValid() );
+        
+        // IDREFs are checked at the end of the subtree.
+        reader = new ValidatingXMLStreamReader(
+            createSubtreeReader("<root><item id='a' ref='c'/><item id='b'/></root>"),
+            new Verifier(ids,new IgnoreErrorHandler()) );
+        while(reader.getEventType()!=XMLStreamReader.END_ELEMENT || !reader.getLocalName().equals("root"))
+            reader.next();
+        assertFalse( reader.isValid() );
+    }
+    
+    public void testInheritedNamespaces() throws Exception {
+        String doc =
+            "<w:wrapper xmlns:w='urn:wrapper' xmlns:r='urn:test' xmlns:q='urn:test'>"+
+                "<r:root ref='q:item'><r:item>1</r:item></r:root>"+
+            "</w:wrapper>";
+        XMLStreamReader reader = createReader(doc);
+        reader.nextTag();
+        reader.nextTag();
+        
+        final StringBuffer events = new StringBuffer();
+        final Verifier verifier = new Verifier(docDecl,new IgnoreErrorHandler());
+        new XMLStreamReaderDriver().parse( reader, new XMLFilterImpl() {
+            {
+                setContentHandler(verifier);
+            }
+            public void startPrefixMapping( String prefix, String uri ) throws SAXException {
+                events.append("+"+prefix+"="+uri+";");
+                super.startPrefixMapping(prefix,uri);
+            }
+            public void endPrefixMapping( String prefix ) throws SAXException {
+                events.append("-"+prefix+";");
+                super.endPrefixMapping(prefix);
+            }
+        });
+        // the prefix of the element name is reported, and the prefix
+        // in the attribute value is resolved through the reader.
+        assertEquals( "+r=urn:test;-r;", events.toString() );
+        assertTrue( verifier.isValid() );
+        
+        reader = createReader(doc.replace("q:item","x:item"));
+        reader.nextTag();
+        reader.nextTag();
+        assertFalse( XMLStreamReaderDriver.verify(reader,verifier) );
+    }
+    
+    public void testEntityReference() throws Exception {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES,Boolean.FALSE);
+        String doc = "<!DOCTYPE r:root [<!ENTITY one '1'><!ENTITY x 'x'><!ENTITY item '<r:item>1</r:item>'>]>"+
+            "<r:root xmlns:r='urn:test' ref='r:item'><r:item>&one;</r:item>ITEM</r:root>";
+        
+        Verifier verifier = new Verifier(docDecl,new IgnoreErrorHandler());
+        assertTrue( XMLStreamReaderDriver.verify(
+            factory.createXMLStreamReader(new StringReader(doc.replace("ITEM",""))),verifier) );
+        // the replacement text is validated.
+        assertFalse( XMLStreamReaderDriver.verify(
+            factory.createXMLStreamReader(new StringReader(doc.replace("ITEM","").replace("&one;","&x;"))),verifier) );
+        // entities with markup are rejected.
+        try {
+            XMLStreamReaderDriver.verify(
+                factory.createXMLStreamReader(new StringReader(doc.replace("ITEM","&item;"))),verifier);
+            fail("failed to reject an entity reference");
+        } catch( SAXException e ) {
+            // expected
+        }
+    }
+    
+    public void testQNames() throws Exception {
+        final String[] qNames = new String[5];
+        new XMLStreamReaderDriver().parse( createReader(validDocument), new DefaultHandler() {
+            int i=0;
+            public void startElement( String ns, String local, String qName, Attributes atts ) {
+                qNames[i++] = qName;
+            }
+            public void endElement( String ns, String local, String qName ) {
+                if(local.equals("item"))    qNames[i++] = qName;
+            }
+        });
+        assertEquals( "r:item", qNames[1] );
+        // the same name is not built again.
+        assertSame( qNames[1], qNames[2] );
+        assertSame( qNames[1], qNames[3] );
+        assertSame( qNames[1], qNames[4] );
+    }
+}
@@ -0,0 +1,89 @@
+package util;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.sun.msv.verifier.IVerifier;
+
+/**
+ * collects errors reported by verifiers, and parses test documents
+ * given as strings.
+ */
+public class ErrorCollector extends DefaultHandler {
+
+    /** errors reported so far. */
+    public final List<SAXParseException> errors = new ArrayList<SAXParseException>();
+
+    public void error( SAXParseException e ) {
+        errors.add(e);
+    }
+
+    /** gets the messages of the errors. */
+    public List<String> getMessages() {
+        List<String> r = new ArrayList<String>();
+        for( int i=0; i<errors.size(); i++ )
+            r.add(errors.get(i).getMessage());
+        return r;
+    }
+
+    /** gets the line numbers of the errors. */
+    public List<Integer> getLineNumbers() {
+        List<Integer> r = new ArrayList<Integer>();
+        for( int i=0; i<errors.size(); i++ )
+            r.add(errors.get(i).getLineNumber());
+        return r;
+    }
+
+    /** gets the errors as "line:column:message" strings. */
+    public List<String> getLocatedMessages() {
+        List<String> r = new ArrayList<String>();
+        for( int i=0; i<errors.size(); i++ ) {
+            SAXParseException e = errors.get(i);
+            r.add(e.getLineNumber()+":"+e.getColumnNumber()+":"+e.getMessage());
+        }
+        return r;
+    }
+
+    /**
+     * validates a document with the verifier. Errors found so far are
+     * discarded, and errors of this document are collected by this object.
+     *
+     * @return
+     *      the result of {@link IVerifier#isValid()}.
+     */
+    public boolean validate( IVerifier verifier, String doc ) throws Exception {
+        errors.clear();
+        verifier.setErrorHandler(this);
+        parse(verifier,doc);
+        return verifier.isValid();
+    }
+
+    /** creates a namespace-aware XMLReader. */
+    public static XMLReader createReader() throws Exception {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newSAXParser().getXMLReader();
+    }
+
+    /**
+     * parses a document and reports its events to the handler.
+     * DTD events are also reported if the handler is a {@link DTDHandler}.
+     */
+    public static void parse( ContentHandler handler, String doc ) throws Exception {
+        XMLReader reader = createReader();
+        reader.setContentHandler(handler);
+        if( handler instanceof DTDHandler )
+            reader.setDTDHandler((DTDHandler)handler);
+        reader.parse(new InputSource(new StringReader(doc)));
+    }
+}
@@ -18,7 +18,9 @@ public class Driver
 			
 		if(args.length<2) {
 			System.out.println(
-				"Usage: relames <schema file> <document1> [<document2> ...]");
+				"Usage: relames [-streaming] <schema file> <document1> [<document2> ...]\n"+
+				"  -streaming : check schematron rules per subtree without building\n"+
+				"               DOM for the whole document, if the schema allows");
 			return;
 		}
 
@@ -37,21 +39,30 @@ public class Driver
     }
 
     public static void doMain( String[] args ) throws Exception {
-		System.out.println("parsing    "+args[0]);
+		int idx = 0;
+		boolean streaming = false;
+		if( args[idx].equals("-streaming") ) {
+			streaming = true;
+			idx++;
+		}
+		
+		System.out.println("parsing    "+args[idx]);
 		// parse a grammar
 		SAXParserFactory factory = SAXParserFactory.newInstance();
 		factory.setNamespaceAware(true);
-		Grammar grammar = SRELAXNGReader.parse( args[0], factory, new DebugController(false,false) );
+		Grammar grammar = SRELAXNGReader.parse( args[idx], factory, new DebugController(false,false) );
 		if(grammar==null)	return;
 		
 		// setup verifier
 		RelmesVerifier verifier = new RelmesVerifier(
 			new REDocumentDeclaration(grammar), new ReportErrorHandler() );
+		if( streaming && !verifier.setStreamingMode(grammar) )
+			System.out.println("the schema has rules that need the whole document. streaming mode is not used");
 		XMLReader reader = factory.newSAXParser().getXMLReader();
 		reader.setContentHandler(verifier);
 		
 		try {
-		for( int i=1; i<args.length; i++ ) {
+		for( int i=idx+1; i<args.length; i++ ) {
 			System.out.println("validating "+args[i]);
 			reader.parse(args[i]);
 			if(verifier.isValid())
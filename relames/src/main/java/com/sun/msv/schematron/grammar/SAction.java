@@ -1,17 +1,44 @@
 package com.sun.msv.schematron.grammar;
 
+import javax.xml.transform.TransformerException;
+
+import org.apache.xml.utils.PrefixResolver;
 import org.apache.xpath.XPath;
+import org.apache.xpath.XPathContext;
+import org.w3c.dom.Node;
 
 /**
  * assert or report
+ * 
+ * <p>
+ * This object is immutable and can be evaluated by multiple threads
+ * at once, as long as each thread uses its own {@link XPathContext}.
  */
 public class SAction {
     
 	public final XPath		xpath;
 	public final String		document;
     
+    /**
+     * true if the XPath expression only looks at the context node
+     * and its descendants.
+     */
+    public final boolean    local;
+    
     public SAction( XPath xp, String msg ) {
         this.xpath = xp;
         this.document = msg;
+        this.local = XPathScope.isLocal(xp.getPatternString(),false);
+    }
+    
+    /**
+     * evaluates the XPath expression against the given node.
+     * 
+     * @param resolver
+     *		resolves prefixes of the expression, usually against
+     *		the in-scope namespaces of the node.
+     */
+    public boolean test( XPathContext xctxt, Node node, PrefixResolver resolver ) throws TransformerException {
+        return xpath.execute(xctxt,node,resolver).bool();
     }
 }
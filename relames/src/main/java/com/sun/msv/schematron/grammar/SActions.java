@@ -30,4 +30,16 @@ public class SActions {
             (SAction[]) _asserts.toArray(new SAction[_asserts.size()]),
             (SAction[]) _reports.toArray(new SAction[_reports.size()]) );
     }
+    
+    /**
+     * returns true if all the actions only look at the context node
+     * and its descendants.
+     */
+    public boolean isLocal() {
+        for( int i=0; i<asserts.length; i++ )
+            if( !asserts[i].local )     return false;
+        for( int i=0; i<reports.length; i++ )
+            if( !reports[i].local )     return false;
+        return true;
+    }
 }
@@ -31,4 +31,24 @@ public class SElementExp extends ElementPattern {
         this.rules = (SRule[]) rules.toArray(new SRule[rules.size()]);;
         this.actions = actions;
 	}
+    
+    /**
+     * returns true if this element has any rule or action to be checked.
+     */
+    public boolean hasChecks() {
+        return rules.length!=0
+            || actions.asserts.length!=0 || actions.reports.length!=0;
+    }
+    
+    /**
+     * returns true if the rules and actions of this element can be
+     * evaluated against a DOM that only contains the subtree rooted
+     * at this element.
+     */
+    public boolean isLocal() {
+        if( !actions.isLocal() )    return false;
+        for( int i=0; i<rules.length; i++ )
+            if( !rules[i].isLocal() )   return false;
+        return true;
+    }
 }
@@ -26,4 +26,12 @@ public class SRule extends SActions
 			xcntxt, node, new PrefixResolverDefault(node) )
 			.num() != XPath.MATCH_SCORE_NONE;
 	}
+    
+    /**
+     * returns true if both the match pattern and the actions
+     * only look at the context node and its descendants.
+     */
+    public boolean isLocal() {
+        return XPathScope.isLocal(match.getPatternString(),true) && super.isLocal();
+    }
 }
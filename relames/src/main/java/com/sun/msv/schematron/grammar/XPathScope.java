@@ -0,0 +1,188 @@
+package com.sun.msv.schematron.grammar;
+
+/**
+ * Checks if an XPath expression only looks at the context node
+ * and its descendants.
+ *
+ * <p>
+ * Such an expression evaluates to the same value regardless of
+ * whether the context node is in the whole document or in a
+ * document that only contains the subtree rooted at the element
+ * that introduced the rule.
+ *
+ * <p>
+ * The check is conservative. Anything that might look outside
+ * the subtree (absolute paths, upward or sideway axes, variables,
+ * and functions like id() or document()) makes the expression global.
+ */
+final class XPathScope {
+
+    private XPathScope() {}
+
+    /** axes that leave the subtree of the context node. */
+    private static final String[] globalAxes = {
+        "ancestor", "ancestor-or-self", "parent",
+        "preceding", "preceding-sibling", "following", "following-sibling" };
+
+    /** functions whose value depends on nodes outside the subtree. */
+    private static final String[] globalFunctions = {
+        "id", "key", "document", "lang" };
+
+    /**
+     * @param pattern
+     *      true if the expression is a match pattern. In a pattern,
+     *      a location step after '/' tests the parent of the node,
+     *      so any '/' makes the pattern global.
+     *
+     * @return
+     *      true if the expression stays within the subtree.
+     */
+    static boolean isLocal( String xpath, boolean pattern ) {
+        // true if the last token ends an operand. '/' after an operand
+        // is a step separator, otherwise it starts an absolute path.
+        boolean afterOperand = false;
+
+        int len = xpath.length();
+        int i=0;
+        while( i<len ) {
+            char ch = xpath.charAt(i);
+
+            if( ch=='"' || ch=='\'' ) {
+                int end = xpath.indexOf(ch,i+1);
+                if(end<0)   return false;
+                i = end+1;
+                afterOperand = true;
+                continue;
+            }
+
+            if( Character.isWhitespace(ch) ) {
+                i++;
+                continue;
+            }
+
+            if( ch=='/' ) {
+                if( pattern || !afterOperand )
+                    return false;
+                i++;
+                if( i<len && xpath.charAt(i)=='/' )
+                    i++;    // '//'
+                afterOperand = false;
+                continue;
+            }
+
+            if( ch=='.' ) {
+                if( i+1<len && xpath.charAt(i+1)=='.' )
+                    return false;   // '..'
+                if( i+1<len && Character.isDigit(xpath.charAt(i+1)) ) {
+                    i = skipNumber(xpath,i);
+                } else {
+                    i++;
+                }
+                afterOperand = true;
+                continue;
+            }
+
+            if( Character.isDigit(ch) ) {
+                i = skipNumber(xpath,i);
+                afterOperand = true;
+                continue;
+            }
+
+            if( ch=='*' ) {
+                // multiplication after an operand, otherwise a name test.
+                afterOperand = !afterOperand;
+                i++;
+                continue;
+            }
+
+            if( ch=='$' )
+                return false;   // variables may hold anything
+
+            if( ch==')' || ch==']' ) {
+                afterOperand = true;
+                i++;
+                continue;
+            }
+
+            if( isNameStartChar(ch) ) {
+                int start = i;
+                while( i<len && isNameChar(xpath.charAt(i)) )
+                    i++;
+                String name = xpath.substring(start,i);
+
+                // operator names
+                if( afterOperand && (name.equals("and") || name.equals("or")
+                                  || name.equals("div") || name.equals("mod")) ) {
+                    afterOperand = false;
+                    continue;
+                }
+
+                // qualified names
+                if( i+1<len && xpath.charAt(i)==':' && xpath.charAt(i+1)!=':' ) {
+                    i++;
+                    if( xpath.charAt(i)=='*' ) {
+                        i++;
+                    } else {
+                        while( i<len && isNameChar(xpath.charAt(i)) )
+                            i++;
+                    }
+                    afterOperand = true;
+                    continue;
+                }
+
+                int j=i;
+                while( j<len && Character.isWhitespace(xpath.charAt(j)) )
+                    j++;
+
+                if( j+1<len && xpath.charAt(j)==':' && xpath.charAt(j+1)==':' ) {
+                    // axis
+                    if( contains(globalAxes,name) )
+                        return false;
+                    i = j+2;
+                    afterOperand = false;
+                    continue;
+                }
+
+                if( j<len && xpath.charAt(j)=='(' ) {
+                    // function call or node type test
+                    if( contains(globalFunctions,name) )
+                        return false;
+                    i = j+1;
+                    afterOperand = false;
+                    continue;
+                }
+
+                afterOperand = true;
+                continue;
+            }
+
+            // '@', '(', '[', ',', '|', '+', '-', '=', '!', '<', '>'
+            afterOperand = false;
+            i++;
+        }
+
+        return true;
+    }
+
+    private static int skipNumber( String xpath, int i ) {
+        while( i<xpath.length()
+            && (Character.isDigit(xpath.charAt(i)) || xpath.charAt(i)=='.') )
+            i++;
+        return i;
+    }
+
+    private static boolean isNameStartChar( char ch ) {
+        return Character.isLetter(ch) || ch=='_';
+    }
+
+    private static boolean isNameChar( char ch ) {
+        return Character.isLetterOrDigit(ch) || ch=='_' || ch=='-' || ch=='.';
+    }
+
+    private static boolean contains( String[] names, String name ) {
+        for( int i=0; i<names.length; i++ )
+            if( names[i].equals(name) )
+                return true;
+        return false;
+    }
+}
@@ -1,5 +1,8 @@
 package com.sun.msv.schematron.verifier;
 
+import com.sun.msv.grammar.ElementExp;
+import com.sun.msv.grammar.Grammar;
+import com.sun.msv.grammar.util.ExpressionWalker;
 import com.sun.msv.schematron.grammar.SAction;
 import com.sun.msv.schematron.grammar.SActions;
 import com.sun.msv.schematron.grammar.SElementExp;
@@ -27,9 +30,22 @@ import org.xml.sax.helpers.LocatorImpl;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 
+/**
+ * verifies a document against RELAX NG and the schematron rules embedded in it.
+ * 
+ * <p>
+ * A grammar can be shared by verifiers that run on different threads at
+ * once. The compiled XPath expressions of the grammar are only read during
+ * the evaluation, and each verifier evaluates them with its own
+ * {@link XPathContext} against its own DOM, in the same way as XSLT
+ * transformers share compiled stylesheets. A verifier itself can only
+ * check one document at a time.
+ */
 public class RelmesVerifier implements IVerifier {
 	
 	public RelmesVerifier( IVerifier core ) throws ParserConfigurationException {
@@ -51,6 +67,57 @@ public class RelmesVerifier implements IVerifier {
 	 * this flag is set to true when all schematron validations are successful.
 	 */
 	private boolean schematronValid;
+	
+	/**
+	 * true if the grammar allows schematron rules to be checked
+	 * per subtree. Set by the setStreamingMode method.
+	 */
+	private boolean streamingMode;
+	
+	/**
+	 * turns on/off the streaming mode.
+	 * 
+	 * <p>
+	 * In the streaming mode, DOM is built only for the subtrees of elements
+	 * that have schematron rules, and each subtree is checked and discarded
+	 * as soon as its end tag is found. Memory usage is then bounded by the
+	 * largest of such subtrees instead of the whole document.
+	 * 
+	 * <p>
+	 * This is possible only when every XPath expression of the grammar stays
+	 * within the subtree of the element that introduced it. If the grammar has
+	 * rules that need global context (such as absolute paths, ancestor or
+	 * sibling axes, or the id function), those rules may look at any part of
+	 * the document, so the whole document is built as DOM as usual.
+	 * 
+	 * @param grammar
+	 *		the grammar used by this verifier, or null to turn off the streaming mode.
+	 * @return
+	 *		true if the streaming mode is in effect.
+	 */
+	public boolean setStreamingMode( Grammar grammar ) {
+		streamingMode = grammar!=null && isLocal(grammar);
+		return streamingMode;
+	}
+	
+	/**
+	 * checks if all the schematron rules of the grammar
+	 * can be checked per subtree.
+	 */
+	private static boolean isLocal( Grammar grammar ) {
+		final Set visited = new HashSet();
+		final boolean[] local = new boolean[]{true};
+		
+		grammar.getTopLevel().visit( new ExpressionWalker() {
+			public void onElement( ElementExp exp ) {
+				if( !visited.add(exp) )	return;
+				if( exp instanceof SElementExp && !((SElementExp)exp).isLocal() )
+					local[0] = false;
+				super.onElement(exp);
+			}
+		});
+		return local[0];
+	}
 
 	/** performs schematron validation. */
 	class SchematronVerifier extends DOMBuilder {
@@ -65,11 +132,36 @@ public class RelmesVerifier implements IVerifier {
 
 		SchematronVerifier() throws ParserConfigurationException {}
 		
+		/**
+		 * true if the current document is checked per subtree.
+		 * See {@link RelmesVerifier#setStreamingMode(Grammar)}.
+		 */
+		private boolean subtreeMode;
+		
+		/**
+		 * depth of the current element in the subtree being built
+		 * in the subtree mode. 0 if we are outside of such subtrees.
+		 */
+		private int subtreeDepth;
+		
 		public void startElement( String ns, String local, String qname, Attributes atts ) throws SAXException {
+			Object o = getCurrentElementType();
+			
+			if( subtreeMode ) {
+				if( subtreeDepth==0 ) {
+					// no rule applies outside subtrees of SElementExp.
+					// every element of the grammar is an SElementExp, so only
+					// those with rules or actions start a subtree.
+					if(!(o instanceof SElementExp) || !((SElementExp)o).hasChecks())	return;
+					// start a new subtree.
+					parent = dom = builder.newDocument();
+				}
+				subtreeDepth++;
+			}
+			
 			super.startElement(ns,local,qname,atts);
 			locationMap.put( super.parent, new Loc(getLocator()) );
 			
-			Object o = getCurrentElementType();
 			if( o instanceof SElementExp ) {
 //				System.out.println("Schematron node found");
 				// memorize this node so that we can check it later.
@@ -112,27 +204,67 @@ public class RelmesVerifier implements IVerifier {
 		private final Map checks = new HashMap();
 		
 		public void startDocument() throws SAXException {
-			super.startDocument();
+			subtreeMode = streamingMode;
+			subtreeDepth = 0;
+			if( subtreeMode )
+				parent = dom = null;
+			else
+				super.startDocument();
 			checks.clear();
 			locationMap.clear();
+			schematronValid = true;
+		}
+		
+		public void endElement( String ns, String local, String qname ) throws SAXException {
+			if( !subtreeMode ) {
+				super.endElement(ns,local,qname);
+				return;
+			}
+			
+			if( subtreeDepth==0 )	return;
+			super.endElement(ns,local,qname);
+			
+			if( --subtreeDepth==0 ) {
+				// the subtree is complete. check it and then discard it.
+				check();
+				checks.clear();
+				locationMap.clear();
+				parent = dom = null;
+			}
+		}
+		
+		public void characters( char[] buf, int start, int len ) throws SAXException {
+			if( subtreeMode && subtreeDepth==0 )	return;
+			super.characters(buf,start,len);
 		}
 		
 		public void endDocument() throws SAXException {
 			super.endDocument();
-			schematronValid = true;
-
+			if( !subtreeMode )
+				check();
+		}
+		
+		/** checks the schematron rules against the current DOM. */
+		private void check() throws SAXException {
 			try {
 				testNode(super.dom);
 			} catch( TransformerException e ) {
 				getErrorHandler().error( new ValidityViolation(
 					null, "XPath error:"+e.getMessage(), null ) );
 				schematronValid = false;
+			} finally {
+				// release the DTM built for this DOM. Otherwise DTMs of
+				// all the documents checked so far are kept and searched.
+				xctxt.reset();
 			}
 		}
 		
 		/** SRule objects that are currently in effect. */
 		private final Stack effectiveRules = new Stack();
 		
+		/**
+		 * tests the rules against the node and its descendants.
+		 */
 		private void testNode( Node node ) throws SAXException, TransformerException {
 			
 			// if this node has the corresponding rule to be checked,
@@ -188,31 +320,19 @@ public class RelmesVerifier implements IVerifier {
             
             testActions(rule,node);
         }
-                    
-                    
-		private void testActions( SActions actions, Node node )	
+		
+		private void testActions( SActions actions, Node node )
                 throws SAXException, TransformerException {
-//			System.out.println("rule tested");
 			
 			PrefixResolverDefault resolver = new PrefixResolverDefault(node);
-
-            synchronized(actions) {
-				// I'm not sure whether XPath object is thread-safe.
-				// so for precaution, synchronize it.
-                
-                // I'm not sure if XPathContextImpl is reusable,
-                // so again just for precaution, we will create new ones each time
-				
-				for( int i=0; i<actions.asserts.length; i++ )
-                    if (!actions.asserts[i].xpath.execute(
-                        xctxt, node, resolver).bool())
-                        reportError(node, actions.asserts[i]);
-							
-				for( int i=0; i<actions.reports.length; i++ )
-					if(actions.reports[i].xpath.execute(
-						xctxt, node, resolver ).bool() )
-						reportError( node, actions.reports[i] );
-			}					
+			
+			for( int i=0; i<actions.asserts.length; i++ )
+				if( !actions.asserts[i].test(xctxt,node,resolver) )
+					reportError( node, actions.asserts[i] );
+			
+			for( int i=0; i<actions.reports.length; i++ )
+				if( actions.reports[i].test(xctxt,node,resolver) )
+					reportError( node, actions.reports[i] );
 		}
 
 		private void reportError( Node node, SAction action ) throws SAXException {
@@ -248,6 +368,9 @@ public class RelmesVerifier implements IVerifier {
 	public void setPanicMode(boolean v) {
 		core.setPanicMode(v);
 	}
+	public void setFastFail(int maxErrors) {
+		core.setFastFail(maxErrors);
+	}
 	public boolean isValid() {
 		return schematronValid && core.isValid();
 	}
@@ -0,0 +1,79 @@
+package com.sun.msv.schematron.grammar;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests {@link XPathScope}.
+ */
+public class XPathScopeTest extends TestCase
+{
+    public XPathScopeTest( String name ) { super(name); }
+
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        return new TestSuite(XPathScopeTest.class);
+    }
+
+    private static final String[] localExps = {
+        ".",
+        "@qty>0",
+        "count(line)>1",
+        "sum(line/@qty) > 20",
+        "line//note",
+        "descendant::line[@qty * 2 > 10]",
+        "self::order and child::line",
+        "string-length(@sku)=8",
+        "a:line or a:*",
+        "'//' = string(.)",
+        "\"..\" != @id",
+        "10 div 2.5 mod 3",
+        "count(*) * 2",
+        "normalize-space(text())",
+    };
+
+    private static final String[] globalExps = {
+        "/orders",
+        "//line",
+        "count(//line)>1",
+        "..",
+        "../@id",
+        "line/../@id",
+        "parent::orders",
+        "ancestor::orders",
+        "ancestor-or-self::order",
+        "preceding-sibling::order",
+        "following-sibling :: order",
+        "preceding::line",
+        "following::line",
+        "$limit > @qty",
+        "id(@ref)",
+        "key('k',@ref)",
+        "document('other.xml')",
+        "lang('en')",
+        "@qty = 'unterminated",
+        "count(line) * //line",
+    };
+
+    public void testExpressions() {
+        for( int i=0; i<localExps.length; i++ )
+            assertTrue( localExps[i], XPathScope.isLocal(localExps[i],false) );
+        for( int i=0; i<globalExps.length; i++ )
+            assertFalse( globalExps[i], XPathScope.isLocal(globalExps[i],false) );
+    }
+
+    public void testPatterns() {
+        assertTrue( XPathScope.isLocal("line",true) );
+        assertTrue( XPathScope.isLocal("line[@qty>0]",true) );
+        assertTrue( XPathScope.isLocal("line|note",true) );
+        // a step after '/' tests the parent of the node.
+        assertFalse( XPathScope.isLocal("order/line",true) );
+        assertFalse( XPathScope.isLocal("//line",true) );
+        assertFalse( XPathScope.isLocal("/orders",true) );
+        assertFalse( XPathScope.isLocal("line[../@id]",true) );
+    }
+}
@@ -0,0 +1,115 @@
+package com.sun.msv.schematron.verifier;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import util.ErrorCollector;
+
+import org.xml.sax.InputSource;
+
+import com.sun.msv.grammar.Grammar;
+import com.sun.msv.reader.util.IgnoreController;
+import com.sun.msv.schematron.reader.SRELAXNGReader;
+import com.sun.msv.verifier.regexp.REDocumentDeclaration;
+
+/**
+ * Tests that {@link RelmesVerifier}s that share a grammar
+ * can check documents on different threads at once.
+ */
+public class ParallelCheckTest extends TestCase
+{
+    public ParallelCheckTest( String name ) { super(name); }
+
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        return new TestSuite(ParallelCheckTest.class);
+    }
+
+    private static final String schema =
+        "<element name='orders' xmlns='http://relaxng.org/ns/structure/1.0' "+
+                "xmlns:s='http://www.ascc.net/xml/schematron'>"+
+            "<s:rule context='order'>"+
+                "<s:assert test='count(line)&gt;1'>an order needs two lines</s:assert>"+
+                "<s:report test='sum(line/@qty)&gt;20'>too many items</s:report>"+
+            "</s:rule>"+
+            "<s:rule context='line'>"+
+                "<s:assert test='@qty&gt;0'>quantity must be positive</s:assert>"+
+                "<s:assert test='string-length(@sku)=8'>bad SKU</s:assert>"+
+            "</s:rule>"+
+            "<zeroOrMore>"+
+                "<element name='order'>"+
+                    "<attribute name='id'/>"+
+                    "<oneOrMore>"+
+                        "<element name='line'><attribute name='sku'/><attribute name='qty'/></element>"+
+                    "</oneOrMore>"+
+                "</element>"+
+            "</zeroOrMore>"+
+        "</element>";
+
+    /** creates a document whose errors depend on the seed. */
+    private static String createDocument( int seed ) {
+        StringBuffer buf = new StringBuffer("<orders>\n");
+        for( int i=seed; i<seed+100; i++ ) {
+            buf.append("<order id='o"+i+"'>\n");
+            for( int j=0; j<=i%4; j++ )
+                buf.append("<line sku='"+(i%11==0?"SKU1":"SKU10000")+"' qty='"+((i+j)%9)+"'/>\n");
+            buf.append("</order>\n");
+        }
+        buf.append("</orders>");
+        return buf.toString();
+    }
+
+    private static List<String> validate( Grammar grammar, String doc ) throws Exception {
+        RelmesVerifier verifier = new RelmesVerifier(new REDocumentDeclaration(grammar),null);
+        ErrorCollector errors = new ErrorCollector();
+        assertEquals( errors.validate(verifier,doc), errors.errors.isEmpty() );
+        return errors.getLocatedMessages();
+    }
+
+    public void testSameReports() throws Exception {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        final Grammar grammar = SRELAXNGReader.parse(
+            new InputSource(new StringReader(schema)), factory, new IgnoreController() );
+        
+        final String[] docs = new String[6];
+        List<List<String>> serial = new ArrayList<List<String>>();
+        for( int i=0; i<docs.length; i++ ) {
+            docs[i] = createDocument(i);
+            serial.add(validate(grammar,docs[i]));
+            assertTrue( serial.get(i).size()>30 );
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> results = new ArrayList<Future<List<String>>>();
+            for( int n=0; n<2; n++ ) {
+                for( int i=0; i<docs.length; i++ ) {
+                    final String doc = docs[i];
+                    results.add( executor.submit( new Callable<List<String>>() {
+                        public List<String> call() throws Exception {
+                            return validate(grammar,doc);
+                        }
+                    }));
+                }
+            }
+            for( int i=0; i<results.size(); i++ )
+                assertEquals( serial.get(i%docs.length), results.get(i).get() );
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
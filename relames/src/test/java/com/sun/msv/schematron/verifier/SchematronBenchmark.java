@@ -0,0 +1,116 @@
+package com.sun.msv.schematron.verifier;
+
+import java.io.StringReader;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import com.sun.msv.driver.textui.DebugController;
+import com.sun.msv.grammar.Grammar;
+import com.sun.msv.schematron.reader.SRELAXNGReader;
+import com.sun.msv.verifier.regexp.REDocumentDeclaration;
+import com.sun.msv.verifier.util.ErrorHandlerImpl;
+
+/**
+ * measures the time spent by {@link RelmesVerifier} to check schematron rules.
+ *
+ * <p>
+ * One thread that validates documents is compared with multiple threads
+ * that validate documents at the same time with the same grammar.
+ *
+ * <p>
+ * Usage: SchematronBenchmark [number of orders] [number of threads]
+ */
+public class SchematronBenchmark
+{
+    private static final String schema =
+        "<element name='orders' xmlns='http://relaxng.org/ns/structure/1.0' "+
+                "xmlns:s='http://www.ascc.net/xml/schematron'>"+
+            "<s:rule context='order'>"+
+                "<s:assert test='count(line)&gt;0'>an order needs a line</s:assert>"+
+                "<s:report test='sum(line/@qty)&gt;1000'>too many items</s:report>"+
+            "</s:rule>"+
+            "<s:rule context='line'>"+
+                "<s:assert test='@qty&gt;0'>quantity must be positive</s:assert>"+
+                "<s:assert test='string-length(@sku)=8'>bad SKU</s:assert>"+
+            "</s:rule>"+
+            "<zeroOrMore>"+
+                "<element name='order'>"+
+                    "<attribute name='id'/>"+
+                    "<oneOrMore>"+
+                        "<element name='line'><attribute name='sku'/><attribute name='qty'/></element>"+
+                    "</oneOrMore>"+
+                "</element>"+
+            "</zeroOrMore>"+
+        "</element>";
+
+    private static final int REPEAT = 10;
+
+    public static void main( String[] args ) throws Exception {
+        int orders = args.length>0 ? Integer.parseInt(args[0]) : 200;
+        int threads = args.length>1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        final SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        final Grammar grammar = SRELAXNGReader.parse(
+            new InputSource(new StringReader(schema)), factory, new DebugController(false,false) );
+
+        StringBuffer buf = new StringBuffer("<orders>");
+        for( int i=0; i<orders; i++ ) {
+            buf.append("<order id='o"+i+"'>");
+            for( int j=0; j<5; j++ )
+                buf.append("<line sku='SKU"+(10000+j)+"' qty='"+(i%7+j+1)+"'/>");
+            buf.append("</order>");
+        }
+        buf.append("</orders>");
+        final String document = buf.toString();
+
+        for( int round=0; round<2; round++ ) {  // the first round is a warm-up
+            System.out.println("round "+round);
+
+            long t = System.currentTimeMillis();
+            validate(factory,grammar,document,REPEAT);
+            System.out.println("  1 thread   : "+(System.currentTimeMillis()-t)+" ms ("
+                +REPEAT+" documents)");
+
+            t = System.currentTimeMillis();
+            Thread[] workers = new Thread[threads];
+            final Exception[] error = new Exception[1];
+            for( int i=0; i<threads; i++ ) {
+                workers[i] = new Thread() {
+                    public void run() {
+                        try {
+                            validate(factory,grammar,document,REPEAT);
+                        } catch( Exception e ) {
+                            error[0] = e;
+                        }
+                    }
+                };
+                workers[i].start();
+            }
+            for( int i=0; i<threads; i++ )
+                workers[i].join();
+            if( error[0]!=null )    throw error[0];
+            System.out.println("  "+threads+" threads  : "+(System.currentTimeMillis()-t)+" ms ("
+                +REPEAT*threads+" documents)");
+        }
+    }
+
+    private static void validate( SAXParserFactory factory, Grammar grammar,
+        String document, int repeat ) throws Exception {
+
+        RelmesVerifier verifier = new RelmesVerifier(
+            new REDocumentDeclaration(grammar), ErrorHandlerImpl.theInstance );
+
+        XMLReader reader = factory.newSAXParser().getXMLReader();
+        reader.setContentHandler(verifier);
+
+        for( int i=0; i<repeat; i++ ) {
+            reader.parse(new InputSource(new StringReader(document)));
+            if( !verifier.isValid() )
+                throw new IllegalStateException("the document is invalid");
+        }
+    }
+}
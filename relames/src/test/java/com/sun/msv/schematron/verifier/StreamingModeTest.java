@@ -0,0 +1,151 @@
+package com.sun.msv.schematron.verifier;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import util.ErrorCollector;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import com.sun.msv.grammar.Grammar;
+import com.sun.msv.reader.util.IgnoreController;
+import com.sun.msv.schematron.reader.SRELAXNGReader;
+import com.sun.msv.verifier.regexp.REDocumentDeclaration;
+
+/**
+ * Tests the streaming mode of {@link RelmesVerifier}.
+ */
+public class StreamingModeTest extends TestCase
+{
+    public StreamingModeTest( String name ) { super(name); }
+
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        return new TestSuite(StreamingModeTest.class);
+    }
+
+    /** creates a schema whose order element has the given assertion. */
+    private static String createSchema( String orderTest ) {
+        return
+            "<element name='orders' xmlns='http://relaxng.org/ns/structure/1.0' "+
+                    "xmlns:s='http://www.ascc.net/xml/schematron'>"+
+                "<zeroOrMore>"+
+                    "<element name='order'>"+
+                        "<s:assert test='"+orderTest+"'>bad order</s:assert>"+
+                        "<s:rule context='line'>"+
+                            "<s:assert test='@qty&gt;0'>quantity must be positive</s:assert>"+
+                        "</s:rule>"+
+                        "<attribute name='id'/>"+
+                        "<oneOrMore>"+
+                            "<element name='line'><attribute name='qty'/></element>"+
+                        "</oneOrMore>"+
+                    "</element>"+
+                "</zeroOrMore>"+
+            "</element>";
+    }
+
+    private static final String document =
+        "<orders>\n"+
+            "<order id='1'><line qty='0'/></order>\n"+
+            "<order id='2'><line qty='1'/><line qty='2'/></order>\n"+
+            "<order id='3'><line qty='3'/></order>\n"+
+        "</orders>";
+
+    /** number of elements in the document. */
+    private static final int elements = 8;
+
+    /** records errors with the number of elements seen so far. */
+    private static class Errors extends ErrorCollector {
+        final List<String> located = new ArrayList<String>();
+        int elements;
+        public void error( SAXParseException e ) {
+            super.error(e);
+            located.add(elements+":"+e.getLineNumber()+":"+e.getMessage());
+        }
+    }
+
+    private static Grammar parse( String schema ) throws Exception {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return SRELAXNGReader.parse(
+            new InputSource(new StringReader(schema)), factory, new IgnoreController() );
+    }
+
+    private static List<String> validate( Grammar grammar, boolean streaming, boolean expectStreaming ) throws Exception {
+        RelmesVerifier verifier = new RelmesVerifier(new REDocumentDeclaration(grammar),null);
+        assertEquals( expectStreaming, verifier.setStreamingMode(streaming?grammar:null) );
+        final Errors errors = new Errors();
+        verifier.setErrorHandler(errors);
+
+        // counts elements before they reach the verifier.
+        XMLFilterImpl counter = new XMLFilterImpl(ErrorCollector.createReader()) {
+            public void startElement( String ns, String local, String qname, Attributes atts ) throws SAXException {
+                errors.elements++;
+                super.startElement(ns,local,qname,atts);
+            }
+        };
+        counter.setContentHandler(verifier);
+        counter.parse(new InputSource(new StringReader(document)));
+        assertEquals( errors.errors.isEmpty(), verifier.isValid() );
+        return errors.located;
+    }
+
+    public void testLocalRules() throws Exception {
+        Grammar grammar = parse(createSchema("count(line)&gt;1"));
+
+        List<String> whole = validate(grammar,false,false);
+        List<String> streamed = validate(grammar,true,true);
+
+        // the whole document is checked at the end.
+        assertEquals( 3, whole.size() );
+        for( int i=0; i<whole.size(); i++ )
+            assertTrue( whole.get(i), whole.get(i).startsWith(elements+":") );
+
+        // each order is checked when its end tag is found,
+        // before the next order starts.
+        assertEquals( 3, streamed.size() );
+        assertTrue( streamed.contains("3:2:bad order") );
+        assertTrue( streamed.contains("3:2:quantity must be positive") );
+        assertTrue( streamed.contains("8:4:bad order") );
+        for( int i=0; i<streamed.size(); i++ ) {
+            String s = streamed.get(i);
+            assertTrue( s, whole.contains(elements+s.substring(1)) );
+        }
+    }
+
+    public void testGlobalRule() throws Exception {
+        // '..' looks at the orders element, which is outside of the subtree.
+        Grammar grammar = parse(createSchema("count(../order)&lt;3"));
+
+        List<String> errors = validate(grammar,true,false);
+        assertEquals( validate(grammar,false,false), errors );
+
+        // every order is reported once the whole document is read,
+        // and the rule sees all the three orders.
+        assertEquals( 4, errors.size() );
+        for( int i=0; i<errors.size(); i++ )
+            assertTrue( errors.get(i), errors.get(i).startsWith(elements+":") );
+    }
+
+    public void testAbsolutePath() throws Exception {
+        Grammar grammar = parse(createSchema("count(//line)&lt;4"));
+
+        List<String> errors = validate(grammar,true,false);
+        assertEquals( 4, errors.size() );
+        for( int i=0; i<errors.size(); i++ )
+            assertTrue( errors.get(i), errors.get(i).startsWith(elements+":") );
+    }
+}
@@ -32,7 +32,7 @@ public class AnyURIType extends BuiltinAtomicType implements Discrete {
     }
 
     protected boolean checkFormat(String content, ValidationContext context) {
-        return regexp.matches(escape(content));
+        return isURIReference(content);
     }
 
     private static void appendHex(StringBuffer buf, int hex) {
@@ -125,8 +125,261 @@ public class AnyURIType extends BuiltinAtomicType implements Discrete {
         return new String(escaped);
     }
 
-    final static RegExp regexp = createRegExp();
+    /*
+     * character classes used by the isURIReference method.
+     * Characters that escape() converts to %HH are members of
+     * all the classes that accept escaped characters.
+     */
+    private static final int SEGMENT = 1;   // rel_segment
+    private static final int PATH = 2;      // pchar, ';' and '/'
+    private static final int OPAQUE = 4;    // uric_no_slash
+    private static final int USERINFO = 8;  // userinfo
+    private static final int SCHEME = 16;   // scheme except the first character
+    private static final int ESCAPED = SEGMENT | PATH | OPAQUE | USERINFO;
+
+    /** a table of character classes. this table is of length 128. */
+    private static final byte[] classes = createClassMap();
+
+    private static byte[] createClassMap() {
+        byte r[] = new byte[128];
+
+        for (int i = 0; i < 128; i++)
+            if (!isUric[i] || i == '%')
+                r[i] = ESCAPED;
+
+        // unreserved characters are allowed wherever escaped characters are.
+        for (int i = 'a'; i <= 'z'; i++)
+            r[i] = ESCAPED | SCHEME;
+        for (int i = 'A'; i <= 'Z'; i++)
+            r[i] = ESCAPED | SCHEME;
+        for (int i = '0'; i <= '9'; i++)
+            r[i] = ESCAPED | SCHEME;
+        add(r, "-_.!~*'()", ESCAPED);
+        add(r, "+-.", SCHEME);
+
+        add(r, ";@&=+$,", SEGMENT);
+        add(r, ":@&=+$,;/", PATH);
+        add(r, ";?:@&=+$,", OPAQUE);
+        add(r, ";:&=+$,", USERINFO);
+        return r;
+    }
+
+    private static void add(byte[] r, String chars, int mask) {
+        for (int i = 0; i < chars.length(); i++)
+            r[chars.charAt(i)] |= mask;
+    }
+
+    private static boolean is(char ch, int mask) {
+        if (ch >= 128)
+            return (ESCAPED & mask) != 0;
+        return (classes[ch] & mask) != 0;
+    }
+
+    private static boolean isHex(char ch) {
+        return ('0' <= ch && ch <= '9') || ('a' <= ch && ch <= 'f') || ('A' <= ch && ch <= 'F');
+    }
+
+    private static boolean isDigit(char ch) {
+        return '0' <= ch && ch <= '9';
+    }
+
+    private static boolean isAlpha(char ch) {
+        return ('a' <= ch && ch <= 'z') || ('A' <= ch && ch <= 'Z');
+    }
+
+    /**
+     * checks if the string is a valid URI reference.
+     * 
+     * <p>
+     * This method accepts the same language as the regular expression
+     * created by {@link #createRegExp()} does when it is applied to
+     * the result of {@link #escape(String)}, but it scans the string
+     * only once and doesn't allocate any object.
+     */
+    static boolean isURIReference(String content) {
+        final int len = content.length();
+
+        // find the fragment identifier, and check %HH on the way.
+        int hash = len;
+        for (int i = 0; i < len; i++) {
+            char ch = content.charAt(i);
+            if (ch == '#') {
+                if (hash != len)
+                    return false; // fragment cannot contain '#'
+                hash = i;
+            } else if (ch == '%') {
+                if (i + 2 >= len || !isHex(content.charAt(i + 1)) || !isHex(content.charAt(i + 2)))
+                    return false;
+                i += 2;
+            }
+        }
+        // the fragment may contain any other character.
+
+        if (hash == 0)
+            return true;
+
+        if (isAlpha(content.charAt(0))) {
+            int i = 1;
+            while (i < hash && is(content.charAt(i), SCHEME))
+                i++;
+            if (i < hash && content.charAt(i) == ':') {
+                // absoluteURI
+                i++;
+                if (i == hash)
+                    return false;
+                if (content.charAt(i) == '/')
+                    return isHierPart(content, i, hash, true);
+                // opaque_part. characters after the first one can be anything.
+                return is(content.charAt(i), OPAQUE);
+            }
+        }
+
+        // relativeURI
+        if (content.charAt(0) == '/')
+            return isHierPart(content, 0, hash, true);
 
+        int i = 0;
+        while (i < hash && is(content.charAt(i), SEGMENT))
+            i++;
+        if (i == 0)
+            return false;
+        if (i == hash || content.charAt(i) == '?')
+            return true;
+        if (content.charAt(i) == '/')
+            return isHierPart(content, i, hash, false);
+        return false;
+    }
+
+    /**
+     * checks if content[start,end) is net_path or abs_path,
+     * optionally followed by a query.
+     * 
+     * @param start
+     *      the index of the first '/'.
+     * @param allowNetPath
+     *      false if only abs_path is allowed.
+     */
+    private static boolean isHierPart(String content, int start, int end, boolean allowNetPath) {
+        int query = content.indexOf('?', start);
+        if (query < 0 || query > end)
+            query = end;
+        // the query may contain any character.
+
+        int i = start + 1;
+        while (i < query && is(content.charAt(i), PATH))
+            i++;
+        if (i == query)
+            return true;
+
+        // abs_path also accepts net_path unless it has an IPv6 reference.
+        if (!allowNetPath)
+            return false;
+        return isNetPathWithIPv6(content, start, query);
+    }
+
+    /**
+     * checks if content[start,end) is a net_path with an IPv6 reference.
+     */
+    private static boolean isNetPathWithIPv6(String content, int start, int end) {
+        int i = start + 1;
+        if (i == end || content.charAt(i) != '/')
+            return false;
+        i++;
+
+        int j = i;
+        while (j < end && is(content.charAt(j), USERINFO))
+            j++;
+        if (j < end && content.charAt(j) == '@')
+            i = j + 1;
+
+        if (i == end || content.charAt(i) != '[')
+            return false;
+        int close = content.indexOf(']', i);
+        if (close < 0 || close >= end || !isIPv6(content, i + 1, close))
+            return false;
+
+        i = close + 1;
+        if (i < end && content.charAt(i) == ':') {
+            i++;
+            while (i < end && isDigit(content.charAt(i)))
+                i++;
+        }
+
+        if (i == end)
+            return true;
+        if (content.charAt(i) != '/')
+            return false;
+        for (i++; i < end; i++)
+            if (!is(content.charAt(i), PATH))
+                return false;
+        return true;
+    }
+
+    private static boolean isIPv6(String content, int start, int end) {
+        int last = end - 1;
+        while (last >= start && content.charAt(last) != ':')
+            last--;
+
+        if (last >= start && content.indexOf('.', last) >= 0 && content.indexOf('.', last) < end) {
+            // ends with an IPv4 address
+            if (!isIPv4(content, last + 1, end))
+                return false;
+            if (last == start + 1 && content.charAt(start) == ':')
+                return true; // "::" IPv4address
+            return isHexPart(content, start, last);
+        }
+        return isHexPart(content, start, end);
+    }
+
+    private static boolean isHexPart(String content, int start, int end) {
+        int dc = content.indexOf("::", start);
+        if (dc < 0 || dc + 2 > end)
+            return isHexSeq(content, start, end);
+        return (dc == start || isHexSeq(content, start, dc))
+            && (dc + 2 == end || isHexSeq(content, dc + 2, end));
+    }
+
+    private static boolean isHexSeq(String content, int start, int end) {
+        int n = 0;
+        for (int i = start; i < end; i++) {
+            char ch = content.charAt(i);
+            if (ch == ':') {
+                if (n == 0)
+                    return false;
+                n = 0;
+            } else if (n < 4 && isHex(ch))
+                n++;
+            else
+                return false;
+        }
+        return n > 0;
+    }
+
+    private static boolean isIPv4(String content, int start, int end) {
+        int n = 0;
+        int dots = 0;
+        for (int i = start; i < end; i++) {
+            char ch = content.charAt(i);
+            if (ch == '.') {
+                if (n == 0 || ++dots > 3)
+                    return false;
+                n = 0;
+            } else if (n < 3 && isDigit(ch))
+                n++;
+            else
+                return false;
+        }
+        return dots == 3 && n > 0;
+    }
+
+    /**
+     * creates the regular expression of RFC 2396 (with the IPv6 extension
+     * of RFC 2732), which is applied to escaped strings.
+     * 
+     * <p>
+     * This method is no longer used for validation. It is kept as the
+     * reference definition of {@link #isURIReference(String)}.
+     */
     static RegExp createRegExp() {
         String alpha = "[a-zA-Z]";
         String alphanum = "[0-9a-zA-Z]";
@@ -181,7 +434,7 @@ public class AnyURIType extends BuiltinAtomicType implements Discrete {
 
     public Object _createValue(final String content, ValidationContext context) {
         // we can't use java.net.URL (for example, it cannot handle IPv6.)
-        if (!regexp.matches(escape(content)))
+        if (!isURIReference(content))
             return null;
 
         // the value space and the lexical space is the same.
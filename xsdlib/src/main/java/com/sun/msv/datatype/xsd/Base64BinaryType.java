@@ -94,6 +94,44 @@ public class Base64BinaryType extends BinaryBaseType {
         return calcLength( lexicalValue.toCharArray() ) != -1;
     }
 
+    /**
+     * validates base64 characters as they arrive.
+     * 
+     * <p>
+     * This validator accepts the same strings as {@link #calcLength(char[])} does.
+     * Since characters other than base64 ones are ignored, the white space
+     * processing doesn't matter.
+     */
+    IncrementalValidator createIncrementalValidator( WhiteSpaceProcessor whiteSpace ) {
+        return new IncrementalValidator.Lexical(this) {
+            private int base64count, paddingCount;
+            private boolean isBad;
+            
+            public void addCharacters( char[] buf, int start, int len ) {
+                for( int i=start; i<start+len; i++ ) {
+                    final char ch = buf[i];
+                    if( ch=='=' )
+                        paddingCount++;
+                    else
+                    if( ch>=256 )
+                        isBad = true;   // incorrect character
+                    else
+                    if( decodeMap[ch]!=-1 ) {
+                        // once we saw '=', nothing but '=' can be appeared.
+                        if( paddingCount!=0 )   isBad = true;
+                        else                    base64count++;
+                    }
+                }
+            }
+            
+            int length() {
+                if( isBad || paddingCount>2 || (base64count+paddingCount)%4!=0 )
+                    return -1;
+                return ((base64count+paddingCount)/4)*3-paddingCount;
+            }
+        };
+    }
+
     /**
      * computes the length of binary data.
      * 
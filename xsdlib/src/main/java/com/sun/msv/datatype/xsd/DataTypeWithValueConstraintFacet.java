@@ -26,9 +26,9 @@ abstract class DataTypeWithValueConstraintFacet extends DataTypeWithFacet {
         super( nsUri, typeName, baseType, facetName, _isFixed );
     }
     
-    final protected boolean needValueCheck() { return true; }
+    protected boolean needValueCheck() { return true; }
     
-    protected final boolean checkFormat( String literal, ValidationContext context ) {
+    protected boolean checkFormat( String literal, ValidationContext context ) {
         return _createValue(literal,context)!=null;
     }
     
@@ -12,8 +12,10 @@ package com.sun.msv.datatype.xsd;
 import org.relaxng.datatype.DatatypeException;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Datatype object factory.
@@ -122,7 +124,7 @@ public class DatatypeFactory {
     }
     
     
-    private static void add( Map m, XSDatatypeImpl type ) {
+    private static void add( Map<String,XSDatatypeImpl> m, XSDatatypeImpl type ) {
         final String name = type.getName();
         if( name==null )
             throw new IllegalArgumentException("anonymous type");
@@ -141,141 +143,79 @@ public class DatatypeFactory {
      * obtain a built-in DataType object by its name.
      * For example, you can pass somethings like "token", "gYear", etc.
      * 
+     * <p>
+     * This method doesn't lock, so it can be called by many threads
+     * (for example, threads that parse schemas) at the same time.
+     * 
      * @exception DatatypeException
      *        If the type name is undefined.
      * @return
      *        A non-null valid datatype object.
      */
-    public synchronized static XSDatatype getTypeByName( String dataTypeName ) throws DatatypeException {
-        XSDatatype dt = (XSDatatype)builtinType.get(dataTypeName);
+    public static XSDatatype getTypeByName( String dataTypeName ) throws DatatypeException {
+        XSDatatype dt = builtinType.get(dataTypeName);
+        if(dt!=null)    return dt;
+        
+        dt = builtinListType.get(dataTypeName);
         if(dt!=null)    return dt;
         
+        // list types are derived when they are used for the first time.
+        XSDatatypeImpl item;
+        if( dataTypeName.equals("IDREFS") )
+            item = IDREFType.theInstance;
+        else
+        if( dataTypeName.equals("ENTITIES") )
+            item = EntityType.theInstance;
+        else
+        if( dataTypeName.equals("NMTOKENS") )
+            item = NmtokenType.theInstance;
+        else
+            throw new DatatypeException("undefined type name:"+dataTypeName);
+        
+        XSDatatypeImpl list = createBuiltinList(dataTypeName,item);
+        // if another thread has created the same type, use that one
+        // so that the type works as a singleton.
+        XSDatatypeImpl old = builtinListType.putIfAbsent(dataTypeName,list);
+        return (old!=null) ? old : list;
+    }
+    
+    private static XSDatatypeImpl createBuiltinList( String name, XSDatatypeImpl item ) {
         try {
-            // types may be not added to the map.
-            if( dataTypeName.equals("float") )
-                add( builtinType, FloatType.theInstance );
-            else
-            if( dataTypeName.equals("double") )
-                add( builtinType, DoubleType.theInstance );
-            else
-            if( dataTypeName.equals("duration") )
-                add( builtinType, DurationType.theInstance );
-            else
-            if( dataTypeName.equals("dateTime") )
-                add( builtinType, DateTimeType.theInstance );
-            else
-            if( dataTypeName.equals("time") )
-                add( builtinType, TimeType.theInstance );
-            else
-            if( dataTypeName.equals("date") )
-                add( builtinType, DateType.theInstance );
-            else
-            if( dataTypeName.equals("gYearMonth") )
-                add( builtinType, GYearMonthType.theInstance );
-            else
-            if( dataTypeName.equals("gYear") )
-                add( builtinType, GYearType.theInstance );
-            else
-            if( dataTypeName.equals("gMonthDay") )
-                add( builtinType, GMonthDayType.theInstance );
-            else
-            if( dataTypeName.equals("gDay") )
-                add( builtinType, GDayType.theInstance );
-            else
-            if( dataTypeName.equals("gMonth") )
-                add( builtinType, GMonthType.theInstance );
-            else
-            if( dataTypeName.equals("hexBinary") )
-                add( builtinType, HexBinaryType.theInstance );
-            else
-            if( dataTypeName.equals("base64Binary") )
-                add( builtinType, Base64BinaryType.theInstance );
-            else
-            if( dataTypeName.equals("anyURI") )
-                add( builtinType, AnyURIType.theInstance );
-            else
-            if( dataTypeName.equals("ENTITY") )
-                add( builtinType, EntityType.theInstance );
-            else
-            if( dataTypeName.equals("language") )
-                add( builtinType, LanguageType.theInstance );
-            else
-            if( dataTypeName.equals("ID") )
-                add( builtinType, IDType.theInstance );
-            else
-            if( dataTypeName.equals("IDREF") )
-                add( builtinType, IDREFType.theInstance );
-            else
-            if( dataTypeName.equals("IDREFS") )
-                add( builtinType, createBuiltinList("IDREFS",IDREFType.theInstance) );
-            else
-            if( dataTypeName.equals("ENTITIES") )
-                add( builtinType, createBuiltinList("ENTITIES",EntityType.theInstance) );
-            else
-            if( dataTypeName.equals("NMTOKENS") )
-                add( builtinType, createBuiltinList("NMTOKENS",NmtokenType.theInstance) );
-            else
-            if( dataTypeName.equals("NOTATION") )
-                add( builtinType, new StringType("NOTATION", WhiteSpaceProcessor.theCollapse, false) );
-            else
-            if( dataTypeName.equals("nonPositiveInteger") )
-                add( builtinType, NonPositiveIntegerType.theInstance );
-            else
-            if( dataTypeName.equals("unsignedLong") )
-                add( builtinType, UnsignedLongType.theInstance );
-            else
-            if( dataTypeName.equals("unsignedInt") )
-                add( builtinType, UnsignedIntType.theInstance );
-            else
-            if( dataTypeName.equals("unsignedShort") )
-                add( builtinType, UnsignedShortType.theInstance );
-            else
-            if( dataTypeName.equals("unsignedByte") )
-                add( builtinType, UnsignedByteType.theInstance );
-            else
-            if( dataTypeName.equals("anySimpleType") )
-                add( builtinType, SimpleURType.theInstance );
+            TypeIncubator ti = new TypeIncubator(new ListType(null,null,item));
+            ti.addFacet("minLength","1",false,null);
+            // wrap it by a proxy object so that
+            // these objects will work as singleton.
+            return new Proxy(XSDatatype.XMLSCHEMA_NSURI,name,ti.derive(null,null)) {
+                private Object readResolve() {
+                    try {
+                        return DatatypeFactory.getTypeByName(getName());
+                    } catch( DatatypeException e ) {
+                        e.printStackTrace();
+                        throw new InternalError(e.getMessage());
+                    }
+                }
+            };
         } catch( DatatypeException dte )    {
             // assertion failed
             throw new Error();
         }
-        
-        dt = (XSDatatype)builtinType.get(dataTypeName);
-        if(dt!=null)        return dt;
-        
-        throw new DatatypeException("undefined type name:"+dataTypeName);
     }
     
-    private static XSDatatypeImpl createBuiltinList( String name, XSDatatypeImpl item ) throws DatatypeException {
-        TypeIncubator ti = new TypeIncubator(new ListType(null,null,item));
-        ti.addFacet("minLength","1",false,null);
-        // wrap it by a proxy object so that
-        // these objects will work as singleton.
-        return new Proxy(XSDatatype.XMLSCHEMA_NSURI,name,ti.derive(null,null)) {
-            private Object readResolve() {
-                try {
-                    return DatatypeFactory.getTypeByName(getName());
-                } catch( DatatypeException e ) {
-                    e.printStackTrace();
-                    throw new InternalError(e.getMessage());
-                }
-            }
-        };
-    }
+    /**
+     * an immutable map that contains built in atomic types.
+     */
+    private static final Map<String,XSDatatypeImpl> builtinType = createBuiltinTypesMap();
     
     /**
-     * a map that contains built in types.
-     * 
-     * To speed up the boot process, only a handful types are added
-     * at the first time.
+     * a map that contains built in list types,
+     * which are added when they are requested for the first time.
      */
-    private static final Map builtinType = createInitialBuiltinTypesMap();
+    private static final ConcurrentHashMap<String,XSDatatypeImpl> builtinListType =
+        new ConcurrentHashMap<String,XSDatatypeImpl>();
     
-    /** creates a map that contains frequently-used built-in types */
-    private static Map createInitialBuiltinTypesMap() {
-        Map m = new java.util.HashMap();
-
-        // missing types are noted inline.
+    /** creates a map that contains built-in atomic types */
+    private static Map<String,XSDatatypeImpl> createBuiltinTypesMap() {
+        Map<String,XSDatatypeImpl> m = new java.util.HashMap<String,XSDatatypeImpl>();
 
         add( m, StringType.theInstance );
         add( m, BooleanType.theInstance );
@@ -295,8 +235,33 @@ public class DatatypeFactory {
         add( m, ByteType.theInstance );
         add( m, NonNegativeIntegerType.theInstance );
         add( m, PositiveIntegerType.theInstance );
-
+        add( m, NonPositiveIntegerType.theInstance );
+        add( m, UnsignedLongType.theInstance );
+        add( m, UnsignedIntType.theInstance );
+        add( m, UnsignedShortType.theInstance );
+        add( m, UnsignedByteType.theInstance );
+        
+        add( m, FloatType.theInstance );
+        add( m, DoubleType.theInstance );
+        add( m, DurationType.theInstance );
+        add( m, DateTimeType.theInstance );
+        add( m, TimeType.theInstance );
+        add( m, DateType.theInstance );
+        add( m, GYearMonthType.theInstance );
+        add( m, GYearType.theInstance );
+        add( m, GMonthDayType.theInstance );
+        add( m, GDayType.theInstance );
+        add( m, GMonthType.theInstance );
+        add( m, HexBinaryType.theInstance );
+        add( m, Base64BinaryType.theInstance );
+        add( m, AnyURIType.theInstance );
+        add( m, EntityType.theInstance );
+        add( m, LanguageType.theInstance );
+        add( m, IDType.theInstance );
+        add( m, IDREFType.theInstance );
+        add( m, new StringType("NOTATION", WhiteSpaceProcessor.theCollapse, false) );
+        add( m, SimpleURType.theInstance );
             
-        return m;
+        return Collections.unmodifiableMap(m);
     }
 }
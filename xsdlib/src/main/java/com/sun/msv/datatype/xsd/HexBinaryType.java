@@ -75,6 +75,44 @@ public class HexBinaryType extends BinaryBaseType {
         return true;
     }
 
+    /**
+     * validates hex characters as they arrive.
+     * 
+     * <p>
+     * The white space of hexBinary is always collapsed, so white spaces
+     * are only allowed before and after hex characters.
+     */
+    IncrementalValidator createIncrementalValidator( WhiteSpaceProcessor whiteSpace ) {
+        if( whiteSpace!=WhiteSpaceProcessor.theCollapse )
+            return null;
+        
+        return new IncrementalValidator.Lexical(this) {
+            private int count;
+            /** true if a white space is found after hex characters. */
+            private boolean hadSpace;
+            private boolean isBad;
+            
+            public void addCharacters( char[] buf, int start, int len ) {
+                for( int i=start; i<start+len; i++ ) {
+                    final char ch = buf[i];
+                    if( WhiteSpaceProcessor.isWhiteSpace(ch) ) {
+                        if( count!=0 )  hadSpace = true;
+                    } else {
+                        if( hadSpace || hexToBin(ch)==-1 )
+                            isBad = true;
+                        count++;
+                    }
+                }
+            }
+            
+            int length() {
+                // "111" is not a valid hex encoding.
+                if( isBad || count%2!=0 )   return -1;
+                return count/2;
+            }
+        };
+    }
+    
     public String serializeJavaObject( Object value, SerializationContext context ) {
         if(!(value instanceof byte[]))
             throw new IllegalArgumentException();
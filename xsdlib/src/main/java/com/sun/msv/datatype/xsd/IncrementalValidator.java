@@ -0,0 +1,97 @@
+package com.sun.msv.datatype.xsd;
+
+import org.relaxng.datatype.DatatypeException;
+import org.relaxng.datatype.DatatypeStreamingValidator;
+
+/**
+ * {@link DatatypeStreamingValidator} that checks characters as they arrive,
+ * without keeping them in memory.
+ *
+ * <p>
+ * Implementations compute the length of the value (as defined by the
+ * length facet) on the way, so that length-related facets can be
+ * checked at the end.
+ */
+abstract class IncrementalValidator implements DatatypeStreamingValidator {
+
+    /**
+     * returns the length of the value made from the characters
+     * received so far.
+     *
+     * @return
+     *      -1 if the characters are not in the lexical space.
+     */
+    abstract int length();
+
+    /**
+     * returns the error message, or null if the characters
+     * received so far are valid.
+     */
+    abstract String diagnose();
+
+    public final boolean isValid() {
+        return diagnose()==null;
+    }
+
+    public final void checkValid() throws DatatypeException {
+        String msg = diagnose();
+        if(msg!=null)
+            throw new DatatypeException(DatatypeException.UNKNOWN,msg);
+    }
+
+
+    /**
+     * base class of validators that check the lexical space of a type.
+     */
+    static abstract class Lexical extends IncrementalValidator {
+        /** the type whose lexical space is checked. */
+        private final XSDatatypeImpl type;
+
+        Lexical( XSDatatypeImpl type ) {
+            this.type = type;
+        }
+
+        String diagnose() {
+            if(length()>=0)     return null;
+            return XSDatatypeImpl.localize(XSDatatypeImpl.ERR_INAPPROPRIATE_FOR_TYPE_STREAMED, type.getName());
+        }
+    }
+
+    /**
+     * checks a length-related facet on top of another validator.
+     */
+    static final class LengthFacet extends IncrementalValidator {
+        private final IncrementalValidator base;
+        private final int minLength;
+        private final int maxLength;
+        /** the error message and the facet value used in it. */
+        private final String errMsg;
+        private final int facetValue;
+
+        LengthFacet( IncrementalValidator base, int minLength, int maxLength, String errMsg, int facetValue ) {
+            this.base = base;
+            this.minLength = minLength;
+            this.maxLength = maxLength;
+            this.errMsg = errMsg;
+            this.facetValue = facetValue;
+        }
+
+        public void addCharacters( char[] buf, int start, int len ) {
+            base.addCharacters(buf,start,len);
+        }
+
+        int length() {
+            return base.length();
+        }
+
+        String diagnose() {
+            String msg = base.diagnose();
+            if(msg!=null)   return msg;
+
+            int cnt = length();
+            if(cnt<minLength || cnt>maxLength)
+                return XSDatatypeImpl.localize(errMsg, new Integer(cnt), new Integer(facetValue));
+            return null;
+        }
+    }
+}
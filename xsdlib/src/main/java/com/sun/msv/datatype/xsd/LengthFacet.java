@@ -51,6 +51,27 @@ public class LengthFacet extends DataTypeWithValueConstraintFacet {
         return o;
     }
     
+    /**
+     * the length of a list is the number of items,
+     * which can be checked without creating the value.
+     */
+    protected boolean needValueCheck() {
+        if(concreteType instanceof ListType)    return baseType.needValueCheck();
+        return true;
+    }
+    
+    protected boolean checkFormat( String literal, ValidationContext context ) {
+        if(!(concreteType instanceof ListType))
+            return super.checkFormat(literal,context);
+        return baseType.checkFormat(literal,context) && ListType.countItems(literal)==length;
+    }
+    
+    IncrementalValidator createIncrementalValidator( WhiteSpaceProcessor whiteSpace ) {
+        IncrementalValidator base = baseType.createIncrementalValidator(whiteSpace);
+        if(base==null)  return null;
+        return new IncrementalValidator.LengthFacet(base,length,length,ERR_LENGTH,length);
+    }
+    
     protected void diagnoseByFacet(String content, ValidationContext context) throws DatatypeException {
         Object o = concreteType._createValue(content,context);
         // base type must have accepted this lexical value, otherwise 
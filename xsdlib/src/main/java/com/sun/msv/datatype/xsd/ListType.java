@@ -13,8 +13,6 @@ import com.sun.msv.datatype.SerializationContext;
 import org.relaxng.datatype.DatatypeException;
 import org.relaxng.datatype.ValidationContext;
 
-import java.util.StringTokenizer;
-
 /**
  * List type.
  * 
@@ -97,26 +95,67 @@ public final class ListType extends ConcreteType implements Discrete {
             return NOT_ALLOWED;
     }
     
+    /**
+     * returns true if the character separates items.
+     * 
+     * These are the delimiters that StringTokenizer uses by default,
+     * which correctly implements the semantics of whiteSpace="collapse".
+     */
+    private static boolean isSeparator( char ch ) {
+        return ch==' ' || ch=='\t' || ch=='\n' || ch=='\r' || ch=='\f';
+    }
+    
+    /** returns the index of the first non-separator character at or after the index. */
+    private static int skipSeparators( String content, int idx ) {
+        final int len = content.length();
+        while( idx<len && isSeparator(content.charAt(idx)) )
+            idx++;
+        return idx;
+    }
+    
+    /** returns the index of the first separator at or after the index. */
+    private static int skipItem( String content, int idx ) {
+        final int len = content.length();
+        while( idx<len && !isSeparator(content.charAt(idx)) )
+            idx++;
+        return idx;
+    }
+    
+    /**
+     * counts the number of items in the list, without checking them.
+     */
+    static int countItems( String content ) {
+        int cnt=0;
+        int idx = skipSeparators(content,0);
+        while( idx<content.length() ) {
+            cnt++;
+            idx = skipSeparators(content,skipItem(content,idx));
+        }
+        return cnt;
+    }
+    
     protected final boolean checkFormat( String content, ValidationContext context ) {
         // Are #x9, #xD, and #xA allowed as a separator, or not?
-        StringTokenizer tokens = new StringTokenizer(content);
-        
-        while( tokens.hasMoreTokens() )
-            if(!itemType.isValid(tokens.nextToken(),context))    return false;
+        int idx = skipSeparators(content,0);
+        while( idx<content.length() ) {
+            int end = skipItem(content,idx);
+            if(!itemType.isValid(content.substring(idx,end),context))    return false;
+            idx = skipSeparators(content,end);
+        }
         
         return true;
     }
     
     public Object _createValue( String content, ValidationContext context ) {
-        // StringTokenizer correctly implements the semantics of whiteSpace="collapse"
-        StringTokenizer tokens = new StringTokenizer(content);
-        
-        Object[] values = new Object[tokens.countTokens()];
+        Object[] values = new Object[countItems(content)];
         int i=0;
         
-        while( tokens.hasMoreTokens() ) {
-            if( ( values[i++] = itemType._createValue(tokens.nextToken(),context) )==null )
+        int idx = skipSeparators(content,0);
+        while( idx<content.length() ) {
+            int end = skipItem(content,idx);
+            if( ( values[i++] = itemType._createValue(content.substring(idx,end),context) )==null )
                 return null;
+            idx = skipSeparators(content,end);
         }
             
         return new ListValueType(values);
@@ -146,12 +185,11 @@ public final class ListType extends ConcreteType implements Discrete {
     
     /** The current implementation detects which list item is considered wrong. */
     protected void _checkValid(String content, ValidationContext context) throws DatatypeException {
-        // StringTokenizer correctly implements the semantics of whiteSpace="collapse"
-        StringTokenizer tokens = new StringTokenizer(content);
-        
-        while( tokens.hasMoreTokens() ) {
-            String token = tokens.nextToken();
-            itemType.checkValid(token,context);
+        int idx = skipSeparators(content,0);
+        while( idx<content.length() ) {
+            int end = skipItem(content,idx);
+            itemType.checkValid(content.substring(idx,end),context);
+            idx = skipSeparators(content,end);
         }
     }
 
@@ -49,6 +49,24 @@ public class MaxLengthFacet extends DataTypeWithValueConstraintFacet
         return o;
     }
     
+    /** lists are checked by counting items. See {@link LengthFacet#needValueCheck()}. */
+    protected boolean needValueCheck() {
+        if(concreteType instanceof ListType)    return baseType.needValueCheck();
+        return true;
+    }
+    
+    protected boolean checkFormat( String literal, ValidationContext context ) {
+        if(!(concreteType instanceof ListType))
+            return super.checkFormat(literal,context);
+        return baseType.checkFormat(literal,context) && ListType.countItems(literal)<=maxLength;
+    }
+    
+    IncrementalValidator createIncrementalValidator( WhiteSpaceProcessor whiteSpace ) {
+        IncrementalValidator base = baseType.createIncrementalValidator(whiteSpace);
+        if(base==null)  return null;
+        return new IncrementalValidator.LengthFacet(base,0,maxLength,ERR_MAXLENGTH,maxLength);
+    }
+    
     protected void diagnoseByFacet(String content, ValidationContext context) throws DatatypeException {
         Object o = concreteType._createValue(content,context);
         // base type must have accepted this lexical value, otherwise 
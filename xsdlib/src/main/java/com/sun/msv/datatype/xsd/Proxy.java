@@ -56,6 +56,10 @@ public class Proxy extends XSDatatypeImpl {
         return baseType.isFacetApplicable(facetName);
     }
     
+    IncrementalValidator createIncrementalValidator( WhiteSpaceProcessor whiteSpace ) {
+        return baseType.createIncrementalValidator(whiteSpace);
+    }
+    
     public boolean checkFormat( String content, ValidationContext context ) {
         return baseType.checkFormat(content,context);
     }
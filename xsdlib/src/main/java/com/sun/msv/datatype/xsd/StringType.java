@@ -68,6 +68,51 @@ public class StringType extends BuiltinAtomicType implements Discrete {
         return UnicodeUtil.countLength( (String)value );
     }
     
+    /**
+     * counts characters as they arrive.
+     * Only the types that accept any string can be validated incrementally.
+     */
+    IncrementalValidator createIncrementalValidator( final WhiteSpaceProcessor whiteSpace ) {
+        if( !isAlwaysValid )
+            return null;
+        
+        return new IncrementalValidator.Lexical(this) {
+            /** the number of characters, as counted by {@link UnicodeUtil#countLength(String)}. */
+            private int count;
+            /** true if a non-whitespace character is found. */
+            private boolean started;
+            /** true if white spaces are found after non-whitespace characters. */
+            private boolean hadSpace;
+            
+            public void addCharacters( char[] buf, int start, int len ) {
+                final boolean collapse = (whiteSpace==WhiteSpaceProcessor.theCollapse);
+                for( int i=start; i<start+len; i++ ) {
+                    final char ch = buf[i];
+                    if( collapse ) {
+                        if( WhiteSpaceProcessor.isWhiteSpace(ch) ) {
+                            // white spaces are collapsed into one,
+                            // and leading/trailing ones are removed.
+                            if( started )   hadSpace = true;
+                            continue;
+                        }
+                        started = true;
+                        if( hadSpace ) {
+                            count++;
+                            hadSpace = false;
+                        }
+                    }
+                    // skip the first half of surrogate pair
+                    if( 0xD800 <= ch && ch < 0xDC00 )    continue;
+                    count++;
+                }
+            }
+            
+            int length() {
+                return count;
+            }
+        };
+    }
+    
     public final int isFacetApplicable( String facetName ) {
         if( facetName.equals(FACET_PATTERN)
         ||    facetName.equals(FACET_ENUMERATION)
@@ -0,0 +1,234 @@
+package com.sun.msv.datatype.xsd;
+
+import java.util.Set;
+
+import org.relaxng.datatype.ValidationContext;
+
+/**
+ * tries the member types of a {@link UnionType} in an efficient order.
+ *
+ * <p>
+ * For each member type, a cheap lexical filter (the characters that can
+ * appear in the literal, the range of its length, and the enumerated
+ * values) is computed from the type. Members whose filter rejects the
+ * literal are skipped without being parsed.
+ *
+ * <p>
+ * In addition, the checkFormat method tries the member that accepted
+ * literals most often first. The _createValue method has to return the value
+ * of the first member in the declaration order, so it doesn't reorder members.
+ *
+ * <p>
+ * This object can be used by multiple threads. The statistics are updated
+ * without synchronization, since a lost update only makes the order
+ * slightly less accurate.
+ */
+final class UnionDispatcher {
+
+    private final XSDatatypeImpl[] members;
+
+    /** filters of members. null if the member can't be filtered. */
+    private final Filter[] filters;
+
+    /**
+     * order in which the checkFormat method tries members.
+     * This array is replaced, never modified.
+     */
+    private volatile int[] order;
+
+    /** number of literals accepted by each member. */
+    private final int[] hits;
+
+    /** number of calls since the order was updated. */
+    private int calls;
+
+    /** the order is updated after this number of calls. */
+    private static final int UPDATE_INTERVAL = 256;
+
+    UnionDispatcher( XSDatatypeImpl[] members ) {
+        this.members = members;
+        this.filters = new Filter[members.length];
+        this.order = new int[members.length];
+        this.hits = new int[members.length];
+        for( int i=0; i<members.length; i++ ) {
+            filters[i] = Filter.create(members[i]);
+            order[i] = i;
+        }
+    }
+
+    boolean checkFormat( String literal, ValidationContext context ) {
+        int[] order = this.order;
+
+        for( int i=0; i<order.length; i++ ) {
+            int m = order[i];
+            if( filters[m]!=null && !filters[m].accepts(literal) )
+                continue;
+            if( members[m].checkFormat(literal,context) ) {
+                hit(m);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    Object createValue( String literal, ValidationContext context ) {
+        for( int i=0; i<members.length; i++ ) {
+            if( filters[i]!=null && !filters[i].accepts(literal) )
+                continue;
+            Object o = members[i]._createValue(literal,context);
+            if(o!=null)     return o;
+        }
+        return null;
+    }
+
+    private void hit( int m ) {
+        hits[m]++;
+        if( ++calls<UPDATE_INTERVAL )
+            return;
+
+        calls = 0;
+
+        // sort members by the number of hits. insertion sort keeps
+        // the declaration order among members with the same hits.
+        int[] newOrder = new int[members.length];
+        for( int i=0; i<newOrder.length; i++ ) {
+            int j=i;
+            while( j>0 && hits[newOrder[j-1]]<hits[i] ) {
+                newOrder[j] = newOrder[j-1];
+                j--;
+            }
+            newOrder[j] = i;
+        }
+
+        // decay old statistics so that the order follows changes of the input.
+        for( int i=0; i<hits.length; i++ )
+            hits[i] /= 2;
+
+        order = newOrder;
+    }
+
+
+    /**
+     * cheap test that rejects some of the literals
+     * that can't be accepted by a type.
+     */
+    static final class Filter {
+        /**
+         * ASCII characters that can appear at the first position,
+         * and at other positions, as bit masks. null if any.
+         * Non-ASCII characters are never rejected.
+         */
+        private final long[] first;
+        private final long[] rest;
+
+        /** range of the length of the literal, in the number of chars. */
+        private final int minLength;
+        private final int maxLength;
+
+        /** set of allowed literals, or null. */
+        private final Set enumeration;
+
+        private Filter( long[] first, long[] rest, int minLength, int maxLength, Set enumeration ) {
+            this.first = first;
+            this.rest = rest;
+            this.minLength = minLength;
+            this.maxLength = maxLength;
+            this.enumeration = enumeration;
+        }
+
+        boolean accepts( String literal ) {
+            final int len = literal.length();
+            if( len<minLength || len>maxLength )
+                return false;
+            if( enumeration!=null && !enumeration.contains(literal) )
+                return false;
+
+            if( len>0 && first!=null && !contains(first,literal.charAt(0)) )
+                return false;
+            if( rest!=null ) {
+                for( int i=1; i<len; i++ )
+                    if( !contains(rest,literal.charAt(i)) )
+                        return false;
+            }
+            return true;
+        }
+
+        private static boolean contains( long[] mask, char ch ) {
+            if( ch>=128 )   return true;
+            return (mask[ch>>6] & (1L<<(ch&63)))!=0;
+        }
+
+        private static long[] mask( String chars ) {
+            long[] mask = new long[2];
+            for( int i=0; i<chars.length(); i++ ) {
+                char ch = chars.charAt(i);
+                mask[ch>>6] |= 1L<<(ch&63);
+            }
+            return mask;
+        }
+
+        private static final long[] DECIMAL = mask("0123456789+-.");
+        private static final long[] INTEGER = mask("0123456789+-");
+        private static final long[] FLOAT_FIRST = mask("0123456789+-.IN");
+        private static final long[] DATETIME = mask("0123456789-:+TZ.");
+        private static final long[] DURATION = mask("0123456789-PYMDTHS.");
+        private static final long[] BOOLEAN_FIRST = mask("tf01");
+        private static final long[] BOOLEAN = mask("truefals");
+        private static final long[] HEX = mask("0123456789abcdefABCDEF");
+
+        /**
+         * creates a filter for the given type.
+         *
+         * @return
+         *      null if no filter is available for the type.
+         */
+        static Filter create( XSDatatypeImpl type ) {
+            ConcreteType concrete = type.getConcreteType();
+
+            if( concrete instanceof NumberType )
+                return new Filter( DECIMAL, DECIMAL, 1, Integer.MAX_VALUE, null );
+            if( concrete instanceof IntegerDerivedType )
+                return new Filter( INTEGER, INTEGER, 1, Integer.MAX_VALUE, null );
+            if( concrete instanceof FloatingNumberType )
+                return new Filter( FLOAT_FIRST, null, 1, Integer.MAX_VALUE, null );
+            if( concrete instanceof DateTimeBaseType )
+                return new Filter( DATETIME, DATETIME, 1, Integer.MAX_VALUE, null );
+            if( concrete instanceof DurationType )
+                return new Filter( DURATION, DURATION, 1, Integer.MAX_VALUE, null );
+            if( concrete instanceof BooleanType )
+                return new Filter( BOOLEAN_FIRST, BOOLEAN, 1, 5, null );
+            if( concrete instanceof HexBinaryType )
+                return new Filter( HEX, HEX, 0, Integer.MAX_VALUE, null );
+
+            if( concrete instanceof StringType && !(concrete instanceof LanguageType) ) {
+                // the value of these types is the literal itself.
+                Set enumeration = null;
+                EnumerationFacet e = (EnumerationFacet)type.getFacetObject(XSDatatype.FACET_ENUMERATION);
+                if( e!=null )   enumeration = e.values;
+
+                // the length is counted in characters, and a character
+                // occupies one or two chars.
+                int min=0, max=Integer.MAX_VALUE;
+                LengthFacet l = (LengthFacet)type.getFacetObject(XSDatatype.FACET_LENGTH);
+                if( l!=null ) {
+                    min = l.length;
+                    max = twice(l.length);
+                }
+                MinLengthFacet minl = (MinLengthFacet)type.getFacetObject(XSDatatype.FACET_MINLENGTH);
+                if( minl!=null )    min = Math.max(min,minl.minLength);
+                MaxLengthFacet maxl = (MaxLengthFacet)type.getFacetObject(XSDatatype.FACET_MAXLENGTH);
+                if( maxl!=null )    max = Math.min(max,twice(maxl.maxLength));
+
+                if( enumeration==null && min==0 && max==Integer.MAX_VALUE )
+                    return null;
+                return new Filter( null, null, min, max, enumeration );
+            }
+
+            return null;
+        }
+
+        private static int twice( int n ) {
+            return n>Integer.MAX_VALUE/2 ? Integer.MAX_VALUE : n*2;
+        }
+    }
+}
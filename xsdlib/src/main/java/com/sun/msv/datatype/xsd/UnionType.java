@@ -90,21 +90,25 @@ final public class UnionType extends ConcreteType {
             return NOT_ALLOWED;
     }
     
+    /**
+     * tries member types. created on demand, since it's not serialized.
+     */
+    private transient UnionDispatcher dispatcher;
+    
+    private UnionDispatcher getDispatcher() {
+        // it doesn't hurt if two threads create dispatchers at the same time.
+        UnionDispatcher d = dispatcher;
+        if(d==null)
+            dispatcher = d = new UnionDispatcher(memberTypes);
+        return d;
+    }
+    
     protected final boolean checkFormat( String content, ValidationContext context ) {
-        for( int i=0; i<memberTypes.length; i++ )
-            if( memberTypes[i].checkFormat(content,context) )    return true;
-        
-        return false;
+        return getDispatcher().checkFormat(content,context);
     }
     
     public Object _createValue( String content, ValidationContext context ) {
-        Object o;
-        for( int i=0; i<memberTypes.length; i++ ) {
-            o = memberTypes[i]._createValue(content,context);
-            if(o!=null)        return o;
-        }
-        
-        return null;
+        return getDispatcher().createValue(content,context);
     }
     public Class getJavaObjectType() {
         // TODO: find the common base type, if it's possible.
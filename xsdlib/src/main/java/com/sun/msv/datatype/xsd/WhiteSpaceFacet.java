@@ -52,6 +52,10 @@ public class WhiteSpaceFacet extends DataTypeWithFacet {
         return baseType._createValue(content,context);
     }
     
+    IncrementalValidator createIncrementalValidator( WhiteSpaceProcessor whiteSpace ) {
+        return baseType.createIncrementalValidator(whiteSpace);
+    }
+    
     /** whiteSpace facet never constrain anything */
     protected void diagnoseByFacet(String content, ValidationContext context) {
         ;
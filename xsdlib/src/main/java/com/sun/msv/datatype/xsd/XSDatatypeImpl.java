@@ -83,10 +83,33 @@ public abstract class XSDatatypeImpl implements XSDatatype {
     // default implementation
     public boolean isAlwaysValid() { return false; }
     
+    /**
+     * creates a streaming validator.
+     * 
+     * <p>
+     * If the characters can be checked as they arrive, the returned validator
+     * doesn't keep them in memory. Otherwise the characters are buffered and
+     * checked at the end.
+     */
     public DatatypeStreamingValidator createStreamingValidator( ValidationContext context ) {
+        DatatypeStreamingValidator v = createIncrementalValidator(whiteSpace);
+        if(v!=null)     return v;
         return new StreamingValidatorImpl(this,context);
     }
     
+    /**
+     * creates a validator that checks characters without buffering them.
+     * 
+     * @param whiteSpace
+     *      the white space processing of the type being validated,
+     *      which may be tighter than the one of this type.
+     * @return
+     *      null if this type cannot be validated incrementally.
+     */
+    IncrementalValidator createIncrementalValidator( WhiteSpaceProcessor whiteSpace ) {
+        return null;
+    }
+    
     abstract protected boolean checkFormat( String literal, ValidationContext context );
     protected boolean needValueCheck() { return false; }
     
@@ -233,6 +256,8 @@ public abstract class XSDatatypeImpl implements XSDatatype {
     
     public static final String ERR_INAPPROPRIATE_FOR_TYPE =
         "DataTypeErrorDiagnosis.InappropriateForType";
+    public static final String ERR_INAPPROPRIATE_FOR_TYPE_STREAMED =
+        "DataTypeErrorDiagnosis.InappropriateForType.Streamed";
     public static final String ERR_TOO_MUCH_PRECISION =
         "DataTypeErrorDiagnosis.TooMuchPrecision";
     public static final String ERR_TOO_MUCH_SCALE =
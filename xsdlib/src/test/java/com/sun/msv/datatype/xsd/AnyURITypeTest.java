@@ -9,10 +9,14 @@
  */
 package com.sun.msv.datatype.xsd;
 
+import java.util.Random;
+
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
+import com.sun.msv.datatype.xsd.regex.RegExp;
+
 /**
  * tests AnyURIType.
  * 
@@ -59,4 +63,53 @@ public class AnyURITypeTest extends TestCase
             new String( new char[]{0xD8A5,0xDDC3} ) ),
             "%F0%A9%97%83" );    // #x295C3
     }
+    
+    private static final RegExp regexp = AnyURIType.createRegExp();
+    
+    private static void check( String uri ) {
+        assertEquals( uri, regexp.matches(AnyURIType.escape(uri)), AnyURIType.isURIReference(uri) );
+    }
+    
+    private static final String[] uris = {
+        "", "#", "#a#", "#[]", "a", "a:", ":", "?", "?a", "/", "//", "/?", "a/b", "a:b", "a:/",
+        "a:[", "a:b[", "a:?", "a://", "1a:b", "a+.-1:b", "a b", "a%20b", "a%2", "a%g0", "%41", "100%",
+        "http://www.example.com/a/b;c?d=e&f#g", "http://user@host:80/", "http://host:/",
+        "mailto:someone@example.com", "urn:oasis:names:tc", "../a/b", "./a:b", "a?b:c", "a@b/c",
+        "http://[::1]/", "http://[::1]:8080/a", "http://u@[1:2::3]", "http://[1:2:3:4:5:6:7:8]",
+        "http://[1::]", "http://[::]", "http://[::1.2.3.4]", "http://[1:2:1.2.3.4]", "http://[1:::1.2.3.4]",
+        "http://[:::1.2.3.4]", "http://[1]", "http://[1.2.3.4]", "http://[12345::]", "http://[1:::2]",
+        "http://[::1.2.3]", "http://[::1.2.3.4.5]", "http://[::1234.2.3.4]", "http://[::1]x",
+        "http://[::1]/[", "//[::1]", "//[::1]:", "/[::1]", "a/[::1]", "http://[g::1]", "http://[::1",
+        "http://[::1]?[]", "http://u:p@[::1]", "http://a@b@[::1]", "\u00e9", "a:\u00e9", "\u00e9:a",
+        "http://[\u00e9]", "a:b#\u00e9#",
+    };
+    
+    /** compares the scanner with the regular expression. */
+    public void testCompatibility() {
+        for( int i=0; i<uris.length; i++ )
+            check(uris[i]);
+        
+        // mutate valid and invalid URIs randomly.
+        final String chars = "aZ09f.:/?#[]@%;+- \u00e9\ud842\udfb7";
+        Random random = new Random(0);
+        for( int i=0; i<100000; i++ ) {
+            StringBuffer buf = new StringBuffer(uris[random.nextInt(uris.length)]);
+            int n = random.nextInt(4);
+            for( int j=0; j<n; j++ ) {
+                int pos = random.nextInt(buf.length()+1);
+                int op = random.nextInt(3);
+                if( op==0 || buf.length()==pos )
+                    buf.insert(pos,chars.charAt(random.nextInt(chars.length())));
+                else if( op==1 )
+                    buf.setCharAt(pos,chars.charAt(random.nextInt(chars.length())));
+                else
+                    buf.deleteCharAt(pos);
+            }
+            String uri = buf.toString();
+            // avoid broken surrogate pairs.
+            if( uri.matches("(?s).*([\\ud800-\\udbff](?![\\udc00-\\udfff])|(?<![\\ud800-\\udbff])[\\udc00-\\udfff]).*") )
+                continue;
+            check(uri);
+        }
+    }
 }
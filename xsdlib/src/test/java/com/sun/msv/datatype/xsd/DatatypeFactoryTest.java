@@ -0,0 +1,79 @@
+package com.sun.msv.datatype.xsd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.relaxng.datatype.DatatypeException;
+
+/**
+ * tests DatatypeFactory.
+ */
+public class DatatypeFactoryTest extends TestCase
+{
+    public DatatypeFactoryTest( String name ) { super(name); }
+
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        return new TestSuite(DatatypeFactoryTest.class);
+    }
+
+    public void testBuiltinTypes() throws Exception {
+        for( int i=0; i<Const.builtinTypeNames.length; i++ ) {
+            String name = Const.builtinTypeNames[i];
+            XSDatatype dt = DatatypeFactory.getTypeByName(name);
+            assertEquals( name, dt.getName() );
+            assertSame( dt, DatatypeFactory.getTypeByName(name) );
+        }
+    }
+
+    public void testUndefinedType() {
+        try {
+            DatatypeFactory.getTypeByName("foo");
+            fail();
+        } catch( DatatypeException e ) {
+            ; // as expected
+        }
+    }
+
+    /** all the threads must receive the same list type. */
+    public void testConcurrentLookup() throws Exception {
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<XSDatatype[]>> results = new ArrayList<Future<XSDatatype[]>>();
+            for( int i=0; i<threads; i++ )
+                results.add(executor.submit(new Callable<XSDatatype[]>() {
+                    public XSDatatype[] call() throws Exception {
+                        start.await();
+                        XSDatatype[] r = new XSDatatype[Const.builtinTypeNames.length];
+                        for( int j=0; j<r.length; j++ )
+                            r[j] = DatatypeFactory.getTypeByName(Const.builtinTypeNames[j]);
+                        return r;
+                    }
+                }));
+            start.countDown();
+
+            XSDatatype[] first = results.get(0).get();
+            for( int i=1; i<threads; i++ ) {
+                XSDatatype[] r = results.get(i).get();
+                for( int j=0; j<r.length; j++ )
+                    assertSame( Const.builtinTypeNames[j], first[j], r[j] );
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
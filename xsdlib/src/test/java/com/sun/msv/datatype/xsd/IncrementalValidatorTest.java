@@ -0,0 +1,104 @@
+package com.sun.msv.datatype.xsd;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.relaxng.datatype.DatatypeException;
+import org.relaxng.datatype.DatatypeStreamingValidator;
+import org.relaxng.datatype.helpers.StreamingValidatorImpl;
+
+import com.sun.msv.datatype.xsd.conformance.DummyContextProvider;
+
+/**
+ * tests {@link IncrementalValidator} by comparing it with
+ * the non-streaming validation.
+ */
+public class IncrementalValidatorTest extends TestCase
+{
+    public IncrementalValidatorTest( String name ) { super(name); }
+
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        return new TestSuite(IncrementalValidatorTest.class);
+    }
+
+    private final Random random = new Random(0);
+
+    private XSDatatype derive( String base, String[] facets ) throws DatatypeException {
+        TypeIncubator ti = new TypeIncubator(DatatypeFactory.getTypeByName(base));
+        for( int i=0; i<facets.length; i+=2 )
+            ti.addFacet(facets[i],facets[i+1],false,DummyContextProvider.theInstance);
+        return ti.derive("","test");
+    }
+
+    /** feeds a literal in random chunks. */
+    private DatatypeStreamingValidator feed( XSDatatype dt, String literal ) {
+        DatatypeStreamingValidator v = dt.createStreamingValidator(DummyContextProvider.theInstance);
+        char[] buf = ("xx"+literal+"xx").toCharArray();
+        int i=2;
+        while( i<buf.length-2 ) {
+            int len = Math.min( random.nextInt(4), buf.length-2-i );
+            v.addCharacters(buf,i,len);
+            i += len;
+        }
+        return v;
+    }
+
+    private void check( XSDatatype dt, String alphabet ) {
+        assertFalse( feed(dt,"") instanceof StreamingValidatorImpl );
+
+        for( int n=0; n<20000; n++ ) {
+            StringBuffer buf = new StringBuffer();
+            int len = random.nextInt(12);
+            for( int i=0; i<len; i++ )
+                buf.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            String literal = buf.toString();
+
+            boolean expected = dt.isValid(literal,DummyContextProvider.theInstance);
+            DatatypeStreamingValidator v = feed(dt,literal);
+            assertEquals( literal, expected, v.isValid() );
+            try {
+                v.checkValid();
+                assertTrue( literal, expected );
+            } catch( DatatypeException e ) {
+                assertFalse( literal, expected );
+                assertNotNull( e.getMessage() );
+            }
+        }
+    }
+
+    public void testBase64Binary() throws Exception {
+        String alphabet = "AZaz09+/= \t\n!\u00e9\u3042";
+        check( Base64BinaryType.theInstance, alphabet );
+        check( derive("base64Binary",new String[]{"length","3"}), alphabet );
+        check( derive("base64Binary",new String[]{"minLength","2","maxLength","4"}), alphabet );
+    }
+
+    public void testHexBinary() throws Exception {
+        String alphabet = "09afAFgG \t\r\n";
+        check( HexBinaryType.theInstance, alphabet );
+        check( derive("hexBinary",new String[]{"maxLength","2"}), alphabet );
+    }
+
+    public void testString() throws Exception {
+        String alphabet = "ab \t\r\n\ud842\udfb7";
+        check( derive("string",new String[]{"length","3"}), alphabet );
+        check( derive("string",new String[]{"minLength","2","maxLength","5"}), alphabet );
+        check( derive("normalizedString",new String[]{"maxLength","4"}), alphabet );
+        check( derive("token",new String[]{"length","3"}), alphabet );
+        check( derive("string",new String[]{"whiteSpace","collapse","minLength","3"}), alphabet );
+    }
+
+    /** types that cannot be validated incrementally are buffered. */
+    public void testBuffered() throws Exception {
+        assertTrue( feed(derive("string",new String[]{"pattern","a*"}),"") instanceof StreamingValidatorImpl );
+        assertTrue( feed(DatatypeFactory.getTypeByName("NCName"),"") instanceof StreamingValidatorImpl );
+        assertTrue( feed(derive("base64Binary",new String[]{"enumeration","AAAA"}),"") instanceof StreamingValidatorImpl );
+    }
+}
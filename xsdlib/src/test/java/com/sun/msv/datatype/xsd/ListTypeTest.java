@@ -68,6 +68,45 @@ public class ListTypeTest extends TestCase
             DummyContextProvider.theInstance ));
     }
     
+    /** test countItems method */
+    public void testCountItems()
+    {
+        assertEquals( 0, ListType.countItems("") );
+        assertEquals( 0, ListType.countItems(" \t\r\n ") );
+        assertEquals( 1, ListType.countItems("a") );
+        assertEquals( 3, ListType.countItems("  a\tb\n\nc ") );
+    }
+    
+    /** length facets on lists are checked by counting items */
+    public void testLengthFacets() throws DatatypeException
+    {
+        XSDatatype list = createList("test","short");
+        
+        TypeIncubator inc = new TypeIncubator(list);
+        inc.addFacet("minLength","2",false,null);
+        inc.addFacet("maxLength","3",false,null);
+        XSDatatype range = inc.derive("","range");
+        
+        inc = new TypeIncubator(list);
+        inc.addFacet("length","2",false,null);
+        XSDatatype exact = inc.derive("","exact");
+        
+        String[] literals = { "", "1", " 1  2 ", "1 2 3", "1\t2\n3\r4", "1 x", "1 2 x" };
+        boolean[] rangeResults = { false, false, true, true, false, false, false };
+        boolean[] exactResults = { false, false, true, false, false, false, false };
+        
+        for( int i=0; i<literals.length; i++ ) {
+            assertEquals( literals[i], rangeResults[i],
+                range.isValid(literals[i],DummyContextProvider.theInstance) );
+            assertEquals( literals[i], rangeResults[i],
+                range.createValue(literals[i],DummyContextProvider.theInstance)!=null );
+            assertEquals( literals[i], exactResults[i],
+                exact.isValid(literals[i],DummyContextProvider.theInstance) );
+            assertEquals( literals[i], exactResults[i],
+                exact.createValue(literals[i],DummyContextProvider.theInstance)!=null );
+        }
+    }
+    
     /** test convertToObject method */
     public void testConvertToObject() throws DatatypeException
     {
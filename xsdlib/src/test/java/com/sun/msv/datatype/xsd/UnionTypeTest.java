@@ -9,6 +9,8 @@
  */
 package com.sun.msv.datatype.xsd;
 
+import java.util.Random;
+
 import com.sun.msv.datatype.xsd.conformance.DummyContextProvider;
 import junit.framework.Test;
 import junit.framework.TestCase;
@@ -92,4 +94,111 @@ public class UnionTypeTest extends TestCase
             tu.createValue("1f5280",DummyContextProvider.theInstance),
             th.createValue("1F5280",DummyContextProvider.theInstance) );
     }
+    
+    /** literals used to test the dispatcher. */
+    private static final String[] samples = {
+        "", "0", "1", "-5", "+12", "3.14", ".5", "1e5", "1E-3", "INF", "-INF", "NaN",
+        "true", "false", "2001-02-20", "2001-02-20T12:34:56.7Z", "12:00:00+09:00",
+        "--05--", "---31", "-0010-01", "P1Y2M3DT4H5M6.7S", "-PT1S",
+        "0aFF", "1f5280", "AAAA", "abc", "red", "green", "ja-JP", "x y", "\u3042\u3044"
+    };
+    
+    /** creates a literal by randomly modifying a sample. */
+    private static String mutate( Random random ) {
+        StringBuffer buf = new StringBuffer(samples[random.nextInt(samples.length)]);
+        String alphabet = "0123456789+-.eEINFaTZ:PYMDHSftx \u00e9";
+        int n = random.nextInt(3);
+        for( int i=0; i<n; i++ ) {
+            int pos = random.nextInt(buf.length()+1);
+            switch(random.nextInt(3)) {
+            case 0:
+                buf.insert(pos,alphabet.charAt(random.nextInt(alphabet.length())));
+                break;
+            case 1:
+                if(pos<buf.length())    buf.deleteCharAt(pos);
+                break;
+            default:
+                if(pos<buf.length())    buf.setCharAt(pos,alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+        }
+        return buf.toString();
+    }
+    
+    private XSDatatypeImpl derive( String base, String[] facets ) throws DatatypeException {
+        TypeIncubator ti = new TypeIncubator(DatatypeFactory.getTypeByName(base));
+        for( int i=0; i<facets.length; i+=2 )
+            ti.addFacet(facets[i],facets[i+1],false,DummyContextProvider.theInstance);
+        return (XSDatatypeImpl)ti.derive("","test");
+    }
+    
+    /** filters of member types never reject literals accepted by the type. */
+    public void testFilter() throws DatatypeException
+    {
+        String[] names = {
+            "decimal", "integer", "long", "int", "short", "byte", "unsignedLong", "unsignedByte",
+            "positiveInteger", "float", "double", "boolean", "date", "dateTime", "time",
+            "gYear", "gYearMonth", "gMonth", "gMonthDay", "gDay", "duration", "hexBinary",
+            "string", "token", "language", "NCName" };
+        XSDatatypeImpl[] types = new XSDatatypeImpl[names.length+3];
+        for( int i=0; i<names.length; i++ )
+            types[i] = (XSDatatypeImpl)DatatypeFactory.getTypeByName(names[i]);
+        types[names.length  ] = derive("token",new String[]{"enumeration","red","enumeration","green"});
+        types[names.length+1] = derive("string",new String[]{"minLength","2","maxLength","3"});
+        types[names.length+2] = derive("string",new String[]{"length","2"});
+        
+        Random random = new Random(0);
+        for( int i=0; i<types.length; i++ ) {
+            UnionDispatcher.Filter f = UnionDispatcher.Filter.create(types[i]);
+            if(f==null)     continue;
+            for( int n=0; n<20000; n++ ) {
+                String literal = mutate(random);
+                boolean valid;
+                try {
+                    valid = types[i].checkFormat(literal,DummyContextProvider.theInstance);
+                } catch( RuntimeException e ) {
+                    valid = false;  // duration throws an exception for some literals.
+                }
+                if(valid)
+                    assertTrue( types[i].displayName()+" "+literal, f.accepts(literal) );
+            }
+        }
+    }
+    
+    /** the dispatcher behaves in the same way as trying members in order. */
+    public void testDispatcher() throws DatatypeException
+    {
+        XSDatatypeImpl[][] unions = {
+            { (XSDatatypeImpl)DatatypeFactory.getTypeByName("decimal"),
+              (XSDatatypeImpl)DatatypeFactory.getTypeByName("date"),
+              derive("token",new String[]{"enumeration","red","enumeration","green"}) },
+            { (XSDatatypeImpl)DatatypeFactory.getTypeByName("boolean"),
+              (XSDatatypeImpl)DatatypeFactory.getTypeByName("int"),
+              (XSDatatypeImpl)DatatypeFactory.getTypeByName("float"),
+              (XSDatatypeImpl)DatatypeFactory.getTypeByName("string") },
+            { (XSDatatypeImpl)DatatypeFactory.getTypeByName("hexBinary"),
+              (XSDatatypeImpl)DatatypeFactory.getTypeByName("integer"),
+              (XSDatatypeImpl)DatatypeFactory.getTypeByName("gYear"),
+              (XSDatatypeImpl)DatatypeFactory.getTypeByName("language") },
+        };
+        
+        Random random = new Random(0);
+        for( int u=0; u<unions.length; u++ ) {
+            XSDatatypeImpl[] members = unions[u];
+            UnionType union = (UnionType)DatatypeFactory.deriveByUnion("","test",members);
+            
+            for( int n=0; n<20000; n++ ) {
+                String literal = mutate(random);
+                
+                boolean valid = false;
+                Object value = null;
+                for( int i=0; i<members.length && value==null; i++ ) {
+                    value = members[i]._createValue(literal,DummyContextProvider.theInstance);
+                    valid |= members[i].checkFormat(literal,DummyContextProvider.theInstance);
+                }
+                
+                assertEquals( literal, valid, union.checkFormat(literal,DummyContextProvider.theInstance) );
+                assertEquals( literal, value, union._createValue(literal,DummyContextProvider.theInstance) );
+            }
+        }
+    }
 }